@@ -0,0 +1,17 @@
+package com.yujian.yupicturebackend.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 固定走主库（写后读）
+ * <p>
+ * 读出的数据随后要据此写回（读-改-写），或必须读到刚刚提交的写入时使用，
+ * 即使是只读事务、或处在 {@link ReadReplica} 范围内也不会路由到副本。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PinPrimary {
+}
@@ -0,0 +1,17 @@
+package com.yujian.yupicturebackend.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 只读查询，可以路由到只读副本
+ * <p>
+ * 只标注在不写库、能容忍复制延迟的方法上（列表、分页、VO 查询等）；
+ * 方法内开启的读写事务、以及 {@link PinPrimary} 范围内的查询仍走主库。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReadReplica {
+}
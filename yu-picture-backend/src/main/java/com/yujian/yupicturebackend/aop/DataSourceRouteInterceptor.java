@@ -0,0 +1,49 @@
+package com.yujian.yupicturebackend.aop;
+
+import com.yujian.yupicturebackend.annotation.PinPrimary;
+import com.yujian.yupicturebackend.annotation.ReadReplica;
+import com.yujian.yupicturebackend.config.datasource.DataSourceRouting;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * 按注解设置当前线程的读写路由，实际选库发生在第一条语句执行时
+ */
+@Aspect
+@Component
+public class DataSourceRouteInterceptor {
+
+    /**
+     * 只读查询，可以走副本
+     *
+     * @param joinPoint   切入点
+     * @param readReplica 只读路由注解
+     */
+    @Around("@annotation(readReplica)")
+    public Object routeToReplica(ProceedingJoinPoint joinPoint, ReadReplica readReplica) throws Throwable {
+        DataSourceRouting.enterReplica();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            DataSourceRouting.exitReplica();
+        }
+    }
+
+    /**
+     * 固定走主库
+     *
+     * @param joinPoint  切入点
+     * @param pinPrimary 主库固定注解
+     */
+    @Around("@annotation(pinPrimary)")
+    public Object pinToPrimary(ProceedingJoinPoint joinPoint, PinPrimary pinPrimary) throws Throwable {
+        DataSourceRouting.enterPrimaryPin();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            DataSourceRouting.exitPrimaryPin();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.yujian.yupicturebackend.config;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfoHandlerMapping;
+import springfox.documentation.spring.web.plugins.WebMvcRequestHandlerProvider;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Actuator 与接口文档共存的兼容配置。
+ * <p>
+ * Actuator 的端点映射使用 PathPatternParser 匹配路径，springfox 只认识 AntPathMatcher，
+ * 扫描到端点映射时会因取不到路径条件而启动失败。这里让 springfox 只处理基于 AntPathMatcher 的业务接口映射。
+ */
+@Configuration
+public class ActuatorSwaggerConfig {
+
+    @Bean
+    public static BeanPostProcessor springfoxHandlerProviderBeanPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                if (bean instanceof WebMvcRequestHandlerProvider) {
+                    keepAntPathMappings(getHandlerMappings(bean));
+                }
+                return bean;
+            }
+
+            private void keepAntPathMappings(List<RequestMappingInfoHandlerMapping> mappings) {
+                List<RequestMappingInfoHandlerMapping> antPathMappings = mappings.stream()
+                        .filter(mapping -> mapping.getPatternParser() == null)
+                        .collect(Collectors.toList());
+                mappings.clear();
+                mappings.addAll(antPathMappings);
+            }
+
+            @SuppressWarnings("unchecked")
+            private List<RequestMappingInfoHandlerMapping> getHandlerMappings(Object bean) {
+                Field field = ReflectionUtils.findField(bean.getClass(), "handlerMappings");
+                if (field == null) {
+                    throw new IllegalStateException("WebMvcRequestHandlerProvider 缺少 handlerMappings 字段");
+                }
+                ReflectionUtils.makeAccessible(field);
+                return (List<RequestMappingInfoHandlerMapping>) ReflectionUtils.getField(field, bean);
+            }
+        };
+    }
+}
@@ -1,9 +1,12 @@
 package com.yujian.yupicturebackend.config;
 
+import com.yujian.yupicturebackend.model.enums.VerificationModeEnum;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -25,4 +28,58 @@ public class ThreadPoolConfig {
                 new ThreadPoolExecutor.CallerRunsPolicy()  // 队列满时让提交者运行任务，避免任务丢失
         );
     }
+
+    /**
+     * 核销流水线读取阶段线程池，线程主要阻塞在数据库查询上，按数据库可承受的并发读取数配置。
+     * reader-threads 是单次运行的读取线程数，各阶段的工作线程在运行期间常驻；全量与增量核销可以同时进行，
+     * 按模式数放大线程池，后开始的运行不会排在先开始的运行后面等线程
+     */
+    @Bean("verificationReaderExecutor")
+    public ThreadPoolExecutor verificationReaderExecutor(@Value("${verification.pipeline.reader-threads:4}") int readerThreads) {
+        return fixedPool(Math.max(readerThreads, 1) * VerificationModeEnum.values().length);
+    }
+
+    /**
+     * 核销流水线回写阶段线程池，并发事务越多行锁竞争越激烈，一般少于读取线程；
+     * 与读取线程池一样按 writer-threads × 模式数配置
+     */
+    @Bean("verificationWriterExecutor")
+    public ThreadPoolExecutor verificationWriterExecutor(@Value("${verification.pipeline.writer-threads:2}") int writerThreads) {
+        return fixedPool(Math.max(writerThreads, 1) * VerificationModeEnum.values().length);
+    }
+
+    /**
+     * 异步核销任务线程池。每种核销模式同一时刻只有一个任务在执行，全量与增量核销可以同时进行，
+     * 任务线程负责客户发现并驱动流水线，请求线程提交后立即返回
+     */
+    @Bean("verificationJobExecutor")
+    public ThreadPoolExecutor verificationJobExecutor() {
+        return fixedPool(VerificationModeEnum.values().length);
+    }
+
+    /**
+     * 核销事件推送线程池。单线程保证同一任务的事件按发生顺序推送，慢客户端只拖慢推送，不阻塞回写线程；
+     * 队列有界，积压满时由任务丢弃逐批事件
+     */
+    @Bean("verificationEventExecutor")
+    public ThreadPoolExecutor verificationEventExecutor(@Value("${verification.event-queue-capacity:1000}") int queueCapacity) {
+        return new ThreadPoolExecutor(
+                1,
+                1,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(queueCapacity, 1)),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    private ThreadPoolExecutor fixedPool(int threads) {
+        int poolSize = Math.max(threads, 1);
+        // 流水线每个阶段常驻固定数量的工作线程，任务数不会超过线程数
+        return new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>()
+        );
+    }
 }
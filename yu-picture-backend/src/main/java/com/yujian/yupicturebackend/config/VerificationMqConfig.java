@@ -0,0 +1,34 @@
+package com.yujian.yupicturebackend.config;
+
+import com.rabbitmq.client.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 分布式核销使用的 RabbitMQ 连接配置。
+ * <p>
+ * 只创建连接工厂，不会主动连接：协调节点在以 distributed 引擎执行核销时才建立连接，
+ * 工作节点在开启 verification.distributed.worker.enabled 时启动消费。
+ */
+@Configuration
+public class VerificationMqConfig {
+
+    @Bean("verificationMqConnectionFactory")
+    public ConnectionFactory verificationMqConnectionFactory(@Value("${verification.distributed.host:localhost}") String host,
+                                                             @Value("${verification.distributed.port:5672}") int port,
+                                                             @Value("${verification.distributed.username:guest}") String username,
+                                                             @Value("${verification.distributed.password:guest}") String password,
+                                                             @Value("${verification.distributed.virtual-host:/}") String virtualHost) {
+        ConnectionFactory factory = new ConnectionFactory();
+        factory.setHost(host);
+        factory.setPort(port);
+        factory.setUsername(username);
+        factory.setPassword(password);
+        factory.setVirtualHost(virtualHost);
+        // 网络抖动后自动重连并恢复队列与消费者，未确认的消息由 Broker 重新投递
+        factory.setAutomaticRecoveryEnabled(true);
+        factory.setTopologyRecoveryEnabled(true);
+        return factory;
+    }
+}
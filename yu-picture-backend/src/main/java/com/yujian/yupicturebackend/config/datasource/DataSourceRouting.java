@@ -0,0 +1,86 @@
+package com.yujian.yupicturebackend.config.datasource;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+/**
+ * 当前线程的读写路由上下文。
+ * <p>
+ * 路由规则按优先级：
+ * <ol>
+ *     <li>处在主库固定（写后读）范围内：主库；</li>
+ *     <li>处在读写事务中：主库；</li>
+ *     <li>处在只读事务中，或处在只读副本范围内：副本；</li>
+ *     <li>其余：主库。</li>
+ * </ol>
+ * 范围可以嵌套，用计数而不是布尔值记录。线程池中的任务不会继承提交线程的上下文，需要在任务内部自行设置。
+ */
+public final class DataSourceRouting {
+
+    private static final ThreadLocal<int[]> REPLICA_DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+    private static final ThreadLocal<int[]> PIN_DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+    private DataSourceRouting() {
+    }
+
+    /**
+     * 在只读副本范围内执行查询
+     */
+    public static <T> T onReplica(Supplier<T> query) {
+        enterReplica();
+        try {
+            return query.get();
+        } finally {
+            exitReplica();
+        }
+    }
+
+    /**
+     * 固定在主库上执行
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        enterPrimaryPin();
+        try {
+            return action.get();
+        } finally {
+            exitPrimaryPin();
+        }
+    }
+
+    public static void enterReplica() {
+        REPLICA_DEPTH.get()[0]++;
+    }
+
+    public static void exitReplica() {
+        exit(REPLICA_DEPTH);
+    }
+
+    public static void enterPrimaryPin() {
+        PIN_DEPTH.get()[0]++;
+    }
+
+    public static void exitPrimaryPin() {
+        exit(PIN_DEPTH);
+    }
+
+    /**
+     * 当前线程此刻的语句是否可以走副本
+     */
+    static boolean isReplicaAllowed() {
+        if (PIN_DEPTH.get()[0] > 0) {
+            return false;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        }
+        return REPLICA_DEPTH.get()[0] > 0;
+    }
+
+    private static void exit(ThreadLocal<int[]> depth) {
+        int[] counter = depth.get();
+        if (--counter[0] <= 0) {
+            depth.remove();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.yujian.yupicturebackend.config.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读写分离的路由数据源：写入与读写事务走主库，只读事务与标注为只读的查询轮询分发到健康的副本。
+ * <p>
+ * 需要包在 LazyConnectionDataSourceProxy 中使用：事务开始时还不知道是否只读，
+ * 延迟到第一条语句执行时再取连接，路由才能看到事务的只读标记。
+ * <p>
+ * 副本健康检查：定时对每个副本取连接并校验，连续失败达到阈值即摘除，恢复后自动加回；
+ * 从副本取连接失败时立即摘除该副本并改走主库，查询本身不会因副本故障而失败。
+ * 没有健康副本时所有查询走主库。
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadWriteRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final int failureThreshold;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ScheduledExecutorService healthChecker;
+
+    public ReadWriteRoutingDataSource(DataSource primary, Map<String, DataSource> replicaDataSources,
+                                      long healthCheckIntervalSeconds, int failureThreshold) {
+        this.primary = primary;
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.replicas = new ArrayList<>(replicaDataSources.size());
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicaDataSources.forEach((name, dataSource) -> {
+            replicas.add(new Replica(name, dataSource));
+            targets.put(name, dataSource);
+        });
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+
+        if (replicas.isEmpty() || healthCheckIntervalSeconds <= 0) {
+            this.healthChecker = null;
+        } else {
+            this.healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "replica-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            healthChecker.scheduleWithFixedDelay(this::checkReplicas,
+                    healthCheckIntervalSeconds, healthCheckIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!DataSourceRouting.isReplicaAllowed()) {
+            return PRIMARY;
+        }
+        Replica replica = pickReplica();
+        return replica != null ? replica.name : PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Object key = determineCurrentLookupKey();
+        if (PRIMARY.equals(key)) {
+            return primary.getConnection();
+        }
+        Replica replica = findReplica(key);
+        try {
+            return replica.dataSource.getConnection();
+        } catch (SQLException e) {
+            eject(replica, e);
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        // 带凭据取连接不在读写分离的范围内，一律走主库
+        return primary.getConnection(username, password);
+    }
+
+    /**
+     * 当前健康的副本数
+     */
+    public int getHealthyReplicaCount() {
+        int count = 0;
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 停止健康检查并关闭主库与各副本的连接池
+     */
+    @Override
+    public void destroy() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        close(primary);
+        for (Replica replica : replicas) {
+            close(replica.dataSource);
+        }
+    }
+
+    private void close(DataSource dataSource) {
+        if (dataSource instanceof Closeable) {
+            try {
+                ((Closeable) dataSource).close();
+            } catch (IOException e) {
+                log.warn("关闭数据源连接池失败", e);
+            }
+        }
+    }
+
+    private Replica pickReplica() {
+        int size = replicas.size();
+        if (size == 0) {
+            return null;
+        }
+        int start = Math.floorMod(nextReplica.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private Replica findReplica(Object key) {
+        for (Replica replica : replicas) {
+            if (replica.name.equals(key)) {
+                return replica;
+            }
+        }
+        throw new IllegalStateException("未知的副本: " + key);
+    }
+
+    private void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                if (!connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    throw new SQLException("连接校验未通过");
+                }
+                replica.failures = 0;
+                if (!replica.healthy) {
+                    replica.healthy = true;
+                    log.info("副本 {} 已恢复，重新加入读路由", replica.name);
+                }
+            } catch (SQLException | RuntimeException e) {
+                replica.failures++;
+                if (replica.healthy && replica.failures >= failureThreshold) {
+                    eject(replica, e);
+                }
+            }
+        }
+    }
+
+    private void eject(Replica replica, Exception cause) {
+        if (replica.healthy) {
+            replica.healthy = false;
+            log.warn("副本 {} 不可用，暂时摘除，只读查询改走主库或其他副本: {}", replica.name, cause.getMessage());
+        }
+    }
+
+    private static class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+        /**
+         * 连续健康检查失败次数，只由健康检查线程读写
+         */
+        private int failures;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
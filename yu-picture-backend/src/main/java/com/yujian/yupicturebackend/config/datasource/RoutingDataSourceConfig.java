@@ -0,0 +1,85 @@
+package com.yujian.yupicturebackend.config.datasource;
+
+import cn.hutool.core.util.StrUtil;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 读写分离数据源配置，datasource.routing.enabled=true 时生效，替代自动配置的单一数据源。
+ * <p>
+ * 主库沿用 spring.datasource 的配置，副本在 datasource.routing.replicas 中逐个配置。
+ * 连接池参数与单数据源时一样取自 spring.datasource.hikari，对主库与各副本都生效；
+ * 副本可在 datasource.routing.replicas[n].hikari 中单独覆盖。
+ * 本地可以用两个 MySQL（或两个 H2）实例验证：副本不可达时查询自动回落到主库。
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "datasource.routing", name = "enabled", havingValue = "true")
+public class RoutingDataSourceConfig {
+
+    private static final String HIKARI_PREFIX = "spring.datasource.hikari";
+
+    @Bean
+    @ConfigurationProperties(prefix = "datasource.routing")
+    public RoutingDataSourceProperties routingDataSourceProperties() {
+        return new RoutingDataSourceProperties();
+    }
+
+    @Bean
+    public ReadWriteRoutingDataSource readWriteRoutingDataSource(DataSourceProperties primaryProperties,
+                                                                 RoutingDataSourceProperties routingProperties,
+                                                                 Environment environment) {
+        Binder binder = Binder.get(environment);
+        HikariDataSource primary = primaryProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        binder.bind(HIKARI_PREFIX, Bindable.ofInstance(primary));
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        List<RoutingDataSourceProperties.Replica> replicaConfigs = routingProperties.getReplicas();
+        for (int i = 0; i < replicaConfigs.size(); i++) {
+            RoutingDataSourceProperties.Replica replica = replicaConfigs.get(i);
+            String name = StrUtil.blankToDefault(replica.getName(), "replica-" + i);
+            HikariDataSource dataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .driverClassName(StrUtil.blankToDefault(replica.getDriverClassName(), primaryProperties.determineDriverClassName()))
+                    .url(replica.getUrl())
+                    .username(replica.getUsername())
+                    .password(replica.getPassword())
+                    .build();
+            // 先套用主库的连接池参数，再用副本自己的配置覆盖
+            binder.bind(HIKARI_PREFIX, Bindable.ofInstance(dataSource));
+            if (!replica.getHikari().isEmpty()) {
+                MapConfigurationPropertySource overrides = new MapConfigurationPropertySource();
+                replica.getHikari().forEach((key, value) -> overrides.put("hikari." + key, value));
+                new Binder(overrides).bind("hikari", Bindable.ofInstance(dataSource));
+            }
+            dataSource.setPoolName(name);
+            dataSource.setReadOnly(true);
+            replicas.put(name, dataSource);
+        }
+        return new ReadWriteRoutingDataSource(primary, replicas,
+                routingProperties.getHealthCheckIntervalSeconds(), routingProperties.getFailureThreshold());
+    }
+
+    /**
+     * 应用使用的数据源：延迟到第一条语句执行时才真正取连接，路由才能看到事务的只读标记
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource readWriteRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readWriteRoutingDataSource);
+    }
+}
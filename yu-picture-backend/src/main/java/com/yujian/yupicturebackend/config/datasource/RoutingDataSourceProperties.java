@@ -0,0 +1,60 @@
+package com.yujian.yupicturebackend.config.datasource;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 读写分离配置（datasource.routing）
+ */
+@Data
+public class RoutingDataSourceProperties {
+
+    /**
+     * 是否开启读写分离，关闭时只使用 spring.datasource 配置的主库
+     */
+    private boolean enabled = false;
+
+    /**
+     * 副本健康检查间隔（秒），0 表示不做定时检查：取连接失败时摘除，且摘除后不再自动恢复
+     */
+    private long healthCheckIntervalSeconds = 10;
+
+    /**
+     * 连续检查失败多少次后摘除副本
+     */
+    private int failureThreshold = 2;
+
+    /**
+     * 只读副本
+     */
+    private List<Replica> replicas = new ArrayList<>();
+
+    @Data
+    public static class Replica {
+
+        /**
+         * 副本名称，用于日志与路由键，缺省为 replica-序号
+         */
+        private String name;
+
+        private String url;
+
+        private String username;
+
+        private String password;
+
+        /**
+         * 驱动类，缺省与主库相同
+         */
+        private String driverClassName;
+
+        /**
+         * 连接池参数，键与 spring.datasource.hikari 相同（如 maximum-pool-size），未配置的项沿用主库的连接池参数
+         */
+        private Map<String, String> hikari = new LinkedHashMap<>();
+    }
+}
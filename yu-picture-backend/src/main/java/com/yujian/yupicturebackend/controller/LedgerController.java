@@ -0,0 +1,94 @@
+package com.yujian.yupicturebackend.controller;
+
+import cn.hutool.core.util.StrUtil;
+import com.yujian.yupicturebackend.annotation.AuthCheck;
+import com.yujian.yupicturebackend.annotation.ReadReplica;
+import com.yujian.yupicturebackend.common.BaseResponse;
+import com.yujian.yupicturebackend.common.ResultUtils;
+import com.yujian.yupicturebackend.constant.UserConstant;
+import com.yujian.yupicturebackend.domain.LedgerArchiveCheckpoint;
+import com.yujian.yupicturebackend.exception.ErrorCode;
+import com.yujian.yupicturebackend.exception.ThrowUtils;
+import com.yujian.yupicturebackend.model.vo.BankReceiptVO;
+import com.yujian.yupicturebackend.model.vo.RentScheduleVO;
+import com.yujian.yupicturebackend.service.IBankReceiptService;
+import com.yujian.yupicturebackend.service.IRentScheduleService;
+import com.yujian.yupicturebackend.service.archive.LedgerArchiveJob;
+import com.yujian.yupicturebackend.service.archive.LedgerArchiveService;
+import com.yujian.yupicturebackend.service.customer.CustomerKeyBackfillJob;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/ledger")
+public class LedgerController {
+
+    private final IBankReceiptService bankReceiptService;
+    private final IRentScheduleService rentScheduleService;
+    private final LedgerArchiveService archiveService;
+    private final LedgerArchiveJob archiveJob;
+    private final CustomerKeyBackfillJob customerKeyBackfillJob;
+
+    public LedgerController(IBankReceiptService bankReceiptService,
+                            IRentScheduleService rentScheduleService,
+                            LedgerArchiveService archiveService,
+                            LedgerArchiveJob archiveJob,
+                            CustomerKeyBackfillJob customerKeyBackfillJob) {
+        this.bankReceiptService = bankReceiptService;
+        this.rentScheduleService = rentScheduleService;
+        this.archiveService = archiveService;
+        this.archiveJob = archiveJob;
+        this.customerKeyBackfillJob = customerKeyBackfillJob;
+    }
+
+    /**
+     * 查询客户的收款单，包括已归档的
+     */
+    @GetMapping("/receipts")
+    @ReadReplica
+    public BaseResponse<List<BankReceiptVO>> listCustomerReceipts(@RequestParam String customerName) {
+        ThrowUtils.throwIf(StrUtil.isBlank(customerName), ErrorCode.PARAMS_ERROR, "客户名称不能为空");
+        return ResultUtils.success(bankReceiptService.getBankReceiptVOList(bankReceiptService.listCustomerReceipts(customerName)));
+    }
+
+    /**
+     * 查询客户的租金计划，包括已归档的
+     */
+    @GetMapping("/schedules")
+    @ReadReplica
+    public BaseResponse<List<RentScheduleVO>> listCustomerSchedules(@RequestParam String customerName) {
+        ThrowUtils.throwIf(StrUtil.isBlank(customerName), ErrorCode.PARAMS_ERROR, "客户名称不能为空");
+        return ResultUtils.success(rentScheduleService.getRentScheduleVOList(rentScheduleService.listCustomerSchedules(customerName)));
+    }
+
+    /**
+     * 查看各表的归档进度
+     */
+    @GetMapping("/archive")
+    public BaseResponse<List<LedgerArchiveCheckpoint>> listArchiveCheckpoints() {
+        return ResultUtils.success(archiveService.listCheckpoints());
+    }
+
+    /**
+     * 手动触发一轮归档，已有一轮在进行时返回 false
+     */
+    @PostMapping("/archive/run")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Boolean> runArchive() {
+        return ResultUtils.success(archiveJob.trigger());
+    }
+
+    /**
+     * 触发 customer_id 在线回填，回填已在进行时返回 false
+     */
+    @PostMapping("/customer-keys/backfill")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Boolean> backfillCustomerKeys() {
+        return ResultUtils.success(customerKeyBackfillJob.trigger());
+    }
+}
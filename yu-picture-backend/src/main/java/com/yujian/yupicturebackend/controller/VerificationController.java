@@ -1,24 +1,108 @@
 package com.yujian.yupicturebackend.controller;
 
+import cn.hutool.core.util.StrUtil;
+import com.yujian.yupicturebackend.annotation.AuthCheck;
+import com.yujian.yupicturebackend.common.BaseResponse;
+import com.yujian.yupicturebackend.common.ResultUtils;
+import com.yujian.yupicturebackend.constant.UserConstant;
+import com.yujian.yupicturebackend.exception.ErrorCode;
+import com.yujian.yupicturebackend.exception.ThrowUtils;
+import com.yujian.yupicturebackend.model.enums.VerificationModeEnum;
+import com.yujian.yupicturebackend.model.vo.VerificationCustomerResultVO;
+import com.yujian.yupicturebackend.model.vo.VerificationJobVO;
+import com.yujian.yupicturebackend.model.vo.VerificationParkedBatchVO;
+import com.yujian.yupicturebackend.service.verification.VerificationDeadLetterMonitor;
+import com.yujian.yupicturebackend.service.verification.VerificationJob;
 import com.yujian.yupicturebackend.service.verification.VerificationOrchestrator;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.concurrent.ExecutionException;
+import java.util.Date;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/verification")
 public class VerificationController {
 
     private final VerificationOrchestrator verificationOrchestrator;
+    private final VerificationDeadLetterMonitor deadLetterMonitor;
 
-    public VerificationController(VerificationOrchestrator verificationOrchestrator) {
+    public VerificationController(VerificationOrchestrator verificationOrchestrator,
+                                  VerificationDeadLetterMonitor deadLetterMonitor) {
         this.verificationOrchestrator = verificationOrchestrator;
+        this.deadLetterMonitor = deadLetterMonitor;
     }
 
+    /**
+     * 提交核销任务并立即返回任务信息，mode 为 full（全量，默认）或 incremental（只处理脏客户）；
+     * asOf（yyyy-MM-dd）指定时只核销应收日期不晚于该日的租金计划
+     */
     @PostMapping("/run")
-    public VerificationOrchestrator.VerificationSummary runVerification() throws ExecutionException, InterruptedException {
-        return verificationOrchestrator.runVerificationProcess();
+    public BaseResponse<VerificationJobVO> runVerification(@RequestParam(defaultValue = "full") String mode,
+                                                           @RequestParam(required = false)
+                                                           @DateTimeFormat(pattern = "yyyy-MM-dd") Date asOf) {
+        VerificationModeEnum modeEnum = VerificationModeEnum.getEnumByValue(mode);
+        ThrowUtils.throwIf(modeEnum == null, ErrorCode.PARAMS_ERROR, "不支持的核销模式");
+        VerificationJob job = verificationOrchestrator.submit(modeEnum, asOf);
+        return ResultUtils.success(job.toVO());
+    }
+
+    /**
+     * 立即核销单个客户，收款到账后调用；可与全量、增量核销同时进行，客户正被批次核销占用时返回推迟
+     */
+    @PostMapping("/customer/{customerName}")
+    public BaseResponse<VerificationCustomerResultVO> verifyCustomer(@PathVariable String customerName) {
+        ThrowUtils.throwIf(StrUtil.isBlank(customerName), ErrorCode.PARAMS_ERROR, "客户名称不能为空");
+        return ResultUtils.success(verificationOrchestrator.verifyCustomer(customerName));
+    }
+
+    /**
+     * 查询任务进度：已完成客户数、回写速率，以及发现结束后的预计剩余时间
+     */
+    @GetMapping("/jobs/{jobId}")
+    public BaseResponse<VerificationJobVO> getJobProgress(@PathVariable Long jobId) {
+        return ResultUtils.success(verificationOrchestrator.getJobProgress(jobId));
+    }
+
+    /**
+     * 取消任务，已在处理中的批次会照常提交
+     */
+    @PostMapping("/jobs/{jobId}/cancel")
+    public BaseResponse<Boolean> cancelJob(@PathVariable Long jobId) {
+        return ResultUtils.success(verificationOrchestrator.cancel(jobId));
+    }
+
+    /**
+     * 以 SSE 推送逐批核销结果（batch 事件），任务结束时推送最终状态（done 事件）
+     */
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamJobEvents(@PathVariable Long jobId) {
+        return verificationOrchestrator.subscribe(jobId);
+    }
+
+    /**
+     * 查看分布式核销中重试耗尽、停放在死信队列的批次
+     */
+    @GetMapping("/parked")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<List<VerificationParkedBatchVO>> listParkedBatches(@RequestParam(defaultValue = "50") int limit) {
+        ThrowUtils.throwIf(limit <= 0 || limit > 500, ErrorCode.PARAMS_ERROR, "limit 取值 1 ~ 500");
+        return ResultUtils.success(deadLetterMonitor.listParked(limit));
+    }
+
+    /**
+     * 把停放的批次重放回工作队列，checkpointId 为空时重放全部，返回重放的批次数
+     */
+    @PostMapping("/parked/replay")
+    @AuthCheck(mustRole = UserConstant.ADMIN_ROLE)
+    public BaseResponse<Integer> replayParkedBatches(@RequestParam(required = false) Long checkpointId) {
+        return ResultUtils.success(deadLetterMonitor.replayParked(checkpointId));
     }
 }
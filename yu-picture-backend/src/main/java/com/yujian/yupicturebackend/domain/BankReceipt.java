@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.annotation.Version;
 import lombok.Data;
 
 import java.io.Serializable;
@@ -20,6 +21,12 @@ public class BankReceipt implements Serializable {
     @TableField("payer_name")
     private String payerName;
 
+    /**
+     * 付款客户 ID（customer.id），与 payer_name 一一对应
+     */
+    @TableField("customer_id")
+    private Long customerId;
+
     @TableField("payer_bank")
     private String payerBank;
 
@@ -37,9 +44,21 @@ public class BankReceipt implements Serializable {
 
     private Integer status;
 
+    /**
+     * 乐观锁版本号，每次改动加 1；核销回写时核对读取时的版本，不一致说明读取之后行已被改动
+     */
+    @Version
+    private Integer version;
+
     @TableField("create_time")
     private Date createTime;
 
     @TableField("update_time")
     private Date updateTime;
+
+    /**
+     * 核销过程中被修改的列（位掩码，见 ChangedColumns），回写时只更新这些列；不对应数据库字段
+     */
+    @TableField(exist = false)
+    private transient int changedColumns;
 }
@@ -0,0 +1,30 @@
+package com.yujian.yupicturebackend.domain;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 客户维度：为客户名称分配整数主键，收款单与租金计划通过 customer_id 关联
+ */
+@TableName(value = "customer")
+@Data
+public class Customer implements Serializable {
+
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 客户名称（收款单 payer_name / 租金计划 lessee_name），唯一
+     */
+    @TableField("customer_name")
+    private String customerName;
+
+    @TableField("create_time")
+    private Date createTime;
+}
@@ -0,0 +1,53 @@
+package com.yujian.yupicturebackend.domain;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 已结清数据归档的检查点，每张热表一条，记录本轮扫描推进到的位置
+ */
+@TableName(value = "ledger_archive_checkpoint")
+@Data
+public class LedgerArchiveCheckpoint implements Serializable {
+
+    /**
+     * 热表名，见 LedgerArchiveTableEnum
+     */
+    @TableId(value = "table_name", type = IdType.INPUT)
+    private String tableName;
+
+    /**
+     * 本轮已扫描到的最大 id，下一个分块从其后开始；一轮扫描到表尾后归零
+     */
+    @TableField("last_id")
+    private Long lastId;
+
+    /**
+     * 累计归档的行数
+     */
+    @TableField("archived_rows")
+    private Long archivedRows;
+
+    /**
+     * 已完成的整表扫描轮数
+     */
+    @TableField("pass_count")
+    private Integer passCount;
+
+    /**
+     * 最近一次扫描到表尾的时间
+     */
+    @TableField("last_pass_time")
+    private Date lastPassTime;
+
+    @TableField("update_time")
+    private Date updateTime;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,64 @@
+package com.yujian.yupicturebackend.domain;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * 核销批次检查点，记录一次运行中每个批次覆盖的客户区间与完成状态
+ */
+@TableName(value = "verification_batch")
+@Data
+public class VerificationBatch implements Serializable {
+
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    @TableField("run_id")
+    private Long runId;
+
+    @TableField("first_customer")
+    private String firstCustomer;
+
+    @TableField("last_customer")
+    private String lastCustomer;
+
+    @TableField("customer_count")
+    private Integer customerCount;
+
+    /**
+     * 是否为大客户专属批次（0-区间批次, 1-专属批次），专属批次不参与续跑起点的计算
+     */
+    private Integer dedicated;
+
+    /**
+     * 调度优先级（0-普通, 1-高, 2-紧急），优先通道的批次按名称列表加载，同样不参与续跑起点的计算
+     */
+    private Integer priority;
+
+    /**
+     * 批次状态（0-待完成, 1-已完成），已完成与核销结果回写在同一个事务中提交
+     */
+    private Integer status;
+
+    @TableField("verified_count")
+    private Integer verifiedCount;
+
+    @TableField("total_principal")
+    private BigDecimal totalPrincipal;
+
+    @TableField("total_interest")
+    private BigDecimal totalInterest;
+
+    @TableField("create_time")
+    private Date createTime;
+
+    @TableField("update_time")
+    private Date updateTime;
+}
@@ -0,0 +1,35 @@
+package com.yujian.yupicturebackend.domain;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 待增量核销的客户（脏客户集合）
+ */
+@TableName(value = "verification_dirty_customer")
+@Data
+public class VerificationDirtyCustomer implements Serializable {
+
+    /**
+     * 客户名称（收款单 payer_name / 租金计划 lessee_name）
+     */
+    @TableId("customer_name")
+    private String customerName;
+
+    /**
+     * 标记版本，每次重复标记加一；清理时按版本比对，避免误删核销期间新产生的标记
+     */
+    @TableField("mark_version")
+    private Long markVersion;
+
+    @TableField("create_time")
+    private Date createTime;
+
+    @TableField("update_time")
+    private Date updateTime;
+}
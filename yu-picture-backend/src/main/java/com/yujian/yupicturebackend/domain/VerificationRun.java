@@ -0,0 +1,86 @@
+package com.yujian.yupicturebackend.domain;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * 核销运行记录，一次核销（含中断后的续跑）对应一条
+ */
+@TableName(value = "verification_run")
+@Data
+public class VerificationRun implements Serializable {
+
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 核销模式，见 VerificationModeEnum
+     */
+    private String mode;
+
+    /**
+     * 运行状态，见 VerificationRunStatusEnum
+     */
+    private String status;
+
+    /**
+     * 应收日期截止日（包含），只核销应收日期不晚于该日的租金计划；为空时不限
+     */
+    @TableField("as_of_date")
+    private Date asOfDate;
+
+    /**
+     * 续跑次数，进程中断或失败后每恢复一次加一
+     */
+    @TableField("resume_count")
+    private Integer resumeCount;
+
+    @TableField("batch_count")
+    private Integer batchCount;
+
+    @TableField("verified_count")
+    private Integer verifiedCount;
+
+    @TableField("total_principal")
+    private BigDecimal totalPrincipal;
+
+    @TableField("total_interest")
+    private BigDecimal totalInterest;
+
+    @TableField("error_message")
+    private String errorMessage;
+
+    /**
+     * 当前持有运行的节点每次开始或续跑时生成的令牌，状态更新与分段租约都以它为准
+     */
+    @TableField("owner_token")
+    private String ownerToken;
+
+    /**
+     * 持有节点最近一次心跳时间，超过失效时长未更新的运行中记录视为持有节点已退出，可被接管续跑
+     */
+    @TableField("heartbeat_time")
+    private Date heartbeatTime;
+
+    /**
+     * 首次开始时间，续跑不改变
+     */
+    @TableField("start_time")
+    private Date startTime;
+
+    @TableField("end_time")
+    private Date endTime;
+
+    @TableField("create_time")
+    private Date createTime;
+
+    @TableField("update_time")
+    private Date updateTime;
+}
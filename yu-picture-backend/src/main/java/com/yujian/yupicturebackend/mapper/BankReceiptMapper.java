@@ -2,8 +2,197 @@ package com.yujian.yupicturebackend.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.model.dto.verification.CustomerWorkload;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
 
 @Mapper
 public interface BankReceiptMapper extends BaseMapper<BankReceipt> {
+
+    /**
+     * 核销结果回写：一条多行 UPDATE ... CASE id，只更新有行发生变化的列，版本号加 1；
+     * 每行都核对读取时的版本号，被改动过的行不会被覆盖，返回的行数少于 rows 时说明有行版本不一致
+     *
+     * @param rows       本次更新的全部行（按 id 升序）
+     * @param usedRows   已用金额有变化的行
+     * @param statusRows 状态有变化的行
+     */
+    @Update({"<script>",
+            "UPDATE bank_receipt",
+            "<trim prefix='SET' suffixOverrides=','>",
+            "<if test='!usedRows.isEmpty()'>used_amount = CASE id",
+            "<foreach collection='usedRows' item='r'> WHEN #{r.id} THEN #{r.usedAmount}</foreach>",
+            " ELSE used_amount END,</if>",
+            "<if test='!statusRows.isEmpty()'>status = CASE id",
+            "<foreach collection='statusRows' item='r'> WHEN #{r.id} THEN #{r.status}</foreach>",
+            " ELSE status END,</if>",
+            "version = version + 1,",
+            "</trim>",
+            "WHERE id IN <foreach collection='rows' item='r' open='(' separator=',' close=')'>#{r.id}</foreach>",
+            "AND version = CASE id <foreach collection='rows' item='r'> WHEN #{r.id} THEN #{r.version}</foreach> END",
+            "</script>"})
+    int updateVerifiedColumns(@Param("rows") List<BankReceipt> rows,
+                              @Param("usedRows") List<BankReceipt> usedRows,
+                              @Param("statusRows") List<BankReceipt> statusRows);
+
+    /**
+     * 锁定即将回写的行并读取其当前版本号，按 id 升序加锁，与回写语句的加锁顺序一致
+     */
+    @Select({"<script>",
+            "SELECT id, version FROM bank_receipt",
+            "WHERE id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "ORDER BY id FOR UPDATE",
+            "</script>"})
+    List<BankReceipt> selectVersionsForUpdate(@Param("ids") List<Long> ids);
+
+    /**
+     * 按 payer_name 索引顺序分页发现待核销客户，并估算每个客户的待核销行数。
+     * 只返回同时有待核销收款与待核销租金计划的客户；租金计划数由 idx_lessee_name_status 上的范围计数得到。
+     *
+     * @param afterCustomer 上一页最后一个客户（不包含），为空时从 startCustomer 开始
+     * @param startCustomer 发现起点（包含），为空时从头开始
+     */
+    @Select({"<script>",
+            "SELECT br.payer_name AS customerName, COUNT(*) AS openReceipts,",
+            " (SELECT COUNT(*) FROM rent_schedule rs WHERE rs.lessee_name = br.payer_name AND rs.status IN (0, 1)) AS openSchedules",
+            "FROM bank_receipt br",
+            "WHERE br.status IN (0, 1)",
+            "<choose>",
+            "<when test='afterCustomer != null'>AND br.payer_name &gt; #{afterCustomer}</when>",
+            "<when test='startCustomer != null'>AND br.payer_name &gt;= #{startCustomer}</when>",
+            "</choose>",
+            "GROUP BY br.payer_name",
+            "HAVING openSchedules &gt; 0",
+            "ORDER BY br.payer_name",
+            "LIMIT #{limit}",
+            "</script>"})
+    List<CustomerWorkload> selectCustomerWorkloads(@Param("afterCustomer") String afterCustomer,
+                                                   @Param("startCustomer") String startCustomer,
+                                                   @Param("limit") int limit);
+
+    /**
+     * 待核销租金计划数不少于 minSchedules、且有待核销收款的大客户，按计划数降序
+     */
+    @Select({"SELECT rs.lessee_name AS customerName, COUNT(*) AS openSchedules",
+            "FROM rent_schedule rs",
+            "WHERE rs.status IN (0, 1)",
+            "GROUP BY rs.lessee_name",
+            "HAVING COUNT(*) >= #{minSchedules}",
+            " AND EXISTS (SELECT 1 FROM bank_receipt br WHERE br.payer_name = rs.lessee_name AND br.status IN (0, 1))",
+            "ORDER BY openSchedules DESC",
+            "LIMIT #{limit}"})
+    List<CustomerWorkload> selectWhaleCustomers(@Param("minSchedules") long minSchedules, @Param("limit") int limit);
+
+    /**
+     * 优先核销的客户：最早一期未结清租金计划的应收日期早于 dueBefore，或待核销收款余额不少于 minOpenAmount。
+     * 先按逾期时间、收款余额取最紧急的 limit 个，再按 payer_name 索引顺序返回，与按名称列表加载批次时数据库返回的客户顺序一致。
+     * <p>
+     * 先由两条走索引的查询圈出候选客户：余额达标的客户只扫描 idx_status_payer_amount 上的待核销区间（覆盖索引，不回表），
+     * 有逾期计划的客户只扫描 idx_status_due_lessee 上应收日期早于 dueBefore 的区间；
+     * 计划数与最早应收日期两个相关子查询只对候选客户执行，走 idx_lessee_name_status 的范围查询。
+     */
+    @Select({"SELECT p.customerName, p.openReceipts, p.openReceiptAmount, p.openSchedules, p.oldestDueDate FROM (",
+            " SELECT br.payer_name AS customerName, COUNT(*) AS openReceipts,",
+            "  SUM(br.payment_amount - br.used_amount) AS openReceiptAmount,",
+            "  (SELECT COUNT(*) FROM rent_schedule rs WHERE rs.lessee_name = br.payer_name AND rs.status IN (0, 1)) AS openSchedules,",
+            "  (SELECT MIN(rs.due_date) FROM rent_schedule rs WHERE rs.lessee_name = br.payer_name AND rs.status IN (0, 1)) AS oldestDueDate",
+            " FROM bank_receipt br",
+            " JOIN (",
+            "  SELECT ob.payer_name AS candidateName FROM bank_receipt ob WHERE ob.status IN (0, 1)",
+            "  GROUP BY ob.payer_name HAVING SUM(ob.payment_amount - ob.used_amount) >= #{minOpenAmount}",
+            "  UNION",
+            "  SELECT os.lessee_name FROM rent_schedule os WHERE os.status IN (0, 1) AND os.due_date < #{dueBefore}",
+            " ) c ON c.candidateName = br.payer_name",
+            " WHERE br.status IN (0, 1)",
+            " GROUP BY br.payer_name",
+            " HAVING oldestDueDate IS NOT NULL",
+            " ORDER BY oldestDueDate, openReceiptAmount DESC",
+            " LIMIT #{limit}",
+            ") p",
+            "ORDER BY p.customerName"})
+    List<CustomerWorkload> selectPriorityCustomers(@Param("dueBefore") Date dueBefore,
+                                                   @Param("minOpenAmount") BigDecimal minOpenAmount,
+                                                   @Param("limit") int limit);
+
+    /**
+     * 归档候选：结清时间（最后更新时间）早于 settledBefore 的已使用收款单，按主键顺序从 afterId 之后取一个分块。
+     * 沿 idx_status_id_update_time 按主键顺序扫描，结清时间在索引内过滤，取满 limit 行即停止，不回表也不排序
+     */
+    @Select("SELECT id FROM bank_receipt WHERE status = 2 AND id > #{afterId} AND update_time < #{settledBefore} ORDER BY id LIMIT #{limit}")
+    List<Long> selectSettledIds(@Param("afterId") long afterId, @Param("settledBefore") Date settledBefore,
+                                @Param("limit") int limit);
+
+    /**
+     * 把仍为已使用状态的收款单复制到历史表，与 {@link #deleteSettled} 在同一个事务中执行
+     */
+    @Insert({"<script>",
+            "INSERT INTO bank_receipt_history (id, payer_name, customer_id, payer_bank, payer_account, payment_amount, payment_datetime,",
+            " used_amount, status, create_time, update_time, archived_time)",
+            "SELECT id, payer_name, customer_id, payer_bank, payer_account, payment_amount, payment_datetime,",
+            " used_amount, status, create_time, update_time, NOW()",
+            "FROM bank_receipt",
+            "WHERE status = 2 AND id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int copySettledToHistory(@Param("ids") List<Long> ids);
+
+    @Delete({"<script>",
+            "DELETE FROM bank_receipt",
+            "WHERE status = 2 AND id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int deleteSettled(@Param("ids") List<Long> ids);
+
+    /**
+     * 查询客户的全部收款单，包括已归档到历史表的，按付款时间排序。
+     * 单条语句在同一个一致性读视图中读取两张表，归档进行中的行不会重复或遗漏。
+     */
+    @Select({"SELECT id, payer_name AS payerName, customer_id AS customerId, payer_bank AS payerBank, payer_account AS payerAccount,",
+            " payment_amount AS paymentAmount, payment_datetime AS paymentDatetime, used_amount AS usedAmount,",
+            " status, create_time AS createTime, update_time AS updateTime",
+            "FROM bank_receipt WHERE payer_name = #{customerName}",
+            "UNION ALL",
+            "SELECT id, payer_name, customer_id, payer_bank, payer_account, payment_amount, payment_datetime, used_amount,",
+            " status, create_time, update_time",
+            "FROM bank_receipt_history WHERE payer_name = #{customerName}",
+            "ORDER BY paymentDatetime, id"})
+    List<BankReceipt> selectByCustomerIncludingHistory(@Param("customerName") String customerName);
+
+    /**
+     * customer_id 回填候选：按主键顺序从 afterId 之后取一个分块中 customer_id 为空的行
+     */
+    @Select("SELECT id FROM bank_receipt WHERE id > #{afterId} AND customer_id IS NULL ORDER BY id LIMIT #{limit}")
+    List<Long> selectIdsWithoutCustomerKey(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 任取一行 customer_id 为空的行，没有时返回 null；开启按客户整数键核销前据此确认回填已完成
+     */
+    @Select("SELECT id FROM bank_receipt WHERE customer_id IS NULL LIMIT 1")
+    Long selectAnyIdWithoutCustomerKey();
+
+    /**
+     * 登记分块中出现的付款客户，已登记的忽略
+     */
+    @Insert({"<script>",
+            "INSERT IGNORE INTO customer (customer_name)",
+            "SELECT DISTINCT payer_name FROM bank_receipt",
+            "WHERE id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int registerCustomers(@Param("ids") List<Long> ids);
+
+    /**
+     * 为分块中仍未回填的行写入客户 ID，按主键逐行在 customer 的唯一索引上取 ID
+     */
+    @Update({"<script>",
+            "UPDATE bank_receipt",
+            "SET customer_id = (SELECT c.id FROM customer c WHERE c.customer_name = bank_receipt.payer_name)",
+            "WHERE customer_id IS NULL AND id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int fillCustomerKeys(@Param("ids") List<Long> ids);
 }
@@ -0,0 +1,30 @@
+package com.yujian.yupicturebackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.yujian.yupicturebackend.domain.Customer;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface CustomerMapper extends BaseMapper<Customer> {
+
+    @Select({"<script>",
+            "SELECT id, customer_name AS customerName FROM customer",
+            "WHERE customer_name IN <foreach collection='customerNames' item='name' open='(' separator=',' close=')'>#{name}</foreach>",
+            "</script>"})
+    List<Customer> selectByNames(@Param("customerNames") Collection<String> customerNames);
+
+    /**
+     * 批量登记客户，已存在的名称忽略；并发登记同一名称时由唯一索引去重
+     */
+    @Insert({"<script>",
+            "INSERT IGNORE INTO customer (customer_name) VALUES",
+            "<foreach collection='customerNames' item='name' separator=','>(#{name})</foreach>",
+            "</script>"})
+    int insertIgnoreNames(@Param("customerNames") Collection<String> customerNames);
+}
@@ -0,0 +1,9 @@
+package com.yujian.yupicturebackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.yujian.yupicturebackend.domain.LedgerArchiveCheckpoint;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface LedgerArchiveCheckpointMapper extends BaseMapper<LedgerArchiveCheckpoint> {
+}
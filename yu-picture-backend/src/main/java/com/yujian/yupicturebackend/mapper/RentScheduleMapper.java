@@ -2,8 +2,131 @@ package com.yujian.yupicturebackend.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.yujian.yupicturebackend.domain.RentSchedule;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.Date;
+import java.util.List;
 
 @Mapper
 public interface RentScheduleMapper extends BaseMapper<RentSchedule> {
+
+    /**
+     * 核销结果回写：一条多行 UPDATE ... CASE id，只更新有行发生变化的列，版本号加 1；
+     * 每行都核对读取时的版本号，被改动过的行不会被覆盖，返回的行数少于 rows 时说明有行版本不一致
+     *
+     * @param rows          本次更新的全部行（按 id 升序）
+     * @param interestRows  实收利息有变化的行
+     * @param principalRows 实收本金有变化的行
+     * @param statusRows    状态有变化的行
+     */
+    @Update({"<script>",
+            "UPDATE rent_schedule",
+            "<trim prefix='SET' suffixOverrides=','>",
+            "<if test='!interestRows.isEmpty()'>interest_received = CASE id",
+            "<foreach collection='interestRows' item='r'> WHEN #{r.id} THEN #{r.interestReceived}</foreach>",
+            " ELSE interest_received END,</if>",
+            "<if test='!principalRows.isEmpty()'>principal_received = CASE id",
+            "<foreach collection='principalRows' item='r'> WHEN #{r.id} THEN #{r.principalReceived}</foreach>",
+            " ELSE principal_received END,</if>",
+            "<if test='!statusRows.isEmpty()'>status = CASE id",
+            "<foreach collection='statusRows' item='r'> WHEN #{r.id} THEN #{r.status}</foreach>",
+            " ELSE status END,</if>",
+            "version = version + 1,",
+            "</trim>",
+            "WHERE id IN <foreach collection='rows' item='r' open='(' separator=',' close=')'>#{r.id}</foreach>",
+            "AND version = CASE id <foreach collection='rows' item='r'> WHEN #{r.id} THEN #{r.version}</foreach> END",
+            "</script>"})
+    int updateVerifiedColumns(@Param("rows") List<RentSchedule> rows,
+                              @Param("interestRows") List<RentSchedule> interestRows,
+                              @Param("principalRows") List<RentSchedule> principalRows,
+                              @Param("statusRows") List<RentSchedule> statusRows);
+
+    /**
+     * 锁定即将回写的行并读取其当前版本号，按 id 升序加锁，与回写语句的加锁顺序一致
+     */
+    @Select({"<script>",
+            "SELECT id, version FROM rent_schedule",
+            "WHERE id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "ORDER BY id FOR UPDATE",
+            "</script>"})
+    List<RentSchedule> selectVersionsForUpdate(@Param("ids") List<Long> ids);
+
+    /**
+     * 归档候选：结清时间（最后更新时间）早于 settledBefore 的已核销租金计划，按主键顺序从 afterId 之后取一个分块。
+     * 沿 idx_status_id_update_time 按主键顺序扫描，结清时间在索引内过滤，取满 limit 行即停止，不回表也不排序
+     */
+    @Select("SELECT id FROM rent_schedule WHERE status = 2 AND id > #{afterId} AND update_time < #{settledBefore} ORDER BY id LIMIT #{limit}")
+    List<Long> selectSettledIds(@Param("afterId") long afterId, @Param("settledBefore") Date settledBefore,
+                                @Param("limit") int limit);
+
+    /**
+     * 把仍为已核销状态的租金计划复制到历史表，与 {@link #deleteSettled} 在同一个事务中执行
+     */
+    @Insert({"<script>",
+            "INSERT INTO rent_schedule_history (id, lessee_name, customer_id, due_date, total_due_amount, principal_due, interest_due,",
+            " principal_received, interest_received, status, create_time, update_time, archived_time)",
+            "SELECT id, lessee_name, customer_id, due_date, total_due_amount, principal_due, interest_due,",
+            " principal_received, interest_received, status, create_time, update_time, NOW()",
+            "FROM rent_schedule",
+            "WHERE status = 2 AND id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int copySettledToHistory(@Param("ids") List<Long> ids);
+
+    @Delete({"<script>",
+            "DELETE FROM rent_schedule",
+            "WHERE status = 2 AND id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int deleteSettled(@Param("ids") List<Long> ids);
+
+    /**
+     * 查询客户的全部租金计划，包括已归档到历史表的，按应收日期排序。
+     * 单条语句在同一个一致性读视图中读取两张表，归档进行中的行不会重复或遗漏。
+     */
+    @Select({"SELECT id, lessee_name AS lesseeName, customer_id AS customerId, due_date AS dueDate, total_due_amount AS totalDueAmount,",
+            " principal_due AS principalDue, interest_due AS interestDue, principal_received AS principalReceived,",
+            " interest_received AS interestReceived, status, create_time AS createTime, update_time AS updateTime",
+            "FROM rent_schedule WHERE lessee_name = #{customerName}",
+            "UNION ALL",
+            "SELECT id, lessee_name, customer_id, due_date, total_due_amount, principal_due, interest_due, principal_received,",
+            " interest_received, status, create_time, update_time",
+            "FROM rent_schedule_history WHERE lessee_name = #{customerName}",
+            "ORDER BY dueDate, id"})
+    List<RentSchedule> selectByCustomerIncludingHistory(@Param("customerName") String customerName);
+
+    /**
+     * customer_id 回填候选：按主键顺序从 afterId 之后取一个分块中 customer_id 为空的行
+     */
+    @Select("SELECT id FROM rent_schedule WHERE id > #{afterId} AND customer_id IS NULL ORDER BY id LIMIT #{limit}")
+    List<Long> selectIdsWithoutCustomerKey(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 任取一行 customer_id 为空的行，没有时返回 null；开启按客户整数键核销前据此确认回填已完成
+     */
+    @Select("SELECT id FROM rent_schedule WHERE customer_id IS NULL LIMIT 1")
+    Long selectAnyIdWithoutCustomerKey();
+
+    /**
+     * 登记分块中出现的承租客户，已登记的忽略
+     */
+    @Insert({"<script>",
+            "INSERT IGNORE INTO customer (customer_name)",
+            "SELECT DISTINCT lessee_name FROM rent_schedule",
+            "WHERE id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int registerCustomers(@Param("ids") List<Long> ids);
+
+    /**
+     * 为分块中仍未回填的行写入客户 ID，按主键逐行在 customer 的唯一索引上取 ID
+     */
+    @Update({"<script>",
+            "UPDATE rent_schedule",
+            "SET customer_id = (SELECT c.id FROM customer c WHERE c.customer_name = rent_schedule.lessee_name)",
+            "WHERE customer_id IS NULL AND id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>",
+            "</script>"})
+    int fillCustomerKeys(@Param("ids") List<Long> ids);
 }
@@ -0,0 +1,170 @@
+package com.yujian.yupicturebackend.mapper;
+
+import com.yujian.yupicturebackend.service.verification.VerificationService;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 库内集合运算核销：一个批次的分摊全部由窗口函数在 MySQL 中完成，不把收款单与租金计划读到应用。
+ * <p>
+ * 分摊规则与 {@link VerificationService#processSingleCustomer} 相同：客户的可用收款合计为资金池，
+ * 按 (due_date, id) 顺序依次覆盖每期的未收利息、未收本金；实际用掉的金额再按 (payment_datetime, id) 顺序扣减收款单。
+ * 按顺序消耗等价于前缀和：第 k 期之前各期的待收合计为 demand_before，资金池超出 demand_before 的部分先付利息、再付本金，
+ * 收款单同理按之前各单的可用合计 available_before 扣减。
+ * <p>
+ * 租金计划的回写依赖收款单更新前的资金池，收款单的回写又依赖租金计划实际收到的金额，两者不能由一条语句互相推出，
+ * 因此先把每个客户的资金池与分摊合计写入暂存表 verification_set_allocation，再分别回写两张表，最后删除暂存行，
+ * 全部在同一个事务中完成。各表金额列均为 NOT NULL，SQL 不再做空值兜底。
+ * <p>
+ * 各语句的客户范围与 {@link com.yujian.yupicturebackend.streaming.LedgerStreamMapper#streamOpenSchedules} 相同：连续区间按 [firstCustomer, lastCustomer] 范围扫描，
+ * 否则按名称列表。应收日期截止日 asOfDate 不为空时只分摊应收日期不晚于该日的租金计划，资金池仍为客户全部可用收款。
+ * <p>
+ * 读取与回写在同一条语句中完成，没有读后写的窗口，无需核对版本号；回写时仍递增版本号，让读取过这些行的其他写入方发现改动。
+ */
+@Mapper
+public interface VerificationAllocationMapper {
+
+    String LESSEE_FILTER = "<choose>"
+            + "<when test='contiguous'>lessee_name BETWEEN #{firstCustomer} AND #{lastCustomer}</when>"
+            + "<otherwise>lessee_name IN <foreach collection='customerNames' item='name' open='(' separator=',' close=')'>#{name}</foreach></otherwise>"
+            + "</choose>";
+
+    String PAYER_FILTER = "<choose>"
+            + "<when test='contiguous'>payer_name BETWEEN #{firstCustomer} AND #{lastCustomer}</when>"
+            + "<otherwise>payer_name IN <foreach collection='customerNames' item='name' open='(' separator=',' close=')'>#{name}</foreach></otherwise>"
+            + "</choose>";
+
+    String CUSTOMER_FILTER = "<choose>"
+            + "<when test='contiguous'>customer_name BETWEEN #{firstCustomer} AND #{lastCustomer}</when>"
+            + "<otherwise>customer_name IN <foreach collection='customerNames' item='name' open='(' separator=',' close=')'>#{name}</foreach></otherwise>"
+            + "</choose>";
+
+    /**
+     * 每期租金计划的待收利息、待收本金，以及同一客户之前各期的待收合计
+     */
+    String SCHEDULE_DEMAND = "SELECT id, lessee_name, interest_due, principal_due, interest_received, principal_received,"
+            + " GREATEST(interest_due - interest_received, 0) AS remaining_interest,"
+            + " GREATEST(principal_due - principal_received, 0) AS remaining_principal,"
+            + " COALESCE(SUM(GREATEST(interest_due - interest_received, 0) + GREATEST(principal_due - principal_received, 0))"
+            + " OVER (PARTITION BY lessee_name ORDER BY due_date, id ROWS BETWEEN UNBOUNDED PRECEDING AND 1 PRECEDING), 0) AS demand_before"
+            + " FROM rent_schedule WHERE status IN (0, 1)"
+            + "<if test='asOfDate != null'> AND due_date &lt;= #{asOfDate}</if>"
+            + " AND " + LESSEE_FILTER;
+
+    /**
+     * 从收款单汇总的资金池（更新前）
+     */
+    String RECEIPT_POOL = "SELECT payer_name AS customer_name, SUM(GREATEST(payment_amount - used_amount, 0)) AS pool_amount"
+            + " FROM bank_receipt WHERE status IN (0, 1) AND " + PAYER_FILTER + " GROUP BY payer_name";
+
+    /**
+     * 暂存表中的资金池，回写租金计划时收款单尚未改动，与 {@link #RECEIPT_POOL} 结果相同
+     */
+    String STAGED_POOL = "SELECT customer_name, pool_amount FROM verification_set_allocation WHERE " + CUSTOMER_FILTER;
+
+    /**
+     * 每期实际分到的利息与本金，只返回分到金额的计划
+     */
+    String SCHEDULE_ALLOCATION_SELECT = "SELECT d.id, d.lessee_name, p.pool_amount, d.interest_due, d.principal_due,"
+            + " d.interest_received, d.principal_received,"
+            + " LEAST(d.remaining_interest, GREATEST(p.pool_amount - d.demand_before, 0)) AS pay_interest,"
+            + " LEAST(d.remaining_principal, GREATEST(p.pool_amount - d.demand_before - d.remaining_interest, 0)) AS pay_principal"
+            + " FROM (" + SCHEDULE_DEMAND + ") d JOIN (";
+
+    String SCHEDULE_ALLOCATION_WHERE = ") p ON p.customer_name = d.lessee_name"
+            + " WHERE p.pool_amount > d.demand_before AND d.remaining_interest + d.remaining_principal > 0";
+
+    /**
+     * 计算批次内每个客户的资金池、分到的利息与本金合计、核销笔数，写入暂存表；没有分到金额的客户不写入
+     *
+     * @return 写入的客户数
+     */
+    @Insert({"<script>",
+            "INSERT INTO verification_set_allocation (customer_name, pool_amount, applied_interest, applied_principal, verified_count)",
+            "SELECT a.lessee_name, MAX(a.pool_amount), SUM(a.pay_interest), SUM(a.pay_principal), COUNT(*)",
+            "FROM (" + SCHEDULE_ALLOCATION_SELECT + RECEIPT_POOL + SCHEDULE_ALLOCATION_WHERE + ") a",
+            "GROUP BY a.lessee_name",
+            "</script>"})
+    int stageAllocations(@Param("contiguous") boolean contiguous,
+                         @Param("firstCustomer") String firstCustomer,
+                         @Param("lastCustomer") String lastCustomer,
+                         @Param("customerNames") List<String> customerNames,
+                         @Param("asOfDate") Date asOfDate);
+
+    /**
+     * 按暂存的资金池回写租金计划的实收利息、实收本金与状态。
+     * 多表 UPDATE 不保证 SET 子句的求值顺序，新值与状态都在派生表中由更新前的值算出。
+     *
+     * @return 回写的租金计划行数
+     */
+    @Update({"<script>",
+            "UPDATE rent_schedule rs JOIN (",
+            " SELECT a.id, a.interest_received + a.pay_interest AS new_interest_received,",
+            "  a.principal_received + a.pay_principal AS new_principal_received,",
+            "  CASE WHEN a.interest_received + a.pay_interest &gt;= a.interest_due",
+            "   AND a.principal_received + a.pay_principal &gt;= a.principal_due THEN 2 ELSE 1 END AS new_status",
+            " FROM (" + SCHEDULE_ALLOCATION_SELECT + STAGED_POOL + SCHEDULE_ALLOCATION_WHERE + ") a",
+            ") v ON v.id = rs.id",
+            "SET rs.interest_received = v.new_interest_received, rs.principal_received = v.new_principal_received,",
+            " rs.status = v.new_status, rs.version = rs.version + 1",
+            "</script>"})
+    int applyScheduleAllocations(@Param("contiguous") boolean contiguous,
+                                 @Param("firstCustomer") String firstCustomer,
+                                 @Param("lastCustomer") String lastCustomer,
+                                 @Param("customerNames") List<String> customerNames,
+                                 @Param("asOfDate") Date asOfDate);
+
+    /**
+     * 把每个客户实际用掉的金额（暂存的利息与本金合计）按付款时间先后扣减到收款单，回写已使用金额与状态
+     *
+     * @return 回写的收款单行数
+     */
+    @Update({"<script>",
+            "UPDATE bank_receipt br JOIN (",
+            " SELECT r.id, r.payment_amount,",
+            "  r.used_amount + LEAST(r.available, s.applied_interest + s.applied_principal - r.available_before) AS new_used_amount",
+            " FROM (SELECT id, payer_name, payment_amount, used_amount,",
+            "   GREATEST(payment_amount - used_amount, 0) AS available,",
+            "   COALESCE(SUM(GREATEST(payment_amount - used_amount, 0))",
+            "    OVER (PARTITION BY payer_name ORDER BY payment_datetime, id ROWS BETWEEN UNBOUNDED PRECEDING AND 1 PRECEDING), 0) AS available_before",
+            "  FROM bank_receipt WHERE status IN (0, 1) AND " + PAYER_FILTER + ") r",
+            " JOIN verification_set_allocation s ON s.customer_name = r.payer_name",
+            " WHERE r.available &gt; 0 AND s.applied_interest + s.applied_principal &gt; r.available_before",
+            ") v ON v.id = br.id",
+            "SET br.used_amount = v.new_used_amount,",
+            " br.status = CASE WHEN v.new_used_amount &gt;= v.payment_amount THEN 2 ELSE 1 END,",
+            " br.version = br.version + 1",
+            "</script>"})
+    int applyReceiptAllocations(@Param("contiguous") boolean contiguous,
+                                @Param("firstCustomer") String firstCustomer,
+                                @Param("lastCustomer") String lastCustomer,
+                                @Param("customerNames") List<String> customerNames);
+
+    /**
+     * 汇总批次暂存的核销笔数、本金与利息
+     */
+    @Select({"<script>",
+            "SELECT COALESCE(SUM(verified_count), 0) AS verifiedCount, COALESCE(SUM(applied_principal), 0) AS totalPrincipal,",
+            " COALESCE(SUM(applied_interest), 0) AS totalInterest",
+            "FROM verification_set_allocation WHERE " + CUSTOMER_FILTER,
+            "</script>"})
+    VerificationService.VerificationResult sumStagedAllocations(@Param("contiguous") boolean contiguous,
+                                                               @Param("firstCustomer") String firstCustomer,
+                                                               @Param("lastCustomer") String lastCustomer,
+                                                               @Param("customerNames") List<String> customerNames);
+
+    @Delete({"<script>",
+            "DELETE FROM verification_set_allocation WHERE " + CUSTOMER_FILTER,
+            "</script>"})
+    int deleteStagedAllocations(@Param("contiguous") boolean contiguous,
+                                @Param("firstCustomer") String firstCustomer,
+                                @Param("lastCustomer") String lastCustomer,
+                                @Param("customerNames") List<String> customerNames);
+}
@@ -0,0 +1,20 @@
+package com.yujian.yupicturebackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.yujian.yupicturebackend.domain.VerificationBatch;
+import com.yujian.yupicturebackend.domain.VerificationRun;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+@Mapper
+public interface VerificationBatchMapper extends BaseMapper<VerificationBatch> {
+
+    /**
+     * 汇总一次运行中已完成批次的核销结果（包含中断前提交的批次）
+     */
+    @Select("SELECT COUNT(*) AS batchCount, IFNULL(SUM(verified_count), 0) AS verifiedCount,"
+            + " IFNULL(SUM(total_principal), 0) AS totalPrincipal, IFNULL(SUM(total_interest), 0) AS totalInterest"
+            + " FROM verification_batch WHERE run_id = #{runId} AND status = 1")
+    VerificationRun summarizeDoneBatches(@Param("runId") Long runId);
+}
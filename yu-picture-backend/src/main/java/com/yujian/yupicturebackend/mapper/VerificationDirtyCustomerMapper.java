@@ -0,0 +1,40 @@
+package com.yujian.yupicturebackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.yujian.yupicturebackend.domain.VerificationDirtyCustomer;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.Date;
+
+@Mapper
+public interface VerificationDirtyCustomerMapper extends BaseMapper<VerificationDirtyCustomer> {
+
+    /**
+     * 批量标记脏客户，已存在的客户只递增标记版本
+     */
+    @Insert({"<script>",
+            "INSERT INTO verification_dirty_customer (customer_name, mark_version) VALUES",
+            "<foreach collection='customerNames' item='name' separator=','>(#{name}, 1)</foreach>",
+            "ON DUPLICATE KEY UPDATE mark_version = mark_version + 1",
+            "</script>"})
+    int markDirty(@Param("customerNames") Collection<String> customerNames);
+
+    /**
+     * 清理已核销的客户，只删除版本与读取时一致的标记
+     */
+    @Delete({"<script>",
+            "DELETE FROM verification_dirty_customer WHERE (customer_name, mark_version) IN",
+            "<foreach collection='customers' item='c' open='(' separator=',' close=')'>(#{c.customerName}, #{c.markVersion})</foreach>",
+            "</script>"})
+    int deleteProcessed(@Param("customers") Collection<VerificationDirtyCustomer> customers);
+
+    /**
+     * 全量核销结束后清理在其开始之前产生的标记
+     */
+    @Delete("DELETE FROM verification_dirty_customer WHERE update_time < #{before}")
+    int deleteMarkedBefore(@Param("before") Date before);
+}
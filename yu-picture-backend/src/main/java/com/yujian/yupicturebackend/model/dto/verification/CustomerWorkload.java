@@ -0,0 +1,48 @@
+package com.yujian.yupicturebackend.model.dto.verification;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * 客户待核销数据量估算，用于按权重划分核销批次；优先通道的客户另带逾期与收款余额，用于判定调度优先级
+ */
+@Data
+public class CustomerWorkload implements Serializable {
+
+    /**
+     * 客户名称
+     */
+    private String customerName;
+
+    /**
+     * 待核销收款单数
+     */
+    private Long openReceipts;
+
+    /**
+     * 待核销租金计划数
+     */
+    private Long openSchedules;
+
+    /**
+     * 待核销收款的未使用余额，只在查询优先核销客户时有值
+     */
+    private BigDecimal openReceiptAmount;
+
+    /**
+     * 最早一期未结清租金计划的应收日期，只在查询优先核销客户时有值
+     */
+    private Date oldestDueDate;
+
+    /**
+     * 批次权重：核销需要读取与回写的行数
+     */
+    public long weight() {
+        return (openReceipts == null ? 0 : openReceipts) + (openSchedules == null ? 0 : openSchedules);
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,87 @@
+package com.yujian.yupicturebackend.model.dto.verification;
+
+import com.yujian.yupicturebackend.domain.VerificationDirtyCustomer;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 分布式核销投递到工作队列的批次描述，工作节点据此还原批次并核销
+ */
+@Data
+public class VerificationBatchMessage implements Serializable {
+
+    /**
+     * 核销运行 id
+     */
+    private Long runId;
+
+    /**
+     * 运行的分段租约令牌，各工作节点处理同一运行的批次时共享分段；协调节点续跑接管后令牌改变
+     */
+    private String leaseToken;
+
+    /**
+     * 批次检查点 id，工作节点据此判断批次是否已被处理过
+     */
+    private Long checkpointId;
+
+    /**
+     * 登记检查点时运行记录的 owner_token，工作节点提交批次时据此确认运行未被接管；旧版本协调节点投递的消息没有令牌
+     */
+    private String ownerToken;
+
+    /**
+     * 批次中的客户，按数据库索引顺序排列
+     */
+    private List<String> customerNames;
+
+    /**
+     * 是否为大客户专属批次
+     */
+    private Boolean dedicated;
+
+    /**
+     * 增量核销的脏客户标记，非空时为稀疏批次，提交时据此清理标记
+     */
+    private List<VerificationDirtyCustomer> dirtyMarks;
+
+    /**
+     * 是否为连续区间批次；优先通道的批次不是连续区间，按名称列表加载
+     */
+    private Boolean contiguous;
+
+    /**
+     * 调度优先级数值，同时作为消息优先级
+     */
+    private Integer priority;
+
+    /**
+     * 回写时单条多行 UPDATE 包含的行数，由协调节点按实测耗时调整
+     */
+    private Integer flushChunkSize;
+
+    /**
+     * 应收日期截止日（包含），为空时核销全部待核销租金计划
+     */
+    private Date asOfDate;
+
+    /**
+     * 第几次处理该批次，从 1 开始，每经过一次重试队列加 1
+     */
+    private Integer attempt;
+
+    /**
+     * 上一次处理失败的原因
+     */
+    private String lastError;
+
+    /**
+     * 上一次处理失败的工作节点
+     */
+    private String lastWorker;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,81 @@
+package com.yujian.yupicturebackend.model.dto.verification;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * 工作节点核销一个批次后发回协调节点的结果
+ */
+@Data
+public class VerificationBatchReply implements Serializable {
+
+    /**
+     * 核销运行 id
+     */
+    private Long runId;
+
+    /**
+     * 批次检查点 id
+     */
+    private Long checkpointId;
+
+    /**
+     * 处理该批次的工作节点
+     */
+    private String worker;
+
+    /**
+     * 是否由本次投递完成核销；重复投递时批次已被处理过，为 false，结果取自检查点
+     */
+    private Boolean processed;
+
+    /**
+     * 核销失败的原因，成功时为空
+     */
+    private String errorMessage;
+
+    /**
+     * 本次是该批次的第几次处理，从 1 开始
+     */
+    private Integer attempt;
+
+    /**
+     * 核销失败后已转入重试队列，延迟后重新投递，协调节点继续等待该批次
+     */
+    private Boolean retrying;
+
+    /**
+     * 重试次数耗尽，批次已转入停放队列等待人工处理
+     */
+    private Boolean parked;
+
+    private Integer verifiedCount;
+
+    private BigDecimal totalPrincipal;
+
+    private BigDecimal totalInterest;
+
+    /**
+     * 读取的收款单与租金计划行数
+     */
+    private Integer readRows;
+
+    /**
+     * 回写的行数
+     */
+    private Integer writtenRows;
+
+    /**
+     * 工作节点上核销该批次的耗时（纳秒）
+     */
+    private Long processNanos;
+
+    /**
+     * 其中回写与检查点更新的耗时（纳秒）
+     */
+    private Long flushNanos;
+
+    private static final long serialVersionUID = 1L;
+}
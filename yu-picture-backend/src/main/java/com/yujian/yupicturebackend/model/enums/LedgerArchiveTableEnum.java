@@ -0,0 +1,44 @@
+package com.yujian.yupicturebackend.model.enums;
+
+import cn.hutool.core.util.ObjUtil;
+import lombok.Getter;
+
+/**
+ * 参与已结清数据归档的台账表
+ */
+@Getter
+public enum LedgerArchiveTableEnum {
+
+    BANK_RECEIPT("银行收款", "bank_receipt"),
+    RENT_SCHEDULE("租金计划", "rent_schedule");
+
+    private final String text;
+
+    /**
+     * 热表名，同时作为归档检查点的主键
+     */
+    private final String value;
+
+    LedgerArchiveTableEnum(String text, String value) {
+        this.text = text;
+        this.value = value;
+    }
+
+    /**
+     * 根据 value 获取枚举
+     *
+     * @param value 枚举值的value
+     * @return 枚举值
+     */
+    public static LedgerArchiveTableEnum getEnumByValue(String value) {
+        if (ObjUtil.isEmpty(value)) {
+            return null;
+        }
+        for (LedgerArchiveTableEnum anEnum : LedgerArchiveTableEnum.values()) {
+            if (anEnum.value.equals(value)) {
+                return anEnum;
+            }
+        }
+        return null;
+    }
+}
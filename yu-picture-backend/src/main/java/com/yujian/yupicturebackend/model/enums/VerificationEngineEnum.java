@@ -0,0 +1,44 @@
+package com.yujian.yupicturebackend.model.enums;
+
+import cn.hutool.core.util.ObjUtil;
+import lombok.Getter;
+
+/**
+ * 核销执行引擎
+ */
+@Getter
+public enum VerificationEngineEnum {
+
+    PIPELINE("三段式流水线", "pipeline"),
+    MERGE_JOIN("流式归并", "merge-join"),
+    DISTRIBUTED("分布式工作队列", "distributed"),
+    SET_BASED("库内集合运算", "set-based"),
+    SNAPSHOT("列式快照", "snapshot");
+
+    private final String text;
+
+    private final String value;
+
+    VerificationEngineEnum(String text, String value) {
+        this.text = text;
+        this.value = value;
+    }
+
+    /**
+     * 根据 value 获取枚举
+     *
+     * @param value 枚举值的value
+     * @return 枚举值
+     */
+    public static VerificationEngineEnum getEnumByValue(String value) {
+        if (ObjUtil.isEmpty(value)) {
+            return null;
+        }
+        for (VerificationEngineEnum anEnum : VerificationEngineEnum.values()) {
+            if (anEnum.value.equals(value)) {
+                return anEnum;
+            }
+        }
+        return null;
+    }
+}
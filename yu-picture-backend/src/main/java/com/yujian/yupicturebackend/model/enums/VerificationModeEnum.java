@@ -0,0 +1,41 @@
+package com.yujian.yupicturebackend.model.enums;
+
+import cn.hutool.core.util.ObjUtil;
+import lombok.Getter;
+
+/**
+ * 核销运行模式
+ */
+@Getter
+public enum VerificationModeEnum {
+
+    FULL("全量核销", "full"),
+    INCREMENTAL("增量核销", "incremental");
+
+    private final String text;
+
+    private final String value;
+
+    VerificationModeEnum(String text, String value) {
+        this.text = text;
+        this.value = value;
+    }
+
+    /**
+     * 根据 value 获取枚举
+     *
+     * @param value 枚举值的value
+     * @return 枚举值
+     */
+    public static VerificationModeEnum getEnumByValue(String value) {
+        if (ObjUtil.isEmpty(value)) {
+            return null;
+        }
+        for (VerificationModeEnum anEnum : VerificationModeEnum.values()) {
+            if (anEnum.value.equals(value)) {
+                return anEnum;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package com.yujian.yupicturebackend.model.enums;
+
+import cn.hutool.core.util.ObjUtil;
+import lombok.Getter;
+
+/**
+ * 核销批次的调度优先级，级别越高越先调度
+ */
+@Getter
+public enum VerificationPriorityEnum {
+
+    CRITICAL("紧急", "critical", 2),
+    HIGH("高", "high", 1),
+    NORMAL("普通", "normal", 0);
+
+    private final String text;
+
+    private final String value;
+
+    /**
+     * 优先级数值，同时用作 RabbitMQ 消息优先级
+     */
+    private final int level;
+
+    VerificationPriorityEnum(String text, String value, int level) {
+        this.text = text;
+        this.value = value;
+        this.level = level;
+    }
+
+    /**
+     * 根据 value 获取枚举
+     *
+     * @param value 枚举值的value
+     * @return 枚举值
+     */
+    public static VerificationPriorityEnum getEnumByValue(String value) {
+        if (ObjUtil.isEmpty(value)) {
+            return null;
+        }
+        for (VerificationPriorityEnum anEnum : VerificationPriorityEnum.values()) {
+            if (anEnum.value.equals(value)) {
+                return anEnum;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 根据优先级数值获取枚举，未知的数值视为普通
+     */
+    public static VerificationPriorityEnum getEnumByLevel(Integer level) {
+        if (level != null) {
+            for (VerificationPriorityEnum anEnum : VerificationPriorityEnum.values()) {
+                if (anEnum.level == level) {
+                    return anEnum;
+                }
+            }
+        }
+        return NORMAL;
+    }
+}
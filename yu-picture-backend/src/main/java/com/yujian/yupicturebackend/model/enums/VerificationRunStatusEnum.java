@@ -0,0 +1,44 @@
+package com.yujian.yupicturebackend.model.enums;
+
+import cn.hutool.core.util.ObjUtil;
+import lombok.Getter;
+
+/**
+ * 核销运行状态
+ */
+@Getter
+public enum VerificationRunStatusEnum {
+
+    RUNNING("运行中", "running"),
+    COMPLETED("已完成", "completed"),
+    FAILED("失败", "failed"),
+    CANCELLED("已取消", "cancelled"),
+    ABANDONED("已放弃", "abandoned");
+
+    private final String text;
+
+    private final String value;
+
+    VerificationRunStatusEnum(String text, String value) {
+        this.text = text;
+        this.value = value;
+    }
+
+    /**
+     * 根据 value 获取枚举
+     *
+     * @param value 枚举值的value
+     * @return 枚举值
+     */
+    public static VerificationRunStatusEnum getEnumByValue(String value) {
+        if (ObjUtil.isEmpty(value)) {
+            return null;
+        }
+        for (VerificationRunStatusEnum anEnum : VerificationRunStatusEnum.values()) {
+            if (anEnum.value.equals(value)) {
+                return anEnum;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,57 @@
+package com.yujian.yupicturebackend.model.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * 银行收款单（脱敏视图），不含乐观锁版本号等内部字段
+ */
+@Data
+public class BankReceiptVO implements Serializable {
+
+    private Long id;
+
+    /**
+     * 付款账户名称
+     */
+    private String payerName;
+
+    /**
+     * 付款银行名称
+     */
+    private String payerBank;
+
+    /**
+     * 付款卡号
+     */
+    private String payerAccount;
+
+    /**
+     * 付款金额
+     */
+    private BigDecimal paymentAmount;
+
+    /**
+     * 付款日期时间
+     */
+    private Date paymentDatetime;
+
+    /**
+     * 已使用金额
+     */
+    private BigDecimal usedAmount;
+
+    /**
+     * 使用状态（0-未使用, 1-部分使用, 2-已使用）
+     */
+    private Integer status;
+
+    private Date createTime;
+
+    private Date updateTime;
+
+    private static final long serialVersionUID = 1L;
+}
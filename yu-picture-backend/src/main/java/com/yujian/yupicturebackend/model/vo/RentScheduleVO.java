@@ -0,0 +1,62 @@
+package com.yujian.yupicturebackend.model.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * 租金计划（脱敏视图），不含乐观锁版本号等内部字段
+ */
+@Data
+public class RentScheduleVO implements Serializable {
+
+    private Long id;
+
+    /**
+     * 承租人名称
+     */
+    private String lesseeName;
+
+    /**
+     * 应收日期
+     */
+    private Date dueDate;
+
+    /**
+     * 应收总金额
+     */
+    private BigDecimal totalDueAmount;
+
+    /**
+     * 应收本金
+     */
+    private BigDecimal principalDue;
+
+    /**
+     * 应收利息
+     */
+    private BigDecimal interestDue;
+
+    /**
+     * 实收本金
+     */
+    private BigDecimal principalReceived;
+
+    /**
+     * 实收利息
+     */
+    private BigDecimal interestReceived;
+
+    /**
+     * 核销状态（0-未核销, 1-部分核销, 2-已核销）
+     */
+    private Integer status;
+
+    private Date createTime;
+
+    private Date updateTime;
+
+    private static final long serialVersionUID = 1L;
+}
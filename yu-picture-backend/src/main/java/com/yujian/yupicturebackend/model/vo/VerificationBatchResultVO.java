@@ -0,0 +1,37 @@
+package com.yujian.yupicturebackend.model.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * 单个核销批次的结果，通过任务事件流逐批推送
+ */
+@Data
+public class VerificationBatchResultVO implements Serializable {
+
+    /**
+     * 批次检查点 id
+     */
+    private Long batchId;
+
+    private String firstCustomer;
+
+    private String lastCustomer;
+
+    private Integer customerCount;
+
+    /**
+     * 调度优先级：critical（紧急）、high（高）或 normal（普通）
+     */
+    private String priority;
+
+    private Integer verifiedCount;
+
+    private BigDecimal totalPrincipal;
+
+    private BigDecimal totalInterest;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,33 @@
+package com.yujian.yupicturebackend.model.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * 单客户核销的结果
+ */
+@Data
+public class VerificationCustomerResultVO implements Serializable {
+
+    private String customerName;
+
+    /**
+     * 是否被推迟：客户正被其他核销占用，等待超时后已标记为脏客户，由下一次增量核销处理
+     */
+    private Boolean deferred;
+
+    private Integer verifiedCount;
+
+    private BigDecimal totalPrincipal;
+
+    private BigDecimal totalInterest;
+
+    /**
+     * 耗时（毫秒），包括等待分段锁的时间
+     */
+    private Long elapsedMillis;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,94 @@
+package com.yujian.yupicturebackend.model.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * 核销任务进度
+ */
+@Data
+public class VerificationJobVO implements Serializable {
+
+    /**
+     * 任务 id（即核销运行记录 id）
+     */
+    private Long jobId;
+
+    /**
+     * 核销模式：full/incremental
+     */
+    private String mode;
+
+    /**
+     * 运行状态：running/completed/failed/cancelled/abandoned
+     */
+    private String status;
+
+    /**
+     * 是否为中断后的续跑
+     */
+    private Boolean resumed;
+
+    /**
+     * 应收日期截止日，只核销应收日期不晚于该日的租金计划；为空时不限
+     */
+    private Date asOfDate;
+
+    /**
+     * 是否已请求取消
+     */
+    private Boolean cancelRequested;
+
+    /**
+     * 客户发现是否已结束，结束后才能估算剩余时间
+     */
+    private Boolean discoveryComplete;
+
+    /**
+     * 已发现的客户数
+     */
+    private Long discoveredCustomers;
+
+    /**
+     * 已完成核销的客户数
+     */
+    private Long completedCustomers;
+
+    private Long discoveredBatches;
+
+    private Long completedBatches;
+
+    /**
+     * 已回写的收款单与租金计划行数
+     */
+    private Long writtenRows;
+
+    /**
+     * 回写速率（行/秒）
+     */
+    private Double rowsPerSecond;
+
+    /**
+     * 预计剩余秒数，发现未结束时为空
+     */
+    private Long etaSeconds;
+
+    private Integer verifiedCount;
+
+    private BigDecimal totalPrincipal;
+
+    private BigDecimal totalInterest;
+
+    private Double elapsedSeconds;
+
+    private String errorMessage;
+
+    private Date startTime;
+
+    private Date endTime;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,56 @@
+package com.yujian.yupicturebackend.model.vo;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 重试耗尽、停放在死信队列中的分布式核销批次
+ */
+@Data
+public class VerificationParkedBatchVO implements Serializable {
+
+    /**
+     * 批次检查点 id
+     */
+    private Long checkpointId;
+
+    /**
+     * 核销运行 id
+     */
+    private Long runId;
+
+    private String firstCustomer;
+
+    private String lastCustomer;
+
+    private Integer customerCount;
+
+    /**
+     * 是否为大客户专属批次
+     */
+    private Boolean dedicated;
+
+    /**
+     * 已处理的次数
+     */
+    private Integer attempts;
+
+    /**
+     * 最后一次处理失败的原因
+     */
+    private String lastError;
+
+    /**
+     * 最后一次处理失败的工作节点
+     */
+    private String lastWorker;
+
+    /**
+     * 转入停放队列的时间
+     */
+    private Date parkedTime;
+
+    private static final long serialVersionUID = 1L;
+}
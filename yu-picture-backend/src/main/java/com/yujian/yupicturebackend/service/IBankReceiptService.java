@@ -2,6 +2,18 @@ package com.yujian.yupicturebackend.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.model.vo.BankReceiptVO;
+
+import java.util.List;
 
 public interface IBankReceiptService extends IService<BankReceipt> {
+
+    /**
+     * 查询客户的全部收款单，包括已归档到历史表的
+     */
+    List<BankReceipt> listCustomerReceipts(String customerName);
+
+    BankReceiptVO getBankReceiptVO(BankReceipt bankReceipt);
+
+    List<BankReceiptVO> getBankReceiptVOList(List<BankReceipt> bankReceiptList);
 }
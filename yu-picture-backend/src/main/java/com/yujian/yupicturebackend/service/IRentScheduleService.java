@@ -2,6 +2,18 @@ package com.yujian.yupicturebackend.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.yujian.yupicturebackend.domain.RentSchedule;
+import com.yujian.yupicturebackend.model.vo.RentScheduleVO;
+
+import java.util.List;
 
 public interface IRentScheduleService extends IService<RentSchedule> {
+
+    /**
+     * 查询客户的全部租金计划，包括已归档到历史表的
+     */
+    List<RentSchedule> listCustomerSchedules(String customerName);
+
+    RentScheduleVO getRentScheduleVO(RentSchedule rentSchedule);
+
+    List<RentScheduleVO> getRentScheduleVOList(List<RentSchedule> rentScheduleList);
 }
@@ -0,0 +1,147 @@
+package com.yujian.yupicturebackend.service.archive;
+
+import com.yujian.yupicturebackend.model.enums.LedgerArchiveTableEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 冷热数据分离的后台归档任务：定期把结清超过保留天数的银行收款与租金计划移入历史表。
+ * <p>
+ * 每轮按表依次归档，表内按 id 顺序逐块推进，每块一个短事务（见 {@link LedgerArchiveService}），
+ * 块之间暂停 pause-millis 让出数据库；每轮最多处理 max-chunks-per-round 块，未完成的部分下一轮从检查点继续。
+ * 默认不启用定时归档，可通过接口手动触发一轮。
+ */
+@Component
+public class LedgerArchiveJob implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerArchiveJob.class);
+
+    private final LedgerArchiveService archiveService;
+    private final boolean enabled;
+    private final long intervalMinutes;
+    private final int retentionDays;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final int maxChunksPerRound;
+    private final AtomicBoolean roundRunning = new AtomicBoolean();
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean running;
+
+    public LedgerArchiveJob(LedgerArchiveService archiveService,
+                            @Value("${ledger.archive.enabled:false}") boolean enabled,
+                            @Value("${ledger.archive.interval-minutes:60}") long intervalMinutes,
+                            @Value("${ledger.archive.retention-days:90}") int retentionDays,
+                            @Value("${ledger.archive.chunk-size:500}") int chunkSize,
+                            @Value("${ledger.archive.pause-millis:200}") long pauseMillis,
+                            @Value("${ledger.archive.max-chunks-per-round:2000}") int maxChunksPerRound) {
+        this.archiveService = archiveService;
+        this.enabled = enabled;
+        this.intervalMinutes = Math.max(intervalMinutes, 1);
+        this.retentionDays = Math.max(retentionDays, 0);
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.pauseMillis = Math.max(pauseMillis, 0);
+        this.maxChunksPerRound = Math.max(maxChunksPerRound, 1);
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ledger-archive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::runRound, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+            log.info("已结清数据归档已启用，每 {} 分钟一轮，保留 {} 天，每块 {} 行", intervalMinutes, retentionDays, chunkSize);
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 手动触发一轮归档
+     *
+     * @return 已有一轮在进行时返回 false
+     */
+    public boolean trigger() {
+        if (roundRunning.get() || scheduler == null) {
+            return false;
+        }
+        scheduler.execute(this::runRound);
+        return true;
+    }
+
+    private void runRound() {
+        if (!roundRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Date settledBefore = Date.from(LocalDate.now().minusDays(retentionDays)
+                    .atStartOfDay(ZoneId.systemDefault()).toInstant());
+            int chunkBudget = maxChunksPerRound;
+            for (LedgerArchiveTableEnum table : LedgerArchiveTableEnum.values()) {
+                if (chunkBudget <= 0 || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                chunkBudget -= archiveTable(table, settledBefore, chunkBudget);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // 失败的分块已回滚，下一轮从检查点继续
+            log.error("已结清数据归档失败", e);
+        } finally {
+            roundRunning.set(false);
+        }
+    }
+
+    /**
+     * 归档一张表，返回处理的块数
+     */
+    private int archiveTable(LedgerArchiveTableEnum table, Date settledBefore, int chunkBudget) throws InterruptedException {
+        archiveService.ensureCheckpoint(table);
+        long start = System.currentTimeMillis();
+        int chunks = 0;
+        long scanned = 0;
+        while (chunks < chunkBudget) {
+            int rows = archiveService.archiveChunk(table, settledBefore, chunkSize);
+            if (rows == 0) {
+                archiveService.finishPass(table);
+                break;
+            }
+            chunks++;
+            scanned += rows;
+            if (pauseMillis > 0) {
+                Thread.sleep(pauseMillis);
+            }
+        }
+        log.info("{}归档完成 {} 块，共 {} 行，耗时 {} ms{}", table.getText(), chunks, scanned,
+                System.currentTimeMillis() - start, chunks >= chunkBudget ? "，本轮额度用尽，下一轮继续" : "");
+        return chunks;
+    }
+}
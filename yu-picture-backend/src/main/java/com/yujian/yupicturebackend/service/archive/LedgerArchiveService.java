@@ -0,0 +1,119 @@
+package com.yujian.yupicturebackend.service.archive;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yujian.yupicturebackend.domain.LedgerArchiveCheckpoint;
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.exception.ErrorCode;
+import com.yujian.yupicturebackend.mapper.BankReceiptMapper;
+import com.yujian.yupicturebackend.mapper.LedgerArchiveCheckpointMapper;
+import com.yujian.yupicturebackend.mapper.RentScheduleMapper;
+import com.yujian.yupicturebackend.model.enums.LedgerArchiveTableEnum;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 已结清数据归档的单个分块：把一个分块的已结清行从热表移入历史表，并推进归档检查点。
+ * <p>
+ * 复制、删除与检查点更新在同一个短事务中完成，分块之间不持有任何锁；进程在任意时刻中断，
+ * 已提交的分块不会重复归档，未提交的分块整体回滚，下次从检查点继续。
+ * 检查点行在事务开始时加锁，多个节点同时开启归档时同一张表的分块串行执行。
+ */
+@Service
+public class LedgerArchiveService {
+
+    private final BankReceiptMapper bankReceiptMapper;
+    private final RentScheduleMapper rentScheduleMapper;
+    private final LedgerArchiveCheckpointMapper checkpointMapper;
+
+    public LedgerArchiveService(BankReceiptMapper bankReceiptMapper,
+                                RentScheduleMapper rentScheduleMapper,
+                                LedgerArchiveCheckpointMapper checkpointMapper) {
+        this.bankReceiptMapper = bankReceiptMapper;
+        this.rentScheduleMapper = rentScheduleMapper;
+        this.checkpointMapper = checkpointMapper;
+    }
+
+    /**
+     * 确保表的归档检查点存在，首次归档时从表头开始
+     */
+    public void ensureCheckpoint(LedgerArchiveTableEnum table) {
+        if (checkpointMapper.selectById(table.getValue()) != null) {
+            return;
+        }
+        LedgerArchiveCheckpoint checkpoint = new LedgerArchiveCheckpoint();
+        checkpoint.setTableName(table.getValue());
+        checkpoint.setLastId(0L);
+        checkpoint.setArchivedRows(0L);
+        checkpoint.setPassCount(0);
+        try {
+            checkpointMapper.insert(checkpoint);
+        } catch (DuplicateKeyException e) {
+            // 其他节点已经创建
+        }
+    }
+
+    /**
+     * 归档一个分块
+     *
+     * @param settledBefore 只归档最后更新时间早于该时间的已结清行
+     * @return 本分块扫描到的候选行数，0 表示本轮已扫描到表尾
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public int archiveChunk(LedgerArchiveTableEnum table, Date settledBefore, int chunkSize) {
+        LedgerArchiveCheckpoint checkpoint = lockCheckpoint(table);
+        List<Long> ids = table == LedgerArchiveTableEnum.BANK_RECEIPT
+                ? bankReceiptMapper.selectSettledIds(checkpoint.getLastId(), settledBefore, chunkSize)
+                : rentScheduleMapper.selectSettledIds(checkpoint.getLastId(), settledBefore, chunkSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        int copied;
+        int deleted;
+        if (table == LedgerArchiveTableEnum.BANK_RECEIPT) {
+            copied = bankReceiptMapper.copySettledToHistory(ids);
+            deleted = bankReceiptMapper.deleteSettled(ids);
+        } else {
+            copied = rentScheduleMapper.copySettledToHistory(ids);
+            deleted = rentScheduleMapper.deleteSettled(ids);
+        }
+        // 复制之后有行的状态被改回未结清时两者不一致，整个分块回滚，下一次重新选取
+        if (copied != deleted) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, table.getText() + "归档分块复制 " + copied
+                    + " 行、删除 " + deleted + " 行，数量不一致，已回滚");
+        }
+        checkpoint.setLastId(ids.get(ids.size() - 1));
+        checkpoint.setArchivedRows(checkpoint.getArchivedRows() + deleted);
+        checkpointMapper.updateById(checkpoint);
+        return ids.size();
+    }
+
+    /**
+     * 本轮扫描到表尾：检查点归零，下一轮从表头重新扫描此后结清的行
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void finishPass(LedgerArchiveTableEnum table) {
+        LedgerArchiveCheckpoint checkpoint = lockCheckpoint(table);
+        checkpoint.setLastId(0L);
+        checkpoint.setPassCount(checkpoint.getPassCount() + 1);
+        checkpoint.setLastPassTime(new Date());
+        checkpointMapper.updateById(checkpoint);
+    }
+
+    public List<LedgerArchiveCheckpoint> listCheckpoints() {
+        return checkpointMapper.selectList(new QueryWrapper<LedgerArchiveCheckpoint>().orderByAsc("table_name"));
+    }
+
+    private LedgerArchiveCheckpoint lockCheckpoint(LedgerArchiveTableEnum table) {
+        QueryWrapper<LedgerArchiveCheckpoint> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("table_name", table.getValue()).last("FOR UPDATE");
+        LedgerArchiveCheckpoint checkpoint = checkpointMapper.selectOne(queryWrapper);
+        if (checkpoint == null) {
+            throw new BusinessException(ErrorCode.NOT_FOUND_ERROR, table.getText() + "归档检查点不存在");
+        }
+        return checkpoint;
+    }
+}
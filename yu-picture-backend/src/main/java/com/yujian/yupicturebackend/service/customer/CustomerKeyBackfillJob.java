@@ -0,0 +1,123 @@
+package com.yujian.yupicturebackend.service.customer;
+
+import com.yujian.yupicturebackend.model.enums.LedgerArchiveTableEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * customer_id 的在线回填：为存量收款单与租金计划登记客户并写入客户 ID。
+ * <p>
+ * 按表依次回填，表内按 id 顺序逐块推进，每块一个短事务（见 {@link CustomerKeyService#backfillChunk}），
+ * 块之间暂停 pause-millis 让出数据库，不锁表、不影响同时进行的写入与核销。
+ * 回填期间新写入的行在保存时已分配客户 ID；回填只处理 customer_id 为空的行，中断后重新触发会从表头跳过已回填的行继续。
+ * 两张表都扫描到表尾后再开启 verification.customer-key-enabled。
+ */
+@Component
+public class CustomerKeyBackfillJob implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerKeyBackfillJob.class);
+
+    private final CustomerKeyService customerKeyService;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final AtomicBoolean backfillRunning = new AtomicBoolean();
+
+    private ExecutorService executor;
+    private volatile boolean running;
+
+    public CustomerKeyBackfillJob(CustomerKeyService customerKeyService,
+                                  @Value("${ledger.customer-key.backfill-chunk-size:1000}") int chunkSize,
+                                  @Value("${ledger.customer-key.backfill-pause-millis:100}") long pauseMillis) {
+        this.customerKeyService = customerKeyService;
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.pauseMillis = Math.max(pauseMillis, 0);
+    }
+
+    @Override
+    public void start() {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "customer-key-backfill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 触发一次回填
+     *
+     * @return 回填已在进行时返回 false
+     */
+    public boolean trigger() {
+        if (backfillRunning.get() || executor == null) {
+            return false;
+        }
+        executor.execute(this::runBackfill);
+        return true;
+    }
+
+    private void runBackfill() {
+        if (!backfillRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (LedgerArchiveTableEnum table : LedgerArchiveTableEnum.values()) {
+                backfillTable(table);
+            }
+            log.info("customer_id 回填完成，可开启 verification.customer-key-enabled");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // 失败的分块已回滚，重新触发即可继续
+            log.error("customer_id 回填失败", e);
+        } finally {
+            backfillRunning.set(false);
+        }
+    }
+
+    private void backfillTable(LedgerArchiveTableEnum table) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        long lastId = 0;
+        int chunks = 0;
+        long rows = 0;
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            List<Long> ids = customerKeyService.backfillChunk(table, lastId, chunkSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            lastId = ids.get(ids.size() - 1);
+            chunks++;
+            rows += ids.size();
+            if (pauseMillis > 0) {
+                Thread.sleep(pauseMillis);
+            }
+        }
+        log.info("{} customer_id 回填 {} 块，共 {} 行，耗时 {} ms", table.getText(), chunks, rows,
+                System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,158 @@
+package com.yujian.yupicturebackend.service.customer;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.Customer;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.exception.ErrorCode;
+import com.yujian.yupicturebackend.exception.ThrowUtils;
+import com.yujian.yupicturebackend.mapper.BankReceiptMapper;
+import com.yujian.yupicturebackend.mapper.CustomerMapper;
+import com.yujian.yupicturebackend.mapper.RentScheduleMapper;
+import com.yujian.yupicturebackend.model.enums.LedgerArchiveTableEnum;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 客户整数键：为客户名称分配 customer 表中的 BIGINT 主键，写入收款单与租金计划的 customer_id 列。
+ * <p>
+ * 新写入的行在保存前分配（见 {@link #assignReceiptKeys}、{@link #assignScheduleKeys}），
+ * 存量行由 {@link CustomerKeyBackfillJob} 按主键分块回填。回填完成后开启 verification.customer-key-enabled，
+ * 名称列表批次的查询、EXISTS 关联与内存分组改用整数键；每次核销开始前由 {@link #ensureFullyKeyed} 确认没有未回填的行。
+ */
+@Service
+public class CustomerKeyService {
+
+    private final CustomerMapper customerMapper;
+    private final BankReceiptMapper bankReceiptMapper;
+    private final RentScheduleMapper rentScheduleMapper;
+
+    public CustomerKeyService(CustomerMapper customerMapper,
+                              BankReceiptMapper bankReceiptMapper,
+                              RentScheduleMapper rentScheduleMapper) {
+        this.customerMapper = customerMapper;
+        this.bankReceiptMapper = bankReceiptMapper;
+        this.rentScheduleMapper = rentScheduleMapper;
+    }
+
+    /**
+     * 查询客户名称对应的客户 ID，尚未登记的名称先登记
+     */
+    public Map<String, Long> ensureIds(Collection<String> customerNames) {
+        Set<String> names = new LinkedHashSet<>(customerNames);
+        names.remove(null);
+        Map<String, Long> ids = selectIds(names);
+        if (ids.size() < names.size()) {
+            List<String> missing = new ArrayList<>(names.size() - ids.size());
+            for (String name : names) {
+                if (!ids.containsKey(name)) {
+                    missing.add(name);
+                }
+            }
+            customerMapper.insertIgnoreNames(missing);
+            ids.putAll(selectIds(missing));
+        }
+        return ids;
+    }
+
+    /**
+     * 按客户顺序返回客户 ID，核销按整数键读取时调用。
+     * 客户在其行写入或回填时登记，未登记的客户没有已回填的行，对应位置为 null；
+     * 有行而 customer_id 为空的情况由核销开始前的 {@link #ensureFullyKeyed} 拦下。
+     */
+    public List<Long> resolveIds(List<String> customerNames) {
+        Map<String, Long> ids = selectIds(customerNames);
+        List<Long> ordered = new ArrayList<>(customerNames.size());
+        for (String name : customerNames) {
+            ordered.add(ids.get(name));
+        }
+        return ordered;
+    }
+
+    /**
+     * 确认两张台账表都已回填客户 ID。按整数键读取时 customer_id 为空的行不会被读到，
+     * 开启 verification.customer-key-enabled 的核销在开始前调用，仍有未回填的行（如回填未完成、绕过服务层直接写入）时直接报错，而不是静默漏掉这些行。
+     */
+    public void ensureFullyKeyed() {
+        ThrowUtils.throwIf(bankReceiptMapper.selectAnyIdWithoutCustomerKey() != null, ErrorCode.OPERATION_ERROR,
+                "收款单存在 customer_id 为空的行，请先完成 customer_id 回填或关闭 verification.customer-key-enabled");
+        ThrowUtils.throwIf(rentScheduleMapper.selectAnyIdWithoutCustomerKey() != null, ErrorCode.OPERATION_ERROR,
+                "租金计划存在 customer_id 为空的行，请先完成 customer_id 回填或关闭 verification.customer-key-enabled");
+    }
+
+    /**
+     * 为带有付款人名称的收款单填入客户 ID；只按 id 更新、没有名称的行保持原值
+     */
+    public void assignReceiptKeys(Collection<BankReceipt> receipts) {
+        assignKeys(receipts, BankReceipt::getPayerName, BankReceipt::setCustomerId);
+    }
+
+    /**
+     * 为带有承租人名称的租金计划填入客户 ID；只按 id 更新、没有名称的行保持原值
+     */
+    public void assignScheduleKeys(Collection<RentSchedule> schedules) {
+        assignKeys(schedules, RentSchedule::getLesseeName, RentSchedule::setCustomerId);
+    }
+
+    /**
+     * 回填一个分块：从 afterId 之后取 customer_id 为空的行，登记其中的客户并写入客户 ID。
+     * 登记与回填在同一个短事务中完成，分块之间不持有锁。
+     *
+     * @return 本分块处理的行 id（升序），为空表示已扫描到表尾
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public List<Long> backfillChunk(LedgerArchiveTableEnum table, long afterId, int chunkSize) {
+        if (table == LedgerArchiveTableEnum.BANK_RECEIPT) {
+            List<Long> ids = bankReceiptMapper.selectIdsWithoutCustomerKey(afterId, chunkSize);
+            if (!ids.isEmpty()) {
+                bankReceiptMapper.registerCustomers(ids);
+                bankReceiptMapper.fillCustomerKeys(ids);
+            }
+            return ids;
+        }
+        List<Long> ids = rentScheduleMapper.selectIdsWithoutCustomerKey(afterId, chunkSize);
+        if (!ids.isEmpty()) {
+            rentScheduleMapper.registerCustomers(ids);
+            rentScheduleMapper.fillCustomerKeys(ids);
+        }
+        return ids;
+    }
+
+    private <T> void assignKeys(Collection<T> rows, Function<T, String> nameOf, BiConsumer<T, Long> setCustomerId) {
+        if (rows == null || rows.isEmpty()) {
+            return;
+        }
+        List<String> names = new ArrayList<>(rows.size());
+        for (T row : rows) {
+            names.add(nameOf.apply(row));
+        }
+        Map<String, Long> ids = ensureIds(names);
+        for (T row : rows) {
+            String name = nameOf.apply(row);
+            if (name != null) {
+                setCustomerId.accept(row, ids.get(name));
+            }
+        }
+    }
+
+    private Map<String, Long> selectIds(Collection<String> customerNames) {
+        Map<String, Long> ids = new HashMap<>(customerNames.size() * 2);
+        if (customerNames.isEmpty()) {
+            return ids;
+        }
+        for (Customer customer : customerMapper.selectByNames(customerNames)) {
+            ids.put(customer.getCustomerName(), customer.getId());
+        }
+        return ids;
+    }
+}
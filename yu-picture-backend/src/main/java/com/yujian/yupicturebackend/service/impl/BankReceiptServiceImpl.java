@@ -1,11 +1,228 @@
 package com.yujian.yupicturebackend.service.impl;
 
+import cn.hutool.core.collection.CollUtil;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.yujian.yupicturebackend.domain.BankReceipt;
 import com.yujian.yupicturebackend.mapper.BankReceiptMapper;
+import com.yujian.yupicturebackend.model.vo.BankReceiptVO;
 import com.yujian.yupicturebackend.service.IBankReceiptService;
+import com.yujian.yupicturebackend.service.customer.CustomerKeyService;
+import com.yujian.yupicturebackend.service.verification.DirtyCustomerTracker;
+import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.Resource;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 收款单服务。新增、修改收款单时写入客户 ID；新增、修改、删除收款单时把涉及的付款客户（改到其他客户名下时新旧客户都算）记为脏客户，供增量核销使用；
+ * 修改时按版本号做乐观锁检查：带版本号的更新在版本号不一致时不生效并返回 false；不带版本号的更新不做核对，但同样让版本号加 1。
+ */
 @Service
 public class BankReceiptServiceImpl extends ServiceImpl<BankReceiptMapper, BankReceipt> implements IBankReceiptService {
+
+    @Resource
+    private DirtyCustomerTracker dirtyCustomerTracker;
+    @Resource
+    private CustomerKeyService customerKeyService;
+
+    @Override
+    public List<BankReceipt> listCustomerReceipts(String customerName) {
+        return getBaseMapper().selectByCustomerIncludingHistory(customerName);
+    }
+
+    @Override
+    public BankReceiptVO getBankReceiptVO(BankReceipt bankReceipt) {
+        if (bankReceipt == null) {
+            return null;
+        }
+        BankReceiptVO bankReceiptVO = new BankReceiptVO();
+        BeanUtils.copyProperties(bankReceipt, bankReceiptVO);
+        return bankReceiptVO;
+    }
+
+    @Override
+    public List<BankReceiptVO> getBankReceiptVOList(List<BankReceipt> bankReceiptList) {
+        if (CollUtil.isEmpty(bankReceiptList)) {
+            return new ArrayList<>();
+        }
+        return bankReceiptList.stream().map(this::getBankReceiptVO).collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean save(BankReceipt entity) {
+        customerKeyService.assignReceiptKeys(Collections.singletonList(entity));
+        boolean result = super.save(entity);
+        markDirty(Collections.singletonList(entity), Collections.emptyMap());
+        return result;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean saveBatch(Collection<BankReceipt> entityList, int batchSize) {
+        customerKeyService.assignReceiptKeys(entityList);
+        boolean result = super.saveBatch(entityList, batchSize);
+        markDirty(entityList, Collections.emptyMap());
+        return result;
+    }
+
+    /**
+     * 按行是否已存在分派到 {@link #save} 或 {@link #updateById}，客户 ID、版本号与脏客户标记由二者处理
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean saveOrUpdate(BankReceipt entity) {
+        return super.saveOrUpdate(entity);
+    }
+
+    /**
+     * 按行是否已存在分为新增与按 id 更新两组，分别经由 {@link #saveBatch} 与逐行更新处理
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean saveOrUpdateBatch(Collection<BankReceipt> entityList, int batchSize) {
+        Map<Long, BankReceipt> stored = loadStored(idsOf(entityList));
+        List<BankReceipt> inserts = new ArrayList<>();
+        List<BankReceipt> updates = new ArrayList<>();
+        for (BankReceipt receipt : entityList) {
+            (receipt.getId() != null && stored.containsKey(receipt.getId()) ? updates : inserts).add(receipt);
+        }
+        boolean result = inserts.isEmpty() || saveBatch(inserts, batchSize);
+        if (!updates.isEmpty()) {
+            result &= updateRows(updates, stored);
+        }
+        return result;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean updateById(BankReceipt entity) {
+        List<BankReceipt> entities = Collections.singletonList(entity);
+        return updateRows(entities, loadStored(idsOf(entities)));
+    }
+
+    /**
+     * 逐行按 id 更新，批量执行器合并语句后拿不到每行的影响行数。
+     * 与 updateById 一样，版本号不一致的行不会被更新，此时返回 false，其余行照常更新
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean updateBatchById(Collection<BankReceipt> entityList, int batchSize) {
+        return updateRows(entityList, loadStored(idsOf(entityList)));
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean removeById(Serializable id) {
+        Map<Long, BankReceipt> stored = loadStored(Collections.singletonList(id));
+        boolean result = super.removeById(id);
+        markDirty(Collections.emptyList(), stored);
+        return result;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean removeById(BankReceipt entity) {
+        Map<Long, BankReceipt> stored = loadStored(idsOf(Collections.singletonList(entity)));
+        boolean result = super.removeById(entity);
+        markDirty(Collections.emptyList(), stored);
+        return result;
+    }
+
+    /**
+     * 按 id 批量删除，removeBatchByIds 也经由这里；列表元素可以是 id 或实体
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean removeByIds(Collection<?> list) {
+        if (list == null || list.isEmpty()) {
+            return false;
+        }
+        List<Serializable> ids = new ArrayList<>(list.size());
+        for (Object item : list) {
+            ids.add(item instanceof BankReceipt ? ((BankReceipt) item).getId() : (Serializable) item);
+        }
+        Map<Long, BankReceipt> stored = loadStored(ids);
+        boolean result = super.removeByIds(list);
+        markDirty(Collections.emptyList(), stored);
+        return result;
+    }
+
+    /**
+     * 改写或删除前一次性批量读取库中的当前行，供标记原付款客户使用
+     */
+    private Map<Long, BankReceipt> loadStored(Collection<? extends Serializable> ids) {
+        List<Serializable> existing = new ArrayList<>(ids.size());
+        for (Serializable id : ids) {
+            if (id != null) {
+                existing.add(id);
+            }
+        }
+        if (existing.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, BankReceipt> stored = new HashMap<>(existing.size() * 2);
+        for (BankReceipt receipt : getBaseMapper().selectBatchIds(existing)) {
+            stored.put(receipt.getId(), receipt);
+        }
+        return stored;
+    }
+
+    private static List<Long> idsOf(Collection<BankReceipt> receipts) {
+        List<Long> ids = new ArrayList<>(receipts.size());
+        for (BankReceipt receipt : receipts) {
+            ids.add(receipt.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * 逐行按 id 更新并标记脏客户。
+     * 带版本号的行由乐观锁插件核对版本号，不一致时不更新；不带版本号的行（未先读取就直接改写）无从核对，
+     * 按 id 直接更新并让版本号加 1，核销回写时仍能发现行已被改动
+     *
+     * @return 是否每一行都被更新
+     */
+    private boolean updateRows(Collection<BankReceipt> receipts, Map<Long, BankReceipt> stored) {
+        customerKeyService.assignReceiptKeys(receipts);
+        boolean allUpdated = true;
+        for (BankReceipt receipt : receipts) {
+            int updated;
+            if (receipt.getVersion() != null) {
+                updated = getBaseMapper().updateById(receipt);
+            } else {
+                UpdateWrapper<BankReceipt> updateWrapper = new UpdateWrapper<>();
+                updateWrapper.eq("id", receipt.getId()).setSql("version = version + 1");
+                updated = getBaseMapper().update(receipt, updateWrapper);
+            }
+            allUpdated &= updated == 1;
+        }
+        markDirty(receipts, stored);
+        return allUpdated;
+    }
+
+    /**
+     * 把改动涉及的客户记为脏客户：实体上的新付款人名称与库中改动前的付款人名称都要标记，
+     * 行被改到其他客户名下或被删除时，原客户的核销结果同样需要重算
+     */
+    private void markDirty(Collection<BankReceipt> receipts, Map<Long, BankReceipt> stored) {
+        List<String> customerNames = new ArrayList<>(receipts.size() + stored.size());
+        for (BankReceipt receipt : receipts) {
+            customerNames.add(receipt.getPayerName());
+        }
+        for (BankReceipt previous : stored.values()) {
+            customerNames.add(previous.getPayerName());
+        }
+        dirtyCustomerTracker.markDirty(customerNames);
+    }
 }
@@ -1,11 +1,228 @@
 package com.yujian.yupicturebackend.service.impl;
 
+import cn.hutool.core.collection.CollUtil;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.yujian.yupicturebackend.domain.RentSchedule;
 import com.yujian.yupicturebackend.mapper.RentScheduleMapper;
+import com.yujian.yupicturebackend.model.vo.RentScheduleVO;
 import com.yujian.yupicturebackend.service.IRentScheduleService;
+import com.yujian.yupicturebackend.service.customer.CustomerKeyService;
+import com.yujian.yupicturebackend.service.verification.DirtyCustomerTracker;
+import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.Resource;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 租金计划服务。新增、修改租金计划时写入客户 ID；新增、修改、删除租金计划时把涉及的承租人（改到其他客户名下时新旧客户都算）记为脏客户，供增量核销使用；
+ * 修改时按版本号做乐观锁检查：带版本号的更新在版本号不一致时不生效并返回 false；不带版本号的更新不做核对，但同样让版本号加 1。
+ */
 @Service
 public class RentScheduleServiceImpl extends ServiceImpl<RentScheduleMapper, RentSchedule> implements IRentScheduleService {
+
+    @Resource
+    private DirtyCustomerTracker dirtyCustomerTracker;
+    @Resource
+    private CustomerKeyService customerKeyService;
+
+    @Override
+    public List<RentSchedule> listCustomerSchedules(String customerName) {
+        return getBaseMapper().selectByCustomerIncludingHistory(customerName);
+    }
+
+    @Override
+    public RentScheduleVO getRentScheduleVO(RentSchedule rentSchedule) {
+        if (rentSchedule == null) {
+            return null;
+        }
+        RentScheduleVO rentScheduleVO = new RentScheduleVO();
+        BeanUtils.copyProperties(rentSchedule, rentScheduleVO);
+        return rentScheduleVO;
+    }
+
+    @Override
+    public List<RentScheduleVO> getRentScheduleVOList(List<RentSchedule> rentScheduleList) {
+        if (CollUtil.isEmpty(rentScheduleList)) {
+            return new ArrayList<>();
+        }
+        return rentScheduleList.stream().map(this::getRentScheduleVO).collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean save(RentSchedule entity) {
+        customerKeyService.assignScheduleKeys(Collections.singletonList(entity));
+        boolean result = super.save(entity);
+        markDirty(Collections.singletonList(entity), Collections.emptyMap());
+        return result;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean saveBatch(Collection<RentSchedule> entityList, int batchSize) {
+        customerKeyService.assignScheduleKeys(entityList);
+        boolean result = super.saveBatch(entityList, batchSize);
+        markDirty(entityList, Collections.emptyMap());
+        return result;
+    }
+
+    /**
+     * 按行是否已存在分派到 {@link #save} 或 {@link #updateById}，客户 ID、版本号与脏客户标记由二者处理
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean saveOrUpdate(RentSchedule entity) {
+        return super.saveOrUpdate(entity);
+    }
+
+    /**
+     * 按行是否已存在分为新增与按 id 更新两组，分别经由 {@link #saveBatch} 与逐行更新处理
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean saveOrUpdateBatch(Collection<RentSchedule> entityList, int batchSize) {
+        Map<Long, RentSchedule> stored = loadStored(idsOf(entityList));
+        List<RentSchedule> inserts = new ArrayList<>();
+        List<RentSchedule> updates = new ArrayList<>();
+        for (RentSchedule schedule : entityList) {
+            (schedule.getId() != null && stored.containsKey(schedule.getId()) ? updates : inserts).add(schedule);
+        }
+        boolean result = inserts.isEmpty() || saveBatch(inserts, batchSize);
+        if (!updates.isEmpty()) {
+            result &= updateRows(updates, stored);
+        }
+        return result;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean updateById(RentSchedule entity) {
+        List<RentSchedule> entities = Collections.singletonList(entity);
+        return updateRows(entities, loadStored(idsOf(entities)));
+    }
+
+    /**
+     * 逐行按 id 更新，批量执行器合并语句后拿不到每行的影响行数。
+     * 与 updateById 一样，版本号不一致的行不会被更新，此时返回 false，其余行照常更新
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean updateBatchById(Collection<RentSchedule> entityList, int batchSize) {
+        return updateRows(entityList, loadStored(idsOf(entityList)));
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean removeById(Serializable id) {
+        Map<Long, RentSchedule> stored = loadStored(Collections.singletonList(id));
+        boolean result = super.removeById(id);
+        markDirty(Collections.emptyList(), stored);
+        return result;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean removeById(RentSchedule entity) {
+        Map<Long, RentSchedule> stored = loadStored(idsOf(Collections.singletonList(entity)));
+        boolean result = super.removeById(entity);
+        markDirty(Collections.emptyList(), stored);
+        return result;
+    }
+
+    /**
+     * 按 id 批量删除，removeBatchByIds 也经由这里；列表元素可以是 id 或实体
+     */
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean removeByIds(Collection<?> list) {
+        if (list == null || list.isEmpty()) {
+            return false;
+        }
+        List<Serializable> ids = new ArrayList<>(list.size());
+        for (Object item : list) {
+            ids.add(item instanceof RentSchedule ? ((RentSchedule) item).getId() : (Serializable) item);
+        }
+        Map<Long, RentSchedule> stored = loadStored(ids);
+        boolean result = super.removeByIds(list);
+        markDirty(Collections.emptyList(), stored);
+        return result;
+    }
+
+    /**
+     * 改写或删除前一次性批量读取库中的当前行，供标记原承租人使用
+     */
+    private Map<Long, RentSchedule> loadStored(Collection<? extends Serializable> ids) {
+        List<Serializable> existing = new ArrayList<>(ids.size());
+        for (Serializable id : ids) {
+            if (id != null) {
+                existing.add(id);
+            }
+        }
+        if (existing.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, RentSchedule> stored = new HashMap<>(existing.size() * 2);
+        for (RentSchedule schedule : getBaseMapper().selectBatchIds(existing)) {
+            stored.put(schedule.getId(), schedule);
+        }
+        return stored;
+    }
+
+    private static List<Long> idsOf(Collection<RentSchedule> schedules) {
+        List<Long> ids = new ArrayList<>(schedules.size());
+        for (RentSchedule schedule : schedules) {
+            ids.add(schedule.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * 逐行按 id 更新并标记脏客户。
+     * 带版本号的行由乐观锁插件核对版本号，不一致时不更新；不带版本号的行（未先读取就直接改写）无从核对，
+     * 按 id 直接更新并让版本号加 1，核销回写时仍能发现行已被改动
+     *
+     * @return 是否每一行都被更新
+     */
+    private boolean updateRows(Collection<RentSchedule> schedules, Map<Long, RentSchedule> stored) {
+        customerKeyService.assignScheduleKeys(schedules);
+        boolean allUpdated = true;
+        for (RentSchedule schedule : schedules) {
+            int updated;
+            if (schedule.getVersion() != null) {
+                updated = getBaseMapper().updateById(schedule);
+            } else {
+                UpdateWrapper<RentSchedule> updateWrapper = new UpdateWrapper<>();
+                updateWrapper.eq("id", schedule.getId()).setSql("version = version + 1");
+                updated = getBaseMapper().update(schedule, updateWrapper);
+            }
+            allUpdated &= updated == 1;
+        }
+        markDirty(schedules, stored);
+        return allUpdated;
+    }
+
+    /**
+     * 把改动涉及的客户记为脏客户：实体上的新承租人名称与库中改动前的承租人名称都要标记，
+     * 行被改到其他客户名下或被删除时，原客户的核销结果同样需要重算
+     */
+    private void markDirty(Collection<RentSchedule> schedules, Map<Long, RentSchedule> stored) {
+        List<String> customerNames = new ArrayList<>(schedules.size() + stored.size());
+        for (RentSchedule schedule : schedules) {
+            customerNames.add(schedule.getLesseeName());
+        }
+        for (RentSchedule previous : stored.values()) {
+            customerNames.add(previous.getLesseeName());
+        }
+        dirtyCustomerTracker.markDirty(customerNames);
+    }
 }
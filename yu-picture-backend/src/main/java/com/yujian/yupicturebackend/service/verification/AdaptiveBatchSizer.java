@@ -0,0 +1,189 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按实测批次耗时自适应调整批次大小与回写分块大小。
+ * <p>
+ * 最合适的批次大小取决于数据库当时的负载，测试库与生产库差异很大，同一次核销的前后也可能不同。
+ * 流水线每回写一个批次就把该批次的读取、分摊、回写耗时与行数报告过来，每累计一个窗口的批次：
+ * <ul>
+ *     <li>按每行平均耗时推算达到目标批次耗时所需的行数，换算为每批目标行数与客户数上限，交给批次游标用于后续规划；</li>
+ *     <li>按回写阶段每行平均耗时推算单条多行 UPDATE 达到目标语句耗时所需的行数，作为后续回写的分块大小。</li>
+ * </ul>
+ * 每次调整最多放大或缩小一倍，并限制在配置的上下限之内；变化不足 10% 时不调整，避免来回抖动。
+ * 大客户专属批次的大小不可调，不计入统计。每次调整都会记录新值与依据。
+ * <p>
+ * 每次核销创建一个实例。报告来自多个回写线程，统计与调整串行执行；调整结果由发现线程与回写线程读取。
+ */
+class AdaptiveBatchSizer {
+
+    private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
+
+    /**
+     * 低于该比例的变化不调整
+     */
+    private static final double MIN_CHANGE_RATIO = 0.1;
+    private static final int MAX_STEP_FACTOR = 2;
+
+    private final KeysetBatchCursor cursor;
+    private final Settings settings;
+
+    private volatile int batchCustomers;
+    private volatile int batchRows;
+    private volatile int flushChunkSize;
+
+    private int windowBatches;
+    private long windowCustomers;
+    private long windowLoadedRows;
+    private long windowWrittenRows;
+    private long windowLoadNanos;
+    private long windowComputeNanos;
+    private long windowFlushNanos;
+    private int adjustments;
+
+    AdaptiveBatchSizer(KeysetBatchCursor cursor, Settings settings,
+                       int batchCustomers, int batchRows, int flushChunkSize) {
+        this.cursor = cursor;
+        this.settings = settings;
+        this.batchCustomers = batchCustomers;
+        this.batchRows = batchRows;
+        this.flushChunkSize = flushChunkSize;
+    }
+
+    /**
+     * 当前的回写分块大小
+     */
+    int getFlushChunkSize() {
+        return flushChunkSize;
+    }
+
+    int getAdjustments() {
+        return adjustments;
+    }
+
+    /**
+     * 报告一个已回写批次的各阶段耗时
+     *
+     * @param loadedRows  读取到的收款单与租金计划行数
+     * @param writtenRows 需要回写的行数
+     */
+    synchronized void record(CustomerBatch batch, long loadNanos, long computeNanos, long flushNanos,
+                             int loadedRows, int writtenRows) {
+        if (!settings.isEnabled() || batch.isDedicated()) {
+            return;
+        }
+        windowBatches++;
+        windowCustomers += batch.size();
+        windowLoadedRows += loadedRows;
+        windowWrittenRows += writtenRows;
+        windowLoadNanos += loadNanos;
+        windowComputeNanos += computeNanos;
+        windowFlushNanos += flushNanos;
+        if (windowBatches >= settings.getWindowBatches()) {
+            adjust();
+            windowBatches = 0;
+            windowCustomers = 0;
+            windowLoadedRows = 0;
+            windowWrittenRows = 0;
+            windowLoadNanos = 0;
+            windowComputeNanos = 0;
+            windowFlushNanos = 0;
+        }
+    }
+
+    private void adjust() {
+        double loadMillis = toMillis(windowLoadNanos) / windowBatches;
+        double computeMillis = toMillis(windowComputeNanos) / windowBatches;
+        double flushMillis = toMillis(windowFlushNanos) / windowBatches;
+        double batchMillis = loadMillis + computeMillis + flushMillis;
+
+        if (windowLoadedRows > 0 && batchMillis > 0) {
+            double millisPerRow = batchMillis * windowBatches / windowLoadedRows;
+            double rowsPerCustomer = Math.max((double) windowLoadedRows / windowCustomers, 1);
+            int newRows = step(batchRows, settings.getTargetBatchMillis() / millisPerRow,
+                    settings.getMinBatchRows(), settings.getMaxBatchRows());
+            int newCustomers = clamp((long) Math.ceil(newRows / rowsPerCustomer),
+                    settings.getMinBatchCustomers(), settings.getMaxBatchCustomers());
+            if (changed(batchRows, newRows) || changed(batchCustomers, newCustomers)) {
+                log.info("自适应批次：最近 {} 个批次平均耗时 {} ms（读取 {} / 分摊 {} / 回写 {}），平均 {} 行，目标 {} ms；"
+                                + "每批目标行数 {} → {}，客户数上限 {} → {}",
+                        windowBatches, format(batchMillis), format(loadMillis), format(computeMillis), format(flushMillis),
+                        windowLoadedRows / windowBatches, settings.getTargetBatchMillis(),
+                        batchRows, newRows, batchCustomers, newCustomers);
+                batchRows = newRows;
+                batchCustomers = newCustomers;
+                cursor.resize(newCustomers, newRows);
+                adjustments++;
+            }
+        }
+
+        // 回写耗时包含检查点更新与提交，按行均摊后略偏大，分块因此偏保守
+        if (windowWrittenRows > 0 && windowFlushNanos > 0) {
+            double flushMillisPerRow = toMillis(windowFlushNanos) / windowWrittenRows;
+            int newChunk = step(flushChunkSize, settings.getTargetStatementMillis() / flushMillisPerRow,
+                    settings.getMinFlushChunk(), settings.getMaxFlushChunk());
+            if (changed(flushChunkSize, newChunk)) {
+                log.info("自适应回写：最近 {} 个批次回写 {} 行，每行 {} ms，单条 UPDATE 目标 {} ms；分块大小 {} → {}",
+                        windowBatches, windowWrittenRows, String.format("%.3f", flushMillisPerRow),
+                        settings.getTargetStatementMillis(), flushChunkSize, newChunk);
+                flushChunkSize = newChunk;
+                adjustments++;
+            }
+        }
+    }
+
+    /**
+     * 朝期望值调整一步：最多放大或缩小一倍，并限制在上下限之内
+     */
+    private static int step(int current, double desired, int min, int max) {
+        double bounded = Math.max(current / (double) MAX_STEP_FACTOR, Math.min(desired, current * (double) MAX_STEP_FACTOR));
+        return clamp(Math.round(bounded), min, max);
+    }
+
+    private static int clamp(long value, int min, int max) {
+        return (int) Math.max(min, Math.min(value, max));
+    }
+
+    private static boolean changed(int current, int next) {
+        return Math.abs(next - current) >= current * MIN_CHANGE_RATIO;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static String format(double millis) {
+        return String.format("%.1f", millis);
+    }
+
+    /**
+     * 自适应调整的目标与上下限
+     */
+    @Data
+    static class Settings {
+        private boolean enabled;
+        /**
+         * 单个批次读取、分摊、回写耗时之和的目标值
+         */
+        private long targetBatchMillis;
+        /**
+         * 单条多行 UPDATE 的目标耗时
+         */
+        private long targetStatementMillis;
+        /**
+         * 每累计多少个批次调整一次
+         */
+        private int windowBatches;
+        private int minBatchRows;
+        private int maxBatchRows;
+        private int minBatchCustomers;
+        private int maxBatchCustomers;
+        private int minFlushChunk;
+        private int maxFlushChunk;
+    }
+}
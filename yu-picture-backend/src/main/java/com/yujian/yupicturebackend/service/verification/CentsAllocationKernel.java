@@ -0,0 +1,238 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.yujian.yupicturebackend.service.verification.VerificationService.STATUS_PARTIALLY_USED;
+import static com.yujian.yupicturebackend.service.verification.VerificationService.STATUS_USED;
+
+/**
+ * 定点（分）核销内核。
+ * <p>
+ * 金额列均为 DECIMAL(18,2)，加载后一次性换算成以“分”为单位的 long，
+ * 先利息后本金的分摊与收款单回填全部使用基本类型运算，只有发生变化的行才换算回 BigDecimal。
+ * 计算规则与 {@link VerificationService#processSingleCustomer} 完全一致（空值按 0 处理、负余额裁剪为 0）。
+ */
+class CentsAllocationKernel {
+
+    private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
+
+    private static final int CENTS_SCALE = 2;
+
+    /**
+     * 每个工作线程复用一份暂存数组，避免每个客户都重新分配
+     */
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final CustomerLogSampler customerLogSampler;
+
+    CentsAllocationKernel() {
+        this(CustomerLogSampler.ALL);
+    }
+
+    CentsAllocationKernel(CustomerLogSampler customerLogSampler) {
+        this.customerLogSampler = customerLogSampler;
+    }
+
+    /**
+     * 核销一个客户。
+     *
+     * @return 核销结果；若存在无法精确换算为分的金额（小数位超过 2 位或累加溢出）则返回 null，由调用方回退到 BigDecimal 路径
+     */
+    VerificationService.ProcessingOutcome allocate(String customerName,
+                                                   List<BankReceipt> receipts,
+                                                   List<RentSchedule> schedules) {
+        boolean sampled = customerLogSampler.isSampled(customerName);
+        CustomerLogSampler.info(log, sampled, "开始处理客户: {}", customerName);
+
+        int receiptCount = receipts.size();
+        int scheduleCount = schedules == null ? 0 : schedules.size();
+        Scratch scratch = SCRATCH.get();
+        scratch.ensureCapacity(receiptCount, scheduleCount);
+
+        long totalPayment = 0;
+        try {
+            // 加载阶段：一次性换算收款单金额
+            for (int i = 0; i < receiptCount; i++) {
+                BankReceipt receipt = receipts.get(i);
+                if (receipt == null) {
+                    scratch.receiptPayment[i] = 0;
+                    scratch.receiptUsed[i] = 0;
+                    scratch.receiptAvailable[i] = 0;
+                    continue;
+                }
+                long payment = toCents(receipt.getPaymentAmount());
+                long used = toCents(receipt.getUsedAmount());
+                long available = Math.max(Math.subtractExact(payment, used), 0);
+                scratch.receiptPayment[i] = payment;
+                scratch.receiptUsed[i] = used;
+                scratch.receiptAvailable[i] = available;
+                totalPayment = Math.addExact(totalPayment, available);
+            }
+            for (int j = 0; j < scheduleCount; j++) {
+                RentSchedule schedule = schedules.get(j);
+                scratch.interestDue[j] = toCents(schedule.getInterestDue());
+                scratch.interestReceived[j] = toCents(schedule.getInterestReceived());
+                scratch.principalDue[j] = toCents(schedule.getPrincipalDue());
+                scratch.principalReceived[j] = toCents(schedule.getPrincipalReceived());
+                // 提前校验差值不会溢出，核销循环中即可放心使用普通减法
+                Math.subtractExact(scratch.interestDue[j], scratch.interestReceived[j]);
+                Math.subtractExact(scratch.principalDue[j], scratch.principalReceived[j]);
+            }
+        } catch (ArithmeticException e) {
+            log.debug("客户 {} 存在无法按分精确表示的金额，回退到 BigDecimal 核销路径", customerName);
+            return null;
+        }
+
+        if (totalPayment <= 0) {
+            CustomerLogSampler.info(log, sampled, "客户 {} 没有有效的待核销金额。", customerName);
+            return VerificationService.ProcessingOutcome.empty();
+        }
+
+        if (scheduleCount == 0) {
+            log.warn("客户 {} 有待核销金额 {}，但没有找到待核销的租金计划。", customerName, fromCents(totalPayment));
+            return VerificationService.ProcessingOutcome.empty();
+        }
+
+        if (sampled ? log.isInfoEnabled() : log.isDebugEnabled()) {
+            CustomerLogSampler.info(log, sampled, "客户 {} 待核销总金额: {}", customerName, fromCents(totalPayment));
+        }
+
+        long remainingPayment = totalPayment;
+        long interestTotal = 0;
+        long principalTotal = 0;
+        int verifiedCount = 0;
+        List<RentSchedule> updatedSchedules = new ArrayList<>();
+        List<BankReceipt> updatedReceipts = new ArrayList<>();
+
+        // 按照到期日顺序消耗资金，先利息后本金
+        for (int j = 0; j < scheduleCount; j++) {
+            if (remainingPayment <= 0) {
+                break;
+            }
+            long interestDue = scratch.interestDue[j];
+            long interestReceived = scratch.interestReceived[j];
+            long principalDue = scratch.principalDue[j];
+            long principalReceived = scratch.principalReceived[j];
+            long remainingInterest = Math.max(interestDue - interestReceived, 0);
+            long remainingPrincipal = Math.max(principalDue - principalReceived, 0);
+            boolean interestChanged = false;
+            boolean principalChanged = false;
+
+            if (remainingInterest > 0) {
+                long paymentForInterest = Math.min(remainingPayment, remainingInterest);
+                interestReceived += paymentForInterest;
+                remainingPayment -= paymentForInterest;
+                interestTotal += paymentForInterest;
+                interestChanged = true;
+            }
+            if (remainingPayment > 0 && remainingPrincipal > 0) {
+                long paymentForPrincipal = Math.min(remainingPayment, remainingPrincipal);
+                principalReceived += paymentForPrincipal;
+                remainingPayment -= paymentForPrincipal;
+                principalTotal += paymentForPrincipal;
+                principalChanged = true;
+            }
+
+            if (interestChanged || principalChanged) {
+                verifiedCount++;
+                // 只有变化的行才换算回 BigDecimal
+                RentSchedule schedule = schedules.get(j);
+                if (interestChanged) {
+                    schedule.setInterestReceived(fromCents(interestReceived));
+                    ChangedColumns.mark(schedule, ChangedColumns.INTEREST_RECEIVED);
+                }
+                if (principalChanged) {
+                    schedule.setPrincipalReceived(fromCents(principalReceived));
+                    ChangedColumns.mark(schedule, ChangedColumns.PRINCIPAL_RECEIVED);
+                }
+                ChangedColumns.setStatus(schedule, principalReceived >= principalDue && interestReceived >= interestDue
+                        ? STATUS_USED : STATUS_PARTIALLY_USED);
+                updatedSchedules.add(schedule);
+            }
+        }
+
+        // 原始金额减去剩余金额得到实际本轮使用的金额，按收款顺序回填
+        long amountToUpdateOnReceipts = Math.max(totalPayment - remainingPayment, 0);
+        for (int i = 0; i < receiptCount; i++) {
+            if (amountToUpdateOnReceipts <= 0) {
+                break;
+            }
+            long usageOnThisReceipt = Math.min(amountToUpdateOnReceipts, scratch.receiptAvailable[i]);
+            if (usageOnThisReceipt > 0) {
+                BankReceipt receipt = receipts.get(i);
+                long used = scratch.receiptUsed[i] + usageOnThisReceipt;
+                receipt.setUsedAmount(fromCents(used));
+                ChangedColumns.mark(receipt, ChangedColumns.USED_AMOUNT);
+                ChangedColumns.setStatus(receipt, used >= scratch.receiptPayment[i] ? STATUS_USED : STATUS_PARTIALLY_USED);
+                updatedReceipts.add(receipt);
+                amountToUpdateOnReceipts -= usageOnThisReceipt;
+            }
+        }
+
+        VerificationService.VerificationResult result = new VerificationService.VerificationResult();
+        result.setVerifiedCount(verifiedCount);
+        result.addInterest(fromCents(interestTotal));
+        result.addPrincipal(fromCents(principalTotal));
+
+        if (verifiedCount > 0 || principalTotal > 0 || interestTotal > 0) {
+            CustomerLogSampler.info(log, sampled, "客户 {} 处理完毕。本次核销笔数: {}, 本金: {}, 利息: {}",
+                    customerName, result.getVerifiedCount(), result.getTotalPrincipal(), result.getTotalInterest());
+        }
+
+        return new VerificationService.ProcessingOutcome(result, updatedSchedules, updatedReceipts);
+    }
+
+    /**
+     * 金额换算为分，null 按 0 处理；小数位超过 2 位时抛出 ArithmeticException。
+     */
+    static long toCents(BigDecimal amount) {
+        if (amount == null) {
+            return 0L;
+        }
+        if (amount.scale() != CENTS_SCALE) {
+            amount = amount.setScale(CENTS_SCALE, RoundingMode.UNNECESSARY);
+        }
+        return amount.unscaledValue().longValueExact();
+    }
+
+    static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, CENTS_SCALE);
+    }
+
+    /**
+     * 线程内复用的列式暂存区
+     */
+    private static final class Scratch {
+        private long[] receiptPayment = new long[16];
+        private long[] receiptUsed = new long[16];
+        private long[] receiptAvailable = new long[16];
+        private long[] interestDue = new long[16];
+        private long[] interestReceived = new long[16];
+        private long[] principalDue = new long[16];
+        private long[] principalReceived = new long[16];
+
+        private void ensureCapacity(int receiptCount, int scheduleCount) {
+            if (receiptPayment.length < receiptCount) {
+                int capacity = Math.max(receiptCount, receiptPayment.length * 2);
+                receiptPayment = new long[capacity];
+                receiptUsed = new long[capacity];
+                receiptAvailable = new long[capacity];
+            }
+            if (interestDue.length < scheduleCount) {
+                int capacity = Math.max(scheduleCount, interestDue.length * 2);
+                interestDue = new long[capacity];
+                interestReceived = new long[capacity];
+                principalDue = new long[capacity];
+                principalReceived = new long[capacity];
+            }
+        }
+    }
+}
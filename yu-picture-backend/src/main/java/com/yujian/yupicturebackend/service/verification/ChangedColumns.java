@@ -0,0 +1,49 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+
+import java.util.Objects;
+
+/**
+ * 核销会修改的列。核销内核在修改实体时记录变更位，回写时据此只更新实际变化的列。
+ */
+final class ChangedColumns {
+
+    static final int INTEREST_RECEIVED = 1;
+    static final int PRINCIPAL_RECEIVED = 1 << 1;
+    static final int USED_AMOUNT = 1 << 2;
+    static final int STATUS = 1 << 3;
+
+    private ChangedColumns() {
+    }
+
+    static void mark(RentSchedule schedule, int columns) {
+        schedule.setChangedColumns(schedule.getChangedColumns() | columns);
+    }
+
+    static void mark(BankReceipt receipt, int columns) {
+        receipt.setChangedColumns(receipt.getChangedColumns() | columns);
+    }
+
+    /**
+     * 设置状态，只有状态确实变化时才记录变更
+     */
+    static void setStatus(RentSchedule schedule, int status) {
+        if (!Objects.equals(schedule.getStatus(), status)) {
+            schedule.setStatus(status);
+            mark(schedule, STATUS);
+        }
+    }
+
+    static void setStatus(BankReceipt receipt, int status) {
+        if (!Objects.equals(receipt.getStatus(), status)) {
+            receipt.setStatus(status);
+            mark(receipt, STATUS);
+        }
+    }
+
+    static boolean has(int changedColumns, int column) {
+        return (changedColumns & column) != 0;
+    }
+}
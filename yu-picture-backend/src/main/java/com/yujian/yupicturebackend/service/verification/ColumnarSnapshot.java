@@ -0,0 +1,321 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.exception.ErrorCode;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.yujian.yupicturebackend.service.verification.CentsAllocationKernel.fromCents;
+import static com.yujian.yupicturebackend.service.verification.CentsAllocationKernel.toCents;
+import static com.yujian.yupicturebackend.service.verification.VerificationService.STATUS_PARTIALLY_USED;
+import static com.yujian.yupicturebackend.service.verification.VerificationService.STATUS_USED;
+
+/**
+ * 全部待核销收款单与租金计划的列式快照，供快照核销一次装载、按客户并行分摊。
+ * <p>
+ * 每个字段一列（struct-of-arrays），存放在堆外（见 {@link OffHeapColumns}）：主键为 long，金额换算为以分为单位的 long，
+ * 状态与版本号为 int；各列的段取自 {@link OffHeapArena}，关闭快照即交还。客户名按首次出现的顺序编码为连续的客户键，按客户键记录其行在两张表列中的起止下标。
+ * 堆上只有客户字典（客户名到客户键），内存与客户数相关，不随行数增长。
+ * <p>
+ * 装载时两张表都按 (客户, 时间, id) 的索引顺序读取，同一客户的行在列中连续，且已是分摊所需的先后顺序，
+ * 无需在应用内再排序；装载时校验客户连续、时间不逆序，
+ * 排序规则不一致时直接报错，而不是静默分错顺序。
+ * <p>
+ * 装载完成后快照只读，分摊计算规则与 {@link CentsAllocationKernel} 相同，只把发生变化的行换算回实体交给回写。
+ * 不同线程分摊不相交的客户集合，可以并发执行。
+ */
+class ColumnarSnapshot implements AutoCloseable {
+
+    private final OffHeapColumns.LongColumn receiptId;
+    private final OffHeapColumns.LongColumn receiptPayment;
+    private final OffHeapColumns.LongColumn receiptUsed;
+    private final OffHeapColumns.IntColumn receiptStatus;
+    private final OffHeapColumns.IntColumn receiptVersion;
+
+    private final OffHeapColumns.LongColumn scheduleId;
+    private final OffHeapColumns.LongColumn interestDue;
+    private final OffHeapColumns.LongColumn interestReceived;
+    private final OffHeapColumns.LongColumn principalDue;
+    private final OffHeapColumns.LongColumn principalReceived;
+    private final OffHeapColumns.IntColumn scheduleStatus;
+    private final OffHeapColumns.IntColumn scheduleVersion;
+
+    /**
+     * 按客户键索引：客户在收款单列中的起始下标，结束下标为下一个客户的起始下标
+     */
+    private final OffHeapColumns.IntColumn customerReceiptStart;
+    /**
+     * 按客户键索引：客户在租金计划列中的起止下标（左闭右开），没有租金计划时二者相等
+     */
+    private final OffHeapColumns.IntColumn customerScheduleStart;
+    private final OffHeapColumns.IntColumn customerScheduleEnd;
+
+    private final Map<String, Integer> customerKeys = new HashMap<>();
+
+    private String lastCustomer;
+    private int lastKey = -1;
+    private long lastTime;
+    private boolean receiptsSealed;
+
+    /**
+     * @param arena 各列取段的内存池，关闭快照时段交还内存池
+     */
+    ColumnarSnapshot(OffHeapArena arena) {
+        this.receiptId = new OffHeapColumns.LongColumn(arena);
+        this.receiptPayment = new OffHeapColumns.LongColumn(arena);
+        this.receiptUsed = new OffHeapColumns.LongColumn(arena);
+        this.receiptStatus = new OffHeapColumns.IntColumn(arena);
+        this.receiptVersion = new OffHeapColumns.IntColumn(arena);
+        this.scheduleId = new OffHeapColumns.LongColumn(arena);
+        this.interestDue = new OffHeapColumns.LongColumn(arena);
+        this.interestReceived = new OffHeapColumns.LongColumn(arena);
+        this.principalDue = new OffHeapColumns.LongColumn(arena);
+        this.principalReceived = new OffHeapColumns.LongColumn(arena);
+        this.scheduleStatus = new OffHeapColumns.IntColumn(arena);
+        this.scheduleVersion = new OffHeapColumns.IntColumn(arena);
+        this.customerReceiptStart = new OffHeapColumns.IntColumn(arena);
+        this.customerScheduleStart = new OffHeapColumns.IntColumn(arena);
+        this.customerScheduleEnd = new OffHeapColumns.IntColumn(arena);
+    }
+
+    /**
+     * 追加一张收款单，同一客户的收款单须相邻并按 (payment_datetime, id) 顺序调用，客户之间的先后不限；
+     * 客户按 equals 区分，大小写或尾部空格不同的名称是不同的客户
+     */
+    void addReceipt(BankReceipt receipt) {
+        String customerName = receipt.getPayerName();
+        long time = timeOf(receipt.getPaymentDatetime());
+        if (!customerName.equals(lastCustomer)) {
+            if (customerKeys.containsKey(customerName)) {
+                throw outOfOrder("收款单", customerName);
+            }
+            lastKey = customerKeys.size();
+            customerKeys.put(customerName, lastKey);
+            customerReceiptStart.add(receiptId.size());
+            lastCustomer = customerName;
+        } else if (time < lastTime) {
+            throw outOfOrder("收款单", customerName);
+        }
+        lastTime = time;
+        receiptId.add(receipt.getId());
+        receiptPayment.add(toCents(receipt.getPaymentAmount()));
+        receiptUsed.add(toCents(receipt.getUsedAmount()));
+        receiptStatus.add(receipt.getStatus());
+        receiptVersion.add(receipt.getVersion());
+    }
+
+    /**
+     * 收款单装载完成，开始装载租金计划
+     */
+    void sealReceipts() {
+        for (int key = 0; key < customerKeys.size(); key++) {
+            customerScheduleStart.add(0);
+            customerScheduleEnd.add(0);
+        }
+        receiptsSealed = true;
+        lastCustomer = null;
+        lastKey = -1;
+    }
+
+    /**
+     * 追加一期租金计划，同一客户的计划须相邻并按 (due_date, id) 顺序调用；没有待核销收款的客户的计划直接跳过
+     */
+    void addSchedule(RentSchedule schedule) {
+        if (!receiptsSealed) {
+            throw new IllegalStateException("收款单尚未装载完成");
+        }
+        String customerName = schedule.getLesseeName();
+        long time = timeOf(schedule.getDueDate());
+        if (!customerName.equals(lastCustomer)) {
+            Integer key = customerKeys.get(customerName);
+            if (key == null) {
+                return;
+            }
+            if (customerScheduleEnd.get(key) > 0) {
+                throw outOfOrder("租金计划", customerName);
+            }
+            lastKey = key;
+            lastCustomer = customerName;
+            customerScheduleStart.set(key, scheduleId.size());
+        } else if (time < lastTime) {
+            throw outOfOrder("租金计划", customerName);
+        }
+        lastTime = time;
+        scheduleId.add(schedule.getId());
+        interestDue.add(toCents(schedule.getInterestDue()));
+        interestReceived.add(toCents(schedule.getInterestReceived()));
+        principalDue.add(toCents(schedule.getPrincipalDue()));
+        principalReceived.add(toCents(schedule.getPrincipalReceived()));
+        scheduleStatus.add(schedule.getStatus());
+        scheduleVersion.add(schedule.getVersion());
+        customerScheduleEnd.set(lastKey, scheduleId.size());
+    }
+
+    /**
+     * 分摊一组客户（通常是一个批次），快照中没有的客户跳过
+     *
+     * @return 合计结果与发生变化的行，逐客户记录结果，回写发现版本冲突时据此修正
+     */
+    VerificationService.ProcessingOutcome allocate(List<String> customerNames) {
+        VerificationService.ProcessingOutcome outcome = new VerificationService.ProcessingOutcome();
+        for (String customerName : customerNames) {
+            Integer key = customerKeys.get(customerName);
+            if (key == null) {
+                continue;
+            }
+            int receiptFrom = customerReceiptStart.get(key);
+            int receiptTo = key + 1 < customerKeys.size() ? customerReceiptStart.get(key + 1) : receiptId.size();
+            int scheduleFrom = customerScheduleStart.get(key);
+            int scheduleTo = customerScheduleEnd.get(key);
+
+            long totalPayment = 0;
+            for (int i = receiptFrom; i < receiptTo; i++) {
+                totalPayment = Math.addExact(totalPayment, Math.max(receiptPayment.get(i) - receiptUsed.get(i), 0));
+            }
+            if (totalPayment <= 0 || scheduleFrom == scheduleTo) {
+                continue;
+            }
+
+            List<RentSchedule> updatedSchedules = new ArrayList<>();
+            List<BankReceipt> updatedReceipts = new ArrayList<>();
+            long interestTotal = 0;
+            long principalTotal = 0;
+            int verifiedCount = 0;
+
+            // 按照到期日顺序消耗资金，先利息后本金
+            long remainingPayment = totalPayment;
+            for (int j = scheduleFrom; j < scheduleTo && remainingPayment > 0; j++) {
+                long scheduleInterestDue = interestDue.get(j);
+                long schedulePrincipalDue = principalDue.get(j);
+                long scheduleInterest = interestReceived.get(j);
+                long schedulePrincipal = principalReceived.get(j);
+                long remainingInterest = Math.max(scheduleInterestDue - scheduleInterest, 0);
+                long remainingPrincipal = Math.max(schedulePrincipalDue - schedulePrincipal, 0);
+                boolean interestChanged = false;
+                boolean principalChanged = false;
+                if (remainingInterest > 0) {
+                    long paymentForInterest = Math.min(remainingPayment, remainingInterest);
+                    scheduleInterest += paymentForInterest;
+                    remainingPayment -= paymentForInterest;
+                    interestTotal += paymentForInterest;
+                    interestChanged = true;
+                }
+                if (remainingPayment > 0 && remainingPrincipal > 0) {
+                    long paymentForPrincipal = Math.min(remainingPayment, remainingPrincipal);
+                    schedulePrincipal += paymentForPrincipal;
+                    remainingPayment -= paymentForPrincipal;
+                    principalTotal += paymentForPrincipal;
+                    principalChanged = true;
+                }
+                if (interestChanged || principalChanged) {
+                    verifiedCount++;
+                    RentSchedule schedule = new RentSchedule();
+                    schedule.setId(scheduleId.get(j));
+                    schedule.setLesseeName(customerName);
+                    schedule.setStatus(scheduleStatus.get(j));
+                    schedule.setVersion(scheduleVersion.get(j));
+                    if (interestChanged) {
+                        schedule.setInterestReceived(fromCents(scheduleInterest));
+                        ChangedColumns.mark(schedule, ChangedColumns.INTEREST_RECEIVED);
+                    }
+                    if (principalChanged) {
+                        schedule.setPrincipalReceived(fromCents(schedulePrincipal));
+                        ChangedColumns.mark(schedule, ChangedColumns.PRINCIPAL_RECEIVED);
+                    }
+                    ChangedColumns.setStatus(schedule, schedulePrincipal >= schedulePrincipalDue
+                            && scheduleInterest >= scheduleInterestDue ? STATUS_USED : STATUS_PARTIALLY_USED);
+                    updatedSchedules.add(schedule);
+                }
+            }
+
+            // 实际使用的金额按收款顺序回填
+            long amountToUpdateOnReceipts = totalPayment - remainingPayment;
+            for (int i = receiptFrom; i < receiptTo && amountToUpdateOnReceipts > 0; i++) {
+                long payment = receiptPayment.get(i);
+                long used = receiptUsed.get(i);
+                long usageOnThisReceipt = Math.min(amountToUpdateOnReceipts, Math.max(payment - used, 0));
+                if (usageOnThisReceipt > 0) {
+                    used += usageOnThisReceipt;
+                    BankReceipt receipt = new BankReceipt();
+                    receipt.setId(receiptId.get(i));
+                    receipt.setPayerName(customerName);
+                    receipt.setStatus(receiptStatus.get(i));
+                    receipt.setVersion(receiptVersion.get(i));
+                    receipt.setUsedAmount(fromCents(used));
+                    ChangedColumns.mark(receipt, ChangedColumns.USED_AMOUNT);
+                    ChangedColumns.setStatus(receipt, used >= payment ? STATUS_USED : STATUS_PARTIALLY_USED);
+                    updatedReceipts.add(receipt);
+                    amountToUpdateOnReceipts -= usageOnThisReceipt;
+                }
+            }
+
+            VerificationService.VerificationResult result = new VerificationService.VerificationResult();
+            result.setVerifiedCount(verifiedCount);
+            result.addInterest(fromCents(interestTotal));
+            result.addPrincipal(fromCents(principalTotal));
+            outcome.add(customerName, new VerificationService.ProcessingOutcome(result, updatedSchedules, updatedReceipts));
+        }
+        return outcome;
+    }
+
+    int getCustomerCount() {
+        return customerKeys.size();
+    }
+
+    int getReceiptRows() {
+        return receiptId.size();
+    }
+
+    int getScheduleRows() {
+        return scheduleId.size();
+    }
+
+    /**
+     * 已分配的堆外内存（字节）
+     */
+    long getOffHeapBytes() {
+        return receiptId.allocatedBytes() + receiptPayment.allocatedBytes() + receiptUsed.allocatedBytes()
+                + receiptStatus.allocatedBytes() + receiptVersion.allocatedBytes() + scheduleId.allocatedBytes() + interestDue.allocatedBytes()
+                + interestReceived.allocatedBytes() + principalDue.allocatedBytes() + principalReceived.allocatedBytes()
+                + scheduleStatus.allocatedBytes() + scheduleVersion.allocatedBytes() + customerReceiptStart.allocatedBytes()
+                + customerScheduleStart.allocatedBytes() + customerScheduleEnd.allocatedBytes();
+    }
+
+    @Override
+    public void close() {
+        receiptId.clear();
+        receiptPayment.clear();
+        receiptUsed.clear();
+        receiptStatus.clear();
+        receiptVersion.clear();
+        scheduleId.clear();
+        interestDue.clear();
+        interestReceived.clear();
+        principalDue.clear();
+        principalReceived.clear();
+        scheduleStatus.clear();
+        scheduleVersion.clear();
+        customerReceiptStart.clear();
+        customerScheduleStart.clear();
+        customerScheduleEnd.clear();
+        customerKeys.clear();
+    }
+
+    /**
+     * 时间为空的行排在客户最后，与读取时的 nullsLast 一致
+     */
+    private static long timeOf(Date date) {
+        return date == null ? Long.MAX_VALUE : date.getTime();
+    }
+
+    private static BusinessException outOfOrder(String table, String customerName) {
+        return new BusinessException(ErrorCode.SYSTEM_ERROR,
+                "快照装载的" + table + "未按客户与时间顺序返回（客户 " + customerName + "），请检查排序规则");
+    }
+}
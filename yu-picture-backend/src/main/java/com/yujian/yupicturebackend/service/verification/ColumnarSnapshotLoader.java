@@ -0,0 +1,63 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.exception.ErrorCode;
+import com.yujian.yupicturebackend.streaming.LedgerStreamMapper;
+import com.yujian.yupicturebackend.streaming.LedgerStreamSource;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * 装载快照核销（{@link SnapshotVerificationEngine}）使用的堆外列式快照
+ */
+@Service
+public class ColumnarSnapshotLoader {
+
+    private final LedgerStreamSource ledgerStreamSource;
+    private final OffHeapArena snapshotArena;
+
+    public ColumnarSnapshotLoader(LedgerStreamSource ledgerStreamSource, OffHeapArena snapshotArena) {
+        this.ledgerStreamSource = ledgerStreamSource;
+        this.snapshotArena = snapshotArena;
+    }
+
+    /**
+     * 把全部待核销收款单与租金计划流式装入堆外列式快照，供快照核销使用。
+     * 两个游标在 {@link LedgerStreamSource} 的同一个只读会话中依次消费，逐行转换后实体即可回收，堆上不会积累行对象。
+     * 装载失败时释放已分配的快照。
+     * 标注为只读且不开启新事务：游标本身走只读的流式连接池，不占用主数据源的连接，期间误触主数据源的读取也按只读路由。
+     *
+     * @param asOfDate 应收日期截止日（包含），为空时装载全部待核销租金计划
+     */
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public ColumnarSnapshot loadSnapshot(Date asOfDate) {
+        ColumnarSnapshot snapshot = new ColumnarSnapshot(snapshotArena);
+        try (SqlSession streamSession = ledgerStreamSource.openSession();
+             Cursor<BankReceipt> receiptCursor = streamSession.getMapper(LedgerStreamMapper.class).streamAllOpenReceipts()) {
+            for (BankReceipt receipt : receiptCursor) {
+                snapshot.addReceipt(receipt);
+            }
+            snapshot.sealReceipts();
+            try (Cursor<RentSchedule> scheduleCursor = streamSession.getMapper(LedgerStreamMapper.class).streamAllOpenSchedules(asOfDate)) {
+                for (RentSchedule schedule : scheduleCursor) {
+                    snapshot.addSchedule(schedule);
+                }
+            }
+            return snapshot;
+        } catch (IOException e) {
+            snapshot.close();
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "关闭核销数据游标失败: " + e.getMessage());
+        } catch (RuntimeException e) {
+            snapshot.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.VerificationDirtyCustomer;
+import com.yujian.yupicturebackend.model.enums.VerificationPriorityEnum;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 一个核销批次的客户描述。
+ * <p>
+ * 客户名按索引顺序连续发现，因此批次可以用 [firstCustomer, lastCustomer] 表示的名称区间做范围扫描，
+ * 不再需要拼接上百个元素的 IN 列表。增量核销的脏客户在名称空间中是稀疏的，
+ * 这类批次不是连续区间，仍按名称列表加载。
+ * 待核销数据量极大的客户单独成为一个专属批次，先于区间批次调度。
+ * 逾期久或收款余额大的客户按优先通道打包成批次，带上优先级最先调度；这类批次同样按名称列表加载。
+ */
+@Getter
+public class CustomerBatch {
+
+    /**
+     * 本批次需要核销的客户，按数据库索引顺序排列
+     */
+    private final List<String> customerNames;
+
+    /**
+     * 区间起点（包含）
+     */
+    private final String firstCustomer;
+
+    /**
+     * 区间终点（包含）
+     */
+    private final String lastCustomer;
+
+    /**
+     * 是否为连续区间；为 false 时区间内还夹杂着不属于本批次的客户，只能按名称列表加载
+     */
+    private final boolean contiguous;
+
+    /**
+     * 是否为大客户专属批次，只包含一个客户
+     */
+    private final boolean dedicated;
+
+    /**
+     * 增量核销时读取到的脏客户标记，批次提交时据此清理
+     */
+    private final List<VerificationDirtyCustomer> dirtyMarks;
+
+    /**
+     * 批次检查点记录 id，登记到 verification_batch 之后才有值
+     */
+    private final Long checkpointId;
+
+    /**
+     * 调度优先级，区间批次与脏客户批次为普通
+     */
+    private final VerificationPriorityEnum priority;
+
+    /**
+     * 应收日期截止日（包含），只核销应收日期不晚于该日的租金计划；为空时核销全部待核销计划
+     */
+    private final Date asOfDate;
+
+    /**
+     * 登记检查点时运行记录的 owner_token，批次完成标记以此为条件，运行被其他节点接管后不再提交
+     */
+    private final String ownerToken;
+
+    private CustomerBatch(List<String> customerNames, boolean contiguous, boolean dedicated,
+                          List<VerificationDirtyCustomer> dirtyMarks, Long checkpointId,
+                          VerificationPriorityEnum priority) {
+        this(customerNames, customerNames.get(0), customerNames.get(customerNames.size() - 1),
+                contiguous, dedicated, dirtyMarks, checkpointId, priority, null, null);
+    }
+
+    private CustomerBatch(List<String> customerNames, String firstCustomer, String lastCustomer,
+                          boolean contiguous, boolean dedicated,
+                          List<VerificationDirtyCustomer> dirtyMarks, Long checkpointId,
+                          VerificationPriorityEnum priority, Date asOfDate, String ownerToken) {
+        this.customerNames = Collections.unmodifiableList(customerNames);
+        this.firstCustomer = firstCustomer;
+        this.lastCustomer = lastCustomer;
+        this.contiguous = contiguous;
+        this.dedicated = dedicated;
+        this.dirtyMarks = dirtyMarks;
+        this.checkpointId = checkpointId;
+        this.priority = priority;
+        this.asOfDate = asOfDate;
+        this.ownerToken = ownerToken;
+    }
+
+    /**
+     * 由一段按索引顺序连续发现的客户构造区间批次。
+     */
+    public static CustomerBatch range(List<String> orderedCustomerNames) {
+        if (orderedCustomerNames == null || orderedCustomerNames.isEmpty()) {
+            throw new IllegalArgumentException("客户区间不能为空");
+        }
+        return new CustomerBatch(orderedCustomerNames, true, false, Collections.emptyList(), null,
+                VerificationPriorityEnum.NORMAL);
+    }
+
+    /**
+     * 为单个大客户构造专属批次。
+     */
+    public static CustomerBatch dedicated(String customerName) {
+        return new CustomerBatch(Collections.singletonList(customerName), true, true, Collections.emptyList(), null,
+                VerificationPriorityEnum.NORMAL);
+    }
+
+    /**
+     * 由优先通道中的一组客户构造批次，客户须按数据库索引顺序排列。
+     */
+    public static CustomerBatch prioritized(List<String> orderedCustomerNames, VerificationPriorityEnum priority) {
+        if (orderedCustomerNames == null || orderedCustomerNames.isEmpty()) {
+            throw new IllegalArgumentException("优先批次不能为空");
+        }
+        return new CustomerBatch(orderedCustomerNames, false, false, Collections.emptyList(), null, priority);
+    }
+
+    /**
+     * 由一页脏客户标记构造稀疏批次。
+     */
+    public static CustomerBatch dirty(List<VerificationDirtyCustomer> dirtyMarks) {
+        if (dirtyMarks == null || dirtyMarks.isEmpty()) {
+            throw new IllegalArgumentException("脏客户批次不能为空");
+        }
+        List<String> customerNames = dirtyMarks.stream()
+                .map(VerificationDirtyCustomer::getCustomerName)
+                .collect(Collectors.toList());
+        return new CustomerBatch(customerNames, false, false, Collections.unmodifiableList(dirtyMarks), null,
+                VerificationPriorityEnum.NORMAL);
+    }
+
+    /**
+     * 返回登记了检查点的同一批次
+     */
+    public CustomerBatch withCheckpointId(Long checkpointId) {
+        return new CustomerBatch(customerNames, firstCustomer, lastCustomer, contiguous, dedicated, dirtyMarks,
+                checkpointId, priority, asOfDate, ownerToken);
+    }
+
+    /**
+     * 返回指定调度优先级的同一批次
+     */
+    public CustomerBatch withPriority(VerificationPriorityEnum priority) {
+        return new CustomerBatch(customerNames, firstCustomer, lastCustomer, contiguous, dedicated, dirtyMarks,
+                checkpointId, priority, asOfDate, ownerToken);
+    }
+
+    /**
+     * 返回按指定应收日期截止日核销的同一批次
+     */
+    public CustomerBatch withAsOfDate(Date asOfDate) {
+        return new CustomerBatch(customerNames, firstCustomer, lastCustomer, contiguous, dedicated, dirtyMarks,
+                checkpointId, priority, asOfDate, ownerToken);
+    }
+
+    /**
+     * 返回由指定运行令牌登记的同一批次
+     */
+    public CustomerBatch withOwnerToken(String ownerToken) {
+        return new CustomerBatch(customerNames, firstCustomer, lastCustomer, contiguous, dedicated, dirtyMarks,
+                checkpointId, priority, asOfDate, ownerToken);
+    }
+
+    /**
+     * 返回去掉指定客户后的同一批次。区间边界与检查点不变，区间扫描读到的被去掉客户的行在分摊时跳过；
+     * 被去掉客户的脏标记也一并去掉，批次提交时不会清理。去掉全部客户时返回的批次为空，仍需提交以完成检查点。
+     */
+    public CustomerBatch without(Set<String> excludedNames) {
+        if (excludedNames.isEmpty()) {
+            return this;
+        }
+        List<String> remaining = customerNames.stream()
+                .filter(name -> !excludedNames.contains(name))
+                .collect(Collectors.toList());
+        List<VerificationDirtyCustomer> remainingMarks = dirtyMarks.stream()
+                .filter(mark -> !excludedNames.contains(mark.getCustomerName()))
+                .collect(Collectors.toList());
+        return new CustomerBatch(remaining, firstCustomer, lastCustomer, contiguous, dedicated,
+                Collections.unmodifiableList(remainingMarks), checkpointId, priority, asOfDate, ownerToken);
+    }
+
+    public int size() {
+        return customerNames.size();
+    }
+
+    /**
+     * 批次提交时是否清理脏客户标记；指定截止日的批次没有分摊截止日之后的计划，保留标记交给下一次不限日期的核销
+     */
+    public boolean clearsDirtyMarks() {
+        return !contiguous && asOfDate == null;
+    }
+
+    @Override
+    public String toString() {
+        String range = "[" + firstCustomer + " .. " + lastCustomer + "](" + customerNames.size() + ")";
+        return priority == VerificationPriorityEnum.NORMAL ? range : range + "<" + priority.getValue() + ">";
+    }
+}
@@ -0,0 +1,272 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.config.datasource.DataSourceRouting;
+import com.yujian.yupicturebackend.mapper.BankReceiptMapper;
+import com.yujian.yupicturebackend.model.dto.verification.CustomerWorkload;
+import com.yujian.yupicturebackend.model.enums.VerificationPriorityEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于键集游标（keyset）的客户发现与按权重的批次规划。
+ * <p>
+ * 每次只按 payer_name 索引顺序取一页客户（payer_name > 上一页最后一个客户），
+ * 同时估算每个客户的待核销行数（收款单数 + 租金计划数）作为权重。
+ * 连续的客户累加成一个区间批次，累计权重达到目标行数或客户数达到上限即切分，
+ * 各批次的读取、分摊与回写耗时因此大致相当，不会因为某个批次恰好包含大客户而拖长整次核销的尾部。
+ * <p>
+ * 待核销租金计划数超过阈值的大客户在发现开始前单独查出，各自成为一个专属批次并先于区间批次调度，
+ * 整次核销的耗时下限约为最大单个客户的处理时间。区间批次在大客户处断开，
+ * 按名称区间加载时不会再把大客户的数据读进普通批次。
+ * <p>
+ * 逾期久或收款余额大的客户（见 {@link VerificationPriorityPolicy}）同样在发现开始前查出，按紧急、高两个优先通道
+ * 依次排在最前面：通道内大客户的专属批次在前，其余客户按紧急程度打包成按名称列表加载的批次，
+ * 核销开始后最先处理账本中业务上最关键的部分。区间批次同样在这些客户处断开。
+ * <p>
+ * 发现查询可以走只读副本：复制延迟只影响本次选中哪些客户，批次数据的加载固定读主库。
+ */
+class CustomerBatchCursor extends KeysetBatchCursor {
+
+    private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
+
+    private final BankReceiptMapper bankReceiptMapper;
+
+    /**
+     * 续跑时的发现起点（包含），只作用于第一页
+     */
+    private final String startCustomer;
+
+    /**
+     * 待核销租金计划数达到该值的客户视为大客户，0 表示不拆分大客户
+     */
+    private final long whaleScheduleRows;
+
+    /**
+     * 单次核销最多拆出的大客户专属批次数
+     */
+    private final int maxWhales;
+
+    /**
+     * 优先通道的判定规则
+     */
+    private final VerificationPriorityPolicy priorityPolicy;
+
+    /**
+     * 区间批次的目标权重（待核销行数）
+     */
+    private volatile int targetBatchRows;
+
+    private final Deque<CustomerBatch> ready = new ArrayDeque<>();
+    /**
+     * 已在区间发现之前单独成批的客户（大客户与优先通道客户），区间批次在这些客户处断开
+     */
+    private final Set<String> plannedAhead = new HashSet<>();
+    private boolean aheadPlanned;
+    private boolean sourceExhausted;
+
+    private final List<String> pendingCustomers = new ArrayList<>();
+    private long pendingWeight;
+    private String lastCustomer;
+
+    CustomerBatchCursor(BankReceiptMapper bankReceiptMapper, int pageSize, String startCustomer,
+                        int targetBatchRows, long whaleScheduleRows, int maxWhales,
+                        VerificationPriorityPolicy priorityPolicy) {
+        super(pageSize);
+        this.bankReceiptMapper = bankReceiptMapper;
+        this.startCustomer = startCustomer;
+        this.targetBatchRows = Math.max(targetBatchRows, 1);
+        this.whaleScheduleRows = whaleScheduleRows;
+        this.maxWhales = maxWhales;
+        this.priorityPolicy = priorityPolicy;
+    }
+
+    @Override
+    void resize(int pageSize, int targetBatchRows) {
+        super.resize(pageSize, targetBatchRows);
+        this.targetBatchRows = Math.max(targetBatchRows, 1);
+    }
+
+    @Override
+    protected CustomerBatch fetchNextPage() {
+        if (!aheadPlanned) {
+            planAhead();
+            aheadPlanned = true;
+        }
+        while (ready.isEmpty() && !sourceExhausted) {
+            planNextPage();
+        }
+        CustomerBatch batch = ready.poll();
+        if (sourceExhausted && ready.isEmpty()) {
+            markExhausted();
+        }
+        return batch;
+    }
+
+    /**
+     * 在区间发现之前排好单独成批的客户：紧急、高优先通道依次在前，通道内大客户专属批次在前、其余客户按紧急程度打包；
+     * 随后是普通通道的大客户，按待核销计划数降序，最大的客户最先开始
+     */
+    private void planAhead() {
+        List<CustomerWorkload> whaleWorkloads = findWhales();
+        List<CustomerWorkload> priorityWorkloads = findPriorityCustomers();
+        LocalDate today = LocalDate.now();
+        Map<String, VerificationPriorityEnum> lanes = new HashMap<>();
+        for (CustomerWorkload workload : priorityWorkloads) {
+            lanes.put(workload.getCustomerName(), priorityPolicy.laneOf(workload, today));
+        }
+        Set<String> whaleNames = new HashSet<>();
+        for (CustomerWorkload workload : whaleWorkloads) {
+            whaleNames.add(workload.getCustomerName());
+        }
+
+        for (VerificationPriorityEnum lane : new VerificationPriorityEnum[]{VerificationPriorityEnum.CRITICAL, VerificationPriorityEnum.HIGH}) {
+            int laneBatches = ready.size();
+            for (CustomerWorkload workload : whaleWorkloads) {
+                if (lanes.get(workload.getCustomerName()) == lane) {
+                    ready.add(CustomerBatch.dedicated(workload.getCustomerName()).withPriority(lane));
+                }
+            }
+            List<CustomerWorkload> members = new ArrayList<>();
+            for (CustomerWorkload workload : priorityWorkloads) {
+                if (lanes.get(workload.getCustomerName()) == lane && !whaleNames.contains(workload.getCustomerName())) {
+                    members.add(workload);
+                }
+            }
+            packLane(members, priorityWorkloads, lane);
+            if (ready.size() > laneBatches) {
+                log.info("{}优先通道排入 {} 个批次", lane.getText(), ready.size() - laneBatches);
+            }
+        }
+        for (CustomerWorkload workload : whaleWorkloads) {
+            if (!lanes.containsKey(workload.getCustomerName())
+                    || lanes.get(workload.getCustomerName()) == VerificationPriorityEnum.NORMAL) {
+                ready.add(CustomerBatch.dedicated(workload.getCustomerName()));
+            }
+        }
+        plannedAhead.addAll(whaleNames);
+        for (Map.Entry<String, VerificationPriorityEnum> entry : lanes.entrySet()) {
+            if (entry.getValue() != VerificationPriorityEnum.NORMAL) {
+                plannedAhead.add(entry.getKey());
+            }
+        }
+    }
+
+    private List<CustomerWorkload> findWhales() {
+        if (whaleScheduleRows <= 0 || maxWhales <= 0) {
+            return Collections.emptyList();
+        }
+        List<CustomerWorkload> whaleWorkloads = metrics.timeDiscovery("whale",
+                () -> DataSourceRouting.onReplica(() -> bankReceiptMapper.selectWhaleCustomers(whaleScheduleRows, maxWhales)));
+        if (!whaleWorkloads.isEmpty()) {
+            log.info("拆出 {} 个大客户专属批次，最大的客户 {} 有 {} 条待核销租金计划",
+                    whaleWorkloads.size(), whaleWorkloads.get(0).getCustomerName(), whaleWorkloads.get(0).getOpenSchedules());
+        }
+        return whaleWorkloads;
+    }
+
+    /**
+     * 查出优先核销的客户，按数据库索引顺序返回
+     */
+    private List<CustomerWorkload> findPriorityCustomers() {
+        if (!priorityPolicy.isEnabled()) {
+            return Collections.emptyList();
+        }
+        List<CustomerWorkload> workloads = metrics.timeDiscovery("priority",
+                () -> DataSourceRouting.onReplica(() -> bankReceiptMapper.selectPriorityCustomers(
+                        priorityPolicy.highDueBefore(LocalDate.now()), priorityPolicy.getHighReceiptAmount(),
+                        priorityPolicy.getMaxCustomers())));
+        if (workloads.size() >= priorityPolicy.getMaxCustomers()) {
+            log.warn("优先核销的客户达到上限 {} 个，其余逾期或大额客户随区间批次处理", priorityPolicy.getMaxCustomers());
+        }
+        return workloads;
+    }
+
+    /**
+     * 把一个通道的客户按紧急程度依次装入批次，每个批次的权重与客户数上限与区间批次相同；
+     * 批次内的客户恢复为数据库索引顺序，与按名称列表加载时数据库返回的顺序一致
+     *
+     * @param ordered 全部优先客户，按数据库索引顺序排列
+     */
+    private void packLane(List<CustomerWorkload> members, List<CustomerWorkload> ordered, VerificationPriorityEnum lane) {
+        if (members.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> positions = new HashMap<>(ordered.size() * 2);
+        for (int i = 0; i < ordered.size(); i++) {
+            positions.put(ordered.get(i).getCustomerName(), i);
+        }
+        members.sort(VerificationPriorityPolicy.URGENCY);
+        List<String> batchCustomers = new ArrayList<>();
+        long batchWeight = 0;
+        for (CustomerWorkload workload : members) {
+            if (!batchCustomers.isEmpty()
+                    && (batchWeight + workload.weight() > targetBatchRows || batchCustomers.size() >= pageSize)) {
+                closeLaneBatch(batchCustomers, positions, lane);
+                batchWeight = 0;
+            }
+            batchCustomers.add(workload.getCustomerName());
+            batchWeight += workload.weight();
+        }
+        closeLaneBatch(batchCustomers, positions, lane);
+    }
+
+    private void closeLaneBatch(List<String> batchCustomers, Map<String, Integer> positions, VerificationPriorityEnum lane) {
+        List<String> names = new ArrayList<>(batchCustomers);
+        names.sort(Comparator.comparing(positions::get));
+        ready.add(CustomerBatch.prioritized(names, lane));
+        batchCustomers.clear();
+    }
+
+    /**
+     * 读取一页客户权重并切分区间批次；最后一页读完后把剩余的客户也作为一个批次
+     */
+    private void planNextPage() {
+        int limit = pageSize;
+        int batchRows = targetBatchRows;
+        List<CustomerWorkload> page = metrics.timeDiscovery("workload",
+                () -> DataSourceRouting.onReplica(() -> bankReceiptMapper.selectCustomerWorkloads(lastCustomer, startCustomer, limit)));
+        if (page.size() < limit) {
+            sourceExhausted = true;
+        }
+        for (CustomerWorkload workload : page) {
+            String customerName = workload.getCustomerName();
+            lastCustomer = customerName;
+            if (plannedAhead.contains(customerName)) {
+                // 区间在已单独成批的客户处断开，避免按名称区间加载时把这些客户的数据再读一遍
+                closePending();
+                continue;
+            }
+            long weight = workload.weight();
+            if (!pendingCustomers.isEmpty()
+                    && (pendingWeight + weight > batchRows || pendingCustomers.size() >= limit)) {
+                closePending();
+            }
+            pendingCustomers.add(customerName);
+            pendingWeight += weight;
+        }
+        if (sourceExhausted) {
+            closePending();
+        }
+    }
+
+    private void closePending() {
+        if (pendingCustomers.isEmpty()) {
+            return;
+        }
+        ready.add(CustomerBatch.range(new ArrayList<>(pendingCustomers)));
+        pendingCustomers.clear();
+        pendingWeight = 0;
+    }
+}
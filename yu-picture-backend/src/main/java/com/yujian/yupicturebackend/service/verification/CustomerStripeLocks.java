@@ -0,0 +1,212 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按客户分段的核销锁。
+ * <p>
+ * 客户名按哈希映射到固定数量的分段，核销一个客户前必须持有其所在分段的租约，
+ * 同一客户在集群内同一时刻只会被一个事务核销，单客户核销、全量与增量核销可以同时运行而不会重复扣减。
+ * 租约默认存放在 Redis 中（集群共享），单节点部署或没有 Redis 时可改用进程内租约。
+ * <p>
+ * 批次核销不等待：批次开始前一次性尝试占用其客户涉及的全部分段，分段已被其他核销占用的客户从本批次中去掉，
+ * 标记为脏客户推迟到下一次增量核销。同一次运行的批次以运行令牌共享分段，批次之间客户互不重叠，
+ * 哈希到同一分段也不会互相推迟；分布式核销中各工作节点处理同一运行的批次时同样如此。
+ * 运行令牌由运行 id 与本次持有运行的 owner_token 组成（见 {@link #runToken}），运行被其他节点接管续跑后令牌随之改变，
+ * 原持有节点尚未退出的批次与接管节点的批次不会共享分段。
+ * 单客户核销只占用一个分段，短暂等待后仍拿不到时同样推迟。
+ * 批次只尝试不等待、单客户只占一个分段，不会出现互相等待的死锁。
+ * <p>
+ * 持有中的租约由后台线程定期续期，核销耗时超过租约时长也不会被他人抢占；持有者进程崩溃后租约到期自动释放。
+ */
+@Component
+public class CustomerStripeLocks implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
+
+    private static final String PROVIDER_LOCAL = "local";
+    private static final long RETRY_MILLIS = 20;
+
+    private final StripeLeaseStore store;
+    private final DirtyCustomerTracker dirtyCustomerTracker;
+    private final VerificationMetrics metrics;
+    private final int stripes;
+    private final long leaseMillis;
+    /**
+     * 单客户核销等待分段的最长时间
+     */
+    private final long customerWaitMillis;
+    /**
+     * 持有中的租约，由续期线程定期延长
+     */
+    private final Set<StripeLease> heldLeases = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService renewer;
+
+    public CustomerStripeLocks(ObjectProvider<StringRedisTemplate> redisTemplate,
+                               DirtyCustomerTracker dirtyCustomerTracker,
+                               VerificationMetrics metrics,
+                               @Value("${verification.lock.provider:redis}") String provider,
+                               @Value("${verification.lock.key-prefix:verification:stripe}") String keyPrefix,
+                               @Value("${verification.lock.stripes:1024}") int stripes,
+                               @Value("${verification.lock.lease-seconds:30}") long leaseSeconds,
+                               @Value("${verification.lock.customer-wait-millis:2000}") long customerWaitMillis) {
+        this.store = PROVIDER_LOCAL.equals(provider)
+                ? new LocalStripeLeaseStore()
+                : new RedisStripeLeaseStore(redisTemplate.getObject(), keyPrefix);
+        this.dirtyCustomerTracker = dirtyCustomerTracker;
+        this.metrics = metrics;
+        this.stripes = Math.max(stripes, 1);
+        this.leaseMillis = TimeUnit.SECONDS.toMillis(Math.max(leaseSeconds, 3));
+        this.customerWaitMillis = Math.max(customerWaitMillis, 0);
+        this.renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "verification-lock-renewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long renewMillis = this.leaseMillis / 3;
+        renewer.scheduleWithFixedDelay(this::renewHeld, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 客户所在的分段；String.hashCode 的算法由语言规范固定，各节点计算结果一致
+     */
+    int stripeOf(String customerName) {
+        return Math.floorMod(customerName.hashCode(), stripes);
+    }
+
+    /**
+     * 核销运行的分段租约令牌，同一运行同一次持有期间的批次共享分段
+     *
+     * @param ownerToken 运行记录的 owner_token，旧版本协调节点投递的消息没有令牌时为 null
+     */
+    static String runToken(Long runId, String ownerToken) {
+        return ownerToken == null ? "run:" + runId : "run:" + runId + ":" + ownerToken;
+    }
+
+    /**
+     * 为批次占用分段，不等待。分段已被其他核销占用的客户从批次中去掉并标记为脏客户，
+     * 返回的租约中的批次只包含已加锁的客户，批次提交（或失败）后必须 {@link #release} 。
+     *
+     * @param leaseToken 批次所属运行的令牌（{@link #runToken}），同一令牌的批次共享分段
+     */
+    StripeLease lockBatch(String leaseToken, CustomerBatch batch) {
+        TreeSet<Integer> wanted = new TreeSet<>();
+        for (String customerName : batch.getCustomerNames()) {
+            wanted.add(stripeOf(customerName));
+        }
+        StripeLease lease = new StripeLease(leaseToken);
+        lease.stripes.addAll(store.tryAcquire(new ArrayList<>(wanted), lease.token, leaseMillis));
+        heldLeases.add(lease);
+        if (lease.stripes.size() == wanted.size()) {
+            lease.batch = batch;
+            return lease;
+        }
+        Set<String> deferred = new LinkedHashSet<>();
+        for (String customerName : batch.getCustomerNames()) {
+            if (!lease.stripes.contains(stripeOf(customerName))) {
+                deferred.add(customerName);
+            }
+        }
+        try {
+            dirtyCustomerTracker.markDirty(deferred);
+        } catch (RuntimeException e) {
+            release(lease);
+            throw e;
+        }
+        lease.batch = batch.without(deferred);
+        lease.deferred = deferred;
+        metrics.recordLockDeferred("batch", deferred.size());
+        log.info("批次 {} 中 {} 个客户正被其他核销占用，推迟到下一次增量核销", batch, deferred.size());
+        return lease;
+    }
+
+    /**
+     * 为单个客户占用分段，最多等待 customer-wait-millis
+     *
+     * @return 租约；等待超时时把客户标记为脏客户并返回 null
+     */
+    StripeLease lockCustomer(String customerName) throws InterruptedException {
+        List<Integer> wanted = Collections.singletonList(stripeOf(customerName));
+        StripeLease lease = new StripeLease("customer:" + UUID.randomUUID());
+        long deadline = System.currentTimeMillis() + customerWaitMillis;
+        while (store.tryAcquire(wanted, lease.token, leaseMillis).isEmpty()) {
+            if (System.currentTimeMillis() >= deadline) {
+                dirtyCustomerTracker.markDirty(Collections.singletonList(customerName));
+                metrics.recordLockDeferred("customer", 1);
+                return null;
+            }
+            Thread.sleep(RETRY_MILLIS);
+        }
+        lease.stripes.addAll(wanted);
+        heldLeases.add(lease);
+        return lease;
+    }
+
+    void release(StripeLease lease) {
+        if (lease == null || !heldLeases.remove(lease)) {
+            return;
+        }
+        try {
+            store.release(lease.stripes, lease.token);
+        } catch (RuntimeException e) {
+            // 释放失败的分段等租约到期后自动释放
+            log.warn("释放核销分段锁失败，{} 个分段等待租约到期: {}", lease.stripes.size(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        renewer.shutdownNow();
+    }
+
+    private void renewHeld() {
+        for (StripeLease lease : heldLeases) {
+            try {
+                store.renew(lease.stripes, lease.token, leaseMillis);
+            } catch (RuntimeException e) {
+                log.warn("续期核销分段锁失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 一次加锁持有的分段租约，释放时逐个分段减少一次占用
+     */
+    @Getter
+    static class StripeLease {
+        private final String token;
+        private final Set<Integer> stripes = new HashSet<>();
+        /**
+         * 去掉被推迟客户后的批次，单客户租约为 null
+         */
+        private CustomerBatch batch;
+        /**
+         * 因分段被占用而推迟的客户
+         */
+        private Set<String> deferred = Collections.emptySet();
+
+        StripeLease(String token) {
+            this.token = token;
+        }
+    }
+}
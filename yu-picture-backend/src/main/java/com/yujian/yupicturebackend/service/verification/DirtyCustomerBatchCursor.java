@@ -0,0 +1,38 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.config.datasource.DataSourceRouting;
+import com.yujian.yupicturebackend.domain.VerificationDirtyCustomer;
+
+import java.util.List;
+
+/**
+ * 增量核销的客户发现：按客户名称键集分页读取脏客户集合，每页构成一个稀疏批次。
+ * <p>
+ * 脏客户分页可以走只读副本：副本落后时漏掉的标记留到下一轮，读到的旧版本号也只会让清理跳过该客户。
+ */
+class DirtyCustomerBatchCursor extends KeysetBatchCursor {
+
+    private final DirtyCustomerTracker dirtyCustomerTracker;
+
+    private String lastCustomer;
+
+    DirtyCustomerBatchCursor(DirtyCustomerTracker dirtyCustomerTracker, int pageSize) {
+        super(pageSize);
+        this.dirtyCustomerTracker = dirtyCustomerTracker;
+    }
+
+    @Override
+    protected CustomerBatch fetchNextPage() {
+        int limit = pageSize;
+        List<VerificationDirtyCustomer> page = metrics.timeDiscovery("dirty",
+                () -> DataSourceRouting.onReplica(() -> dirtyCustomerTracker.nextPage(lastCustomer, limit)));
+        if (page.isEmpty()) {
+            return null;
+        }
+        if (page.size() < limit) {
+            markExhausted();
+        }
+        lastCustomer = page.get(page.size() - 1).getCustomerName();
+        return CustomerBatch.dirty(page);
+    }
+}
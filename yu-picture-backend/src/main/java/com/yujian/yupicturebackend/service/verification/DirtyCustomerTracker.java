@@ -0,0 +1,86 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yujian.yupicturebackend.domain.VerificationDirtyCustomer;
+import com.yujian.yupicturebackend.mapper.VerificationDirtyCustomerMapper;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * 脏客户跟踪。
+ * <p>
+ * 收款单与租金计划的写入路径（新增、修改）会把对应客户记入 verification_dirty_customer，
+ * 增量核销只处理这部分客户。标记与业务数据写在同一个事务内，不会出现数据已提交但标记丢失的情况。
+ * 核销自身的回写由 {@link VerificationBulkWriter} 直接通过 Mapper 执行，不经过服务层，
+ * 因此不会产生标记，核销过的客户不会在下一轮又被当成脏客户。
+ */
+@Component
+public class DirtyCustomerTracker {
+
+    private static final int MARK_BATCH_SIZE = 500;
+
+    private final VerificationDirtyCustomerMapper dirtyCustomerMapper;
+
+    public DirtyCustomerTracker(VerificationDirtyCustomerMapper dirtyCustomerMapper) {
+        this.dirtyCustomerMapper = dirtyCustomerMapper;
+    }
+
+    /**
+     * 标记客户为脏客户，空名称会被忽略
+     */
+    public void markDirty(Collection<String> customerNames) {
+        if (customerNames == null || customerNames.isEmpty()) {
+            return;
+        }
+        // 去重并排序，固定加锁顺序，降低并发写入时的死锁概率
+        TreeSet<String> names = new TreeSet<>();
+        customerNames.stream().filter(Objects::nonNull).forEach(names::add);
+        List<String> chunk = new ArrayList<>(Math.min(names.size(), MARK_BATCH_SIZE));
+        for (String name : names) {
+            chunk.add(name);
+            if (chunk.size() >= MARK_BATCH_SIZE) {
+                dirtyCustomerMapper.markDirty(chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            dirtyCustomerMapper.markDirty(chunk);
+        }
+    }
+
+    /**
+     * 按客户名称键集分页读取脏客户。
+     * 未开启下划线转驼峰，指定查询列时需给出与属性同名的别名，否则整行映射为 null
+     */
+    List<VerificationDirtyCustomer> nextPage(String afterCustomer, int pageSize) {
+        QueryWrapper<VerificationDirtyCustomer> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("customer_name AS customerName", "mark_version AS markVersion")
+                .gt(afterCustomer != null, "customer_name", afterCustomer)
+                .orderByAsc("customer_name")
+                .last("LIMIT " + pageSize);
+        return dirtyCustomerMapper.selectList(queryWrapper);
+    }
+
+    /**
+     * 清理已核销的客户；核销期间被再次标记的客户版本已变化，会保留到下一轮
+     */
+    void clearProcessed(Collection<VerificationDirtyCustomer> customers) {
+        if (customers == null || customers.isEmpty()) {
+            return;
+        }
+        dirtyCustomerMapper.deleteProcessed(customers);
+    }
+
+    /**
+     * 全量核销覆盖了所有客户，结束后清理在其开始前产生的标记
+     */
+    int clearMarkedBefore(Date before) {
+        return dirtyCustomerMapper.deleteMarkedBefore(before);
+    }
+}
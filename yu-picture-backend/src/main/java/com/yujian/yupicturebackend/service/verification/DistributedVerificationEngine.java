@@ -0,0 +1,267 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DeliverCallback;
+import com.yujian.yupicturebackend.model.dto.verification.VerificationBatchReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * 分布式核销引擎（协调节点）：把发现的批次投递到持久化的 RabbitMQ 工作队列，由各工作节点
+ * （{@link VerificationBatchWorker}）消费核销，再从回复队列收集各批次的结果。
+ * <p>
+ * 批次消息持久化投递并等待 Broker 确认；工作节点手动确认，提交后才确认消息，节点崩溃时未确认的批次由 Broker 重新投递给其他节点。
+ * 重复投递的批次在检查点行锁上判重，只会回写一次（见 {@link MergeJoinBatchService#processPendingBatch}）。
+ * 同时在途（已投递、未收到结果）的批次数有上限，发现阶段因此不会无限超前于工作节点。
+ * <p>
+ * 批次核销失败时由工作节点转入重试队列延迟重投，协调节点继续等待；重试耗尽转入停放队列的批次不影响其余批次，
+ * 全部批次结束后整次核销以失败结束并列出停放的批次。超过等待时间没有收到任何结果时，停止投递新批次并以失败结束，
+ * 已投递的批次仍会被工作节点处理并提交，未完成的批次由下一次核销续跑。
+ */
+class DistributedVerificationEngine implements VerificationEngine {
+
+    private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
+
+    private static final long POLL_MILLIS = 200;
+    private static final long CONFIRM_TIMEOUT_MILLIS = 10_000;
+
+    private final ConnectionFactory connectionFactory;
+    private final String batchQueue;
+    private final long resultTimeoutNanos;
+    private final Long runId;
+    private final VerificationJob job;
+    private final AdaptiveBatchSizer batchSizer;
+    private final VerificationMetrics metrics;
+    /**
+     * 同时在途的批次数上限
+     */
+    private final Semaphore inFlight;
+
+    /**
+     * 已投递、尚未收到结果的批次，按检查点 id 索引
+     */
+    private final Map<Long, PendingBatch> pending = new ConcurrentHashMap<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<VerificationService.VerificationResult> results = new ConcurrentLinkedQueue<>();
+    /**
+     * 重试耗尽、转入停放队列的批次检查点 id
+     */
+    private final ConcurrentLinkedQueue<Long> parked = new ConcurrentLinkedQueue<>();
+    private final Object progress = new Object();
+    private volatile long lastProgressNanos;
+    private int batchCount;
+
+    DistributedVerificationEngine(ConnectionFactory connectionFactory, String batchQueue, int maxInFlight,
+                                  long resultTimeoutSeconds, Long runId, VerificationJob job,
+                                  AdaptiveBatchSizer batchSizer, VerificationMetrics metrics) {
+        this.connectionFactory = connectionFactory;
+        this.batchQueue = batchQueue;
+        this.resultTimeoutNanos = TimeUnit.SECONDS.toNanos(Math.max(resultTimeoutSeconds, 1));
+        this.runId = runId;
+        this.job = job;
+        this.batchSizer = batchSizer;
+        this.metrics = metrics;
+        this.inFlight = new Semaphore(Math.max(maxInFlight, 1));
+    }
+
+    @Override
+    public List<VerificationService.VerificationResult> run(KeysetBatchCursor cursor, UnaryOperator<CustomerBatch> onDiscovered)
+            throws ExecutionException, InterruptedException {
+        try (Connection connection = connectionFactory.newConnection("verification-coordinator-" + runId);
+             Channel channel = connection.createChannel()) {
+            VerificationQueues.declareBatchQueue(channel, batchQueue);
+            // 回复队列随本次核销创建、随连接关闭删除；协调节点中途退出时结果以检查点为准
+            String replyQueue = channel.queueDeclare().getQueue();
+            channel.basicConsume(replyQueue, true, onReply(), consumerTag -> {
+            });
+            channel.confirmSelect();
+            lastProgressNanos = System.nanoTime();
+
+            try {
+                while (failure.get() == null && !job.isCancelRequested() && cursor.hasNext()) {
+                    CustomerBatch batch = onDiscovered.apply(cursor.next());
+                    job.onBatchDiscovered(batch);
+                    if (!acquire()) {
+                        break;
+                    }
+                    publish(channel, batch, replyQueue);
+                    batchCount++;
+                }
+                job.onDiscoveryComplete();
+            } catch (RuntimeException | IOException | TimeoutException e) {
+                fail(e);
+            }
+            awaitResults();
+        } catch (IOException | TimeoutException e) {
+            fail(e);
+        }
+
+        Throwable cause = failure.get();
+        if (cause == null && !parked.isEmpty()) {
+            cause = new IllegalStateException(parked.size() + " 个批次重试后仍失败，已转入停放队列（检查点 " + parked
+                    + "），可在停放队列中查看并重放，或由下一次核销续跑");
+        }
+        if (cause != null) {
+            throw new ExecutionException("分布式核销执行失败", cause);
+        }
+        log.info("分布式核销投递并完成 {} 个批次", batchCount);
+        return new ArrayList<>(results);
+    }
+
+    @Override
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    private void publish(Channel channel, CustomerBatch batch, String replyQueue)
+            throws IOException, InterruptedException, TimeoutException {
+        pending.put(batch.getCheckpointId(), new PendingBatch(batch, System.nanoTime()));
+        channel.basicPublish("", batchQueue,
+                VerificationQueues.batchProperties(batch, replyQueue),
+                VerificationQueues.encode(VerificationQueues.toMessage(runId, job.getLeaseToken(), batch, batchSizer.getFlushChunkSize())));
+        // Broker 确认落盘后才继续，协调节点崩溃不会丢失已登记的批次
+        channel.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MILLIS);
+    }
+
+    private DeliverCallback onReply() {
+        return (consumerTag, delivery) -> {
+            try {
+                handleReply(VerificationQueues.decodeReply(delivery.getBody()));
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        };
+    }
+
+    private void handleReply(VerificationBatchReply reply) {
+        if (Boolean.TRUE.equals(reply.getRetrying())) {
+            // 批次仍在途，延迟后会被重新投递，只记为一次进展
+            if (reply.getCheckpointId() != null && pending.containsKey(reply.getCheckpointId())) {
+                log.warn("批次 {} 在 {} 上第 {} 次处理失败，已转入重试队列: {}", reply.getCheckpointId(), reply.getWorker(),
+                        reply.getAttempt(), reply.getErrorMessage());
+                touchProgress();
+            }
+            return;
+        }
+        PendingBatch pendingBatch = reply.getCheckpointId() == null ? null : pending.remove(reply.getCheckpointId());
+        if (pendingBatch == null) {
+            // 重复投递产生的重复结果，或其他运行遗留的批次
+            return;
+        }
+        try {
+            if (Boolean.TRUE.equals(reply.getParked())) {
+                // 其余批次照常核销，整次核销结束后再报告停放的批次
+                parked.add(reply.getCheckpointId());
+                log.error("批次 {} 处理 {} 次仍失败，已转入停放队列: {}", pendingBatch.batch, reply.getAttempt(),
+                        reply.getErrorMessage());
+                return;
+            }
+            if (reply.getErrorMessage() != null) {
+                fail(new IllegalStateException("工作节点 " + reply.getWorker() + " 核销批次 " + pendingBatch.batch
+                        + " 失败: " + reply.getErrorMessage()));
+                return;
+            }
+            CustomerBatch batch = pendingBatch.batch;
+            VerificationService.VerificationResult result = toResult(reply);
+            int writtenRows = orZero(reply.getWrittenRows());
+            long processNanos = reply.getProcessNanos() == null ? 0 : reply.getProcessNanos();
+            long flushNanos = reply.getFlushNanos() == null ? 0 : reply.getFlushNanos();
+            results.add(result);
+            batchSizer.record(batch, 0, processNanos - flushNanos, flushNanos, orZero(reply.getReadRows()), writtenRows);
+            metrics.recordBatch(System.nanoTime() - pendingBatch.publishNanos);
+            job.onBatchFlushed(batch, result, writtenRows);
+            log.info("批次 {} 已由 {} 提交{}：客户 {} 个，读取 {} 行，核销笔数 {}，本金 {}，利息 {}，回写 {} 行，耗时 {} ms",
+                    batch, reply.getWorker(), Boolean.FALSE.equals(reply.getProcessed()) ? "（重复投递，结果取自检查点）" : "",
+                    batch.size(), orZero(reply.getReadRows()), result.getVerifiedCount(), result.getTotalPrincipal(),
+                    result.getTotalInterest(), writtenRows, TimeUnit.NANOSECONDS.toMillis(processNanos));
+        } finally {
+            inFlight.release();
+            touchProgress();
+        }
+    }
+
+    private void touchProgress() {
+        synchronized (progress) {
+            lastProgressNanos = System.nanoTime();
+            progress.notifyAll();
+        }
+    }
+
+    /**
+     * 等待已投递的批次全部返回结果；出错或超过等待时间没有任何进展时停止等待
+     */
+    private void awaitResults() throws InterruptedException {
+        synchronized (progress) {
+            while (!pending.isEmpty() && failure.get() == null) {
+                if (System.nanoTime() - lastProgressNanos > resultTimeoutNanos) {
+                    fail(new TimeoutException("超过 " + TimeUnit.NANOSECONDS.toSeconds(resultTimeoutNanos)
+                            + " 秒没有收到任何批次结果，仍有 " + pending.size() + " 个批次未完成，请检查工作节点是否在线"));
+                    break;
+                }
+                progress.wait(POLL_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * 等待在途批次数低于上限；已有批次失败或结果等待超时时放弃并返回 false
+     */
+    private boolean acquire() throws InterruptedException {
+        while (failure.get() == null) {
+            if (inFlight.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            if (System.nanoTime() - lastProgressNanos > resultTimeoutNanos) {
+                fail(new TimeoutException("在途批次已满且超过 " + TimeUnit.NANOSECONDS.toSeconds(resultTimeoutNanos)
+                        + " 秒没有收到任何批次结果，请检查工作节点是否在线"));
+            }
+        }
+        return false;
+    }
+
+    private static VerificationService.VerificationResult toResult(VerificationBatchReply reply) {
+        VerificationService.VerificationResult result = new VerificationService.VerificationResult();
+        result.setVerifiedCount(orZero(reply.getVerifiedCount()));
+        result.addPrincipal(reply.getTotalPrincipal());
+        result.addInterest(reply.getTotalInterest());
+        return result;
+    }
+
+    private static int orZero(Integer value) {
+        return value == null ? 0 : value;
+    }
+
+    private void fail(Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+            log.error("分布式核销出错，停止投递剩余批次", e);
+        }
+        synchronized (progress) {
+            progress.notifyAll();
+        }
+    }
+
+    private static class PendingBatch {
+        private final CustomerBatch batch;
+        private final long publishNanos;
+
+        PendingBatch(CustomerBatch batch, long publishNanos) {
+            this.batch = batch;
+            this.publishNanos = publishNanos;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 键集分页游标的公共部分：按需拉取下一个批次，由子类判断数据源是否已读完。
+ */
+abstract class KeysetBatchCursor implements Iterator<CustomerBatch> {
+
+    /**
+     * 每页（每批）客户数，运行中可由 {@link AdaptiveBatchSizer} 调整
+     */
+    protected volatile int pageSize;
+
+    /**
+     * 发现查询的计时
+     */
+    protected VerificationMetrics metrics = VerificationMetrics.NOOP;
+
+    private CustomerBatch nextBatch;
+    private boolean exhausted;
+    private long discoveredCustomers;
+
+    KeysetBatchCursor(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextBatch == null && !exhausted) {
+            nextBatch = fetchNextPage();
+            if (nextBatch == null) {
+                exhausted = true;
+            }
+            if (nextBatch != null) {
+                discoveredCustomers += nextBatch.size();
+            }
+        }
+        return nextBatch != null;
+    }
+
+    @Override
+    public CustomerBatch next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        CustomerBatch batch = nextBatch;
+        nextBatch = null;
+        return batch;
+    }
+
+    void setMetrics(VerificationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 调整后续批次的大小，已发现的批次不受影响
+     *
+     * @param pageSize        每批客户数
+     * @param targetBatchRows 每批目标行数，只对按权重规划批次的游标生效
+     */
+    void resize(int pageSize, int targetBatchRows) {
+        this.pageSize = Math.max(pageSize, 1);
+    }
+
+    /**
+     * 已发现的客户数
+     */
+    long getDiscoveredCustomers() {
+        return discoveredCustomers;
+    }
+
+    /**
+     * 数据源已读完，当前批次之后不再调用 {@link #fetchNextPage()}；
+     * 子类在读到不满一页的结果时调用，省掉最后一次空查询
+     */
+    protected void markExhausted() {
+        exhausted = true;
+    }
+
+    /**
+     * 读取下一个批次，没有数据时返回 null
+     */
+    protected abstract CustomerBatch fetchNextPage();
+}
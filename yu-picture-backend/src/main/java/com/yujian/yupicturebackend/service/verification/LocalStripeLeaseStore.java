@@ -0,0 +1,64 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的分段租约，只在单个 JVM 内互斥。用于单节点部署、没有 Redis 的基准测试与本地调试。
+ */
+class LocalStripeLeaseStore implements StripeLeaseStore {
+
+    private final ConcurrentHashMap<Integer, Lease> leases = new ConcurrentHashMap<>();
+
+    @Override
+    public List<Integer> tryAcquire(List<Integer> stripes, String token, long leaseMillis) {
+        List<Integer> acquired = new ArrayList<>(stripes.size());
+        for (Integer stripe : stripes) {
+            long now = System.currentTimeMillis();
+            Lease lease = leases.compute(stripe, (key, current) -> {
+                if (current == null || current.expireAt <= now) {
+                    return new Lease(token, 1, now + leaseMillis);
+                }
+                return current.token.equals(token) ? new Lease(token, current.count + 1, now + leaseMillis) : current;
+            });
+            if (lease.token.equals(token)) {
+                acquired.add(stripe);
+            }
+        }
+        return acquired;
+    }
+
+    @Override
+    public void renew(Collection<Integer> stripes, String token, long leaseMillis) {
+        for (Integer stripe : stripes) {
+            leases.computeIfPresent(stripe, (key, current) -> current.token.equals(token)
+                    ? new Lease(token, current.count, System.currentTimeMillis() + leaseMillis) : current);
+        }
+    }
+
+    @Override
+    public void release(Collection<Integer> stripes, String token) {
+        for (Integer stripe : stripes) {
+            leases.computeIfPresent(stripe, (key, current) -> {
+                if (!current.token.equals(token)) {
+                    return current;
+                }
+                return current.count > 1 ? new Lease(token, current.count - 1, current.expireAt) : null;
+            });
+        }
+    }
+
+    private static class Lease {
+        private final String token;
+        private final int count;
+        private final long expireAt;
+
+        Lease(String token, int count, long expireAt) {
+            this.token = token;
+            this.count = count;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.exception.ErrorCode;
+import com.yujian.yupicturebackend.service.customer.CustomerKeyService;
+import com.yujian.yupicturebackend.streaming.LedgerStreamMapper;
+import com.yujian.yupicturebackend.streaming.LedgerStreamSource;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 流式归并核销的单批次执行，由 {@link MergeJoinVerificationEngine} 与分布式工作节点（{@link VerificationBatchWorker}）调用。
+ * 逐客户分摊与回写沿用 {@link VerificationService}，这里只负责按游标逐客户归并、分块回写与提交检查点。
+ */
+@Service
+public class MergeJoinBatchService {
+
+    private final VerificationService verificationService;
+    private final LedgerStreamSource ledgerStreamSource;
+    private final CustomerKeyService customerKeyService;
+    private final DirtyCustomerTracker dirtyCustomerTracker;
+    private final VerificationCheckpointService checkpointService;
+    private final VerificationMetrics metrics;
+
+    /**
+     * 名称列表批次是否按客户整数键（customer_id）读取，与 {@link VerificationService} 使用同一配置
+     */
+    private final boolean customerKeyEnabled;
+
+    public MergeJoinBatchService(VerificationService verificationService,
+                                 LedgerStreamSource ledgerStreamSource,
+                                 CustomerKeyService customerKeyService,
+                                 DirtyCustomerTracker dirtyCustomerTracker,
+                                 VerificationCheckpointService checkpointService,
+                                 VerificationMetrics metrics,
+                                 @Value("${verification.customer-key-enabled:false}") boolean customerKeyEnabled) {
+        this.verificationService = verificationService;
+        this.ledgerStreamSource = ledgerStreamSource;
+        this.customerKeyService = customerKeyService;
+        this.dirtyCustomerTracker = dirtyCustomerTracker;
+        this.checkpointService = checkpointService;
+        this.metrics = metrics;
+        this.customerKeyEnabled = customerKeyEnabled;
+    }
+
+    /**
+     * 流式归并核销一个批次：分摊、回写与检查点在同一个事务中完成。
+     * <p>
+     * 收款单与租金计划分别按 (客户, 时间) 顺序通过 {@link LedgerStreamSource} 专用连接上的服务端游标流式读取，两路数据按批次中的客户顺序逐客户归并，
+     * 取出一个客户的全部行后立即分摊，不再整批加载、按客户分组、复制与重新排序。
+     * 已变更的行累计到一个回写分块即写回，内存占用以最大的单个客户加一个回写分块为上限，与批次大小无关。
+     * <p>
+     * 游标按客户名的二进制值排序，批次中的客户先按 {@link LedgerStreamSource#customerOrder()} 重新排列再归并，
+     * 不依赖客户发现查询所用的列排序规则（_ci 排序规则下大小写、尾部空格不同的名称是不同的客户）；
+     * 仍出现逆序时整个批次回滚并报错，而不是静默漏掉数据。
+     *
+     * @param chunkSize 回写分块大小（行数）
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public VerificationService.StreamedBatch mergeJoinBatch(CustomerBatch batch, int chunkSize) {
+        if (batch.getCustomerNames().isEmpty()) {
+            // 客户全部被分段锁推迟，只需提交检查点
+            VerificationService.VerificationResult empty = new VerificationService.VerificationResult();
+            checkpointService.markDone(batch, empty);
+            return new VerificationService.StreamedBatch(empty, 0, 0, 0);
+        }
+        List<String> customerNames = new ArrayList<>(batch.getCustomerNames());
+        customerNames.sort(ledgerStreamSource.customerOrder());
+        // 开启客户整数键时名称列表批次按 customer_id 定位客户；连续区间批次按名称范围扫描，按名称定位
+        List<Long> customerIds = customerKeyEnabled && !batch.isContiguous() ? customerKeyService.resolveIds(customerNames) : null;
+        List<Long> idList = customerIds != null ? VerificationService.registeredIds(customerIds) : null;
+        if (idList != null && idList.isEmpty()) {
+            // 批次中的客户都未登记，没有可按整数键读取的行，按名称读取
+            customerIds = null;
+            idList = null;
+        }
+        List<?> customerKeys = customerIds != null ? customerIds : customerNames;
+        Map<Object, Integer> positions = new HashMap<>(customerKeys.size() * 2);
+        for (int i = 0; i < customerKeys.size(); i++) {
+            if (customerKeys.get(i) != null) {
+                positions.put(customerKeys.get(i), i);
+            }
+        }
+        List<String> nameList = batch.isContiguous() ? null : customerNames;
+
+        VerificationService.VerificationResult result = new VerificationService.VerificationResult();
+        VerificationService.ProcessingOutcome pending = new VerificationService.ProcessingOutcome();
+        long readRows = 0;
+        long writtenRows = 0;
+        long flushNanos = 0;
+        try (SqlSession streamSession = ledgerStreamSource.openSession();
+             Cursor<BankReceipt> receiptCursor = streamSession.getMapper(LedgerStreamMapper.class).streamOpenReceipts(
+                     batch.isContiguous(), batch.getFirstCustomer(), batch.getLastCustomer(), nameList, idList);
+             Cursor<RentSchedule> scheduleCursor = streamSession.getMapper(LedgerStreamMapper.class).streamOpenSchedules(batch.isContiguous(),
+                     batch.getFirstCustomer(), batch.getLastCustomer(), nameList, idList,
+                     batch.getAsOfDate())) {
+            CustomerRowStream<BankReceipt> receiptStream = new CustomerRowStream<>(receiptCursor.iterator(),
+                    customerIds != null ? BankReceipt::getCustomerId : BankReceipt::getPayerName, positions);
+            CustomerRowStream<RentSchedule> scheduleStream = new CustomerRowStream<>(scheduleCursor.iterator(),
+                    customerIds != null ? RentSchedule::getCustomerId : RentSchedule::getLesseeName, positions);
+            for (int i = 0; i < customerNames.size(); i++) {
+                String customerName = customerNames.get(i);
+                List<BankReceipt> receipts = receiptStream.take(i);
+                List<RentSchedule> schedules = scheduleStream.take(i);
+                readRows += receipts.size() + schedules.size();
+                pending.add(customerName, metrics.timeCustomerAllocation(
+                        () -> verificationService.allocateCustomer(customerName, receipts, schedules)));
+                if (pending.rows() >= chunkSize) {
+                    long start = System.nanoTime();
+                    verificationService.flushOutcomes(Collections.singletonList(pending), batch.getAsOfDate(), chunkSize);
+                    flushNanos += System.nanoTime() - start;
+                    writtenRows += pending.rows();
+                    result.merge(pending.getResult());
+                    pending = new VerificationService.ProcessingOutcome();
+                }
+            }
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "关闭核销数据游标失败: " + e.getMessage());
+        }
+
+        long start = System.nanoTime();
+        verificationService.flushOutcomes(Collections.singletonList(pending), batch.getAsOfDate(), chunkSize);
+        writtenRows += pending.rows();
+        result.merge(pending.getResult());
+        if (batch.clearsDirtyMarks()) {
+            dirtyCustomerTracker.clearProcessed(batch.getDirtyMarks());
+        }
+        checkpointService.markDone(batch, result);
+        flushNanos += System.nanoTime() - start;
+        return new VerificationService.StreamedBatch(result, (int) readRows, (int) writtenRows, flushNanos);
+    }
+
+    /**
+     * 分布式模式下工作节点核销一个批次：先锁住批次检查点确认批次仍待完成，再按流式归并读取、分摊、回写，全部在一个事务中。
+     * 同一批次的消息被重复投递（如工作节点提交后、确认消息前崩溃）时，后到的一次看到检查点已完成，直接返回 null。
+     *
+     * @param chunkSize 回写分块大小（行数）
+     * @return 核销结果；批次已被处理过或已被丢弃时返回 null
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public VerificationService.StreamedBatch processPendingBatch(CustomerBatch batch, int chunkSize) {
+        if (!checkpointService.lockPending(batch.getCheckpointId())) {
+            return null;
+        }
+        return mergeJoinBatch(batch, chunkSize);
+    }
+
+    /**
+     * 按客户顺序逐段消费的有序行流。只保留属于本批次的客户，区间内夹杂的其他客户的行直接跳过。
+     * 客户以名称或 customer_id 标识，与 positions 的键一致。
+     */
+    private static final class CustomerRowStream<T> {
+        private final Iterator<T> rows;
+        private final Function<T, ?> customerOf;
+        private final Map<Object, Integer> positions;
+        private T head;
+        private int headPosition;
+
+        CustomerRowStream(Iterator<T> rows, Function<T, ?> customerOf, Map<Object, Integer> positions) {
+            this.rows = rows;
+            this.customerOf = customerOf;
+            this.positions = positions;
+            advance();
+        }
+
+        /**
+         * 取出批次中第 position 个客户的全部行
+         */
+        List<T> take(int position) {
+            List<T> customerRows = new ArrayList<>();
+            while (head != null && headPosition <= position) {
+                if (headPosition < position) {
+                    throw new IllegalStateException("数据库返回的客户顺序与批次顺序不一致: " + customerOf.apply(head));
+                }
+                customerRows.add(head);
+                advance();
+            }
+            return customerRows;
+        }
+
+        private void advance() {
+            while (rows.hasNext()) {
+                T row = rows.next();
+                Integer position = positions.get(customerOf.apply(row));
+                if (position != null) {
+                    head = row;
+                    headPosition = position;
+                    return;
+                }
+            }
+            head = null;
+        }
+    }
+}
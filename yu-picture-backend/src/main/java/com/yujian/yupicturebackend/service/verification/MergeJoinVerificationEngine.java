@@ -0,0 +1,162 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * 流式归并核销引擎：每个批次由一个线程在一个事务内通过
+ * {@link MergeJoinBatchService#mergeJoinBatch} 完成读取、逐客户分摊与回写。
+ * <p>
+ * 与三段式流水线相比，批次数据不再整批驻留内存，也不在阶段之间排队，内存占用只与最大的单个客户有关；
+ * 代价是同一批次的读取与回写不再与其他批次的分摊重叠。多个批次由线程池并行执行，
+ * 同时在途的批次数有上限，发现阶段因此不会无限超前。
+ * 批次在事务开始前占用其客户的分段锁（见 {@link CustomerStripeLocks}），提交后释放。
+ * <p>
+ * 任一批次失败后不再调度新批次，已提交的批次不回滚，未完成的批次由下一次核销续跑。
+ * 批次的调度、加锁与失败处理也被 {@link SetBasedVerificationEngine} 复用，二者只在单个批次的执行方式上不同。
+ */
+class MergeJoinVerificationEngine implements VerificationEngine {
+
+    private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
+
+    private static final long POLL_MILLIS = 200;
+
+    private final MergeJoinBatchService mergeJoinBatchService;
+    private final VerificationMetrics metrics;
+    private final CustomerStripeLocks stripeLocks;
+    private final VerificationJob job;
+    private final AdaptiveBatchSizer batchSizer;
+    private final ThreadPoolExecutor executor;
+    /**
+     * 同时在途（执行中或排队中）的批次数上限
+     */
+    private final Semaphore inFlight;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<VerificationService.VerificationResult> results = new ConcurrentLinkedQueue<>();
+    private int batchCount;
+
+    MergeJoinVerificationEngine(MergeJoinBatchService mergeJoinBatchService, VerificationMetrics metrics,
+                                CustomerStripeLocks stripeLocks, VerificationJob job, AdaptiveBatchSizer batchSizer,
+                                ThreadPoolExecutor executor, int threads, int queueCapacity) {
+        this.mergeJoinBatchService = mergeJoinBatchService;
+        this.metrics = metrics;
+        this.stripeLocks = stripeLocks;
+        this.job = job;
+        this.batchSizer = batchSizer;
+        this.executor = executor;
+        this.inFlight = new Semaphore(Math.max(threads, 1) + Math.max(queueCapacity, 0));
+    }
+
+    /**
+     * 供改写 {@link #executeBatch} 的子类使用，只复用批次调度
+     */
+    MergeJoinVerificationEngine(VerificationMetrics metrics, CustomerStripeLocks stripeLocks, VerificationJob job,
+                                AdaptiveBatchSizer batchSizer, ThreadPoolExecutor executor, int threads, int queueCapacity) {
+        this(null, metrics, stripeLocks, job, batchSizer, executor, threads, queueCapacity);
+    }
+
+    @Override
+    public List<VerificationService.VerificationResult> run(KeysetBatchCursor cursor, UnaryOperator<CustomerBatch> onDiscovered)
+            throws ExecutionException, InterruptedException {
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            while (failure.get() == null && !job.isCancelRequested() && cursor.hasNext()) {
+                CustomerBatch batch = onDiscovered.apply(cursor.next());
+                job.onBatchDiscovered(batch);
+                if (!acquire()) {
+                    break;
+                }
+                futures.add(executor.submit(() -> process(batch)));
+                batchCount++;
+            }
+            job.onDiscoveryComplete();
+        } catch (RuntimeException e) {
+            fail(e);
+        } finally {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        Throwable cause = failure.get();
+        if (cause != null) {
+            throw new ExecutionException(engineName() + "核销执行失败", cause);
+        }
+        log.info("{}处理 {} 个批次", engineName(), batchCount);
+        return new ArrayList<>(results);
+    }
+
+    @Override
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    private void process(CustomerBatch batch) {
+        CustomerStripeLocks.StripeLease lease = null;
+        try {
+            if (failure.get() != null) {
+                return;
+            }
+            long start = System.nanoTime();
+            lease = stripeLocks.lockBatch(job.getLeaseToken(), batch);
+            VerificationService.StreamedBatch streamed = executeBatch(lease);
+            long elapsed = System.nanoTime() - start;
+            results.add(streamed.getResult());
+            // 读取与分摊交织进行，无法分开计时，统一计入分摊
+            batchSizer.record(batch, 0, elapsed - streamed.getFlushNanos(), streamed.getFlushNanos(),
+                    streamed.getReadRows(), streamed.getWrittenRows());
+            metrics.recordBatch(elapsed);
+            job.onBatchFlushed(batch, streamed.getResult(), streamed.getWrittenRows());
+            log.info("批次 {} 已提交：客户 {} 个，读取 {} 行，核销笔数 {}，本金 {}，利息 {}，回写 {} 行，耗时 {} ms",
+                    batch, batch.size(), streamed.getReadRows(), streamed.getResult().getVerifiedCount(),
+                    streamed.getResult().getTotalPrincipal(), streamed.getResult().getTotalInterest(),
+                    streamed.getWrittenRows(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            stripeLocks.release(lease);
+            inFlight.release();
+        }
+    }
+
+    /**
+     * 在一个事务中核销已加锁的批次
+     */
+    VerificationService.StreamedBatch executeBatch(CustomerStripeLocks.StripeLease lease) {
+        return mergeJoinBatchService.mergeJoinBatch(lease.getBatch(), batchSizer.getFlushChunkSize());
+    }
+
+    String engineName() {
+        return "流式归并";
+    }
+
+    /**
+     * 等待在途批次数低于上限；已有批次失败时放弃并返回 false
+     */
+    private boolean acquire() throws InterruptedException {
+        while (failure.get() == null) {
+            if (inFlight.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void fail(Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+            log.error(engineName() + "核销出错，停止调度剩余批次", e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 堆外列的内存池，快照核销的各列都从这里取段。
+ * <p>
+ * 快照关闭时各列把段交还内存池，不再等 GC 回收缓冲区对象后才释放直接内存：
+ * 不超过保留上限的段留给下一次快照装载复用，超出的段立即释放。
+ * 立即释放依赖 JDK 9 及以上的 Unsafe.invokeCleaner，运行在 JDK 8 上时退回为随缓冲区对象被 GC 回收时释放。
+ * <p>
+ * 同一时刻只有全量核销使用快照，各方法加锁只为防止取段与还段交错。
+ */
+@Component
+public class OffHeapArena implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // JDK 8 没有 invokeCleaner，段的直接内存随缓冲区对象被回收时释放
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /**
+     * 快照关闭后保留供复用的段的总字节数上限
+     */
+    private final long retainBytes;
+    /**
+     * 空闲的段，按段的字节数分组
+     */
+    private final Map<Integer, ArrayDeque<ByteBuffer>> idle = new HashMap<>();
+    private long idleBytes;
+    private long inUseBytes;
+
+    public OffHeapArena(@Value("${verification.snapshot.arena-retain-mb:256}") long retainMb) {
+        this.retainBytes = Math.max(retainMb, 0) << 20;
+    }
+
+    /**
+     * 取一个指定字节数的段，优先复用空闲段；复用的段内容未清零，列只读取已写入的下标
+     */
+    synchronized ByteBuffer acquire(int bytes) {
+        ArrayDeque<ByteBuffer> free = idle.get(bytes);
+        ByteBuffer segment = free == null ? null : free.poll();
+        if (segment != null) {
+            idleBytes -= bytes;
+        } else {
+            segment = ByteBuffer.allocateDirect(bytes);
+        }
+        inUseBytes += bytes;
+        return segment;
+    }
+
+    /**
+     * 交还一个段：保留上限以内留作复用，超出的立即释放
+     */
+    synchronized void recycle(ByteBuffer segment) {
+        int bytes = segment.capacity();
+        inUseBytes -= bytes;
+        if (idleBytes + bytes <= retainBytes) {
+            segment.clear();
+            idle.computeIfAbsent(bytes, key -> new ArrayDeque<>()).push(segment);
+            idleBytes += bytes;
+        } else {
+            free(segment);
+        }
+    }
+
+    /**
+     * 仍被快照占用的字节数
+     */
+    synchronized long getInUseBytes() {
+        return inUseBytes;
+    }
+
+    /**
+     * 留作复用的空闲字节数
+     */
+    synchronized long getIdleBytes() {
+        return idleBytes;
+    }
+
+    /**
+     * 释放全部空闲段
+     */
+    synchronized void trim() {
+        for (ArrayDeque<ByteBuffer> free : idle.values()) {
+            for (ByteBuffer segment : free) {
+                free(segment);
+            }
+        }
+        idle.clear();
+        idleBytes = 0;
+    }
+
+    @Override
+    public void destroy() {
+        trim();
+    }
+
+    private static void free(ByteBuffer segment) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, segment);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("释放堆外段失败，等待 GC 回收: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 堆外列：数据存放在按段分配的直接内存中，堆上只保留每段一个缓冲区对象，
+ * 千万行的列在堆上也只有几百个对象，不会拉长 GC 的标记与复制时间。
+ * 段从 {@link OffHeapArena} 取得，清空列时交还内存池，直接内存的释放不依赖 GC。
+ * <p>
+ * 列只支持追加与按下标读写；追加只在装载线程进行，装载完成后多个线程并发读、按不相交的下标写是安全的。
+ */
+final class OffHeapColumns {
+
+    /**
+     * 每段的元素个数（64K），long 列每段 512 KB
+     */
+    static final int SEGMENT_SHIFT = 16;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private OffHeapColumns() {
+    }
+
+    static final class LongColumn {
+        private final OffHeapArena arena;
+        private final List<ByteBuffer> buffers = new ArrayList<>();
+        private final List<LongBuffer> segments = new ArrayList<>();
+        private int size;
+
+        LongColumn(OffHeapArena arena) {
+            this.arena = arena;
+        }
+
+        void add(long value) {
+            if ((size & SEGMENT_MASK) == 0) {
+                ByteBuffer buffer = arena.acquire(SEGMENT_SIZE * Long.BYTES);
+                buffers.add(buffer);
+                segments.add(buffer.order(ByteOrder.nativeOrder()).asLongBuffer());
+            }
+            segments.get(size >>> SEGMENT_SHIFT).put(size & SEGMENT_MASK, value);
+            size++;
+        }
+
+        long get(int index) {
+            return segments.get(index >>> SEGMENT_SHIFT).get(index & SEGMENT_MASK);
+        }
+
+        int size() {
+            return size;
+        }
+
+        long allocatedBytes() {
+            return (long) segments.size() * SEGMENT_SIZE * Long.BYTES;
+        }
+
+        /**
+         * 把全部段交还内存池
+         */
+        void clear() {
+            recycle(arena, buffers);
+            segments.clear();
+            size = 0;
+        }
+    }
+
+    static final class IntColumn {
+        private final OffHeapArena arena;
+        private final List<ByteBuffer> buffers = new ArrayList<>();
+        private final List<IntBuffer> segments = new ArrayList<>();
+        private int size;
+
+        IntColumn(OffHeapArena arena) {
+            this.arena = arena;
+        }
+
+        void add(int value) {
+            if ((size & SEGMENT_MASK) == 0) {
+                ByteBuffer buffer = arena.acquire(SEGMENT_SIZE * Integer.BYTES);
+                buffers.add(buffer);
+                segments.add(buffer.order(ByteOrder.nativeOrder()).asIntBuffer());
+            }
+            segments.get(size >>> SEGMENT_SHIFT).put(size & SEGMENT_MASK, value);
+            size++;
+        }
+
+        int get(int index) {
+            return segments.get(index >>> SEGMENT_SHIFT).get(index & SEGMENT_MASK);
+        }
+
+        void set(int index, int value) {
+            segments.get(index >>> SEGMENT_SHIFT).put(index & SEGMENT_MASK, value);
+        }
+
+        int size() {
+            return size;
+        }
+
+        long allocatedBytes() {
+            return (long) segments.size() * SEGMENT_SIZE * Integer.BYTES;
+        }
+
+        void clear() {
+            recycle(arena, buffers);
+            segments.clear();
+            size = 0;
+        }
+    }
+
+    private static void recycle(OffHeapArena arena, List<ByteBuffer> buffers) {
+        for (ByteBuffer buffer : buffers) {
+            arena.recycle(buffer);
+        }
+        buffers.clear();
+    }
+}
@@ -0,0 +1,101 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 基于 Redis 的分段租约，集群内各节点共享。
+ * <p>
+ * 每个分段一个哈希键，owner 字段为持有者令牌，count 字段为占用次数，键带过期时间。
+ * 占用、续期与释放各由一段 Lua 脚本批量完成，一个批次无论涉及多少分段都只需一次往返；
+ * 续期与释放先比对令牌，不会误删他人在租约过期后重新占用的分段。
+ * 所有分段键使用同一个哈希标签，在 Redis Cluster 下落在同一个槽位，脚本可以一次操作多个键。
+ */
+class RedisStripeLeaseStore implements StripeLeaseStore {
+
+    private static final RedisScript<List> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local acquired = {}\n"
+                    + "for i, key in ipairs(KEYS) do\n"
+                    + "  local owner = redis.call('hget', key, 'owner')\n"
+                    + "  if not owner or owner == ARGV[1] then\n"
+                    + "    redis.call('hset', key, 'owner', ARGV[1])\n"
+                    + "    redis.call('hincrby', key, 'count', 1)\n"
+                    + "    redis.call('pexpire', key, ARGV[2])\n"
+                    + "    acquired[#acquired + 1] = i\n"
+                    + "  end\n"
+                    + "end\n"
+                    + "return acquired", List.class);
+
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "local renewed = 0\n"
+                    + "for _, key in ipairs(KEYS) do\n"
+                    + "  if redis.call('hget', key, 'owner') == ARGV[1] then\n"
+                    + "    redis.call('pexpire', key, ARGV[2])\n"
+                    + "    renewed = renewed + 1\n"
+                    + "  end\n"
+                    + "end\n"
+                    + "return renewed", Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "local released = 0\n"
+                    + "for _, key in ipairs(KEYS) do\n"
+                    + "  if redis.call('hget', key, 'owner') == ARGV[1] then\n"
+                    + "    if redis.call('hincrby', key, 'count', -1) <= 0 then\n"
+                    + "      redis.call('del', key)\n"
+                    + "    end\n"
+                    + "    released = released + 1\n"
+                    + "  end\n"
+                    + "end\n"
+                    + "return released", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final String keyPrefix;
+
+    RedisStripeLeaseStore(StringRedisTemplate redisTemplate, String keyPrefix) {
+        this.redisTemplate = redisTemplate;
+        this.keyPrefix = "{" + keyPrefix + "}:";
+    }
+
+    @Override
+    public List<Integer> tryAcquire(List<Integer> stripes, String token, long leaseMillis) {
+        if (stripes.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<?> positions = redisTemplate.execute(ACQUIRE_SCRIPT, keys(stripes), token, String.valueOf(leaseMillis));
+        List<Integer> acquired = new ArrayList<>(positions == null ? 0 : positions.size());
+        if (positions != null) {
+            for (Object position : positions) {
+                // Lua 数组下标从 1 开始
+                acquired.add(stripes.get(((Number) position).intValue() - 1));
+            }
+        }
+        return acquired;
+    }
+
+    @Override
+    public void renew(Collection<Integer> stripes, String token, long leaseMillis) {
+        if (!stripes.isEmpty()) {
+            redisTemplate.execute(RENEW_SCRIPT, keys(stripes), token, String.valueOf(leaseMillis));
+        }
+    }
+
+    @Override
+    public void release(Collection<Integer> stripes, String token) {
+        if (!stripes.isEmpty()) {
+            redisTemplate.execute(RELEASE_SCRIPT, keys(stripes), token);
+        }
+    }
+
+    private List<String> keys(Collection<Integer> stripes) {
+        List<String> keys = new ArrayList<>(stripes.size());
+        for (Integer stripe : stripes) {
+            keys.add(keyPrefix + stripe);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,61 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.mapper.VerificationAllocationMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 库内集合运算核销的单批次执行，由 {@link SetBasedVerificationEngine} 调用
+ */
+@Service
+public class SetBasedBatchService {
+
+    private final VerificationAllocationMapper allocationMapper;
+    private final DirtyCustomerTracker dirtyCustomerTracker;
+    private final VerificationCheckpointService checkpointService;
+
+    public SetBasedBatchService(VerificationAllocationMapper allocationMapper,
+                                DirtyCustomerTracker dirtyCustomerTracker,
+                                VerificationCheckpointService checkpointService) {
+        this.allocationMapper = allocationMapper;
+        this.dirtyCustomerTracker = dirtyCustomerTracker;
+        this.checkpointService = checkpointService;
+    }
+
+    /**
+     * 库内集合运算核销一个批次：分摊由 {@link VerificationAllocationMapper} 中的窗口函数在数据库内完成，
+     * 暂存、回写两张表、汇总与检查点在同一个事务中，应用不读取任何收款单或租金计划行。
+     *
+     * @param rangeScan 是否按名称区间扫描；区间批次中有客户被分段锁推迟时须为 false，改按剩余客户的名称列表执行，
+     *                  不能碰被推迟客户的行
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public VerificationService.StreamedBatch setBasedBatch(CustomerBatch batch, boolean rangeScan) {
+        long start = System.nanoTime();
+        List<String> customerNames = batch.getCustomerNames();
+        VerificationService.VerificationResult result = new VerificationService.VerificationResult();
+        int writtenRows = 0;
+        if (!customerNames.isEmpty()) {
+            boolean contiguous = rangeScan && batch.isContiguous();
+            List<String> nameList = contiguous ? null : customerNames;
+            String first = batch.getFirstCustomer();
+            String last = batch.getLastCustomer();
+            Date asOfDate = batch.getAsOfDate();
+            if (allocationMapper.stageAllocations(contiguous, first, last, nameList, asOfDate) > 0) {
+                writtenRows += allocationMapper.applyScheduleAllocations(contiguous, first, last, nameList, asOfDate);
+                writtenRows += allocationMapper.applyReceiptAllocations(contiguous, first, last, nameList);
+                result = allocationMapper.sumStagedAllocations(contiguous, first, last, nameList);
+                allocationMapper.deleteStagedAllocations(contiguous, first, last, nameList);
+            }
+        }
+        if (batch.clearsDirtyMarks()) {
+            dirtyCustomerTracker.clearProcessed(batch.getDirtyMarks());
+        }
+        checkpointService.markDone(batch, result);
+        // 库内执行不向应用传输数据行，以改写的行数作为批次规模，耗时全部计入回写
+        return new VerificationService.StreamedBatch(result, writtenRows, writtenRows, System.nanoTime() - start);
+    }
+}
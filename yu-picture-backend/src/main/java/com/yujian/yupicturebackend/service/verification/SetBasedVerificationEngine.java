@@ -0,0 +1,33 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 库内集合运算核销引擎：每个批次由 {@link SetBasedBatchService#setBasedBatch} 在一个事务内用窗口函数计算分摊，
+ * 再以 UPDATE ... JOIN 一次性回写，收款单与租金计划不经过应用内存，也没有逐客户的往返。
+ * <p>
+ * 批次调度、在途上限、分段锁与失败处理与 {@link MergeJoinVerificationEngine} 相同。
+ * 区间批次中有客户被分段锁推迟时，改按剩余客户的名称列表执行，不会改写被推迟客户的行。
+ * 依赖 MySQL 8 的窗口函数与多表 UPDATE。
+ */
+class SetBasedVerificationEngine extends MergeJoinVerificationEngine {
+
+    private final SetBasedBatchService setBasedBatchService;
+
+    SetBasedVerificationEngine(SetBasedBatchService setBasedBatchService, VerificationMetrics metrics,
+                               CustomerStripeLocks stripeLocks, VerificationJob job, AdaptiveBatchSizer batchSizer,
+                               ThreadPoolExecutor executor, int threads, int queueCapacity) {
+        super(metrics, stripeLocks, job, batchSizer, executor, threads, queueCapacity);
+        this.setBasedBatchService = setBasedBatchService;
+    }
+
+    @Override
+    VerificationService.StreamedBatch executeBatch(CustomerStripeLocks.StripeLease lease) {
+        return setBasedBatchService.setBasedBatch(lease.getBatch(), lease.getDeferred().isEmpty());
+    }
+
+    @Override
+    String engineName() {
+        return "库内集合运算";
+    }
+}
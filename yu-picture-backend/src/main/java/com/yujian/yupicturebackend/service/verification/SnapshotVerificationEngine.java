@@ -0,0 +1,240 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * 快照核销引擎，用于夜间全量核销。
+ * <p>
+ * 不再按批次发起成千上万次小查询，而是先发现并登记全部批次，
+ * 再把全部待核销行一次装入堆外列式快照（见 {@link ColumnarSnapshot}），
+ * 由 fork/join 线程池按批次（客户区间）并行分摊，每个批次只把发生变化的行交给回写线程池，一个批次一个事务，连同检查点一起提交。
+ * 回写积压达到上限时分摊线程等待，堆上同时存在的变更行有上限。
+ * <p>
+ * 分段锁逐批次占用：分摊前占用该批次客户的分段，回写提交（或失败）后立即释放，单客户核销只在其客户所在批次分摊与回写期间被推迟。
+ * 快照在占用分段之前装载，装载后被其他核销改动过的行由回写前的版本号核对发现，冲突客户按库中最新数据重新核销，不会覆盖他人的改动。
+ * 新到的收款单不影响快照：它们只会新增行，由下一次增量核销处理。
+ * <p>
+ * 任一批次失败后不再分摊新批次，已提交的批次不回滚，未完成的批次由下一次核销续跑。
+ */
+class SnapshotVerificationEngine implements VerificationEngine {
+
+    private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
+
+    private final VerificationService verificationService;
+    private final ColumnarSnapshotLoader snapshotLoader;
+    private final VerificationMetrics metrics;
+    private final CustomerStripeLocks stripeLocks;
+    private final VerificationJob job;
+    private final AdaptiveBatchSizer batchSizer;
+    private final int parallelism;
+    private final ThreadPoolExecutor writerExecutor;
+    /**
+     * 已分摊、尚未提交的批次数上限
+     */
+    private final Semaphore pendingWrites;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<VerificationService.VerificationResult> results = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Future<?>> writes = new ConcurrentLinkedQueue<>();
+    private final List<CustomerBatch> batches = new ArrayList<>();
+
+    SnapshotVerificationEngine(VerificationService verificationService, ColumnarSnapshotLoader snapshotLoader,
+                               VerificationMetrics metrics, CustomerStripeLocks stripeLocks, VerificationJob job, AdaptiveBatchSizer batchSizer,
+                               int parallelism, ThreadPoolExecutor writerExecutor, int writerThreads, int queueCapacity) {
+        this.verificationService = verificationService;
+        this.snapshotLoader = snapshotLoader;
+        this.metrics = metrics;
+        this.stripeLocks = stripeLocks;
+        this.job = job;
+        this.batchSizer = batchSizer;
+        this.parallelism = Math.max(parallelism, 1);
+        this.writerExecutor = writerExecutor;
+        this.pendingWrites = new Semaphore(Math.max(writerThreads, 1) + Math.max(queueCapacity, 0));
+    }
+
+    @Override
+    public List<VerificationService.VerificationResult> run(KeysetBatchCursor cursor, UnaryOperator<CustomerBatch> onDiscovered)
+            throws ExecutionException, InterruptedException {
+        try {
+            // 1. 发现并登记全部批次
+            while (!job.isCancelRequested() && cursor.hasNext()) {
+                CustomerBatch batch = onDiscovered.apply(cursor.next());
+                job.onBatchDiscovered(batch);
+                batches.add(batch);
+            }
+            job.onDiscoveryComplete();
+            if (batches.isEmpty() || job.isCancelRequested()) {
+                return new ArrayList<>(results);
+            }
+
+            // 2. 一次装载全部待核销行
+            long start = System.nanoTime();
+            try (ColumnarSnapshot snapshot = snapshotLoader.loadSnapshot(job.getAsOfDate())) {
+                log.info("快照装载完成：客户 {} 个，收款单 {} 行，租金计划 {} 行，堆外内存 {} MB，耗时 {} ms",
+                        snapshot.getCustomerCount(), snapshot.getReceiptRows(), snapshot.getScheduleRows(),
+                        snapshot.getOffHeapBytes() >> 20, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+                // 3. 按批次并行分摊，变化的行交给回写线程池
+                ForkJoinPool pool = new ForkJoinPool(parallelism, SnapshotVerificationEngine::newWorker, null, false);
+                try {
+                    pool.invoke(new AllocateTask(snapshot, 0, batches.size()));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        } catch (RuntimeException e) {
+            fail(e);
+        } finally {
+            // 每个回写任务在自己的 finally 中释放分段锁，这里只等待全部回写结束
+            awaitWrites();
+        }
+
+        Throwable cause = failure.get();
+        if (cause != null) {
+            throw new ExecutionException("快照核销执行失败", cause);
+        }
+        log.info("快照核销处理 {} 个批次", batches.size());
+        return new ArrayList<>(results);
+    }
+
+    @Override
+    public int getBatchCount() {
+        return batches.size();
+    }
+
+    /**
+     * 占用批次的分段、分摊并提交回写；在分摊线程上执行。
+     * 回写任务提交成功后分段锁交给回写任务释放，此前任何一步失败都在这里释放
+     */
+    private void allocate(ColumnarSnapshot snapshot, CustomerBatch discovered) {
+        if (failure.get() != null || job.isCancelRequested()) {
+            return;
+        }
+        CustomerStripeLocks.StripeLease lease = null;
+        boolean handedOff = false;
+        try {
+            long start = System.nanoTime();
+            lease = stripeLocks.lockBatch(job.getLeaseToken(), discovered);
+            CustomerBatch batch = lease.getBatch();
+            VerificationService.ProcessingOutcome outcome = snapshot.allocate(batch.getCustomerNames());
+            long computeNanos = System.nanoTime() - start;
+            pendingWrites.acquire();
+            try {
+                CustomerStripeLocks.StripeLease held = lease;
+                writes.add(writerExecutor.submit(() -> write(batch, held, outcome, start, computeNanos)));
+                handedOff = true;
+            } finally {
+                if (!handedOff) {
+                    pendingWrites.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            if (!handedOff) {
+                stripeLocks.release(lease);
+            }
+        }
+    }
+
+    private void write(CustomerBatch batch, CustomerStripeLocks.StripeLease lease,
+                       VerificationService.ProcessingOutcome outcome, long startNanos, long computeNanos) {
+        try {
+            if (failure.get() != null) {
+                return;
+            }
+            VerificationService.VerificationResult result = outcome.getResult();
+            int rows = outcome.getUpdatedSchedules().size() + outcome.getUpdatedReceipts().size();
+            long flushStart = System.nanoTime();
+            verificationService.flushBatches(Collections.singletonList(batch), Collections.singletonList(outcome),
+                    batchSizer.getFlushChunkSize());
+            long end = System.nanoTime();
+            results.add(result);
+            metrics.recordBatch(end - startNanos);
+            job.onBatchFlushed(batch, result, rows);
+            log.info("批次 {} 已提交：客户 {} 个，核销笔数 {}，本金 {}，利息 {}，回写 {} 行，耗时 分摊 {} ms / 回写 {} ms",
+                    batch, batch.size(), result.getVerifiedCount(), result.getTotalPrincipal(), result.getTotalInterest(),
+                    rows, TimeUnit.NANOSECONDS.toMillis(computeNanos), TimeUnit.NANOSECONDS.toMillis(end - flushStart));
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            try {
+                stripeLocks.release(lease);
+            } finally {
+                pendingWrites.release();
+            }
+        }
+    }
+
+    /**
+     * 等待全部已提交的回写结束；单个回写异常记为失败后继续等待其余回写，不会因此提前返回
+     */
+    private void awaitWrites() throws InterruptedException {
+        for (Future<?> write : writes) {
+            try {
+                write.get();
+            } catch (ExecutionException e) {
+                fail(e.getCause());
+            } catch (CancellationException e) {
+                fail(e);
+            }
+        }
+    }
+
+    private void fail(Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+            log.error("快照核销出错，停止分摊剩余批次", e);
+        }
+    }
+
+    private static ForkJoinWorkerThread newWorker(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("verification-snapshot-" + thread.getPoolIndex());
+        return thread;
+    }
+
+    /**
+     * 把 [from, to) 范围内的批次二分拆给 fork/join 线程，叶子任务分摊单个批次
+     */
+    private final class AllocateTask extends RecursiveAction {
+        private final ColumnarSnapshot snapshot;
+        private final int from;
+        private final int to;
+
+        AllocateTask(ColumnarSnapshot snapshot, int from, int to) {
+            this.snapshot = snapshot;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                allocate(snapshot, batches.get(from));
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new AllocateTask(snapshot, from, mid), new AllocateTask(snapshot, mid, to));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 客户分段锁的租约存储。每个分段同一时刻只属于一个持有者（令牌），租约到期自动释放，
+ * 持有者进程崩溃也不会永久占住分段。
+ * <p>
+ * 分段可被同一令牌重复占用并记录占用次数，全部释放后分段才空出。同一次核销运行的各个批次共用一个令牌，
+ * 批次之间客户互不重叠，哈希到同一分段时不必互相推迟。
+ */
+interface StripeLeaseStore {
+
+    /**
+     * 尝试占用一组分段，不等待；分段已属于同一令牌时占用次数加一
+     *
+     * @param stripes 分段编号，按升序排列
+     * @return 成功占用的分段编号；其余分段属于其他持有者
+     */
+    List<Integer> tryAcquire(List<Integer> stripes, String token, long leaseMillis);
+
+    /**
+     * 延长仍属于该令牌的分段的租约
+     */
+    void renew(Collection<Integer> stripes, String token, long leaseMillis);
+
+    /**
+     * 释放一次占用，占用次数归零的分段空出；租约已过期并被他人占用的分段保持不变
+     */
+    void release(Collection<Integer> stripes, String token);
+}
@@ -0,0 +1,280 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Delivery;
+import com.yujian.yupicturebackend.domain.VerificationBatch;
+import com.yujian.yupicturebackend.model.dto.verification.VerificationBatchMessage;
+import com.yujian.yupicturebackend.model.dto.verification.VerificationBatchReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分布式核销的工作节点：从持久化的批次工作队列消费批次描述，在本节点核销后把结果发回协调节点的回复队列。
+ * <p>
+ * 每个消费者使用独立的信道，按 basicQos 预取消息并手动确认，消费者数即本节点并发核销的批次数；
+ * 预取数限制每个消费者手上未确认的批次数，Broker 据此把批次公平分发给空闲的节点。
+ * 批次提交、结果发出并得到 Broker 确认之后才确认消息，节点在此之前崩溃或断开时，Broker 把未确认的批次重新投递给其他节点；
+ * 重复投递的批次在检查点行锁上判重，不会重复回写。
+ * <p>
+ * 核销失败（如死锁、锁等待超时）的批次不会中断整次核销：按已处理次数转入逐级加长延迟的重试队列，
+ * 延迟到期后死信回工作队列重新投递；超过最大处理次数的批次转入停放队列，
+ * 由 {@link VerificationDeadLetterMonitor} 查看与重放。
+ * <p>
+ * 只在 verification.distributed.worker.enabled=true 时启用，协调节点本身也可以同时作为工作节点。
+ */
+@Component
+@ConditionalOnProperty(prefix = "verification.distributed.worker", name = "enabled", havingValue = "true")
+public class VerificationBatchWorker implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
+
+    private static final long CONFIRM_TIMEOUT_MILLIS = 10_000;
+
+    private final ConnectionFactory connectionFactory;
+    private final MergeJoinBatchService mergeJoinBatchService;
+    private final VerificationCheckpointService checkpointService;
+    private final CustomerStripeLocks stripeLocks;
+    private final VerificationMetrics metrics;
+    private final String batchQueue;
+    private final int consumers;
+    private final int prefetch;
+    /**
+     * 批次最多处理的次数（含首次），达到后转入停放队列
+     */
+    private final int maxAttempts;
+    /**
+     * 各级重试队列的延迟，第 n 次失败进入第 n 级，超出级数的沿用最后一级
+     */
+    private final long[] retryDelaysMillis;
+    private final String workerName = ManagementFactory.getRuntimeMXBean().getName();
+
+    private ExecutorService consumerExecutor;
+    private Connection connection;
+    private volatile boolean running;
+
+    public VerificationBatchWorker(@Qualifier("verificationMqConnectionFactory") ConnectionFactory connectionFactory,
+                                   MergeJoinBatchService mergeJoinBatchService,
+                                   VerificationCheckpointService checkpointService,
+                                   CustomerStripeLocks stripeLocks,
+                                   VerificationMetrics metrics,
+                                   @Value("${verification.distributed.batch-queue:verification.batch.priority}") String batchQueue,
+                                   @Value("${verification.distributed.worker.consumers:2}") int consumers,
+                                   @Value("${verification.distributed.worker.prefetch:1}") int prefetch,
+                                   @Value("${verification.distributed.retry.max-attempts:4}") int maxAttempts,
+                                   @Value("${verification.distributed.retry.delays-seconds:5,30,120}") long[] retryDelaysSeconds) {
+        this.connectionFactory = connectionFactory;
+        this.mergeJoinBatchService = mergeJoinBatchService;
+        this.checkpointService = checkpointService;
+        this.stripeLocks = stripeLocks;
+        this.metrics = metrics;
+        this.batchQueue = batchQueue;
+        this.consumers = Math.max(consumers, 1);
+        this.prefetch = Math.max(prefetch, 1);
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.retryDelaysMillis = new long[retryDelaysSeconds.length];
+        for (int i = 0; i < retryDelaysSeconds.length; i++) {
+            this.retryDelaysMillis[i] = TimeUnit.SECONDS.toMillis(Math.max(retryDelaysSeconds[i], 1));
+        }
+    }
+
+    @Override
+    public void start() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        // 每个信道的消息在一个线程上串行分发，线程数与消费者数相同
+        consumerExecutor = Executors.newFixedThreadPool(consumers,
+                r -> new Thread(r, "verification-worker-" + threadIndex.incrementAndGet()));
+        try {
+            connection = connectionFactory.newConnection(consumerExecutor, "verification-worker-" + workerName);
+            for (int i = 0; i < consumers; i++) {
+                Channel channel = connection.createChannel();
+                VerificationQueues.declareBatchQueue(channel, batchQueue);
+                VerificationQueues.declareRetryQueues(channel, batchQueue, retryDelaysMillis);
+                VerificationQueues.declareParkingQueue(channel, batchQueue);
+                // 失败批次转投重试 / 停放队列后要等 Broker 确认才能确认原消息
+                channel.confirmSelect();
+                channel.basicQos(prefetch);
+                channel.basicConsume(batchQueue, false,
+                        (consumerTag, delivery) -> handle(channel, delivery), consumerTag -> {
+                        });
+            }
+        } catch (IOException | TimeoutException e) {
+            stop();
+            throw new IllegalStateException("核销工作节点连接 RabbitMQ 失败", e);
+        }
+        running = true;
+        log.info("核销工作节点 {} 已启动，消费队列 {}，消费者 {} 个，预取 {}，批次最多处理 {} 次，重试延迟 {} ms",
+                workerName, batchQueue, consumers, prefetch, maxAttempts, Arrays.toString(retryDelaysMillis));
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        // 关闭连接后未确认的批次由 Broker 重新投递给其他节点
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException | RuntimeException e) {
+                log.warn("关闭核销工作节点连接失败: {}", e.getMessage());
+            }
+            connection = null;
+        }
+        if (consumerExecutor != null) {
+            consumerExecutor.shutdown();
+            consumerExecutor = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    void handle(Channel channel, Delivery delivery) throws IOException {
+        VerificationBatchMessage message;
+        try {
+            message = VerificationQueues.decodeMessage(delivery.getBody());
+        } catch (RuntimeException e) {
+            // 无法解析的消息重试也不会成功，原样停放
+            log.error("无法解析的批次消息，转入停放队列", e);
+            channel.basicPublish("", VerificationQueues.parkingQueue(batchQueue), parkedProperties(delivery), delivery.getBody());
+            awaitConfirms(channel);
+            channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
+            return;
+        }
+        VerificationBatchReply reply = process(message, delivery.getEnvelope().isRedeliver());
+        if (reply.getErrorMessage() != null) {
+            routeFailure(channel, delivery, message, reply);
+        }
+        String replyTo = delivery.getProperties().getReplyTo();
+        if (replyTo != null) {
+            AMQP.BasicProperties replyProperties = new AMQP.BasicProperties.Builder()
+                    .contentType("application/json")
+                    .correlationId(delivery.getProperties().getCorrelationId())
+                    .build();
+            channel.basicPublish("", replyTo, replyProperties, VerificationQueues.encode(reply));
+            awaitConfirms(channel);
+        }
+        // 回复得到 Broker 确认后再确认原消息；在此之前断开，批次会被重新投递，在检查点上判重后按检查点结果重新回复
+        channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
+    }
+
+    /**
+     * 失败的批次按已处理次数转入对应级别的重试队列，延迟后死信回工作队列重新投递；
+     * 次数耗尽时转入停放队列。转投得到 Broker 确认后才确认原消息，两者之间崩溃最多多出一次重试。
+     */
+    private void routeFailure(Channel channel, Delivery delivery, VerificationBatchMessage message,
+                              VerificationBatchReply reply) throws IOException {
+        int attempt = reply.getAttempt();
+        message.setLastError(reply.getErrorMessage());
+        message.setLastWorker(workerName);
+        if (attempt < maxAttempts && retryDelaysMillis.length > 0) {
+            int tier = Math.min(attempt - 1, retryDelaysMillis.length - 1);
+            message.setAttempt(attempt + 1);
+            channel.basicPublish("", VerificationQueues.retryQueue(batchQueue, tier), delivery.getProperties(),
+                    VerificationQueues.encode(message));
+            awaitConfirms(channel);
+            reply.setRetrying(true);
+            metrics.recordBatchFailure("retry");
+            log.warn("批次 {} 第 {} 次处理失败，{} ms 后重试: {}", message.getCheckpointId(), attempt,
+                    retryDelaysMillis[tier], reply.getErrorMessage());
+        } else {
+            channel.basicPublish("", VerificationQueues.parkingQueue(batchQueue), parkedProperties(delivery),
+                    VerificationQueues.encode(message));
+            awaitConfirms(channel);
+            reply.setParked(true);
+            metrics.recordBatchFailure("parked");
+            log.error("批次 {} 已处理 {} 次仍失败，转入停放队列: {}", message.getCheckpointId(), attempt,
+                    reply.getErrorMessage());
+        }
+    }
+
+    private VerificationBatchReply process(VerificationBatchMessage message, boolean redeliver) {
+        VerificationBatchReply reply = new VerificationBatchReply();
+        reply.setWorker(workerName);
+        reply.setRunId(message.getRunId());
+        reply.setCheckpointId(message.getCheckpointId());
+        reply.setAttempt(message.getAttempt() == null ? 1 : message.getAttempt());
+        long start = System.nanoTime();
+        CustomerStripeLocks.StripeLease lease = null;
+        try {
+            CustomerBatch batch = VerificationQueues.toBatch(message);
+            int chunkSize = message.getFlushChunkSize() == null ? 0 : message.getFlushChunkSize();
+            // 分段锁在事务外加锁、提交后释放，与本节点及其他节点的单客户核销互斥
+            String leaseToken = message.getLeaseToken() != null ? message.getLeaseToken()
+                    : CustomerStripeLocks.runToken(message.getRunId(), null);
+            lease = stripeLocks.lockBatch(leaseToken, batch);
+            VerificationService.StreamedBatch streamed = mergeJoinBatchService.processPendingBatch(lease.getBatch(), chunkSize);
+            if (streamed == null) {
+                fillFromCheckpoint(reply, message.getCheckpointId());
+                log.info("批次 {} 已被处理过（重复投递: {}），跳过", batch, redeliver);
+                return reply;
+            }
+            reply.setProcessed(true);
+            reply.setVerifiedCount(streamed.getResult().getVerifiedCount());
+            reply.setTotalPrincipal(streamed.getResult().getTotalPrincipal());
+            reply.setTotalInterest(streamed.getResult().getTotalInterest());
+            reply.setReadRows(streamed.getReadRows());
+            reply.setWrittenRows(streamed.getWrittenRows());
+            reply.setFlushNanos(streamed.getFlushNanos());
+        } catch (RuntimeException e) {
+            log.error("核销工作节点第 {} 次处理批次 {} 失败", reply.getAttempt(), reply.getCheckpointId(), e);
+            reply.setErrorMessage(Objects.toString(e.getMessage(), e.getClass().getName()));
+        } finally {
+            stripeLocks.release(lease);
+        }
+        reply.setProcessNanos(System.nanoTime() - start);
+        return reply;
+    }
+
+    private static AMQP.BasicProperties parkedProperties(Delivery delivery) {
+        return delivery.getProperties().builder()
+                .timestamp(new Date())
+                .build();
+    }
+
+    /**
+     * 等待本信道已发布的消息得到 Broker 确认；确认失败时信道关闭，未确认的原消息由 Broker 重新投递
+     */
+    private static void awaitConfirms(Channel channel) throws IOException {
+        try {
+            channel.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待 Broker 确认时被中断", e);
+        } catch (TimeoutException e) {
+            throw new IOException("等待 Broker 确认超时", e);
+        }
+    }
+
+    /**
+     * 批次已完成时把检查点上记录的结果发回，协调节点丢失了首次结果也能正常汇总
+     */
+    private void fillFromCheckpoint(VerificationBatchReply reply, Long checkpointId) {
+        reply.setProcessed(false);
+        VerificationBatch record = checkpointService.getBatch(checkpointId);
+        if (record != null && Objects.equals(record.getStatus(), VerificationCheckpointService.BATCH_DONE)) {
+            reply.setVerifiedCount(record.getVerifiedCount());
+            reply.setTotalPrincipal(record.getTotalPrincipal());
+            reply.setTotalInterest(record.getTotalInterest());
+        }
+    }
+}
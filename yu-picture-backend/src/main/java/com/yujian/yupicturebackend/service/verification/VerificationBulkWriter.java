@@ -0,0 +1,166 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.exception.ErrorCode;
+import com.yujian.yupicturebackend.mapper.BankReceiptMapper;
+import com.yujian.yupicturebackend.mapper.RentScheduleMapper;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 核销结果的批量回写。
+ * <p>
+ * updateBatchById 每行一条 UPDATE，并改写实体上所有非空列；核销实际只改动已收本金、已收利息、已用金额与状态。
+ * 这里每个分块只发一条 UPDATE ... CASE id 语句，只写核销内核记录过变更（{@link ChangedColumns}）的列，
+ * 往返次数、binlog 体积与锁持有时间都随之减少。
+ * 行按主键升序写入，并发回写的事务按同一顺序加锁，降低死锁概率。
+ * <p>
+ * 核销从读取到回写之间有数秒的计算窗口，期间录入或人工更正可能改动同一行。回写前先按主键升序锁定待写的行并核对版本号，
+ * 版本号已变化的行所属客户整体不写入（一个客户的收款单与租金计划必须一起回写），交由调用方重新核销；
+ * 写入语句本身也核对版本号并加 1，不会覆盖他人的改动。
+ */
+@Component
+public class VerificationBulkWriter {
+
+    private final RentScheduleMapper rentScheduleMapper;
+    private final BankReceiptMapper bankReceiptMapper;
+    private final VerificationMetrics metrics;
+
+    public VerificationBulkWriter(RentScheduleMapper rentScheduleMapper, BankReceiptMapper bankReceiptMapper,
+                                  VerificationMetrics metrics) {
+        this.rentScheduleMapper = rentScheduleMapper;
+        this.bankReceiptMapper = bankReceiptMapper;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 回写若干个完整客户的变更行，需在调用方的事务中执行。
+     * 先锁定全部待写的行并核对版本号，再写入版本号一致的客户；冲突客户的行保持不变，锁仍由本事务持有直到提交。
+     *
+     * @return 因版本号不一致而未写入的客户名称
+     */
+    Set<String> write(List<RentSchedule> schedules, List<BankReceipt> receipts, int chunkSize) {
+        List<RentSchedule> changedSchedules = new ArrayList<>(schedules.size());
+        for (RentSchedule schedule : schedules) {
+            if (schedule.getChangedColumns() != 0) {
+                changedSchedules.add(schedule);
+            }
+        }
+        changedSchedules.sort(Comparator.comparing(RentSchedule::getId));
+        List<BankReceipt> changedReceipts = new ArrayList<>(receipts.size());
+        for (BankReceipt receipt : receipts) {
+            if (receipt.getChangedColumns() != 0) {
+                changedReceipts.add(receipt);
+            }
+        }
+        changedReceipts.sort(Comparator.comparing(BankReceipt::getId));
+
+        Set<String> conflicted = new HashSet<>();
+        for (int i = 0; i < changedSchedules.size(); i += chunkSize) {
+            List<RentSchedule> chunk = changedSchedules.subList(i, Math.min(i + chunkSize, changedSchedules.size()));
+            List<Long> ids = new ArrayList<>(chunk.size());
+            for (RentSchedule schedule : chunk) {
+                ids.add(schedule.getId());
+            }
+            Map<Long, Integer> versions = new HashMap<>(chunk.size() * 2);
+            for (RentSchedule locked : rentScheduleMapper.selectVersionsForUpdate(ids)) {
+                versions.put(locked.getId(), locked.getVersion());
+            }
+            for (RentSchedule schedule : chunk) {
+                if (!Objects.equals(versions.get(schedule.getId()), schedule.getVersion())) {
+                    conflicted.add(schedule.getLesseeName());
+                }
+            }
+        }
+        for (int i = 0; i < changedReceipts.size(); i += chunkSize) {
+            List<BankReceipt> chunk = changedReceipts.subList(i, Math.min(i + chunkSize, changedReceipts.size()));
+            List<Long> ids = new ArrayList<>(chunk.size());
+            for (BankReceipt receipt : chunk) {
+                ids.add(receipt.getId());
+            }
+            Map<Long, Integer> versions = new HashMap<>(chunk.size() * 2);
+            for (BankReceipt locked : bankReceiptMapper.selectVersionsForUpdate(ids)) {
+                versions.put(locked.getId(), locked.getVersion());
+            }
+            for (BankReceipt receipt : chunk) {
+                if (!Objects.equals(versions.get(receipt.getId()), receipt.getVersion())) {
+                    conflicted.add(receipt.getPayerName());
+                }
+            }
+        }
+        if (!conflicted.isEmpty()) {
+            changedSchedules.removeIf(schedule -> conflicted.contains(schedule.getLesseeName()));
+            changedReceipts.removeIf(receipt -> conflicted.contains(receipt.getPayerName()));
+        }
+        writeSchedules(changedSchedules, chunkSize);
+        writeReceipts(changedReceipts, chunkSize);
+        return conflicted;
+    }
+
+    /**
+     * 按分块回写已按主键排序、已核对过版本号的租金计划
+     */
+    private void writeSchedules(List<RentSchedule> changed, int chunkSize) {
+        for (int i = 0; i < changed.size(); i += chunkSize) {
+            List<RentSchedule> chunk = changed.subList(i, Math.min(i + chunkSize, changed.size()));
+            List<RentSchedule> interestRows = new ArrayList<>();
+            List<RentSchedule> principalRows = new ArrayList<>();
+            List<RentSchedule> statusRows = new ArrayList<>();
+            for (RentSchedule schedule : chunk) {
+                int columns = schedule.getChangedColumns();
+                if (ChangedColumns.has(columns, ChangedColumns.INTEREST_RECEIVED)) {
+                    interestRows.add(schedule);
+                }
+                if (ChangedColumns.has(columns, ChangedColumns.PRINCIPAL_RECEIVED)) {
+                    principalRows.add(schedule);
+                }
+                if (ChangedColumns.has(columns, ChangedColumns.STATUS)) {
+                    statusRows.add(schedule);
+                }
+            }
+            long start = System.nanoTime();
+            int updated = rentScheduleMapper.updateVerifiedColumns(chunk, interestRows, principalRows, statusRows);
+            metrics.recordScheduleFlush(System.nanoTime() - start, chunk.size());
+            if (updated != chunk.size()) {
+                // 行已在本事务中锁定并核对过版本号，不应再出现不一致
+                throw new BusinessException(ErrorCode.SYSTEM_ERROR, "回写租金计划时版本号不一致，预期 " + chunk.size() + " 行，实际 " + updated + " 行");
+            }
+        }
+    }
+
+    /**
+     * 按分块回写已按主键排序、已核对过版本号的收款单
+     */
+    private void writeReceipts(List<BankReceipt> changed, int chunkSize) {
+        for (int i = 0; i < changed.size(); i += chunkSize) {
+            List<BankReceipt> chunk = changed.subList(i, Math.min(i + chunkSize, changed.size()));
+            List<BankReceipt> usedRows = new ArrayList<>();
+            List<BankReceipt> statusRows = new ArrayList<>();
+            for (BankReceipt receipt : chunk) {
+                int columns = receipt.getChangedColumns();
+                if (ChangedColumns.has(columns, ChangedColumns.USED_AMOUNT)) {
+                    usedRows.add(receipt);
+                }
+                if (ChangedColumns.has(columns, ChangedColumns.STATUS)) {
+                    statusRows.add(receipt);
+                }
+            }
+            long start = System.nanoTime();
+            int updated = bankReceiptMapper.updateVerifiedColumns(chunk, usedRows, statusRows);
+            metrics.recordReceiptFlush(System.nanoTime() - start, chunk.size());
+            if (updated != chunk.size()) {
+                throw new BusinessException(ErrorCode.SYSTEM_ERROR, "回写收款单时版本号不一致，预期 " + chunk.size() + " 行，实际 " + updated + " 行");
+            }
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.yujian.yupicturebackend.domain.VerificationBatch;
+import com.yujian.yupicturebackend.domain.VerificationRun;
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.exception.ErrorCode;
+import com.yujian.yupicturebackend.mapper.VerificationBatchMapper;
+import com.yujian.yupicturebackend.mapper.VerificationRunMapper;
+import com.yujian.yupicturebackend.model.enums.VerificationModeEnum;
+import com.yujian.yupicturebackend.model.enums.VerificationRunStatusEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 核销运行记录与批次检查点。
+ * <p>
+ * 每次核销在 verification_run 中有一条运行记录，发现的每个批次在 verification_batch 中登记为待完成，
+ * 批次回写与“已完成”标记在同一个事务中提交。进程中断、运行失败或被取消后，下一次同模式的核销会续跑该记录：
+ * 全量核销从第一个未完成批次的起始客户继续发现，之前已提交的区间不再扫描；
+ * 增量核销的进度本身就保存在脏客户集合中，续跑时从头读取剩余的脏客户即可。
+ * <p>
+ * 批次重试是幂等的：核销总是基于库中最新的已用金额与已收金额计算，未提交的批次没有留下任何变更，
+ * 已提交批次中的客户也不会再被发现查询选中。
+ * <p>
+ * 多个节点共用同一个库时，运行记录以 owner_token 标识当前持有节点：每次开始或续跑生成新令牌，
+ * 续跑与状态更新都以“令牌未变”为条件，两个节点同时续跑同一条记录只有一个能成功。
+ * 持有节点定期刷新 heartbeat_time，心跳未超过失效时长的运行中记录属于其他存活节点，既不续跑也不放弃。
+ * 心跳时间取应用服务器时钟，各节点时钟偏差需远小于失效时长。
+ */
+@Service
+public class VerificationCheckpointService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
+
+    static final int BATCH_PENDING = 0;
+    static final int BATCH_DONE = 1;
+    private static final int ERROR_MESSAGE_MAX_LENGTH = 500;
+    /**
+     * 可续跑的运行状态：运行中（进程中断遗留）、失败、已取消
+     */
+    private static final List<String> UNFINISHED_STATUSES = Arrays.asList(
+            VerificationRunStatusEnum.RUNNING.getValue(),
+            VerificationRunStatusEnum.FAILED.getValue(),
+            VerificationRunStatusEnum.CANCELLED.getValue());
+
+    private final VerificationRunMapper runMapper;
+    private final VerificationBatchMapper batchMapper;
+    /**
+     * 是否续跑未完成的运行，关闭时遗留的运行直接标记为已放弃
+     */
+    private final boolean resumeEnabled;
+    /**
+     * 运行中记录的心跳超过该时长未更新，视为持有节点已退出
+     */
+    private final long staleMillis;
+    /**
+     * 本节点持有的运行及其令牌，由心跳线程定期刷新
+     */
+    private final Map<Long, String> ownedRuns = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeat;
+
+    public VerificationCheckpointService(VerificationRunMapper runMapper,
+                                         VerificationBatchMapper batchMapper,
+                                         @Value("${verification.resume-enabled:true}") boolean resumeEnabled,
+                                         @Value("${verification.run.heartbeat-seconds:10}") long heartbeatSeconds,
+                                         @Value("${verification.run.stale-seconds:60}") long staleSeconds) {
+        this.runMapper = runMapper;
+        this.batchMapper = batchMapper;
+        this.resumeEnabled = resumeEnabled;
+        long heartbeatMillis = TimeUnit.SECONDS.toMillis(Math.max(heartbeatSeconds, 1));
+        // 失效时长至少是心跳间隔的三倍，偶尔一次心跳延迟不会让存活的运行被接管
+        this.staleMillis = Math.max(TimeUnit.SECONDS.toMillis(staleSeconds), heartbeatMillis * 3);
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "verification-run-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::beat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 开始一次核销：该模式最近一次未完成的运行截止日相同时续跑，否则新建运行记录。
+     * 按模式查找未完成的运行：其他模式的运行在此之后完成，不影响本模式遗留运行的续跑。
+     * 截止日不同的运行不能续跑：已提交的批次按原截止日核销，续跑会让同一次运行的客户按不同的截止日分摊。
+     * 同一模式的核销在进程内串行执行，其他模式正在进行的运行由调用方通过 activeRunIds 排除；
+     * 除此之外仍处于运行中的记录，心跳未失效的属于其他节点，本次触发失败，心跳已失效的是退出节点遗留的，可以续跑或放弃。
+     * 新建运行时该模式遗留的未完成运行一并标记为已放弃。
+     *
+     * @param asOfDate     应收日期截止日（包含），为空时不限
+     * @param activeRunIds 本进程中正在进行的运行
+     */
+    public VerificationRun startOrResume(VerificationModeEnum mode, Date asOfDate, Collection<Long> activeRunIds) {
+        QueryWrapper<VerificationRun> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("mode", mode.getValue())
+                .in("status", UNFINISHED_STATUSES)
+                .notIn(!activeRunIds.isEmpty(), "id", activeRunIds)
+                .orderByDesc("id").last("LIMIT 1");
+        VerificationRun last = runMapper.selectOne(queryWrapper);
+        Date now = new Date();
+        Date staleBefore = new Date(now.getTime() - staleMillis);
+        if (last != null) {
+            if (isLive(last, staleBefore)) {
+                log.warn("{}运行 {} 正由其他节点执行，最近心跳 {}", mode.getText(), last.getId(), last.getHeartbeatTime());
+                throw new BusinessException(ErrorCode.OPERATION_ERROR, "其他节点正在执行" + mode.getText() + "任务，请稍后再试");
+            }
+            if (resumeEnabled && sameAsOfDate(asOfDate, last.getAsOfDate())) {
+                String ownerToken = newOwnerToken();
+                // 以读到的状态与令牌为条件接管，其他节点抢先续跑（或原持有节点恢复心跳）时更新不到任何行
+                UpdateWrapper<VerificationRun> updateWrapper = new UpdateWrapper<>();
+                updateWrapper.eq("id", last.getId())
+                        .eq("status", last.getStatus())
+                        .eq(last.getOwnerToken() != null, "owner_token", last.getOwnerToken())
+                        .isNull(last.getOwnerToken() == null, "owner_token")
+                        .and(w -> w.ne("status", VerificationRunStatusEnum.RUNNING.getValue())
+                                .or().isNull("heartbeat_time")
+                                .or().lt("heartbeat_time", staleBefore))
+                        .set("status", VerificationRunStatusEnum.RUNNING.getValue())
+                        .set("resume_count", last.getResumeCount() + 1)
+                        .set("owner_token", ownerToken)
+                        .set("heartbeat_time", now)
+                        .set("error_message", null)
+                        .set("end_time", null);
+                if (runMapper.update(null, updateWrapper) == 0) {
+                    log.warn("{}运行 {} 已被其他节点接管", mode.getText(), last.getId());
+                    throw new BusinessException(ErrorCode.OPERATION_ERROR, "其他节点正在执行" + mode.getText() + "任务，请稍后再试");
+                }
+                last.setStatus(VerificationRunStatusEnum.RUNNING.getValue());
+                last.setResumeCount(last.getResumeCount() + 1);
+                last.setOwnerToken(ownerToken);
+                last.setHeartbeatTime(now);
+                ownedRuns.put(last.getId(), ownerToken);
+                log.info("续跑未完成的核销运行 {}，首次开始于 {}，第 {} 次续跑", last.getId(), last.getStartTime(), last.getResumeCount());
+                return last;
+            }
+            // 只放弃已失效的运行，其他节点心跳正常的运行不受影响
+            UpdateWrapper<VerificationRun> abandonWrapper = new UpdateWrapper<>();
+            abandonWrapper.eq("mode", mode.getValue())
+                    .in("status", UNFINISHED_STATUSES)
+                    .notIn(!activeRunIds.isEmpty(), "id", activeRunIds)
+                    .and(w -> w.ne("status", VerificationRunStatusEnum.RUNNING.getValue())
+                            .or().isNull("heartbeat_time")
+                            .or().lt("heartbeat_time", staleBefore))
+                    .set("status", VerificationRunStatusEnum.ABANDONED.getValue())
+                    .set("error_message", "被新的" + mode.getText() + "取代")
+                    .set("end_time", now);
+            int abandoned = runMapper.update(null, abandonWrapper);
+            log.warn("放弃未完成的{}运行 {} 条，最近一条为 {}", mode.getText(), abandoned, last.getId());
+        }
+
+        VerificationRun run = new VerificationRun();
+        run.setMode(mode.getValue());
+        run.setAsOfDate(asOfDate);
+        run.setStatus(VerificationRunStatusEnum.RUNNING.getValue());
+        run.setResumeCount(0);
+        run.setBatchCount(0);
+        run.setVerifiedCount(0);
+        run.setTotalPrincipal(BigDecimal.ZERO);
+        run.setTotalInterest(BigDecimal.ZERO);
+        // 截断到秒，与 DATETIME 列精度一致，续跑时读回的开始时间不变
+        run.setStartTime(new Date(now.getTime() / 1000 * 1000));
+        run.setOwnerToken(newOwnerToken());
+        run.setHeartbeatTime(now);
+        runMapper.insert(run);
+        ownedRuns.put(run.getId(), run.getOwnerToken());
+        return run;
+    }
+
+    /**
+     * 最近一次已完成的全量核销的开始时间，从未完成过时返回 null。
+     * 带截止日的全量核销只覆盖部分租金计划，不计入兜底。
+     */
+    public Date findLastFullSweepStart() {
+        QueryWrapper<VerificationRun> queryWrapper = new QueryWrapper<>();
+        queryWrapper.eq("mode", VerificationModeEnum.FULL.getValue())
+                .eq("status", VerificationRunStatusEnum.COMPLETED.getValue())
+                .isNull("as_of_date")
+                .orderByDesc("id").last("LIMIT 1");
+        VerificationRun last = runMapper.selectOne(queryWrapper);
+        return last != null ? last.getStartTime() : null;
+    }
+
+    /**
+     * 续跑全量核销时的发现起点（包含）。
+     * 有未完成批次时取其中最小的起始客户；全部批次都已完成时取区间批次最大的结束客户；新运行返回 null 表示从头开始。
+     * 大客户专属批次先于区间批次调度，其客户名与区间发现的进度无关，不能作为已完成的边界；
+     * 未完成的专属批次仍计入最小起点，保证续跑时即使该客户不再是大客户，也会被区间发现重新覆盖。
+     * 未完成批次的记录随后删除，续跑时按新发现的区间重新登记。
+     */
+    String prepareResume(VerificationRun run) {
+        String firstPending = selectBoundary("MIN(first_customer)", run.getId(), BATCH_PENDING, false);
+        String startCustomer = firstPending != null ? firstPending
+                : selectBoundary("MAX(last_customer)", run.getId(), BATCH_DONE, true);
+        QueryWrapper<VerificationBatch> deleteWrapper = new QueryWrapper<>();
+        deleteWrapper.eq("run_id", run.getId()).eq("status", BATCH_PENDING);
+        int dropped = batchMapper.delete(deleteWrapper);
+        if (startCustomer != null) {
+            log.info("核销运行 {} 从客户 {} 继续，丢弃未完成批次 {} 个", run.getId(), startCustomer, dropped);
+        }
+        return startCustomer;
+    }
+
+    /**
+     * 登记一个新发现的批次，返回带检查点 id 的批次
+     */
+    CustomerBatch register(VerificationRun run, CustomerBatch batch) {
+        VerificationBatch record = new VerificationBatch();
+        record.setRunId(run.getId());
+        record.setFirstCustomer(batch.getFirstCustomer());
+        record.setLastCustomer(batch.getLastCustomer());
+        record.setCustomerCount(batch.size());
+        record.setDedicated(batch.isDedicated() ? 1 : 0);
+        record.setPriority(batch.getPriority().getLevel());
+        record.setStatus(BATCH_PENDING);
+        batchMapper.insert(record);
+        return batch.withCheckpointId(record.getId()).withAsOfDate(run.getAsOfDate()).withOwnerToken(run.getOwnerToken());
+    }
+
+    /**
+     * 标记批次已完成，需在批次回写的事务中调用。
+     * 以登记批次时的 owner_token 仍是运行的当前令牌为条件：运行已被其他节点接管（续跑时未完成的检查点已被删除或改由新令牌登记）时
+     * 抛出异常，整个批次的回写随事务回滚，由接管节点重新核销
+     */
+    void markDone(CustomerBatch batch, VerificationService.VerificationResult result) {
+        if (batch.getCheckpointId() == null) {
+            return;
+        }
+        UpdateWrapper<VerificationBatch> updateWrapper = new UpdateWrapper<>();
+        updateWrapper.eq("id", batch.getCheckpointId())
+                .exists(batch.getOwnerToken() != null, "SELECT 1 FROM verification_run WHERE verification_run.id = verification_batch.run_id"
+                        + " AND verification_run.owner_token = {0}", batch.getOwnerToken())
+                .set("status", BATCH_DONE)
+                .set("verified_count", result.getVerifiedCount())
+                .set("total_principal", result.getTotalPrincipal())
+                .set("total_interest", result.getTotalInterest());
+        if (batchMapper.update(null, updateWrapper) == 0) {
+            log.warn("批次 {} 所属运行已被其他节点接管，本次回写回滚", batch.getCheckpointId());
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "核销运行已被其他节点接管，批次 " + batch.getCheckpointId() + " 不再提交");
+        }
+    }
+
+    /**
+     * 锁住批次检查点并确认其仍待完成，需在批次回写的事务中、读取批次数据之前调用。
+     * 分布式模式下同一批次的消息可能被重复投递，两次处理在检查点行锁上串行，后到的一次看到批次已完成（或已被续跑丢弃）即放弃，
+     * 不会重复回写。
+     */
+    boolean lockPending(Long checkpointId) {
+        QueryWrapper<VerificationBatch> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("status").eq("id", checkpointId).last("FOR UPDATE");
+        List<Object> values = batchMapper.selectObjs(queryWrapper);
+        return !values.isEmpty() && values.get(0) != null && ((Number) values.get(0)).intValue() == BATCH_PENDING;
+    }
+
+    VerificationBatch getBatch(Long checkpointId) {
+        return batchMapper.selectById(checkpointId);
+    }
+
+    /**
+     * 运行正常结束（完成或被取消），汇总所有已完成批次（包括中断前提交的批次）的结果。
+     * 被取消的运行保留未完成的检查点，下一次同模式的核销从未完成的批次续跑。
+     * 运行已被其他节点接管时不改写记录，以接管节点的结果为准。
+     */
+    VerificationRun complete(VerificationRun run, VerificationRunStatusEnum status) {
+        VerificationRun totals = batchMapper.summarizeDoneBatches(run.getId());
+        ownedRuns.remove(run.getId());
+        UpdateWrapper<VerificationRun> updateWrapper = new UpdateWrapper<>();
+        updateWrapper.eq("id", run.getId())
+                .eq("owner_token", run.getOwnerToken())
+                .set("status", status.getValue())
+                .set("batch_count", totals.getBatchCount())
+                .set("verified_count", totals.getVerifiedCount())
+                .set("total_principal", totals.getTotalPrincipal())
+                .set("total_interest", totals.getTotalInterest())
+                .set("end_time", new Date());
+        if (runMapper.update(null, updateWrapper) == 0) {
+            log.warn("核销运行 {} 已被其他节点接管，本节点的{}状态不再记录", run.getId(), status.getText());
+        }
+        return totals;
+    }
+
+    /**
+     * 运行失败，保留检查点供下一次续跑
+     */
+    void fail(VerificationRun run, Throwable cause) {
+        ownedRuns.remove(run.getId());
+        finish(run, VerificationRunStatusEnum.FAILED, Objects.toString(cause.getMessage(), cause.getClass().getName()));
+    }
+
+    VerificationRun getRun(Long runId) {
+        return runMapper.selectById(runId);
+    }
+
+    @Override
+    public void destroy() {
+        heartbeat.shutdownNow();
+    }
+
+    private void finish(VerificationRun run, VerificationRunStatusEnum status, String message) {
+        UpdateWrapper<VerificationRun> updateWrapper = new UpdateWrapper<>();
+        updateWrapper.eq("id", run.getId())
+                .eq("owner_token", run.getOwnerToken())
+                .set("status", status.getValue())
+                .set("error_message", StrUtil.maxLength(message, ERROR_MESSAGE_MAX_LENGTH))
+                .set("end_time", new Date());
+        if (runMapper.update(null, updateWrapper) == 0) {
+            log.warn("核销运行 {} 已被其他节点接管，本节点的{}状态不再记录", run.getId(), status.getText());
+        }
+    }
+
+    /**
+     * 刷新本节点持有的运行的心跳；令牌已变说明运行被其他节点接管，不再刷新
+     */
+    private void beat() {
+        Date now = new Date();
+        for (Map.Entry<Long, String> owned : ownedRuns.entrySet()) {
+            try {
+                UpdateWrapper<VerificationRun> updateWrapper = new UpdateWrapper<>();
+                updateWrapper.eq("id", owned.getKey())
+                        .eq("owner_token", owned.getValue())
+                        .set("heartbeat_time", now);
+                if (runMapper.update(null, updateWrapper) == 0) {
+                    ownedRuns.remove(owned.getKey(), owned.getValue());
+                    log.warn("核销运行 {} 已被其他节点接管，停止心跳", owned.getKey());
+                }
+            } catch (RuntimeException e) {
+                log.warn("刷新核销运行 {} 的心跳失败: {}", owned.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    private static boolean isLive(VerificationRun run, Date staleBefore) {
+        return VerificationRunStatusEnum.RUNNING.getValue().equals(run.getStatus())
+                && run.getHeartbeatTime() != null && !run.getHeartbeatTime().before(staleBefore);
+    }
+
+    private static String newOwnerToken() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    private String selectBoundary(String aggregate, Long runId, int status, boolean rangeOnly) {
+        QueryWrapper<VerificationBatch> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select(aggregate).eq("run_id", runId).eq("status", status).eq(rangeOnly, "dedicated", 0)
+                .eq(rangeOnly, "priority", 0);
+        List<Object> values = batchMapper.selectObjs(queryWrapper);
+        return values.isEmpty() || values.get(0) == null ? null : values.get(0).toString();
+    }
+
+    private static boolean sameAsOfDate(Date requested, Date recorded) {
+        if (requested == null || recorded == null) {
+            return requested == recorded;
+        }
+        return DateUtil.isSameDay(requested, recorded);
+    }
+}
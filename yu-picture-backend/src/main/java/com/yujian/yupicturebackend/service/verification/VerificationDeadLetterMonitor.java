@@ -0,0 +1,141 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.GetResponse;
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.exception.ErrorCode;
+import com.yujian.yupicturebackend.model.dto.verification.VerificationBatchMessage;
+import com.yujian.yupicturebackend.model.vo.VerificationParkedBatchVO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 分布式核销停放队列（死信队列）的运维视图：查看重试耗尽的批次，排除故障后把批次重放回工作队列。
+ * <p>
+ * 查看时逐条取出消息但不确认，关闭信道后消息原样退回队列；重放的批次处理次数从 1 重新计数，
+ * 得到 Broker 确认后才从停放队列删除。批次对应的检查点已完成或已被续跑丢弃时，工作节点会直接跳过，重放是安全的。
+ */
+@Service
+public class VerificationDeadLetterMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
+
+    private static final long CONFIRM_TIMEOUT_MILLIS = 10_000;
+
+    private final ConnectionFactory connectionFactory;
+    private final String batchQueue;
+
+    public VerificationDeadLetterMonitor(@Qualifier("verificationMqConnectionFactory") ConnectionFactory connectionFactory,
+                                         @Value("${verification.distributed.batch-queue:verification.batch.priority}") String batchQueue) {
+        this.connectionFactory = connectionFactory;
+        this.batchQueue = batchQueue;
+    }
+
+    /**
+     * 查看停放队列中的批次，按停放先后最多返回 limit 个
+     */
+    public List<VerificationParkedBatchVO> listParked(int limit) {
+        List<VerificationParkedBatchVO> parked = new ArrayList<>();
+        try (Connection connection = connectionFactory.newConnection("verification-dead-letter-monitor");
+             Channel channel = connection.createChannel()) {
+            VerificationQueues.declareParkingQueue(channel, batchQueue);
+            while (parked.size() < limit) {
+                GetResponse response = channel.basicGet(VerificationQueues.parkingQueue(batchQueue), false);
+                if (response == null) {
+                    break;
+                }
+                parked.add(toVO(response));
+            }
+            // 不确认，信道关闭后消息退回停放队列
+        } catch (IOException | TimeoutException e) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "读取核销停放队列失败: " + e.getMessage());
+        }
+        return parked;
+    }
+
+    /**
+     * 把停放的批次重放回工作队列
+     *
+     * @param checkpointId 只重放该检查点的批次，为空时重放全部
+     * @return 重放的批次数
+     */
+    public int replayParked(Long checkpointId) {
+        int replayed = 0;
+        try (Connection connection = connectionFactory.newConnection("verification-dead-letter-monitor");
+             Channel channel = connection.createChannel()) {
+            VerificationQueues.declareBatchQueue(channel, batchQueue);
+            int remaining = VerificationQueues.declareParkingQueue(channel, batchQueue).getMessageCount();
+            channel.confirmSelect();
+            // 只扫描当前已有的消息，未命中的消息保持未确认，信道关闭后退回停放队列
+            for (; remaining > 0; remaining--) {
+                GetResponse response = channel.basicGet(VerificationQueues.parkingQueue(batchQueue), false);
+                if (response == null) {
+                    break;
+                }
+                VerificationBatchMessage message = decode(response);
+                if (message == null || (checkpointId != null && !Objects.equals(checkpointId, message.getCheckpointId()))) {
+                    continue;
+                }
+                message.setAttempt(1);
+                // 原协调节点已不再等待该批次，重放的批次不再发回结果，以检查点为准
+                AMQP.BasicProperties properties = response.getProps().builder()
+                        .replyTo(null)
+                        .build();
+                channel.basicPublish("", batchQueue, properties, VerificationQueues.encode(message));
+                channel.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MILLIS);
+                channel.basicAck(response.getEnvelope().getDeliveryTag(), false);
+                replayed++;
+                log.info("停放批次 {} 已重放回工作队列，上次失败: {}", message.getCheckpointId(), message.getLastError());
+            }
+        } catch (IOException | TimeoutException e) {
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "重放核销停放批次失败，已重放 " + replayed + " 个: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "重放核销停放批次被中断，已重放 " + replayed + " 个");
+        }
+        return replayed;
+    }
+
+    private static VerificationParkedBatchVO toVO(GetResponse response) {
+        VerificationParkedBatchVO vo = new VerificationParkedBatchVO();
+        vo.setParkedTime(response.getProps().getTimestamp());
+        VerificationBatchMessage message = decode(response);
+        if (message == null) {
+            vo.setLastError("无法解析的批次消息");
+            return vo;
+        }
+        vo.setCheckpointId(message.getCheckpointId());
+        vo.setRunId(message.getRunId());
+        List<String> customerNames = message.getCustomerNames();
+        if (customerNames != null && !customerNames.isEmpty()) {
+            vo.setFirstCustomer(customerNames.get(0));
+            vo.setLastCustomer(customerNames.get(customerNames.size() - 1));
+            vo.setCustomerCount(customerNames.size());
+        }
+        vo.setDedicated(message.getDedicated());
+        vo.setAttempts(message.getAttempt());
+        vo.setLastError(message.getLastError());
+        vo.setLastWorker(message.getLastWorker());
+        return vo;
+    }
+
+    private static VerificationBatchMessage decode(GetResponse response) {
+        try {
+            return VerificationQueues.decodeMessage(response.getBody());
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
+
+/**
+ * 核销执行引擎：消费批次游标，逐批核销并提交。每次核销创建一个实例，不可复用。
+ */
+interface VerificationEngine {
+
+    /**
+     * 在调用线程上执行批次发现，并驱动各批次核销直至全部完成
+     *
+     * @param onDiscovered 批次开始执行前的处理，用于登记批次检查点
+     * @return 每个提交事务的核销结果
+     */
+    List<VerificationService.VerificationResult> run(KeysetBatchCursor cursor, UnaryOperator<CustomerBatch> onDiscovered)
+            throws ExecutionException, InterruptedException;
+
+    /**
+     * 已调度的批次数
+     */
+    int getBatchCount();
+}
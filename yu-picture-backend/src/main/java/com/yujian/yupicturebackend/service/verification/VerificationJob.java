@@ -0,0 +1,277 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.VerificationRun;
+import com.yujian.yupicturebackend.model.enums.VerificationModeEnum;
+import com.yujian.yupicturebackend.model.enums.VerificationRunStatusEnum;
+import com.yujian.yupicturebackend.model.vo.VerificationBatchResultVO;
+import com.yujian.yupicturebackend.model.vo.VerificationJobVO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次异步核销任务的运行时状态：进度计数、取消标记、完成结果与事件流订阅者。
+ * <p>
+ * 计数由流水线的发现线程与回写线程更新，进度查询可以在任意线程读取。
+ * 事件推送交给专用的推送线程执行，回写线程只负责投递，不会因为客户端网络慢而阻塞在 send 上。
+ */
+public class VerificationJob {
+
+    private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
+
+    private static final String EVENT_BATCH = "batch";
+    private static final String EVENT_DONE = "done";
+
+    private final Long jobId;
+    /**
+     * 批次分段租约的令牌，由运行 id 与本次持有运行的令牌组成
+     */
+    private final String leaseToken;
+    private final VerificationModeEnum mode;
+    private final boolean resumed;
+    private final Date asOfDate;
+    private final Date startTime;
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicBoolean cancelRequested = new AtomicBoolean(false);
+    private volatile VerificationRunStatusEnum status = VerificationRunStatusEnum.RUNNING;
+    private volatile String errorMessage;
+    private volatile boolean discoveryComplete;
+    private volatile Date endTime;
+
+    private final AtomicLong discoveredCustomers = new AtomicLong();
+    private final AtomicLong discoveredBatches = new AtomicLong();
+    private final AtomicLong completedCustomers = new AtomicLong();
+    private final AtomicLong completedBatches = new AtomicLong();
+    private final AtomicLong writtenRows = new AtomicLong();
+    /**
+     * 本次执行的核销结果累计，回写线程并发合并，读写均加锁
+     */
+    private final VerificationService.VerificationResult totals = new VerificationService.VerificationResult();
+
+    private final CompletableFuture<VerificationOrchestrator.VerificationSummary> completion = new CompletableFuture<>();
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    /**
+     * 事件推送线程，单线程保证事件顺序
+     */
+    private final Executor eventExecutor;
+
+    VerificationJob(VerificationRun run, VerificationModeEnum mode, Executor eventExecutor) {
+        this.jobId = run.getId();
+        this.leaseToken = CustomerStripeLocks.runToken(run.getId(), run.getOwnerToken());
+        this.eventExecutor = eventExecutor;
+        this.mode = mode;
+        this.resumed = run.getResumeCount() != null && run.getResumeCount() > 0;
+        this.asOfDate = run.getAsOfDate();
+        this.startTime = new Date();
+    }
+
+    public Long getJobId() {
+        return jobId;
+    }
+
+    String getLeaseToken() {
+        return leaseToken;
+    }
+
+    /**
+     * 应收日期截止日，为空时不限
+     */
+    public Date getAsOfDate() {
+        return asOfDate;
+    }
+
+    public VerificationRunStatusEnum getStatus() {
+        return status;
+    }
+
+    /**
+     * 任务结束时完成，结果为本次执行的核销汇总；失败时以异常结束
+     */
+    public CompletableFuture<VerificationOrchestrator.VerificationSummary> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * 请求取消：不再调度新的批次，已进入流水线的批次照常处理完
+     */
+    boolean requestCancel() {
+        return status == VerificationRunStatusEnum.RUNNING && cancelRequested.compareAndSet(false, true);
+    }
+
+    boolean isCancelRequested() {
+        return cancelRequested.get();
+    }
+
+    void onBatchDiscovered(CustomerBatch batch) {
+        discoveredBatches.incrementAndGet();
+        discoveredCustomers.addAndGet(batch.size());
+    }
+
+    void onDiscoveryComplete() {
+        discoveryComplete = true;
+    }
+
+    void onBatchFlushed(CustomerBatch batch, VerificationService.VerificationResult result, int rows) {
+        completedBatches.incrementAndGet();
+        completedCustomers.addAndGet(batch.size());
+        writtenRows.addAndGet(rows);
+        synchronized (totals) {
+            totals.merge(result);
+        }
+        if (!emitters.isEmpty()) {
+            VerificationBatchResultVO batchResultVO = new VerificationBatchResultVO();
+            batchResultVO.setBatchId(batch.getCheckpointId());
+            batchResultVO.setFirstCustomer(batch.getFirstCustomer());
+            batchResultVO.setLastCustomer(batch.getLastCustomer());
+            batchResultVO.setCustomerCount(batch.size());
+            batchResultVO.setPriority(batch.getPriority().getValue());
+            batchResultVO.setVerifiedCount(result.getVerifiedCount());
+            batchResultVO.setTotalPrincipal(result.getTotalPrincipal());
+            batchResultVO.setTotalInterest(result.getTotalInterest());
+            try {
+                eventExecutor.execute(() -> broadcast(EVENT_BATCH, batchResultVO));
+            } catch (RejectedExecutionException e) {
+                // 推送积压已满，丢弃本批事件；进度仍可通过查询接口获得，结束事件不受影响
+                log.debug("核销任务 {} 的事件推送积压，丢弃批次 {} 的事件", jobId, batch.getCheckpointId());
+            }
+        }
+    }
+
+    void succeed(VerificationRunStatusEnum finalStatus, VerificationOrchestrator.VerificationSummary summary) {
+        finish(finalStatus, null);
+        completion.complete(summary);
+    }
+
+    void fail(Throwable cause) {
+        finish(VerificationRunStatusEnum.FAILED, cause.getMessage());
+        completion.completeExceptionally(cause);
+    }
+
+    private void finish(VerificationRunStatusEnum finalStatus, String message) {
+        this.errorMessage = message;
+        this.endTime = new Date();
+        this.status = finalStatus;
+        VerificationJobVO jobVO = toVO();
+        Runnable done = () -> {
+            for (SseEmitter emitter : emitters) {
+                send(emitter, EVENT_DONE, jobVO);
+                emitter.complete();
+            }
+            emitters.clear();
+        };
+        try {
+            // 排在已投递的逐批事件之后，保证结束事件最后到达
+            eventExecutor.execute(done);
+        } catch (RejectedExecutionException e) {
+            // 推送积压已满时直接推送，结束事件不能丢失，否则订阅者要等到超时才会断开
+            done.run();
+        }
+    }
+
+    /**
+     * 订阅逐批核销结果；任务已结束时只推送一次最终状态
+     */
+    SseEmitter subscribe(long timeoutMillis) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitters.add(emitter);
+        // 注册之后再检查状态，避免与 finish 交错时漏掉结束事件
+        if (status != VerificationRunStatusEnum.RUNNING && emitters.remove(emitter)) {
+            send(emitter, EVENT_DONE, toVO());
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    private void broadcast(String eventName, Object data) {
+        for (SseEmitter emitter : emitters) {
+            send(emitter, eventName, data);
+        }
+    }
+
+    private void send(SseEmitter emitter, String eventName, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(eventName).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // 客户端断开不影响核销本身
+            log.debug("核销任务 {} 的事件推送失败，移除订阅: {}", jobId, e.getMessage());
+            emitters.remove(emitter);
+        }
+    }
+
+    public VerificationJobVO toVO() {
+        VerificationJobVO jobVO = new VerificationJobVO();
+        jobVO.setJobId(jobId);
+        jobVO.setMode(mode.getValue());
+        jobVO.setStatus(status.getValue());
+        jobVO.setResumed(resumed);
+        jobVO.setAsOfDate(asOfDate);
+        jobVO.setCancelRequested(cancelRequested.get());
+        jobVO.setDiscoveryComplete(discoveryComplete);
+        long discovered = discoveredCustomers.get();
+        long completed = completedCustomers.get();
+        jobVO.setDiscoveredCustomers(discovered);
+        jobVO.setCompletedCustomers(completed);
+        jobVO.setDiscoveredBatches(discoveredBatches.get());
+        jobVO.setCompletedBatches(completedBatches.get());
+        jobVO.setWrittenRows(writtenRows.get());
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        if (endTime != null) {
+            elapsedSeconds = (endTime.getTime() - startTime.getTime()) / 1000.0;
+        }
+        jobVO.setElapsedSeconds(elapsedSeconds);
+        if (elapsedSeconds > 0) {
+            jobVO.setRowsPerSecond(writtenRows.get() / elapsedSeconds);
+        }
+        // 发现结束后客户总数才确定，按已完成客户的速率估算剩余时间
+        if (discoveryComplete && status == VerificationRunStatusEnum.RUNNING && completed > 0) {
+            double customersPerSecond = completed / elapsedSeconds;
+            jobVO.setEtaSeconds((long) Math.ceil((discovered - completed) / customersPerSecond));
+        }
+        synchronized (totals) {
+            jobVO.setVerifiedCount(totals.getVerifiedCount());
+            jobVO.setTotalPrincipal(totals.getTotalPrincipal());
+            jobVO.setTotalInterest(totals.getTotalInterest());
+        }
+        jobVO.setErrorMessage(errorMessage);
+        jobVO.setStartTime(startTime);
+        jobVO.setEndTime(endTime);
+        return jobVO;
+    }
+
+    /**
+     * 由持久化的运行记录构造进度，用于查询已不在内存中的历史任务
+     */
+    static VerificationJobVO toVO(VerificationRun run) {
+        VerificationJobVO jobVO = new VerificationJobVO();
+        jobVO.setJobId(run.getId());
+        jobVO.setMode(run.getMode());
+        jobVO.setStatus(run.getStatus());
+        jobVO.setResumed(run.getResumeCount() != null && run.getResumeCount() > 0);
+        jobVO.setAsOfDate(run.getAsOfDate());
+        jobVO.setCompletedBatches(run.getBatchCount() == null ? null : run.getBatchCount().longValue());
+        jobVO.setVerifiedCount(run.getVerifiedCount());
+        jobVO.setTotalPrincipal(run.getTotalPrincipal() != null ? run.getTotalPrincipal() : BigDecimal.ZERO);
+        jobVO.setTotalInterest(run.getTotalInterest() != null ? run.getTotalInterest() : BigDecimal.ZERO);
+        jobVO.setErrorMessage(run.getErrorMessage());
+        jobVO.setStartTime(run.getStartTime());
+        jobVO.setEndTime(run.getEndTime());
+        if (run.getStartTime() != null && run.getEndTime() != null) {
+            jobVO.setElapsedSeconds((run.getEndTime().getTime() - run.getStartTime().getTime()) / 1000.0);
+        }
+        return jobVO;
+    }
+}
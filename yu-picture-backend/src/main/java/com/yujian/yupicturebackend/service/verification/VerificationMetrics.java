@@ -0,0 +1,231 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 核销流程的运行指标，经 Actuator 暴露在管理端口的 /actuator/prometheus 供抓取。
+ * <p>
+ * 按阶段计时：整次运行、客户发现查询、批次的收款单 / 租金计划查询、逐客户分摊、每个回写分块的 UPDATE，以及批次从读取到提交的总耗时；
+ * 按表计数核销处理的客户数与回写的行数；并导出各核销线程池的队列深度与活跃线程数。
+ * 对照各阶段耗时与线程池排队情况即可判断瓶颈所在，不需要在生产环境挂分析器。
+ */
+@Component
+public class VerificationMetrics {
+
+    /**
+     * 不注册到任何后端的空实现，供脱离 Spring 容器构造的服务（如单元测试、基准测试）使用
+     */
+    static final VerificationMetrics NOOP = new VerificationMetrics(new CompositeMeterRegistry());
+
+    static final String RUN_TIMER = "verification.run";
+    static final String DISCOVERY_TIMER = "verification.discovery";
+    static final String BATCH_TIMER = "verification.batch";
+    static final String CUSTOMER_COUNTER = "verification.customers";
+    static final String ROWS_WRITTEN_COUNTER = "verification.rows.written";
+
+    static final String TABLE_BANK_RECEIPT = "bank_receipt";
+    static final String TABLE_RENT_SCHEDULE = "rent_schedule";
+
+    private final MeterRegistry registry;
+    private final Timer receiptSelectTimer;
+    private final Timer scheduleSelectTimer;
+    private final Timer customerAllocationTimer;
+    private final Timer receiptFlushTimer;
+    private final Timer scheduleFlushTimer;
+    private final Counter customerCounter;
+    private final Counter receiptRowCounter;
+    private final Counter scheduleRowCounter;
+
+    @Autowired
+    public VerificationMetrics(MeterRegistry registry,
+                               @Qualifier("verificationExecutor") ThreadPoolExecutor verificationExecutor,
+                               @Qualifier("verificationReaderExecutor") ThreadPoolExecutor readerExecutor,
+                               @Qualifier("verificationWriterExecutor") ThreadPoolExecutor writerExecutor,
+                               @Qualifier("verificationJobExecutor") ThreadPoolExecutor jobExecutor) {
+        this(registry);
+        bindExecutor("compute", verificationExecutor);
+        bindExecutor("reader", readerExecutor);
+        bindExecutor("writer", writerExecutor);
+        bindExecutor("job", jobExecutor);
+    }
+
+    private VerificationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.receiptSelectTimer = selectTimer(TABLE_BANK_RECEIPT);
+        this.scheduleSelectTimer = selectTimer(TABLE_RENT_SCHEDULE);
+        this.customerAllocationTimer = Timer.builder("verification.customer.allocation")
+                .description("单个客户的内存分摊耗时")
+                .register(registry);
+        this.receiptFlushTimer = flushTimer(TABLE_BANK_RECEIPT);
+        this.scheduleFlushTimer = flushTimer(TABLE_RENT_SCHEDULE);
+        this.customerCounter = Counter.builder(CUSTOMER_COUNTER)
+                .description("已分摊的客户数")
+                .register(registry);
+        this.receiptRowCounter = rowCounter(TABLE_BANK_RECEIPT);
+        this.scheduleRowCounter = rowCounter(TABLE_RENT_SCHEDULE);
+    }
+
+    /**
+     * 记录一次客户发现查询
+     *
+     * @param query 查询类型：workload（全量区间发现）、whale（大客户）、dirty（增量脏客户）
+     */
+    <T> T timeDiscovery(String query, Supplier<T> supplier) {
+        return Timer.builder(DISCOVERY_TIMER)
+                .description("客户发现查询耗时")
+                .tag("query", query)
+                .register(registry)
+                .record(supplier);
+    }
+
+    <T> T timeReceiptSelect(Supplier<T> supplier) {
+        return receiptSelectTimer.record(supplier);
+    }
+
+    <T> T timeScheduleSelect(Supplier<T> supplier) {
+        return scheduleSelectTimer.record(supplier);
+    }
+
+    /**
+     * 记录一个客户的分摊
+     */
+    <T> T timeCustomerAllocation(Supplier<T> supplier) {
+        T outcome = customerAllocationTimer.record(supplier);
+        customerCounter.increment();
+        return outcome;
+    }
+
+    /**
+     * 记录一次核销运行从开始发现到结束的耗时
+     *
+     * @param mode   核销模式
+     * @param status 运行结束时的状态：completed、cancelled 或 failed
+     */
+    void recordRun(String mode, String status, long nanos) {
+        Timer.builder(RUN_TIMER)
+                .description("单次核销运行的总耗时")
+                .tag("mode", mode)
+                .tag("status", status)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一个批次从开始读取到回写提交的耗时；流水线模式包含批次在阶段之间排队的时间
+     */
+    void recordBatch(long nanos) {
+        Timer.builder(BATCH_TIMER)
+                .description("单个批次从开始读取到回写提交的耗时")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次分布式批次处理失败后的去向
+     *
+     * @param outcome retry（转入重试队列）或 parked（重试耗尽，转入停放队列）
+     */
+    void recordBatchFailure(String outcome) {
+        Counter.builder("verification.batch.failures")
+                .description("分布式核销批次处理失败的次数")
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * 记录因分段锁被占用而推迟到下一次增量核销的客户
+     *
+     * @param scope batch（批次核销）或 customer（单客户核销）
+     */
+    void recordLockDeferred(String scope, int customers) {
+        Counter.builder("verification.lock.deferred")
+                .description("因分段锁被占用而推迟核销的客户数")
+                .tag("scope", scope)
+                .register(registry)
+                .increment(customers);
+    }
+
+    /**
+     * 记录回写时因版本号不一致而重新核销的客户
+     */
+    void recordVersionConflicts(int customers) {
+        Counter.builder("verification.version.conflicts")
+                .description("回写时版本号不一致、重新核销的客户数")
+                .register(registry)
+                .increment(customers);
+    }
+
+    /**
+     * 记录一次单客户核销的耗时，包括等待分段锁的时间
+     *
+     * @param outcome verified（已核销）或 deferred（分段锁等待超时，已推迟）
+     */
+    void recordCustomerVerification(String outcome, long nanos) {
+        Timer.builder("verification.customer.single")
+                .description("单客户核销的耗时")
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一个回写分块：一条多行 UPDATE 的耗时与写入的行数
+     */
+    void recordReceiptFlush(long nanos, int rows) {
+        receiptFlushTimer.record(nanos, TimeUnit.NANOSECONDS);
+        receiptRowCounter.increment(rows);
+    }
+
+    void recordScheduleFlush(long nanos, int rows) {
+        scheduleFlushTimer.record(nanos, TimeUnit.NANOSECONDS);
+        scheduleRowCounter.increment(rows);
+    }
+
+    private Timer selectTimer(String table) {
+        return Timer.builder("verification.batch.select")
+                .description("按批次读取待核销数据的查询耗时")
+                .tag("table", table)
+                .register(registry);
+    }
+
+    private Timer flushTimer(String table) {
+        return Timer.builder("verification.flush.chunk")
+                .description("单个回写分块（一条多行 UPDATE）的耗时")
+                .tag("table", table)
+                .register(registry);
+    }
+
+    private Counter rowCounter(String table) {
+        return Counter.builder(ROWS_WRITTEN_COUNTER)
+                .description("核销回写的行数")
+                .tag("table", table)
+                .register(registry);
+    }
+
+    private void bindExecutor(String pool, ThreadPoolExecutor executor) {
+        Gauge.builder("verification.executor.queue.depth", executor, e -> e.getQueue().size())
+                .description("线程池排队中的任务数")
+                .tag("pool", pool)
+                .register(registry);
+        Gauge.builder("verification.executor.active.threads", executor, ThreadPoolExecutor::getActiveCount)
+                .description("线程池正在执行任务的线程数")
+                .tag("pool", pool)
+                .register(registry);
+        Gauge.builder("verification.executor.pool.size", executor, ThreadPoolExecutor::getPoolSize)
+                .description("线程池当前线程数")
+                .tag("pool", pool)
+                .register(registry);
+    }
+}
@@ -1,121 +1,513 @@
 package com.yujian.yupicturebackend.service.verification;
 
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import cn.hutool.core.date.DateUtil;
+import com.rabbitmq.client.ConnectionFactory;
+import com.yujian.yupicturebackend.domain.VerificationRun;
 import com.yujian.yupicturebackend.exception.BusinessException;
 import com.yujian.yupicturebackend.exception.ErrorCode;
+import com.yujian.yupicturebackend.exception.ThrowUtils;
 import com.yujian.yupicturebackend.mapper.BankReceiptMapper;
+import com.yujian.yupicturebackend.model.enums.VerificationEngineEnum;
+import com.yujian.yupicturebackend.model.enums.VerificationModeEnum;
+import com.yujian.yupicturebackend.model.enums.VerificationRunStatusEnum;
+import com.yujian.yupicturebackend.model.vo.VerificationCustomerResultVO;
+import com.yujian.yupicturebackend.model.vo.VerificationJobVO;
 import lombok.Data;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class VerificationOrchestrator {
 
     private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
 
+    private static final int RECENT_JOB_LIMIT = 20;
+    private static final long EVENT_STREAM_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+
+    private final ThreadPoolExecutor jobExecutor;
     private final ThreadPoolExecutor verificationExecutor;
+    private final ThreadPoolExecutor readerExecutor;
+    private final ThreadPoolExecutor writerExecutor;
+    private final ThreadPoolExecutor eventExecutor;
     private final BankReceiptMapper bankReceiptMapper;
     private final VerificationService verificationService;
+    private final MergeJoinBatchService mergeJoinBatchService;
+    private final SetBasedBatchService setBasedBatchService;
+    private final ColumnarSnapshotLoader snapshotLoader;
+    private final DirtyCustomerTracker dirtyCustomerTracker;
+    private final VerificationCheckpointService checkpointService;
+    private final CustomerStripeLocks stripeLocks;
+    private final VerificationMetrics metrics;
     /**
      * 每个批次处理的客户数量，支持通过配置调整，避免硬编码导致不同环境无法调优。
      */
     private final int customerBatchSize;
     /**
-     * 运行状态开关，防止在核销未结束前被重复触发导致重复扣款。
+     * 流水线分摊阶段的线程数，分摊是纯 CPU 计算，默认与 CPU 核数相同
+     */
+    private final int computeThreads;
+    /**
+     * 单次运行的读取、回写线程数。线程池按模式数放大，每次运行只占用其中的一份，同时进行的运行互不挤占
+     */
+    private final int readerThreads;
+    private final int writerThreads;
+    /**
+     * 流水线各阶段之间队列的容量（批次数），决定读取阶段最多预取多少个批次
+     */
+    private final int pipelineQueueCapacity;
+    /**
+     * 回写阶段合并多个批次提交时，单个事务最多包含的更新行数
+     */
+    private final int writerCoalesceRows;
+    /**
+     * 全量核销区间批次的目标权重（收款单数 + 租金计划数），按权重而不是客户数切分批次
+     */
+    private final int targetBatchRows;
+    /**
+     * 待核销租金计划数达到该值的客户单独成批并优先调度，0 表示不拆分
+     */
+    private final long whaleScheduleRows;
+    /**
+     * 单次核销最多拆出的大客户专属批次数
+     */
+    private final int maxWhales;
+    /**
+     * 全量核销中逾期久或收款余额大的客户进入优先通道的判定规则
+     */
+    private final VerificationPriorityPolicy priorityPolicy;
+    /**
+     * 回写时单条多行 UPDATE 包含的初始行数
+     */
+    private final int flushChunkSize;
+    /**
+     * 批次大小与回写分块的自适应调整目标与上下限
+     */
+    private final AdaptiveBatchSizer.Settings adaptiveSettings;
+    /**
+     * 核销执行引擎：三段式流水线、逐批次流式归并，或投递到工作队列分布式执行
+     */
+    private final VerificationEngineEnum engine;
+    /**
+     * 分布式引擎使用的 RabbitMQ 连接工厂
+     */
+    private final ConnectionFactory mqConnectionFactory;
+    /**
+     * 分布式引擎的批次工作队列
+     */
+    private final String distributedBatchQueue;
+    /**
+     * 分布式引擎同时在途的批次数上限
      */
-    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final int distributedMaxInFlight;
+    /**
+     * 分布式引擎超过该时间没有收到任何批次结果即判定失败
+     */
+    private final long distributedResultTimeoutSeconds;
+    /**
+     * 各模式正在进行的运行 id，同一模式同一时刻只有一次运行（续跑依赖运行记录的唯一性）。
+     * 不同模式的运行可以同时进行，同一客户由 {@link CustomerStripeLocks} 保证不会被并发核销、重复扣款。
+     */
+    private final Map<VerificationModeEnum, Long> activeRuns = new EnumMap<>(VerificationModeEnum.class);
+    /**
+     * 最近的核销任务，供进度查询、取消与事件订阅使用，超出数量的旧任务只能从运行记录查询
+     */
+    private final Map<Long, VerificationJob> recentJobs = new LinkedHashMap<Long, VerificationJob>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, VerificationJob> eldest) {
+            return size() > RECENT_JOB_LIMIT;
+        }
+    };
+    /**
+     * 增量核销只看脏客户，脏标记之外的遗漏（如绕过服务层直接改库）靠定期全量兜底，此为全量兜底的间隔
+     */
+    private final long fullSweepIntervalMillis;
 
-    public VerificationOrchestrator(@Qualifier("verificationExecutor") ThreadPoolExecutor verificationExecutor,
+    public VerificationOrchestrator(@Qualifier("verificationJobExecutor") ThreadPoolExecutor jobExecutor,
+                                  @Qualifier("verificationExecutor") ThreadPoolExecutor verificationExecutor,
+                                  @Qualifier("verificationReaderExecutor") ThreadPoolExecutor readerExecutor,
+                                  @Qualifier("verificationWriterExecutor") ThreadPoolExecutor writerExecutor,
+                                  @Qualifier("verificationEventExecutor") ThreadPoolExecutor eventExecutor,
                                   BankReceiptMapper bankReceiptMapper,
                                   VerificationService verificationService,
-                                  @Value("${verification.customer-batch-size:200}") int customerBatchSize) {
+                                  MergeJoinBatchService mergeJoinBatchService,
+                                  SetBasedBatchService setBasedBatchService,
+                                  ColumnarSnapshotLoader snapshotLoader,
+                                  DirtyCustomerTracker dirtyCustomerTracker,
+                                  VerificationCheckpointService checkpointService,
+                                  CustomerStripeLocks stripeLocks,
+                                  VerificationMetrics metrics,
+                                  @Qualifier("verificationMqConnectionFactory") ConnectionFactory mqConnectionFactory,
+                                  @Value("${verification.customer-batch-size:200}") int customerBatchSize,
+                                  @Value("${verification.incremental.full-sweep-interval-minutes:1440}") long fullSweepIntervalMinutes,
+                                  @Value("${verification.pipeline.reader-threads:4}") int readerThreads,
+                                  @Value("${verification.pipeline.compute-threads:0}") int computeThreads,
+                                  @Value("${verification.pipeline.writer-threads:2}") int writerThreads,
+                                  @Value("${verification.pipeline.queue-capacity:4}") int pipelineQueueCapacity,
+                                  @Value("${verification.pipeline.writer-coalesce-rows:2000}") int writerCoalesceRows,
+                                  @Value("${verification.planner.target-batch-rows:2000}") int targetBatchRows,
+                                  @Value("${verification.planner.whale-schedule-rows:5000}") long whaleScheduleRows,
+                                  @Value("${verification.planner.max-whales:32}") int maxWhales,
+                                  @Value("${verification.priority.enabled:true}") boolean priorityEnabled,
+                                  @Value("${verification.priority.critical-overdue-days:90}") int criticalOverdueDays,
+                                  @Value("${verification.priority.high-overdue-days:30}") int highOverdueDays,
+                                  @Value("${verification.priority.critical-receipt-amount:1000000}") BigDecimal criticalReceiptAmount,
+                                  @Value("${verification.priority.high-receipt-amount:100000}") BigDecimal highReceiptAmount,
+                                  @Value("${verification.priority.max-customers:2000}") int priorityMaxCustomers,
+                                  @Value("${verification.flush-chunk-size:500}") int flushChunkSize,
+                                  @Value("${verification.adaptive.enabled:true}") boolean adaptiveEnabled,
+                                  @Value("${verification.adaptive.target-batch-millis:2000}") long targetBatchMillis,
+                                  @Value("${verification.adaptive.target-statement-millis:200}") long targetStatementMillis,
+                                  @Value("${verification.adaptive.window-batches:4}") int windowBatches,
+                                  @Value("${verification.adaptive.min-batch-rows:200}") int minBatchRows,
+                                  @Value("${verification.adaptive.max-batch-rows:50000}") int maxBatchRows,
+                                  @Value("${verification.adaptive.min-batch-customers:20}") int minBatchCustomers,
+                                  @Value("${verification.adaptive.max-batch-customers:2000}") int maxBatchCustomers,
+                                  @Value("${verification.adaptive.min-flush-chunk:100}") int minFlushChunk,
+                                  @Value("${verification.adaptive.max-flush-chunk:2000}") int maxFlushChunk,
+                                  @Value("${verification.engine:pipeline}") String engine,
+                                  @Value("${verification.distributed.batch-queue:verification.batch.priority}") String distributedBatchQueue,
+                                  @Value("${verification.distributed.max-in-flight:16}") int distributedMaxInFlight,
+                                  @Value("${verification.distributed.result-timeout-seconds:600}") long distributedResultTimeoutSeconds) {
+        this.jobExecutor = jobExecutor;
         this.verificationExecutor = verificationExecutor;
+        this.readerExecutor = readerExecutor;
+        this.writerExecutor = writerExecutor;
+        this.eventExecutor = eventExecutor;
         this.bankReceiptMapper = bankReceiptMapper;
         this.verificationService = verificationService;
+        this.mergeJoinBatchService = mergeJoinBatchService;
+        this.setBasedBatchService = setBasedBatchService;
+        this.snapshotLoader = snapshotLoader;
+        this.dirtyCustomerTracker = dirtyCustomerTracker;
+        this.checkpointService = checkpointService;
+        this.stripeLocks = stripeLocks;
+        this.metrics = metrics;
+        this.mqConnectionFactory = mqConnectionFactory;
+        this.distributedBatchQueue = distributedBatchQueue;
+        this.distributedMaxInFlight = distributedMaxInFlight;
+        this.distributedResultTimeoutSeconds = distributedResultTimeoutSeconds;
         this.customerBatchSize = customerBatchSize > 0 ? customerBatchSize : 200;
+        this.fullSweepIntervalMillis = Math.max(fullSweepIntervalMinutes, 1) * 60_000L;
+        this.readerThreads = Math.max(readerThreads, 1);
+        this.computeThreads = computeThreads > 0 ? computeThreads : Runtime.getRuntime().availableProcessors();
+        this.writerThreads = Math.max(writerThreads, 1);
+        this.pipelineQueueCapacity = pipelineQueueCapacity;
+        this.writerCoalesceRows = writerCoalesceRows;
+        this.targetBatchRows = targetBatchRows;
+        this.whaleScheduleRows = whaleScheduleRows;
+        this.maxWhales = maxWhales;
+        this.priorityPolicy = new VerificationPriorityPolicy(priorityEnabled, criticalOverdueDays, highOverdueDays,
+                criticalReceiptAmount, highReceiptAmount, priorityMaxCustomers);
+        this.flushChunkSize = flushChunkSize > 0 ? flushChunkSize : 500;
+        AdaptiveBatchSizer.Settings settings = new AdaptiveBatchSizer.Settings();
+        settings.setEnabled(adaptiveEnabled);
+        settings.setTargetBatchMillis(Math.max(targetBatchMillis, 1));
+        settings.setTargetStatementMillis(Math.max(targetStatementMillis, 1));
+        settings.setWindowBatches(Math.max(windowBatches, 1));
+        settings.setMinBatchRows(Math.max(minBatchRows, 1));
+        settings.setMaxBatchRows(Math.max(maxBatchRows, settings.getMinBatchRows()));
+        settings.setMinBatchCustomers(Math.max(minBatchCustomers, 1));
+        settings.setMaxBatchCustomers(Math.max(maxBatchCustomers, settings.getMinBatchCustomers()));
+        settings.setMinFlushChunk(Math.max(minFlushChunk, 1));
+        settings.setMaxFlushChunk(Math.max(maxFlushChunk, settings.getMinFlushChunk()));
+        this.adaptiveSettings = settings;
+        VerificationEngineEnum engineEnum = VerificationEngineEnum.getEnumByValue(engine);
+        if (engineEnum == null) {
+            log.warn("未知的核销引擎 {}，使用{}", engine, VerificationEngineEnum.PIPELINE.getText());
+            engineEnum = VerificationEngineEnum.PIPELINE;
+        }
+        this.engine = engineEnum;
     }
 
+    /**
+     * 同步执行一次全量核销，等待结束后返回结果
+     */
     public VerificationSummary runVerificationProcess() throws ExecutionException, InterruptedException {
-        if (!running.compareAndSet(false, true)) {
-            // 限制多次触发同一核销任务，避免并发写导致金额重复扣减
-            log.warn("核销任务仍在执行中，本次触发被忽略");
-            throw new BusinessException(ErrorCode.OPERATION_ERROR, "当前已有核销任务在执行，请稍后再试");
-        }
-        long startTime = System.currentTimeMillis();
-        log.info("开始批量核销流程...");
+        return runVerificationProcess(VerificationModeEnum.FULL);
+    }
 
-        try {
-            // 1. 找出所有有待核销收款的客户
-            QueryWrapper<com.yujian.yupicturebackend.domain.BankReceipt> queryWrapper = new QueryWrapper<>();
-            queryWrapper.select("DISTINCT payer_name").in("status", 0, 1);
-            List<String> customerNames = bankReceiptMapper.selectObjs(queryWrapper).stream().map(o -> (String)o).collect(Collectors.toList());
+    public VerificationSummary runVerificationProcess(VerificationModeEnum mode) throws ExecutionException, InterruptedException {
+        return submit(mode).getCompletion().get();
+    }
 
-            if (customerNames.isEmpty()) {
-                log.info("没有找到需要核销的客户。");
-                return new VerificationSummary();
+    public VerificationJob submit(VerificationModeEnum mode) {
+        return submit(mode, null);
+    }
+
+    /**
+     * 提交一次异步核销并立即返回任务。
+     * 运行记录在提交时同步创建，任务 id 即运行记录 id；核销本身在专用的任务线程上执行，不占用请求线程。
+     *
+     * @param asOfDate 应收日期截止日（包含），只核销应收日期不晚于该日的租金计划；为空时核销全部待核销计划
+     */
+    public VerificationJob submit(VerificationModeEnum mode, Date asOfDate) {
+        if (mode == VerificationModeEnum.INCREMENTAL && fullSweepDue()) {
+            // 距上次全量核销过久（或从未完成过全量核销），本次升级为全量，兜底脏标记之外的遗漏
+            log.info("距上次全量核销已超过兜底间隔，本次增量核销升级为全量核销");
+            mode = VerificationModeEnum.FULL;
+        }
+        // 按客户整数键核销时，未回填 customer_id 的行读不到，有这样的行就不开始
+        verificationService.checkCustomerKeys();
+        VerificationRun run;
+        synchronized (activeRuns) {
+            if (activeRuns.containsKey(mode)) {
+                // 同一模式的运行未结束前不能再次触发，续跑会取到同一条运行记录
+                log.warn("{}任务仍在执行中，本次触发被忽略", mode.getText());
+                throw new BusinessException(ErrorCode.OPERATION_ERROR, "当前已有" + mode.getText() + "任务在执行，请稍后再试");
             }
-            log.info("发现 {} 个待处理客户。", customerNames.size());
-
-            // 2. 为每个批次的客户创建一个异步任务
-            // 将客户拆成固定大小的批次，减少线程池任务数并提升单次数据库命中率
-            List<List<String>> customerBatches = partitionCustomers(customerNames, customerBatchSize);
-            log.info("客户总数: {}，按批次大小 {} 拆分为 {} 个任务", customerNames.size(), customerBatchSize, customerBatches.size());
-
-            List<CompletableFuture<VerificationService.VerificationResult>> futures = new ArrayList<>();
-            for (List<String> batch : customerBatches) {
-                // 异步执行每个批次，内部自行批量查询与更新
-                CompletableFuture<VerificationService.VerificationResult> future = CompletableFuture.supplyAsync(() ->
-                        verificationService.processCustomersBatch(batch), verificationExecutor);
-                futures.add(future);
+            // 创建运行记录；上次同模式的运行未完成时续跑，其他模式正在进行的运行不受影响
+            run = checkpointService.startOrResume(mode, asOfDate, new ArrayList<>(activeRuns.values()));
+            activeRuns.put(mode, run.getId());
+        }
+        try {
+            VerificationJob job = new VerificationJob(run, mode, eventExecutor);
+            synchronized (recentJobs) {
+                recentJobs.put(job.getJobId(), job);
             }
+            VerificationModeEnum runMode = mode;
+            jobExecutor.execute(() -> execute(job, run, runMode));
+            return job;
+        } catch (RuntimeException e) {
+            // 任务没能开始执行，运行记录转为失败，不再由本节点心跳续命，下一次触发可以续跑
+            checkpointService.fail(run, e);
+            finishActive(mode);
+            throw e;
+        }
+    }
 
+    /**
+     * 同步核销单个客户，供收款到账后立即核销使用，可与全量、增量核销同时进行。
+     * 客户正被批次核销占用时最多等待 verification.lock.customer-wait-millis，仍拿不到分段锁则标记为脏客户并返回推迟。
+     */
+    public VerificationCustomerResultVO verifyCustomer(String customerName) {
+        long start = System.nanoTime();
+        VerificationCustomerResultVO resultVO = new VerificationCustomerResultVO();
+        resultVO.setCustomerName(customerName);
+        CustomerStripeLocks.StripeLease lease;
+        try {
+            lease = stripeLocks.lockCustomer(customerName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException(ErrorCode.OPERATION_ERROR, "等待客户核销锁时被中断");
+        }
+        if (lease == null) {
+            long elapsed = System.nanoTime() - start;
+            metrics.recordCustomerVerification("deferred", elapsed);
+            resultVO.setDeferred(true);
+            resultVO.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsed));
+            log.info("客户 {} 正被其他核销占用，已推迟到下一次增量核销", customerName);
+            return resultVO;
+        }
+        VerificationService.VerificationResult result;
+        try {
+            result = verificationService.processCustomer(customerName);
+        } finally {
+            stripeLocks.release(lease);
+        }
+        long elapsed = System.nanoTime() - start;
+        metrics.recordCustomerVerification("verified", elapsed);
+        resultVO.setDeferred(false);
+        resultVO.setVerifiedCount(result.getVerifiedCount());
+        resultVO.setTotalPrincipal(result.getTotalPrincipal());
+        resultVO.setTotalInterest(result.getTotalInterest());
+        resultVO.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return resultVO;
+    }
 
-            // 3. 等待所有任务完成并聚合结果
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    /**
+     * 查询任务进度；不在内存中的历史任务从运行记录读取
+     */
+    public VerificationJobVO getJobProgress(Long jobId) {
+        VerificationJob job = getJob(jobId);
+        if (job != null) {
+            return job.toVO();
+        }
+        VerificationRun run = checkpointService.getRun(jobId);
+        ThrowUtils.throwIf(run == null, ErrorCode.NOT_FOUND_ERROR, "核销任务不存在");
+        return VerificationJob.toVO(run);
+    }
 
-            VerificationSummary summary = new VerificationSummary();
-            for (CompletableFuture<VerificationService.VerificationResult> future : futures) {
-                VerificationService.VerificationResult result = future.get();
-                summary.add(result);
-            }
+    /**
+     * 取消任务：停止调度新的批次，已在处理中的批次照常提交
+     *
+     * @return 是否由本次调用发起了取消
+     */
+    public boolean cancel(Long jobId) {
+        VerificationJob job = getJob(jobId);
+        ThrowUtils.throwIf(job == null, ErrorCode.NOT_FOUND_ERROR, "核销任务不存在或已结束");
+        boolean cancelled = job.requestCancel();
+        if (cancelled) {
+            log.info("核销任务 {} 已请求取消，等待进行中的批次提交", jobId);
+        }
+        return cancelled;
+    }
 
-            long endTime = System.currentTimeMillis();
-            summary.setTotalTimeSeconds((endTime - startTime) / 1000.0);
-            log.info("批量核销流程结束。总耗时: {} 秒", summary.getTotalTimeSeconds());
-            log.info("最终结果: {}", summary);
+    /**
+     * 订阅任务的逐批核销结果
+     */
+    public SseEmitter subscribe(Long jobId) {
+        VerificationJob job = getJob(jobId);
+        ThrowUtils.throwIf(job == null, ErrorCode.NOT_FOUND_ERROR, "核销任务不存在或已结束");
+        return job.subscribe(EVENT_STREAM_TIMEOUT_MILLIS);
+    }
+
+    private VerificationJob getJob(Long jobId) {
+        synchronized (recentJobs) {
+            return recentJobs.get(jobId);
+        }
+    }
 
-            return summary;
+    private void execute(VerificationJob job, VerificationRun run, VerificationModeEnum mode) {
+        long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        log.info("开始批量核销流程，任务: {}，模式: {}，引擎: {}，应收日期截止: {}", job.getJobId(), mode.getValue(),
+                engine.getValue(), run.getAsOfDate() != null ? DateUtil.formatDate(run.getAsOfDate()) : "不限");
+        VerificationSummary summary = null;
+        VerificationRunStatusEnum finalStatus = null;
+        Exception failure = null;
+        try {
+            // 0. 全量核销续跑时从第一个未完成批次继续发现
+            String startCustomer = checkpointService.prepareResume(run);
+
+            // 1. 全量模式先拆出大客户专属批次，再按索引顺序流式发现有待核销收款、且仍有待核销租金计划的客户，
+            // 按待核销行数累加切分为权重相近的连续区间；增量模式按名称顺序分页读取脏客户。
+            // 发现与执行交替进行：每发现一个批次立即提交，不再把全部客户名一次性拉进内存
+            KeysetBatchCursor cursor = mode == VerificationModeEnum.INCREMENTAL
+                    ? new DirtyCustomerBatchCursor(dirtyCustomerTracker, customerBatchSize)
+                    : new CustomerBatchCursor(bankReceiptMapper, customerBatchSize, startCustomer,
+                    targetBatchRows, whaleScheduleRows, maxWhales, priorityPolicy);
+            cursor.setMetrics(metrics);
+            // 2. 批次登记检查点后交给核销引擎：流水线模式依次经过读取、分摊、回写三个阶段，各阶段由独立线程池并行处理不同批次；
+            // 流式归并模式每个批次在一个事务内边读边分摊边回写。按实测的批次耗时调整后续批次的大小与回写分块
+            AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer(cursor, adaptiveSettings,
+                    customerBatchSize, targetBatchRows, flushChunkSize);
+            VerificationEngine verificationEngine = createEngine(job, mode, batchSizer);
+            List<VerificationService.VerificationResult> results = verificationEngine.run(cursor,
+                    batch -> checkpointService.register(run, batch));
+
+            // 被取消的运行没有覆盖全部客户，不能作为全量兜底
+            finalStatus = job.isCancelRequested() ? VerificationRunStatusEnum.CANCELLED : VerificationRunStatusEnum.COMPLETED;
+            VerificationRun totals = checkpointService.complete(run, finalStatus);
+            // 指定了截止日的运行没有分摊截止日之后的计划，同样不能作为全量兜底
+            if (finalStatus == VerificationRunStatusEnum.COMPLETED && run.getAsOfDate() == null) {
+                finishFullSweep(mode, run.getStartTime().getTime());
+            }
+
+            // 3. 聚合各回写事务的结果
+            summary = new VerificationSummary();
+            for (VerificationService.VerificationResult result : results) {
+                summary.add(result);
+            }
+            summary.setTotalTimeSeconds((System.currentTimeMillis() - startTime) / 1000.0);
+            if (verificationEngine.getBatchCount() == 0) {
+                log.info("没有找到需要核销的客户。");
+            } else {
+                log.info("发现 {} 个待处理客户，拆分为 {} 个批次（初始每批最多 {} 个客户），批次大小自适应调整 {} 次",
+                        cursor.getDiscoveredCustomers(), verificationEngine.getBatchCount(), customerBatchSize, batchSizer.getAdjustments());
+                log.info("批量核销流程{}。总耗时: {} 秒", finalStatus.getText(), summary.getTotalTimeSeconds());
+                log.info("最终结果: {}", summary);
+            }
+            if (run.getResumeCount() > 0) {
+                log.info("核销运行 {} 累计结果（含中断前已提交的批次）: 批次 {}, 核销笔数 {}, 本金 {}, 利息 {}",
+                        run.getId(), totals.getBatchCount(), totals.getVerifiedCount(),
+                        totals.getTotalPrincipal(), totals.getTotalInterest());
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            // 保留检查点，下一次同模式的核销从未完成的批次续跑
+            log.error("核销任务 {} 执行失败", job.getJobId(), e);
+            failure = e;
+            try {
+                checkpointService.fail(run, e);
+            } catch (RuntimeException recordError) {
+                log.error("记录核销任务 {} 的失败状态出错", job.getJobId(), recordError);
+            }
         } finally {
-            running.set(false);
+            // 先释放运行开关再通知等待方，等待方收到结果后可以立即发起下一次核销
+            finishActive(mode);
+        }
+        metrics.recordRun(mode.getValue(), failure != null ? VerificationRunStatusEnum.FAILED.getValue() : finalStatus.getValue(),
+                System.nanoTime() - startNanos);
+        if (failure != null) {
+            job.fail(failure);
+        } else {
+            job.succeed(finalStatus, summary);
         }
     }
 
-    private List<List<String>> partitionCustomers(List<String> customerNames, int batchSize) {
-        List<List<String>> batches = new ArrayList<>();
-        if (customerNames == null || customerNames.isEmpty()) {
-            return batches;
+    private void finishActive(VerificationModeEnum mode) {
+        synchronized (activeRuns) {
+            activeRuns.remove(mode);
         }
-        if (batchSize <= 0 || batchSize >= customerNames.size()) {
-            batches.add(new ArrayList<>(customerNames));
-            return batches;
+    }
+
+    private VerificationEngine createEngine(VerificationJob job, VerificationModeEnum mode, AdaptiveBatchSizer batchSizer) {
+        if (engine == VerificationEngineEnum.SNAPSHOT && mode == VerificationModeEnum.FULL) {
+            // 一次装载全部待核销行，由 fork/join 线程分摊，回写线程池提交
+            return new SnapshotVerificationEngine(verificationService, snapshotLoader, metrics, stripeLocks, job, batchSizer,
+                    computeThreads, writerExecutor, writerThreads, pipelineQueueCapacity);
+        }
+        if (engine == VerificationEngineEnum.MERGE_JOIN || engine == VerificationEngineEnum.SNAPSHOT) {
+            // 每个批次的读取与回写都在数据库上等待，由读取线程池执行；
+            // 增量核销只涉及少量脏客户，不值得装载全表快照，快照引擎在增量模式下也按流式归并执行
+            return new MergeJoinVerificationEngine(mergeJoinBatchService, metrics, stripeLocks, job, batchSizer,
+                    readerExecutor, readerThreads, pipelineQueueCapacity);
+        }
+        if (engine == VerificationEngineEnum.SET_BASED) {
+            // 分摊与回写都在数据库内执行，调度方式与流式归并相同
+            return new SetBasedVerificationEngine(setBasedBatchService, metrics, stripeLocks, job, batchSizer,
+                    readerExecutor, readerThreads, pipelineQueueCapacity);
         }
-        for (int i = 0; i < customerNames.size(); i += batchSize) {
-            int end = Math.min(i + batchSize, customerNames.size());
-            batches.add(new ArrayList<>(customerNames.subList(i, end)));
+        if (engine == VerificationEngineEnum.DISTRIBUTED) {
+            // 本节点只负责发现与投递批次，核销由消费工作队列的各工作节点执行
+            return new DistributedVerificationEngine(mqConnectionFactory, distributedBatchQueue, distributedMaxInFlight,
+                    distributedResultTimeoutSeconds, job.getJobId(), job, batchSizer, metrics);
+        }
+        return new VerificationPipeline(verificationService, metrics, stripeLocks, job, batchSizer,
+                readerExecutor, readerThreads,
+                verificationExecutor, computeThreads,
+                writerExecutor, writerThreads,
+                pipelineQueueCapacity, writerCoalesceRows);
+    }
+
+    /**
+     * 是否需要以全量核销兜底。
+     * 上次全量核销的时间取自运行记录中最近一次已完成的全量运行，进程重启或由其他节点执行的全量核销同样计入，
+     * 不会因为重启后内存中没有记录而把第一次增量核销升级为全量。
+     */
+    private boolean fullSweepDue() {
+        Date lastFullSweep = checkpointService.findLastFullSweepStart();
+        return lastFullSweep == null || System.currentTimeMillis() - lastFullSweep.getTime() >= fullSweepIntervalMillis;
+    }
+
+    /**
+     * 全量核销覆盖了开始时刻之前的所有变更，清理此前的脏客户标记。
+     * 续跑的运行以首次开始时间为准：中断前已扫过的区间在之后产生的标记必须保留。
+     * 开始时间已截断到秒，避免数据库 DATETIME 精度低于毫秒时误删核销期间产生的标记。
+     */
+    private void finishFullSweep(VerificationModeEnum mode, long startTime) {
+        if (mode != VerificationModeEnum.FULL) {
+            return;
         }
-        return batches;
+        int cleared = dirtyCustomerTracker.clearMarkedBefore(new Date(startTime));
+        log.info("全量核销完成，清理脏客户标记 {} 条", cleared);
     }
 
     @Data
@@ -0,0 +1,370 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * 三段式核销流水线：读取 → 分摊 → 回写。
+ * <p>
+ * 读取与回写主要在等待数据库，分摊主要消耗 CPU，三段分别由独立的线程池执行，在不同批次上重叠进行，
+ * 整体吞吐接近三者中最慢的一段，而不是三段耗时之和。
+ * 段与段之间用有界队列衔接：下游处理不过来时上游阻塞（背压），同时驻留在内存中的批次数有上限。
+ * 回写阶段会把已完成分摊的相邻批次合并到一个事务中提交。
+ * 每个批次回写后把各阶段耗时报告给 {@link AdaptiveBatchSizer}，后续批次的大小与回写分块随之调整。
+ * 批次在读取前占用其客户的分段锁（见 {@link CustomerStripeLocks}），回写提交后释放，
+ * 被其他核销占用的客户从批次中去掉并推迟。
+ * <p>
+ * 每次核销创建一个实例，不可复用。任一阶段出错后整条流水线中止，已提交的批次不回滚，
+ * 未完成的批次由下一次核销续跑。
+ */
+class VerificationPipeline implements VerificationEngine {
+
+    private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
+
+    /**
+     * 队列阻塞等待的轮询间隔，期间检查上游是否结束、流水线是否中止
+     */
+    private static final long POLL_MILLIS = 200;
+
+    private final VerificationService verificationService;
+    private final VerificationMetrics metrics;
+    private final CustomerStripeLocks stripeLocks;
+    private final VerificationJob job;
+    private final AdaptiveBatchSizer batchSizer;
+    private final ThreadPoolExecutor readerExecutor;
+    private final ThreadPoolExecutor computeExecutor;
+    private final ThreadPoolExecutor writerExecutor;
+    private final int readerThreads;
+    private final int computeThreads;
+    private final int writerThreads;
+    private final int writerCoalesceRows;
+
+    private final BlockingQueue<CustomerBatch> batchQueue;
+    private final BlockingQueue<ReadBatch> loadedQueue;
+    private final BlockingQueue<ComputedBatch> computedQueue;
+    private final AtomicBoolean discoveryDone = new AtomicBoolean(false);
+    private final AtomicBoolean readDone = new AtomicBoolean(false);
+    private final AtomicBoolean computeDone = new AtomicBoolean(false);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    /**
+     * 已加锁、尚未回写提交的批次租约；流水线中止时由 run 统一释放
+     */
+    private final Set<CustomerStripeLocks.StripeLease> heldLeases = ConcurrentHashMap.newKeySet();
+
+    private final ConcurrentLinkedQueue<VerificationService.VerificationResult> results = new ConcurrentLinkedQueue<>();
+    /**
+     * 各阶段线程的累计工作耗时，用于判断瓶颈所在
+     */
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder computeNanos = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder flushTransactions = new LongAdder();
+    private int batchCount;
+
+    VerificationPipeline(VerificationService verificationService, VerificationMetrics metrics,
+                         CustomerStripeLocks stripeLocks, VerificationJob job, AdaptiveBatchSizer batchSizer,
+                         ThreadPoolExecutor readerExecutor, int readerThreads,
+                         ThreadPoolExecutor computeExecutor, int computeThreads,
+                         ThreadPoolExecutor writerExecutor, int writerThreads,
+                         int queueCapacity, int writerCoalesceRows) {
+        this.verificationService = verificationService;
+        this.metrics = metrics;
+        this.stripeLocks = stripeLocks;
+        this.job = job;
+        this.batchSizer = batchSizer;
+        this.readerExecutor = readerExecutor;
+        this.computeExecutor = computeExecutor;
+        this.writerExecutor = writerExecutor;
+        this.readerThreads = Math.max(readerThreads, 1);
+        this.computeThreads = Math.max(computeThreads, 1);
+        this.writerThreads = Math.max(writerThreads, 1);
+        this.writerCoalesceRows = Math.max(writerCoalesceRows, 1);
+        int capacity = Math.max(queueCapacity, 1);
+        this.batchQueue = new ArrayBlockingQueue<>(capacity);
+        this.loadedQueue = new ArrayBlockingQueue<>(capacity);
+        this.computedQueue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * 在调用线程上执行批次发现，并驱动三个阶段直至全部批次处理完毕
+     *
+     * @param onDiscovered 批次进入流水线前的处理，用于登记批次检查点
+     * @return 每个回写事务的核销结果
+     */
+    @Override
+    public List<VerificationService.VerificationResult> run(KeysetBatchCursor cursor, UnaryOperator<CustomerBatch> onDiscovered)
+            throws ExecutionException, InterruptedException {
+        List<Future<?>> readers = start(readerExecutor, readerThreads, this::readLoop);
+        List<Future<?>> computers = start(computeExecutor, computeThreads, this::computeLoop);
+        List<Future<?>> writers = start(writerExecutor, writerThreads, this::writeLoop);
+        try {
+            // 取消只停止调度新批次，已进入流水线的批次照常回写
+            while (!aborted() && !job.isCancelRequested() && cursor.hasNext()) {
+                CustomerBatch batch = onDiscovered.apply(cursor.next());
+                job.onBatchDiscovered(batch);
+                if (!put(batchQueue, batch)) {
+                    break;
+                }
+                batchCount++;
+            }
+            job.onDiscoveryComplete();
+        } catch (RuntimeException e) {
+            fail(e);
+        } finally {
+            // 按阶段顺序关闭：上游全部线程退出后才通知下游，保证队列中剩余的批次都会被处理
+            discoveryDone.set(true);
+            await(readers);
+            readDone.set(true);
+            await(computers);
+            computeDone.set(true);
+            await(writers);
+            for (CustomerStripeLocks.StripeLease lease : heldLeases) {
+                stripeLocks.release(lease);
+            }
+        }
+
+        Throwable cause = failure.get();
+        if (cause != null) {
+            throw new ExecutionException("核销流水线执行失败", cause);
+        }
+        log.info("流水线处理 {} 个批次，回写事务 {} 次；各阶段累计耗时 读取: {} ms, 分摊: {} ms, 回写: {} ms",
+                batchCount, flushTransactions.sum(), TimeUnit.NANOSECONDS.toMillis(readNanos.sum()),
+                TimeUnit.NANOSECONDS.toMillis(computeNanos.sum()), TimeUnit.NANOSECONDS.toMillis(writeNanos.sum()));
+        return new ArrayList<>(results);
+    }
+
+    @Override
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    private void readLoop() throws InterruptedException {
+        CustomerBatch batch;
+        while ((batch = take(batchQueue, discoveryDone)) != null) {
+            long start = System.nanoTime();
+            CustomerStripeLocks.StripeLease lease = stripeLocks.lockBatch(job.getLeaseToken(), batch);
+            heldLeases.add(lease);
+            VerificationService.LoadedBatch loaded = verificationService.loadCustomerBatch(lease.getBatch());
+            long elapsed = System.nanoTime() - start;
+            readNanos.add(elapsed);
+            if (!put(loadedQueue, new ReadBatch(batch, lease, loaded, start, elapsed))) {
+                return;
+            }
+        }
+    }
+
+    private void computeLoop() throws InterruptedException {
+        ReadBatch read;
+        while ((read = take(loadedQueue, readDone)) != null) {
+            VerificationService.LoadedBatch loaded = read.loaded;
+            long start = System.nanoTime();
+            VerificationService.ProcessingOutcome outcome = verificationService.allocateLoadedCustomers(
+                    loaded.getBatch().getCustomerNames(), loaded.getCustomerIds(), loaded.getReceipts(), loaded.getSchedules());
+            long elapsed = System.nanoTime() - start;
+            computeNanos.add(elapsed);
+            int loadedRows = loaded.getReceipts().size() + loaded.getSchedules().size();
+            if (!put(computedQueue, new ComputedBatch(read.batch, read.lease, outcome,
+                    read.startNanos, read.loadNanos, elapsed, loadedRows))) {
+                return;
+            }
+        }
+    }
+
+    private void writeLoop() throws InterruptedException {
+        ComputedBatch first;
+        while ((first = take(computedQueue, computeDone)) != null) {
+            // 把队列中已就绪的批次合并进同一个事务，合并行数达到上限即提交
+            List<ComputedBatch> group = new ArrayList<>();
+            group.add(first);
+            int rows = first.rows();
+            ComputedBatch next;
+            while (rows < writerCoalesceRows && (next = computedQueue.poll()) != null) {
+                group.add(next);
+                rows += next.rows();
+            }
+            flush(group, rows);
+        }
+    }
+
+    private void flush(List<ComputedBatch> group, int rows) {
+        List<CustomerBatch> batches = new ArrayList<>(group.size());
+        List<VerificationService.ProcessingOutcome> outcomes = new ArrayList<>(group.size());
+        for (ComputedBatch computed : group) {
+            batches.add(computed.lease.getBatch());
+            outcomes.add(computed.outcome);
+        }
+        long start = System.nanoTime();
+        verificationService.flushBatches(batches, outcomes, batchSizer.getFlushChunkSize());
+        long end = System.nanoTime();
+        // 回写时版本冲突的客户已重新核销，批次结果在回写后才是最终值
+        VerificationService.VerificationResult result = new VerificationService.VerificationResult();
+        for (ComputedBatch computed : group) {
+            result.merge(computed.outcome.getResult());
+        }
+        long elapsed = end - start;
+        for (ComputedBatch computed : group) {
+            heldLeases.remove(computed.lease);
+            stripeLocks.release(computed.lease);
+        }
+        writeNanos.add(elapsed);
+        flushTransactions.increment();
+        results.add(result);
+        for (ComputedBatch computed : group) {
+            // 合并提交的事务耗时按回写行数分摊到各批次
+            long flushNanos = rows > 0 ? elapsed * computed.rows() / rows : elapsed / group.size();
+            batchSizer.record(computed.batch, computed.loadNanos, computed.computeNanos, flushNanos,
+                    computed.loadedRows, computed.rows());
+            metrics.recordBatch(end - computed.startNanos);
+            job.onBatchFlushed(computed.batch, computed.outcome.getResult(), computed.rows());
+            VerificationService.VerificationResult batchResult = computed.outcome.getResult();
+            log.info("批次 {} 已提交：客户 {} 个，读取 {} 行，核销笔数 {}，本金 {}，利息 {}，回写 {} 行，耗时 读取 {} ms / 分摊 {} ms / 回写 {} ms",
+                    computed.batch, computed.batch.size(), computed.loadedRows, batchResult.getVerifiedCount(),
+                    batchResult.getTotalPrincipal(), batchResult.getTotalInterest(), computed.rows(),
+                    TimeUnit.NANOSECONDS.toMillis(computed.loadNanos), TimeUnit.NANOSECONDS.toMillis(computed.computeNanos),
+                    TimeUnit.NANOSECONDS.toMillis(flushNanos));
+        }
+    }
+
+    private List<Future<?>> start(ThreadPoolExecutor executor, int threads, StageLoop loop) {
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                try {
+                    loop.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    fail(e);
+                } catch (Throwable e) {
+                    fail(e);
+                }
+            }));
+        }
+        return futures;
+    }
+
+    private void await(List<Future<?>> futures) throws InterruptedException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                fail(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * 从队列取下一个元素；上游已结束且队列已空，或流水线已中止时返回 null
+     */
+    private <T> T take(BlockingQueue<T> queue, AtomicBoolean upstreamDone) throws InterruptedException {
+        while (!aborted()) {
+            // 先读结束标志再取元素：标志置位前放入的元素一定能在本次 poll 中取到
+            boolean done = upstreamDone.get();
+            T item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (item != null) {
+                return item;
+            }
+            if (done) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 放入下游队列，队列满时阻塞等待；流水线中止时放弃并返回 false
+     */
+    private <T> boolean put(BlockingQueue<T> queue, T item) throws InterruptedException {
+        while (!aborted()) {
+            if (queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean aborted() {
+        return failure.get() != null;
+    }
+
+    private void fail(Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+            log.error("核销流水线出错，停止处理剩余批次", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface StageLoop {
+        void run() throws InterruptedException;
+    }
+
+    /**
+     * 已读取、等待分摊的批次
+     */
+    private static class ReadBatch {
+        /**
+         * 加锁前的完整批次，用于进度统计与日志
+         */
+        private final CustomerBatch batch;
+        private final CustomerStripeLocks.StripeLease lease;
+        private final VerificationService.LoadedBatch loaded;
+        /**
+         * 开始读取的时刻（System.nanoTime）
+         */
+        private final long startNanos;
+        private final long loadNanos;
+
+        ReadBatch(CustomerBatch batch, CustomerStripeLocks.StripeLease lease,
+                  VerificationService.LoadedBatch loaded, long startNanos, long loadNanos) {
+            this.batch = batch;
+            this.lease = lease;
+            this.loaded = loaded;
+            this.startNanos = startNanos;
+            this.loadNanos = loadNanos;
+        }
+    }
+
+    /**
+     * 已完成分摊、等待回写的批次
+     */
+    private static class ComputedBatch {
+        private final CustomerBatch batch;
+        private final CustomerStripeLocks.StripeLease lease;
+        private final VerificationService.ProcessingOutcome outcome;
+        private final long startNanos;
+        private final long loadNanos;
+        private final long computeNanos;
+        private final int loadedRows;
+
+        ComputedBatch(CustomerBatch batch, CustomerStripeLocks.StripeLease lease,
+                      VerificationService.ProcessingOutcome outcome,
+                      long startNanos, long loadNanos, long computeNanos, int loadedRows) {
+            this.batch = batch;
+            this.lease = lease;
+            this.outcome = outcome;
+            this.startNanos = startNanos;
+            this.loadNanos = loadNanos;
+            this.computeNanos = computeNanos;
+            this.loadedRows = loadedRows;
+        }
+
+        int rows() {
+            return outcome.getUpdatedSchedules().size() + outcome.getUpdatedReceipts().size();
+        }
+    }
+}
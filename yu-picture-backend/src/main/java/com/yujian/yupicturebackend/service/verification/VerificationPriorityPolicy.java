@@ -0,0 +1,86 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.model.dto.verification.CustomerWorkload;
+import com.yujian.yupicturebackend.model.enums.VerificationPriorityEnum;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.Date;
+
+/**
+ * 核销调度优先级的判定规则。
+ * <p>
+ * 按客户最早一期未结清租金计划的逾期天数与待核销收款余额划分通道：任一项达到紧急阈值为紧急通道，
+ * 达到高优先阈值为高优先通道，其余客户走普通的区间批次。逾期越久、余额越大的客户在通道内越靠前。
+ */
+class VerificationPriorityPolicy {
+
+    /**
+     * 通道内的紧急程度排序：最早应收日期越早越靠前，相同时收款余额越大越靠前
+     */
+    static final Comparator<CustomerWorkload> URGENCY = Comparator
+            .comparing(CustomerWorkload::getOldestDueDate, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(CustomerWorkload::getOpenReceiptAmount, Comparator.nullsLast(Comparator.reverseOrder()));
+
+    private final boolean enabled;
+    private final int criticalOverdueDays;
+    private final int highOverdueDays;
+    private final BigDecimal criticalReceiptAmount;
+    private final BigDecimal highReceiptAmount;
+    /**
+     * 单次核销最多进入优先通道的客户数
+     */
+    private final int maxCustomers;
+
+    VerificationPriorityPolicy(boolean enabled, int criticalOverdueDays, int highOverdueDays,
+                               BigDecimal criticalReceiptAmount, BigDecimal highReceiptAmount, int maxCustomers) {
+        this.enabled = enabled && maxCustomers > 0;
+        this.highOverdueDays = Math.max(highOverdueDays, 0);
+        this.criticalOverdueDays = Math.max(criticalOverdueDays, this.highOverdueDays);
+        this.highReceiptAmount = highReceiptAmount;
+        this.criticalReceiptAmount = criticalReceiptAmount.max(highReceiptAmount);
+        this.maxCustomers = maxCustomers;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    int getMaxCustomers() {
+        return maxCustomers;
+    }
+
+    BigDecimal getHighReceiptAmount() {
+        return highReceiptAmount;
+    }
+
+    /**
+     * 进入高优先通道的应收日期上限（不包含）：最早应收日期早于该日期即视为逾期
+     */
+    Date highDueBefore(LocalDate today) {
+        return toDate(today.minusDays(highOverdueDays));
+    }
+
+    VerificationPriorityEnum laneOf(CustomerWorkload workload, LocalDate today) {
+        if (!enabled) {
+            return VerificationPriorityEnum.NORMAL;
+        }
+        Date oldestDueDate = workload.getOldestDueDate();
+        BigDecimal openAmount = workload.getOpenReceiptAmount() == null ? BigDecimal.ZERO : workload.getOpenReceiptAmount();
+        if (oldestDueDate != null && oldestDueDate.before(toDate(today.minusDays(criticalOverdueDays)))
+                || openAmount.compareTo(criticalReceiptAmount) >= 0) {
+            return VerificationPriorityEnum.CRITICAL;
+        }
+        if (oldestDueDate != null && oldestDueDate.before(highDueBefore(today))
+                || openAmount.compareTo(highReceiptAmount) >= 0) {
+            return VerificationPriorityEnum.HIGH;
+        }
+        return VerificationPriorityEnum.NORMAL;
+    }
+
+    private static Date toDate(LocalDate date) {
+        return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
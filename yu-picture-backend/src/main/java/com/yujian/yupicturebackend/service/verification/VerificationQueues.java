@@ -0,0 +1,133 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import cn.hutool.json.JSONUtil;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.MessageProperties;
+import com.yujian.yupicturebackend.model.dto.verification.VerificationBatchMessage;
+import com.yujian.yupicturebackend.model.dto.verification.VerificationBatchReply;
+import com.yujian.yupicturebackend.model.enums.VerificationPriorityEnum;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 分布式核销的队列声明与消息编解码，协调节点与工作节点共用，保证两端声明的队列参数一致。
+ * <p>
+ * 失败批次的重试沿用死信交换机的做法：每一级重试队列设置固定的消息 TTL，过期后死信回批次工作队列，
+ * 级数越高延迟越长；重试次数耗尽的批次转入停放队列，由运维查看后重放。
+ */
+final class VerificationQueues {
+
+    /**
+     * 消息过期后死信到默认交换机，按路由键直接投递回批次工作队列
+     */
+    private static final String DEFAULT_EXCHANGE = "";
+
+    private VerificationQueues() {
+    }
+
+    /**
+     * 声明批次工作队列：持久化、非独占、不自动删除，Broker 重启后未处理的批次仍在；
+     * 开启消息优先级，积压时优先通道的批次（包括重试回来的）先于普通批次投递给工作节点。
+     * 已存在的同名队列参数不同会以 PRECONDITION_FAILED 关闭通道，因此带优先级的队列使用新的队列名，
+     * 升级步骤见 application.yml 中 verification.distributed.batch-queue 的说明
+     */
+    static void declareBatchQueue(Channel channel, String queue) throws IOException {
+        Map<String, Object> args = new HashMap<>();
+        args.put("x-max-priority", VerificationPriorityEnum.CRITICAL.getLevel());
+        channel.queueDeclare(queue, true, false, false, args);
+    }
+
+    /**
+     * 声明各级重试队列：第 i 级的消息在队列中停留 delaysMillis[i] 后死信回批次工作队列。
+     * 重试队列没有消费者，只用来延迟，同一级的消息 TTL 相同，过期顺序与入队顺序一致。
+     */
+    static void declareRetryQueues(Channel channel, String batchQueue, long[] delaysMillis) throws IOException {
+        for (int tier = 0; tier < delaysMillis.length; tier++) {
+            Map<String, Object> args = new HashMap<>();
+            args.put("x-message-ttl", delaysMillis[tier]);
+            args.put("x-dead-letter-exchange", DEFAULT_EXCHANGE);
+            args.put("x-dead-letter-routing-key", batchQueue);
+            channel.queueDeclare(retryQueue(batchQueue, tier), true, false, false, args);
+        }
+    }
+
+    /**
+     * 声明停放队列：持久化，没有 TTL 与死信，批次一直保留到被重放或清理
+     */
+    static AMQP.Queue.DeclareOk declareParkingQueue(Channel channel, String batchQueue) throws IOException {
+        return channel.queueDeclare(parkingQueue(batchQueue), true, false, false, null);
+    }
+
+    static String retryQueue(String batchQueue, int tier) {
+        return batchQueue + ".retry." + (tier + 1);
+    }
+
+    static String parkingQueue(String batchQueue) {
+        return batchQueue + ".parked";
+    }
+
+    static VerificationBatchMessage toMessage(Long runId, String leaseToken, CustomerBatch batch, int flushChunkSize) {
+        VerificationBatchMessage message = new VerificationBatchMessage();
+        message.setRunId(runId);
+        message.setLeaseToken(leaseToken);
+        message.setCheckpointId(batch.getCheckpointId());
+        message.setOwnerToken(batch.getOwnerToken());
+        message.setCustomerNames(batch.getCustomerNames());
+        message.setDedicated(batch.isDedicated());
+        message.setDirtyMarks(batch.isContiguous() ? null : batch.getDirtyMarks());
+        message.setContiguous(batch.isContiguous());
+        message.setPriority(batch.getPriority().getLevel());
+        message.setFlushChunkSize(flushChunkSize);
+        message.setAsOfDate(batch.getAsOfDate());
+        message.setAttempt(1);
+        return message;
+    }
+
+    /**
+     * 由消息还原批次，批次带上原检查点 id
+     */
+    static CustomerBatch toBatch(VerificationBatchMessage message) {
+        CustomerBatch batch;
+        if (message.getDirtyMarks() != null && !message.getDirtyMarks().isEmpty()) {
+            batch = CustomerBatch.dirty(message.getDirtyMarks());
+        } else if (Boolean.TRUE.equals(message.getDedicated())) {
+            batch = CustomerBatch.dedicated(message.getCustomerNames().get(0));
+        } else if (Boolean.FALSE.equals(message.getContiguous())) {
+            batch = CustomerBatch.prioritized(message.getCustomerNames(), VerificationPriorityEnum.getEnumByLevel(message.getPriority()));
+        } else {
+            batch = CustomerBatch.range(message.getCustomerNames());
+        }
+        return batch.withCheckpointId(message.getCheckpointId())
+                .withPriority(VerificationPriorityEnum.getEnumByLevel(message.getPriority()))
+                .withAsOfDate(message.getAsOfDate())
+                .withOwnerToken(message.getOwnerToken());
+    }
+
+    /**
+     * 批次消息持久化投递，关联 id 为检查点 id，消息优先级为批次的调度优先级
+     */
+    static AMQP.BasicProperties batchProperties(CustomerBatch batch, String replyTo) {
+        return MessageProperties.PERSISTENT_TEXT_PLAIN.builder()
+                .contentType("application/json")
+                .correlationId(String.valueOf(batch.getCheckpointId()))
+                .replyTo(replyTo)
+                .priority(batch.getPriority().getLevel())
+                .build();
+    }
+
+    static byte[] encode(Object message) {
+        return JSONUtil.toJsonStr(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static VerificationBatchMessage decodeMessage(byte[] body) {
+        return JSONUtil.toBean(new String(body, StandardCharsets.UTF_8), VerificationBatchMessage.class);
+    }
+
+    static VerificationBatchReply decodeReply(byte[] body) {
+        return JSONUtil.toBean(new String(body, StandardCharsets.UTF_8), VerificationBatchReply.class);
+    }
+}
@@ -1,26 +1,34 @@
 package com.yujian.yupicturebackend.service.verification;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yujian.yupicturebackend.annotation.PinPrimary;
 import com.yujian.yupicturebackend.domain.BankReceipt;
 import com.yujian.yupicturebackend.domain.RentSchedule;
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.exception.ErrorCode;
 import com.yujian.yupicturebackend.mapper.BankReceiptMapper;
 import com.yujian.yupicturebackend.mapper.RentScheduleMapper;
-import com.yujian.yupicturebackend.service.IBankReceiptService;
-import com.yujian.yupicturebackend.service.IRentScheduleService;
+import com.yujian.yupicturebackend.service.customer.CustomerKeyService;
 import lombok.Data;
+import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.annotation.Resource;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,24 +37,73 @@ public class VerificationService {
     private static final Logger log = LoggerFactory.getLogger("VerificationProcess");
 
     // 定义状态常量
-    private static final int STATUS_UNUSED = 0;
-    private static final int STATUS_PARTIALLY_USED = 1;
-    private static final int STATUS_USED = 2;
-    private static final int UPDATE_BATCH_SIZE = 500;
+    static final int STATUS_UNUSED = 0;
+    static final int STATUS_PARTIALLY_USED = 1;
+    static final int STATUS_USED = 2;
+    private static final String OPEN_RECEIPT_EXISTS_SQL = "SELECT 1 FROM bank_receipt br"
+            + " WHERE br.payer_name = rent_schedule.lessee_name AND br.status IN ("
+            + STATUS_UNUSED + ", " + STATUS_PARTIALLY_USED + ")";
 
     private final BankReceiptMapper bankReceiptMapper;
     private final RentScheduleMapper rentScheduleMapper;
 
-    // 注入 IService 以使用批量更新功能
-    @Resource
-    private IBankReceiptService bankReceiptService;
-    @Resource
-    private IRentScheduleService rentScheduleService;
+    private final VerificationBulkWriter bulkWriter;
+    private final DirtyCustomerTracker dirtyCustomerTracker;
+    private final VerificationCheckpointService checkpointService;
+    private final VerificationMetrics metrics;
+    private final CustomerKeyService customerKeyService;
 
+    /**
+     * 是否按客户整数键（customer_id）读取与分组名称列表批次，须在 customer_id 回填完成后开启，核销开始前由 {@link #checkCustomerKeys} 校验；
+     * 连续区间批次本就按名称索引范围扫描，仍按名称分组；批次的发现、检查点与分段锁仍以客户名称为业务键
+     */
+    private final boolean customerKeyEnabled;
 
-    public VerificationService(BankReceiptMapper bankReceiptMapper, RentScheduleMapper rentScheduleMapper) {
+    /**
+     * 是否启用定点（分）核销内核，关闭时沿用 BigDecimal 逐步计算的原有路径
+     */
+    private final boolean centsKernelEnabled;
+    private final CentsAllocationKernel centsAllocationKernel;
+    /**
+     * 逐客户过程日志的抽样，未抽中的客户日志降为 DEBUG
+     */
+    private final CustomerLogSampler customerLogSampler;
+    /**
+     * 回写时单条多行 UPDATE 包含的行数；流水线回写由 {@link AdaptiveBatchSizer} 按实测耗时调整
+     */
+    private final int flushChunkSize;
+
+    @Autowired
+    public VerificationService(BankReceiptMapper bankReceiptMapper, RentScheduleMapper rentScheduleMapper,
+                               VerificationBulkWriter bulkWriter,
+                               DirtyCustomerTracker dirtyCustomerTracker,
+                               VerificationCheckpointService checkpointService,
+                               VerificationMetrics metrics,
+                               CustomerKeyService customerKeyService,
+                               @Value("${verification.customer-key-enabled:false}") boolean customerKeyEnabled,
+                               @Value("${verification.cents-kernel-enabled:false}") boolean centsKernelEnabled,
+                               @Value("${verification.flush-chunk-size:500}") int flushChunkSize,
+                               @Value("${verification.logging.customer-sample-rate:1.0}") double customerLogSampleRate) {
         this.bankReceiptMapper = bankReceiptMapper;
         this.rentScheduleMapper = rentScheduleMapper;
+        this.bulkWriter = bulkWriter;
+        this.dirtyCustomerTracker = dirtyCustomerTracker;
+        this.checkpointService = checkpointService;
+        this.metrics = metrics;
+        this.customerKeyService = customerKeyService;
+        this.customerKeyEnabled = customerKeyEnabled;
+        this.centsKernelEnabled = centsKernelEnabled;
+        this.flushChunkSize = flushChunkSize > 0 ? flushChunkSize : 500;
+        this.customerLogSampler = new CustomerLogSampler(customerLogSampleRate);
+        this.centsAllocationKernel = new CentsAllocationKernel(customerLogSampler);
+    }
+
+    /**
+     * 只做内存分摊（{@link #allocateCustomer}）的实例，不读写数据库，供等价性测试与基准测试使用
+     */
+    VerificationService(boolean centsKernelEnabled, double customerLogSampleRate) {
+        this(null, null, null, null, null, VerificationMetrics.NOOP, null, false,
+                centsKernelEnabled, 500, customerLogSampleRate);
     }
 
     @Transactional(rollbackFor = Exception.class)
@@ -63,8 +120,9 @@ public class VerificationService {
                 .orderByAsc("due_date");
         List<RentSchedule> schedules = rentScheduleMapper.selectList(scheduleWrapper);
 
-        ProcessingOutcome outcome = processSingleCustomer(customerName, receipts, schedules);
-        flushUpdates(outcome.getUpdatedSchedules(), outcome.getUpdatedReceipts());
+        ProcessingOutcome outcome = new ProcessingOutcome();
+        outcome.add(customerName, allocateCustomer(customerName, receipts, schedules));
+        flushOutcomes(Collections.singletonList(outcome), null, flushChunkSize);
         return outcome.getResult();
     }
 
@@ -73,56 +131,221 @@ public class VerificationService {
         if (customerNames == null || customerNames.isEmpty()) {
             return new VerificationResult();
         }
-
         // 一次性拉取这一批客户的收款单，减少逐客户查询导致的 N 次往返
+        List<BankReceipt> allReceipts = loadReceiptsByNames(customerNames);
+        List<RentSchedule> allSchedules = loadSchedulesByNames(customerNames, null);
+        return processLoadedCustomers(customerNames, allReceipts, allSchedules);
+    }
+
+    /**
+     * 核销一个客户批次：读取、分摊、回写在同一个事务中依次执行。
+     * 流水线模式下三步由 {@link VerificationPipeline} 分别调用 {@link #loadCustomerBatch}、
+     * {@link #allocateLoadedCustomers} 与 {@link #flushBatches}。
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public VerificationResult processCustomerBatch(CustomerBatch batch) {
+        if (batch == null || batch.size() == 0) {
+            return new VerificationResult();
+        }
+        LoadedBatch loaded = loadCustomerBatch(batch);
+        ProcessingOutcome outcome = allocateLoadedCustomers(batch.getCustomerNames(), loaded.getCustomerIds(),
+                loaded.getReceipts(), loaded.getSchedules());
+        flushBatches(Collections.singletonList(batch), Collections.singletonList(outcome), flushChunkSize);
+        return outcome.getResult();
+    }
+
+    /**
+     * 开启客户整数键时确认存量行已全部回填客户 ID，核销开始前调用；按 customer_id 读取时未回填的行读不到，不能带着这样的行开始核销
+     */
+    public void checkCustomerKeys() {
+        if (customerKeyEnabled) {
+            customerKeyService.ensureFullyKeyed();
+        }
+    }
+
+    /**
+     * 读取一个批次的待核销收款单与租金计划。
+     * 连续区间批次中的客户是按索引顺序发现的，收款单与租金计划都走 BETWEEN 范围扫描；
+     * 增量核销的脏客户批次是稀疏的，按名称列表加载；开启客户整数键后改按 customer_id 列表加载，连续区间批次不受影响。
+     * 批次带有应收日期截止日时只读取不晚于该日的租金计划，按客户读取时在 (客户, status, due_date) 索引上是一段紧凑的范围扫描。
+     * 读出的数据随后会据此回写（读-改-写），固定读主库，不受副本复制延迟影响。
+     */
+    @PinPrimary
+    @Transactional(readOnly = true)
+    public LoadedBatch loadCustomerBatch(CustomerBatch batch) {
+        if (batch.size() == 0) {
+            // 客户全部被分段锁推迟，只需提交检查点
+            return new LoadedBatch(batch, null, new ArrayList<>(), new ArrayList<>());
+        }
+        if (!batch.isContiguous()) {
+            if (customerKeyEnabled) {
+                List<Long> customerIds = customerKeyService.resolveIds(batch.getCustomerNames());
+                List<Long> registeredIds = registeredIds(customerIds);
+                if (!registeredIds.isEmpty()) {
+                    return new LoadedBatch(batch, customerIds, loadReceiptsByIds(registeredIds),
+                            loadSchedulesByIds(registeredIds, batch.getAsOfDate()));
+                }
+                // 批次中的客户都未登记，没有可按整数键读取的行，按名称读取
+            }
+            return new LoadedBatch(batch, null, loadReceiptsByNames(batch.getCustomerNames()),
+                    loadSchedulesByNames(batch.getCustomerNames(), batch.getAsOfDate()));
+        }
+
         QueryWrapper<BankReceipt> receiptWrapper = new QueryWrapper<>();
-        receiptWrapper.in("payer_name", customerNames)
+        receiptWrapper.between("payer_name", batch.getFirstCustomer(), batch.getLastCustomer())
                 .in("status", STATUS_UNUSED, STATUS_PARTIALLY_USED)
                 .orderByAsc("payment_datetime");
-        List<BankReceipt> allReceipts = bankReceiptMapper.selectList(receiptWrapper);
+        List<BankReceipt> allReceipts = metrics.timeReceiptSelect(() -> bankReceiptMapper.selectList(receiptWrapper));
 
-        // 使用 LinkedHashMap 保持原始顺序，方便任务日志与数据顺序对齐
-        Map<String, List<BankReceipt>> receiptsByCustomer = allReceipts.stream()
-                .collect(Collectors.groupingBy(BankReceipt::getPayerName, LinkedHashMap::new, Collectors.toList()));
+        // 区间内没有待核销收款的承租人不会参与核销，用 EXISTS 在库内过滤掉，避免把这部分计划传输到应用
+        QueryWrapper<RentSchedule> scheduleWrapper = new QueryWrapper<>();
+        scheduleWrapper.between("lessee_name", batch.getFirstCustomer(), batch.getLastCustomer())
+                .in("status", STATUS_UNUSED, STATUS_PARTIALLY_USED)
+                .le(batch.getAsOfDate() != null, "due_date", batch.getAsOfDate())
+                .exists(OPEN_RECEIPT_EXISTS_SQL)
+                .orderByAsc("due_date");
+        List<RentSchedule> allSchedules = metrics.timeScheduleSelect(() -> rentScheduleMapper.selectList(scheduleWrapper));
+
+        return new LoadedBatch(batch, null, allReceipts, allSchedules);
+    }
+
+    /**
+     * 在一个事务内回写一个或多个批次的核销结果，清理其中脏客户批次的标记，并把批次检查点标记为已完成。
+     * 流水线的回写阶段会把相邻完成的多个批次合并成一次调用，减少事务与往返次数。
+     *
+     * @param outcomes  与 batches 一一对应的批次分摊结果；版本冲突的客户重新核销后，其结果在这里就地修正
+     * @param chunkSize 单条多行 UPDATE 包含的行数
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void flushBatches(List<CustomerBatch> batches, List<ProcessingOutcome> outcomes, int chunkSize) {
+        // 合并提交的批次来自同一次运行，应收日期截止日相同
+        flushOutcomes(outcomes, batches.isEmpty() ? null : batches.get(0).getAsOfDate(), chunkSize);
+        for (int i = 0; i < batches.size(); i++) {
+            CustomerBatch batch = batches.get(i);
+            if (batch.clearsDirtyMarks()) {
+                dirtyCustomerTracker.clearProcessed(batch.getDirtyMarks());
+            }
+            checkpointService.markDone(batch, outcomes.get(i).getResult());
+        }
+    }
+
+    private List<BankReceipt> loadReceiptsByNames(List<String> customerNames) {
+        QueryWrapper<BankReceipt> receiptWrapper = new QueryWrapper<>();
+        receiptWrapper.in("payer_name", customerNames)
+                .in("status", STATUS_UNUSED, STATUS_PARTIALLY_USED)
+                .orderByAsc("payment_datetime");
+        return metrics.timeReceiptSelect(() -> bankReceiptMapper.selectList(receiptWrapper));
+    }
 
+    private List<RentSchedule> loadSchedulesByNames(List<String> customerNames, Date asOfDate) {
         QueryWrapper<RentSchedule> scheduleWrapper = new QueryWrapper<>();
         scheduleWrapper.in("lessee_name", customerNames)
                 .in("status", STATUS_UNUSED, STATUS_PARTIALLY_USED)
+                .le(asOfDate != null, "due_date", asOfDate)
                 .orderByAsc("due_date");
-        List<RentSchedule> allSchedules = rentScheduleMapper.selectList(scheduleWrapper);
+        return metrics.timeScheduleSelect(() -> rentScheduleMapper.selectList(scheduleWrapper));
+    }
 
-        // 一次性拉取租金计划并在内存按客户分组，避免重复 SQL
-        Map<String, List<RentSchedule>> schedulesByCustomer = allSchedules.stream()
-                .collect(Collectors.groupingBy(RentSchedule::getLesseeName, LinkedHashMap::new, Collectors.toList()));
+    /**
+     * 去掉未登记客户的空位，得到可以放进 customer_id IN 的客户 ID
+     */
+    static List<Long> registeredIds(List<Long> customerIds) {
+        List<Long> registered = new ArrayList<>(customerIds.size());
+        for (Long customerId : customerIds) {
+            if (customerId != null) {
+                registered.add(customerId);
+            }
+        }
+        return registered;
+    }
+
+    private List<BankReceipt> loadReceiptsByIds(List<Long> customerIds) {
+        QueryWrapper<BankReceipt> receiptWrapper = new QueryWrapper<>();
+        receiptWrapper.in("customer_id", customerIds)
+                .in("status", STATUS_UNUSED, STATUS_PARTIALLY_USED)
+                .orderByAsc("payment_datetime");
+        return metrics.timeReceiptSelect(() -> bankReceiptMapper.selectList(receiptWrapper));
+    }
+
+    private List<RentSchedule> loadSchedulesByIds(List<Long> customerIds, Date asOfDate) {
+        QueryWrapper<RentSchedule> scheduleWrapper = new QueryWrapper<>();
+        scheduleWrapper.in("customer_id", customerIds)
+                .in("status", STATUS_UNUSED, STATUS_PARTIALLY_USED)
+                .le(asOfDate != null, "due_date", asOfDate)
+                .orderByAsc("due_date");
+        return metrics.timeScheduleSelect(() -> rentScheduleMapper.selectList(scheduleWrapper));
+    }
 
-        VerificationResult batchResult = new VerificationResult();
-        List<RentSchedule> schedulesToUpdate = new ArrayList<>();
-        List<BankReceipt> receiptsToUpdate = new ArrayList<>();
+    private VerificationResult processLoadedCustomers(List<String> customerNames,
+                                                      List<BankReceipt> allReceipts,
+                                                      List<RentSchedule> allSchedules) {
+        ProcessingOutcome batchOutcome = allocateLoadedCustomers(customerNames, allReceipts, allSchedules);
+        flushOutcomes(Collections.singletonList(batchOutcome), null, flushChunkSize);
+        return batchOutcome.getResult();
+    }
+
+    /**
+     * 对已加载的一批收款单与租金计划做纯内存核销：按客户名称分组、排序并逐客户分摊，不访问数据库。
+     */
+    ProcessingOutcome allocateLoadedCustomers(List<String> customerNames,
+                                              List<BankReceipt> allReceipts,
+                                              List<RentSchedule> allSchedules) {
+        return allocateLoadedCustomers(customerNames, null, allReceipts, allSchedules);
+    }
 
-        for (String customerName : customerNames) {
-            List<BankReceipt> receipts = new ArrayList<>(receiptsByCustomer.getOrDefault(customerName, Collections.emptyList()));
-            List<RentSchedule> schedules = new ArrayList<>(schedulesByCustomer.getOrDefault(customerName, Collections.emptyList()));
+    /**
+     * 对已加载的一批收款单与租金计划做纯内存核销：按客户分组、排序并逐客户分摊，不访问数据库。
+     *
+     * @param customerIds 与 customerNames 一一对应的客户 ID，不为空时按 customer_id 分组，为空时按客户名称分组
+     */
+    ProcessingOutcome allocateLoadedCustomers(List<String> customerNames,
+                                              List<Long> customerIds,
+                                              List<BankReceipt> allReceipts,
+                                              List<RentSchedule> allSchedules) {
+        Function<BankReceipt, Object> receiptCustomer = customerIds != null ? BankReceipt::getCustomerId : BankReceipt::getPayerName;
+        Function<RentSchedule, Object> scheduleCustomer = customerIds != null ? RentSchedule::getCustomerId : RentSchedule::getLesseeName;
+        // 使用 LinkedHashMap 保持原始顺序，方便任务日志与数据顺序对齐
+        Map<Object, List<BankReceipt>> receiptsByCustomer = allReceipts.stream()
+                .collect(Collectors.groupingBy(receiptCustomer, LinkedHashMap::new, Collectors.toList()));
+
+        // 一次性拉取租金计划并在内存按客户分组，避免重复 SQL
+        Map<Object, List<RentSchedule>> schedulesByCustomer = allSchedules.stream()
+                .collect(Collectors.groupingBy(scheduleCustomer, LinkedHashMap::new, Collectors.toList()));
+
+        ProcessingOutcome batchOutcome = new ProcessingOutcome();
+        for (int i = 0; i < customerNames.size(); i++) {
+            String customerName = customerNames.get(i);
+            Object customerKey = customerIds != null ? customerIds.get(i) : customerName;
+            List<BankReceipt> receipts = new ArrayList<>(receiptsByCustomer.getOrDefault(customerKey, Collections.emptyList()));
+            List<RentSchedule> schedules = new ArrayList<>(schedulesByCustomer.getOrDefault(customerKey, Collections.emptyList()));
             // 在内存中维持原先的时间排序，避免数据库大范围排序带来的开销
             receipts.sort(Comparator.comparing(BankReceipt::getPaymentDatetime, Comparator.nullsLast(Comparator.naturalOrder())));
             schedules.sort(Comparator.comparing(RentSchedule::getDueDate, Comparator.nullsLast(Comparator.naturalOrder())));
-            ProcessingOutcome outcome = processSingleCustomer(customerName, receipts, schedules);
-            batchResult.merge(outcome.getResult());
-            if (!outcome.getUpdatedSchedules().isEmpty()) {
-                schedulesToUpdate.addAll(outcome.getUpdatedSchedules());
-            }
-            if (!outcome.getUpdatedReceipts().isEmpty()) {
-                receiptsToUpdate.addAll(outcome.getUpdatedReceipts());
-            }
+            batchOutcome.add(customerName, metrics.timeCustomerAllocation(() -> allocateCustomer(customerName, receipts, schedules)));
         }
+        return batchOutcome;
+    }
 
-        flushUpdates(schedulesToUpdate, receiptsToUpdate);
-        return batchResult;
+    /**
+     * 按配置选择核销内核。定点内核遇到无法精确换算为分的金额时返回 null，此时回退到 BigDecimal 路径。
+     */
+    ProcessingOutcome allocateCustomer(String customerName,
+                                       List<BankReceipt> receipts,
+                                       List<RentSchedule> schedules) {
+        if (centsKernelEnabled) {
+            ProcessingOutcome outcome = centsAllocationKernel.allocate(customerName, receipts, schedules);
+            if (outcome != null) {
+                return outcome;
+            }
+        }
+        return processSingleCustomer(customerName, receipts, schedules);
     }
 
-    private ProcessingOutcome processSingleCustomer(String customerName,
+    ProcessingOutcome processSingleCustomer(String customerName,
                                                     List<BankReceipt> receipts,
                                                     List<RentSchedule> schedules) {
-        log.info("开始处理客户: {}", customerName);
+        boolean sampled = customerLogSampler.isSampled(customerName);
+        CustomerLogSampler.info(log, sampled, "开始处理客户: {}", customerName);
 
         // 计算该客户所有收款单的剩余可用金额
         // 统一使用安全取值和非负裁剪，避免历史脏数据导致金额为 null 或出现负值
@@ -132,7 +355,7 @@ public class VerificationService {
         totalPayment = totalPayment.max(BigDecimal.ZERO);
 
         if (totalPayment.compareTo(BigDecimal.ZERO) <= 0) {
-            log.info("客户 {} 没有有效的待核销金额。", customerName);
+            CustomerLogSampler.info(log, sampled, "客户 {} 没有有效的待核销金额。", customerName);
             return ProcessingOutcome.empty();
         }
 
@@ -141,7 +364,7 @@ public class VerificationService {
             return ProcessingOutcome.empty();
         }
 
-        log.info("客户 {} 待核销总金额: {}", customerName, totalPayment);
+        CustomerLogSampler.info(log, sampled, "客户 {} 待核销总金额: {}", customerName, totalPayment);
         BigDecimal originalTotalPayment = totalPayment;
 
         VerificationResult result = new VerificationResult();
@@ -165,6 +388,7 @@ public class VerificationService {
                 if (paymentForInterest.compareTo(BigDecimal.ZERO) > 0) {
                     BigDecimal currentInterestReceived = safeAmount(schedule.getInterestReceived());
                     schedule.setInterestReceived(currentInterestReceived.add(paymentForInterest));
+                    ChangedColumns.mark(schedule, ChangedColumns.INTEREST_RECEIVED);
                     totalPayment = totalPayment.subtract(paymentForInterest);
                     result.addInterest(paymentForInterest);
                     updated = true;
@@ -178,6 +402,7 @@ public class VerificationService {
                 if (paymentForPrincipal.compareTo(BigDecimal.ZERO) > 0) {
                     BigDecimal currentPrincipalReceived = safeAmount(schedule.getPrincipalReceived());
                     schedule.setPrincipalReceived(currentPrincipalReceived.add(paymentForPrincipal));
+                    ChangedColumns.mark(schedule, ChangedColumns.PRINCIPAL_RECEIVED);
                     totalPayment = totalPayment.subtract(paymentForPrincipal);
                     result.addPrincipal(paymentForPrincipal);
                     updated = true;
@@ -193,9 +418,9 @@ public class VerificationService {
                 BigDecimal updatedInterestReceived = safeAmount(schedule.getInterestReceived());
                 if (updatedPrincipalReceived.compareTo(updatedPrincipalDue) >= 0 &&
                         updatedInterestReceived.compareTo(updatedInterestDue) >= 0) {
-                    schedule.setStatus(STATUS_USED);
+                    ChangedColumns.setStatus(schedule, STATUS_USED);
                 } else {
-                    schedule.setStatus(STATUS_PARTIALLY_USED);
+                    ChangedColumns.setStatus(schedule, STATUS_PARTIALLY_USED);
                 }
                 updatedSchedules.add(schedule);
             }
@@ -217,11 +442,12 @@ public class VerificationService {
             if (usageOnThisReceipt.compareTo(BigDecimal.ZERO) > 0) {
                 BigDecimal currentUsedAmount = safeAmount(receipt.getUsedAmount());
                 receipt.setUsedAmount(currentUsedAmount.add(usageOnThisReceipt));
+                ChangedColumns.mark(receipt, ChangedColumns.USED_AMOUNT);
                 BigDecimal paymentAmount = safeAmount(receipt.getPaymentAmount());
                 if (receipt.getUsedAmount().compareTo(paymentAmount) >= 0) {
-                    receipt.setStatus(STATUS_USED);
+                    ChangedColumns.setStatus(receipt, STATUS_USED);
                 } else {
-                    receipt.setStatus(STATUS_PARTIALLY_USED);
+                    ChangedColumns.setStatus(receipt, STATUS_PARTIALLY_USED);
                 }
                 updatedReceipts.add(receipt);
                 amountToUpdateOnReceipts = amountToUpdateOnReceipts.subtract(usageOnThisReceipt);
@@ -230,36 +456,116 @@ public class VerificationService {
 
         if (result.getVerifiedCount() > 0 || result.getTotalPrincipal().compareTo(BigDecimal.ZERO) > 0
                 || result.getTotalInterest().compareTo(BigDecimal.ZERO) > 0) {
-            log.info("客户 {} 处理完毕。本次核销笔数: {}, 本金: {}, 利息: {}",
+            CustomerLogSampler.info(log, sampled, "客户 {} 处理完毕。本次核销笔数: {}, 本金: {}, 利息: {}",
                     customerName, result.getVerifiedCount(), result.getTotalPrincipal(), result.getTotalInterest());
         }
 
         return new ProcessingOutcome(result, updatedSchedules, updatedReceipts);
     }
 
-    private void flushUpdates(List<RentSchedule> schedulesToUpdate, List<BankReceipt> receiptsToUpdate) {
-        if (schedulesToUpdate != null && !schedulesToUpdate.isEmpty()) {
-            // 拆分成小批次写库，避免 updateBatchById 一次性载荷过大
-            updateRentSchedulesInChunks(schedulesToUpdate);
+    /**
+     * 回写一组分摊结果，每个结果包含若干个完整客户的变更行。
+     * 读取之后被录入或人工更正改动过（版本号不一致）的客户不写入旧结果，而是在同一事务中加锁重新读取、重新分摊并回写，
+     * 再用新结果替换其所在分摊结果中的旧结果；其余客户照常回写，不因个别客户冲突回滚整个批次。
+     *
+     * @param asOfDate 重新核销时使用的应收日期截止日，与原分摊一致
+     */
+    void flushOutcomes(List<ProcessingOutcome> outcomes, Date asOfDate, int chunkSize) {
+        List<RentSchedule> schedulesToUpdate;
+        List<BankReceipt> receiptsToUpdate;
+        if (outcomes.size() == 1) {
+            schedulesToUpdate = outcomes.get(0).getUpdatedSchedules();
+            receiptsToUpdate = outcomes.get(0).getUpdatedReceipts();
+        } else {
+            schedulesToUpdate = new ArrayList<>();
+            receiptsToUpdate = new ArrayList<>();
+            for (ProcessingOutcome outcome : outcomes) {
+                schedulesToUpdate.addAll(outcome.getUpdatedSchedules());
+                receiptsToUpdate.addAll(outcome.getUpdatedReceipts());
+            }
+        }
+        if (schedulesToUpdate.isEmpty() && receiptsToUpdate.isEmpty()) {
+            return;
+        }
+        // 每个分块一条多行 UPDATE，只写变化的列；不经过服务层，核销自身的回写不会被记为脏客户
+        Set<String> conflicted = bulkWriter.write(schedulesToUpdate, receiptsToUpdate, chunkSize);
+        if (conflicted.isEmpty()) {
+            return;
         }
-        if (receiptsToUpdate != null && !receiptsToUpdate.isEmpty()) {
-            // 同步处理收款单的批量更新，均衡数据库压力
-            updateBankReceiptsInChunks(receiptsToUpdate);
+        metrics.recordVersionConflicts(conflicted.size());
+        for (String customerName : conflicted) {
+            VerificationResult fresh = reverifyCustomer(customerName, asOfDate, chunkSize);
+            for (ProcessingOutcome outcome : outcomes) {
+                if (outcome.replace(customerName, fresh)) {
+                    break;
+                }
+            }
+            log.warn("客户 {} 的收款单或租金计划在读取后被改动，已按最新数据重新核销。核销笔数: {}, 本金: {}, 利息: {}",
+                    customerName, fresh.getVerifiedCount(), fresh.getTotalPrincipal(), fresh.getTotalInterest());
         }
     }
 
-    private void updateRentSchedulesInChunks(List<RentSchedule> schedules) {
-        for (int i = 0; i < schedules.size(); i += UPDATE_BATCH_SIZE) {
-            int end = Math.min(i + UPDATE_BATCH_SIZE, schedules.size());
-            rentScheduleService.updateBatchById(new ArrayList<>(schedules.subList(i, end)));
+    /**
+     * 重新核销一个回写时发生版本冲突的客户：先不加锁地按名称取出待核销行的主键，再按主键加锁读取整行，分摊后立即回写。
+     * 按名称加锁读取会在名称索引上加间隙锁，阻塞其他客户在相邻名称上的录入；按主键加锁只锁住这些行本身。
+     * 与 {@link VerificationBulkWriter#write} 相同，先锁租金计划再锁收款单，避免与并发回写交叉加锁。
+     * 加锁读取取回整行的当前已提交值，而不是先锁版本号再做普通读取：可重复读下普通读取仍读本事务的快照，可能是旧值。
+     * 行在事务提交前一直由本事务锁定，这次回写不会再发生冲突；取主键与加锁之间新变为待核销的行留给下一次核销。
+     */
+    private VerificationResult reverifyCustomer(String customerName, Date asOfDate, int chunkSize) {
+        QueryWrapper<RentSchedule> scheduleIdWrapper = new QueryWrapper<>();
+        scheduleIdWrapper.select("id")
+                .eq("lessee_name", customerName)
+                .in("status", STATUS_UNUSED, STATUS_PARTIALLY_USED)
+                .le(asOfDate != null, "due_date", asOfDate);
+        List<Long> scheduleIds = toIds(rentScheduleMapper.selectObjs(scheduleIdWrapper));
+
+        QueryWrapper<BankReceipt> receiptIdWrapper = new QueryWrapper<>();
+        receiptIdWrapper.select("id")
+                .eq("payer_name", customerName)
+                .in("status", STATUS_UNUSED, STATUS_PARTIALLY_USED);
+        List<Long> receiptIds = toIds(bankReceiptMapper.selectObjs(receiptIdWrapper));
+
+        List<RentSchedule> schedules = new ArrayList<>();
+        if (!scheduleIds.isEmpty()) {
+            // 加锁后再次按状态与截止日过滤，取主键之后已被他人核销的行不参与分摊
+            QueryWrapper<RentSchedule> scheduleWrapper = new QueryWrapper<>();
+            scheduleWrapper.in("id", scheduleIds)
+                    .in("status", STATUS_UNUSED, STATUS_PARTIALLY_USED)
+                    .le(asOfDate != null, "due_date", asOfDate)
+                    .orderByAsc("id")
+                    .last("FOR UPDATE");
+            schedules.addAll(rentScheduleMapper.selectList(scheduleWrapper));
+        }
+        List<BankReceipt> receipts = new ArrayList<>();
+        if (!receiptIds.isEmpty()) {
+            QueryWrapper<BankReceipt> receiptWrapper = new QueryWrapper<>();
+            receiptWrapper.in("id", receiptIds)
+                    .in("status", STATUS_UNUSED, STATUS_PARTIALLY_USED)
+                    .orderByAsc("id")
+                    .last("FOR UPDATE");
+            receipts.addAll(bankReceiptMapper.selectList(receiptWrapper));
+        }
+        // 按主键加锁后在内存中恢复分摊所需的时间顺序
+        receipts.sort(Comparator.comparing(BankReceipt::getPaymentDatetime, Comparator.nullsLast(Comparator.naturalOrder())));
+        schedules.sort(Comparator.comparing(RentSchedule::getDueDate, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        ProcessingOutcome outcome = allocateCustomer(customerName, receipts, schedules);
+        if (!bulkWriter.write(outcome.getUpdatedSchedules(), outcome.getUpdatedReceipts(), chunkSize).isEmpty()) {
+            throw new BusinessException(ErrorCode.SYSTEM_ERROR, "客户 " + customerName + " 重新核销时版本号仍不一致");
         }
+        return outcome.getResult();
     }
 
-    private void updateBankReceiptsInChunks(List<BankReceipt> receipts) {
-        for (int i = 0; i < receipts.size(); i += UPDATE_BATCH_SIZE) {
-            int end = Math.min(i + UPDATE_BATCH_SIZE, receipts.size());
-            bankReceiptService.updateBatchById(new ArrayList<>(receipts.subList(i, end)));
+    /**
+     * selectObjs 取回的主键按驱动返回的数值类型转为 Long
+     */
+    private static List<Long> toIds(List<Object> values) {
+        List<Long> ids = new ArrayList<>(values.size());
+        for (Object value : values) {
+            ids.add(((Number) value).longValue());
         }
+        return ids;
     }
 
     /**
@@ -328,23 +634,94 @@ public class VerificationService {
             this.totalPrincipal = this.totalPrincipal.add(other.totalPrincipal);
             this.totalInterest = this.totalInterest.add(other.totalInterest);
         }
+
+        /**
+         * 扣除之前并入的一份结果，用于以重新核销的结果替换客户原先的结果
+         */
+        public void subtract(VerificationResult other) {
+            if (other == null) {
+                return;
+            }
+            this.verifiedCount -= other.verifiedCount;
+            this.totalPrincipal = this.totalPrincipal.subtract(other.totalPrincipal);
+            this.totalInterest = this.totalInterest.subtract(other.totalInterest);
+        }
+    }
+
+    /**
+     * 一个批次读取到的待核销数据
+     */
+    @Getter
+    public static class LoadedBatch {
+        private final CustomerBatch batch;
+        /**
+         * 与批次客户一一对应的客户 ID，未开启客户整数键时为空
+         */
+        private final List<Long> customerIds;
+        private final List<BankReceipt> receipts;
+        private final List<RentSchedule> schedules;
+
+        LoadedBatch(CustomerBatch batch, List<Long> customerIds, List<BankReceipt> receipts, List<RentSchedule> schedules) {
+            this.batch = batch;
+            this.customerIds = customerIds;
+            this.receipts = receipts;
+            this.schedules = schedules;
+        }
+    }
+
+    /**
+     * 流式归并核销一个批次的结果
+     */
+    @Getter
+    public static class StreamedBatch {
+        private final VerificationResult result;
+        /**
+         * 读取的收款单与租金计划行数
+         */
+        private final int readRows;
+        /**
+         * 回写的行数
+         */
+        private final int writtenRows;
+        /**
+         * 回写与检查点更新的耗时
+         */
+        private final long flushNanos;
+
+        StreamedBatch(VerificationResult result, int readRows, int writtenRows, long flushNanos) {
+            this.result = result;
+            this.readRows = readRows;
+            this.writtenRows = writtenRows;
+            this.flushNanos = flushNanos;
+        }
     }
 
     // 聚合一次客户处理过程中的结果对象，便于统一提交
-    private static class ProcessingOutcome {
+    static class ProcessingOutcome {
         private final VerificationResult result;
         private final List<RentSchedule> updatedSchedules;
         private final List<BankReceipt> updatedReceipts;
+        /**
+         * 有变更行的客户各自的分摊结果，逐客户并入时记录；回写发现版本冲突、客户重新核销后据此修正合计结果
+         */
+        private final Map<String, VerificationResult> customerResults = new HashMap<>();
+
+        /**
+         * 空的合计结果，随后通过 {@link #add} 逐客户并入
+         */
+        ProcessingOutcome() {
+            this(new VerificationResult(), new ArrayList<>(), new ArrayList<>());
+        }
 
-        private ProcessingOutcome(VerificationResult result,
-                                  List<RentSchedule> updatedSchedules,
-                                  List<BankReceipt> updatedReceipts) {
+        ProcessingOutcome(VerificationResult result,
+                          List<RentSchedule> updatedSchedules,
+                          List<BankReceipt> updatedReceipts) {
             this.result = result;
             this.updatedSchedules = updatedSchedules;
             this.updatedReceipts = updatedReceipts;
         }
 
-        private static ProcessingOutcome empty() {
+        static ProcessingOutcome empty() {
             return new ProcessingOutcome(new VerificationResult(), Collections.emptyList(), Collections.emptyList());
         }
 
@@ -359,5 +736,38 @@ public class VerificationService {
         public List<BankReceipt> getUpdatedReceipts() {
             return updatedReceipts;
         }
+
+        int rows() {
+            return updatedSchedules.size() + updatedReceipts.size();
+        }
+
+        /**
+         * 并入一个客户的分摊结果，只能用于无参构造的合计结果
+         */
+        void add(String customerName, ProcessingOutcome customerOutcome) {
+            result.merge(customerOutcome.result);
+            if (customerOutcome.rows() == 0) {
+                return;
+            }
+            updatedSchedules.addAll(customerOutcome.updatedSchedules);
+            updatedReceipts.addAll(customerOutcome.updatedReceipts);
+            customerResults.put(customerName, customerOutcome.result);
+        }
+
+        /**
+         * 以重新核销的结果替换一个客户原先的结果
+         *
+         * @return 该客户是否属于本结果
+         */
+        boolean replace(String customerName, VerificationResult fresh) {
+            VerificationResult stale = customerResults.remove(customerName);
+            if (stale == null) {
+                return false;
+            }
+            result.subtract(stale);
+            result.merge(fresh);
+            customerResults.put(customerName, fresh);
+            return true;
+        }
     }
 }
@@ -0,0 +1,133 @@
+package com.yujian.yupicturebackend.streaming;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 台账流式读取：归并核销与快照核销按客户顺序流式读取待核销收款单与租金计划。
+ * <p>
+ * 只注册在 {@link LedgerStreamSource} 自己的会话工厂上，连接来自开启了 useCursorFetch 的专用连接池；
+ * 不在 mapper 包下，不会被 MapperScan 注册到应用的主数据源上。
+ * <p>
+ * 客户名在 MySQL 上按 CAST(... AS BINARY) 排序：_ci 排序规则下大小写不同或只差尾部空格的名称比较相等，
+ * 按列排序时这些客户的行会按付款时间交错出现，与 Java 按 equals 区分客户不一致；二进制排序没有填充规则，同名的行总是相邻。
+ * H2 的字符串比较本身区分大小写与尾部空格，直接按列排序。
+ */
+public interface LedgerStreamMapper {
+
+    /**
+     * 按 (payer_name, payment_datetime) 顺序流式读取一个批次的待核销收款单，供归并核销逐客户消费。
+     * payment_datetime 为空的收款单排在该客户最后，与内存排序的 nullsLast 一致。
+     * 经 {@link LedgerStreamSource} 的会话消费，服务端游标按 fetchSize 分段拉取。
+     *
+     * @param contiguous    是否为连续区间批次，是则按 [firstCustomer, lastCustomer] 范围扫描，否则按客户列表
+     * @param customerNames 非连续批次的客户名称列表
+     * @param customerIds   非连续批次的客户 ID 列表，不为空时按 customer_id 读取，customerNames 不再使用
+     */
+    @Select({"<script>",
+            "SELECT id, payer_name AS payerName, customer_id AS customerId, payer_bank AS payerBank, payer_account AS payerAccount,",
+            " payment_amount AS paymentAmount, payment_datetime AS paymentDatetime, used_amount AS usedAmount,",
+            " status, version, create_time AS createTime, update_time AS updateTime",
+            "FROM bank_receipt",
+            "WHERE status IN (0, 1)",
+            "<choose>",
+            "<when test='contiguous'>AND payer_name BETWEEN #{firstCustomer} AND #{lastCustomer}</when>",
+            "<when test='customerIds != null'>AND customer_id IN <foreach collection='customerIds' item='cid' open='(' separator=',' close=')'>#{cid}</foreach></when>",
+            "<otherwise>AND payer_name IN <foreach collection='customerNames' item='name' open='(' separator=',' close=')'>#{name}</foreach></otherwise>",
+            "</choose>",
+            "ORDER BY",
+            "<choose><when test=\"_databaseId == 'mysql'\">CAST(payer_name AS BINARY)</when><otherwise>payer_name</otherwise></choose>",
+            ", payment_datetime IS NULL, payment_datetime, id",
+            "</script>"})
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = 1000)
+    Cursor<BankReceipt> streamOpenReceipts(@Param("contiguous") boolean contiguous,
+                                           @Param("firstCustomer") String firstCustomer,
+                                           @Param("lastCustomer") String lastCustomer,
+                                           @Param("customerNames") List<String> customerNames,
+                                           @Param("customerIds") List<Long> customerIds);
+
+    /**
+     * 按 (payer_name, payment_datetime) 顺序流式读取全部待核销收款单，只取分摊需要的列，供快照核销一次性装入列式快照。
+     * 经 {@link LedgerStreamSource} 的会话消费，服务端游标按 fetchSize 分段拉取。
+     */
+    @Select({"<script>",
+            "SELECT id, payer_name AS payerName, payment_amount AS paymentAmount, payment_datetime AS paymentDatetime,",
+            " used_amount AS usedAmount, status, version",
+            "FROM bank_receipt",
+            "WHERE status IN (0, 1)",
+            "ORDER BY",
+            "<choose><when test=\"_databaseId == 'mysql'\">CAST(payer_name AS BINARY)</when><otherwise>payer_name</otherwise></choose>",
+            ", payment_datetime IS NULL, payment_datetime, id",
+            "</script>"})
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = 5000)
+    Cursor<BankReceipt> streamAllOpenReceipts();
+
+    /**
+     * 按 (lessee_name, due_date) 顺序流式读取一个批次的待核销租金计划，供归并核销逐客户消费。
+     * 只返回仍有待核销收款的承租人的计划；due_date 为空的计划排在该客户最后，与内存排序的 nullsLast 一致。
+     * 经 {@link LedgerStreamSource} 的会话消费，服务端游标按 fetchSize 分段拉取。
+     *
+     * @param contiguous    是否为连续区间批次，是则按 [firstCustomer, lastCustomer] 范围扫描，否则按客户列表
+     * @param customerNames 非连续批次的客户名称列表
+     * @param customerIds   非连续批次的客户 ID 列表，不为空时按 customer_id 读取并按 customer_id 关联收款单，customerNames 不再使用
+     * @param asOfDate      应收日期截止日（包含），为空时不限；客户内按 (status, due_date) 索引顺序在截止日处结束扫描
+     */
+    @Select({"<script>",
+            "SELECT id, lessee_name AS lesseeName, customer_id AS customerId, due_date AS dueDate, total_due_amount AS totalDueAmount,",
+            " principal_due AS principalDue, interest_due AS interestDue, principal_received AS principalReceived,",
+            " interest_received AS interestReceived, status, version, create_time AS createTime, update_time AS updateTime",
+            "FROM rent_schedule",
+            "WHERE status IN (0, 1)",
+            "<if test='asOfDate != null'>AND due_date &lt;= #{asOfDate}</if>",
+            "<choose>",
+            "<when test='contiguous'>AND lessee_name BETWEEN #{firstCustomer} AND #{lastCustomer}</when>",
+            "<when test='customerIds != null'>AND customer_id IN <foreach collection='customerIds' item='cid' open='(' separator=',' close=')'>#{cid}</foreach></when>",
+            "<otherwise>AND lessee_name IN <foreach collection='customerNames' item='name' open='(' separator=',' close=')'>#{name}</foreach></otherwise>",
+            "</choose>",
+            "AND EXISTS (SELECT 1 FROM bank_receipt br WHERE",
+            "<choose>",
+            "<when test='customerIds != null'>br.customer_id = rent_schedule.customer_id</when>",
+            "<otherwise>br.payer_name = rent_schedule.lessee_name</otherwise>",
+            "</choose>",
+            " AND br.status IN (0, 1))",
+            "ORDER BY",
+            "<choose><when test=\"_databaseId == 'mysql'\">CAST(lessee_name AS BINARY)</when><otherwise>lessee_name</otherwise></choose>",
+            ", due_date IS NULL, due_date, id",
+            "</script>"})
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = 1000)
+    Cursor<RentSchedule> streamOpenSchedules(@Param("contiguous") boolean contiguous,
+                                             @Param("firstCustomer") String firstCustomer,
+                                             @Param("lastCustomer") String lastCustomer,
+                                             @Param("customerNames") List<String> customerNames,
+                                             @Param("customerIds") List<Long> customerIds,
+                                             @Param("asOfDate") Date asOfDate);
+
+    /**
+     * 按 (lessee_name, due_date) 顺序流式读取全部待核销租金计划，只取分摊需要的列，供快照核销一次性装入列式快照。
+     * 与 {@link #streamOpenSchedules} 相同，只返回仍有待核销收款的承租人的计划。
+     *
+     * @param asOfDate 应收日期截止日（包含），为空时不限
+     */
+    @Select({"<script>",
+            "SELECT id, lessee_name AS lesseeName, due_date AS dueDate, principal_due AS principalDue,",
+            " interest_due AS interestDue, principal_received AS principalReceived, interest_received AS interestReceived,",
+            " status, version",
+            "FROM rent_schedule",
+            "WHERE status IN (0, 1)",
+            "<if test='asOfDate != null'>AND due_date &lt;= #{asOfDate}</if>",
+            "AND EXISTS (SELECT 1 FROM bank_receipt br WHERE br.payer_name = rent_schedule.lessee_name AND br.status IN (0, 1))",
+            "ORDER BY",
+            "<choose><when test=\"_databaseId == 'mysql'\">CAST(lessee_name AS BINARY)</when><otherwise>lessee_name</otherwise></choose>",
+            ", due_date IS NULL, due_date, id",
+            "</script>"})
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = 5000)
+    Cursor<RentSchedule> streamAllOpenSchedules(@Param("asOfDate") Date asOfDate);
+}
@@ -0,0 +1,125 @@
+package com.yujian.yupicturebackend.streaming;
+
+import cn.hutool.core.util.StrUtil;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+
+/**
+ * 台账流式读取的专用连接池与会话。
+ * <p>
+ * MySQL 驱动只有在连接开启 useCursorFetch 时才用服务端游标按 fetchSize 分段返回结果，否则一次把整个结果集读进内存；
+ * 但 useCursorFetch 会连带开启 useServerPrepStmts，放在应用主连接串上会让所有语句都改为服务端预处理。
+ * 这里为流式读取单独建一个小连接池，只在这个池的连接串上开启 useCursorFetch，应用主数据源不受影响。
+ * <p>
+ * 连接池与会话工厂不注册为 Spring Bean，避免数据源与会话工厂的自动配置检测到已有 Bean 后不再生效。
+ * 读取在独立的只读连接上进行，不参与调用方的事务：核销回写按版本号校验读取之后行是否被改动过，
+ * 读取与回写不在同一个事务中也不会覆盖并发修改。
+ * <p>
+ * 流式查询按客户名的二进制值排序（MySQL 上为 CAST(... AS BINARY)，不受列排序规则的大小写与尾部空格规则影响），
+ * 同名的行总是相邻，调用方按 {@link #customerOrder()} 排列客户即可与游标逐客户归并。
+ */
+@Component
+public class LedgerStreamSource implements DisposableBean {
+
+    private static final String CURSOR_FETCH = "useCursorFetch";
+
+    static final String DATABASE_MYSQL = "mysql";
+    static final String DATABASE_H2 = "h2";
+
+    private final HikariDataSource dataSource;
+    private final SqlSessionFactory sqlSessionFactory;
+    private final Comparator<String> customerOrder;
+
+    /**
+     * @param url         专用连接串，为空时在主库连接串上追加 useCursorFetch=true
+     * @param maxPoolSize 连接池大小，同时进行的流式批次数不超过该值
+     */
+    public LedgerStreamSource(DataSourceProperties primaryProperties,
+                              @Value("${verification.streaming.url:}") String url,
+                              @Value("${verification.streaming.max-pool-size:4}") int maxPoolSize) {
+        String jdbcUrl = StrUtil.isNotBlank(url) ? url : withCursorFetch(primaryProperties.determineUrl());
+        this.dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(primaryProperties.determineDriverClassName())
+                .url(jdbcUrl)
+                .username(primaryProperties.determineUsername())
+                .password(primaryProperties.determinePassword())
+                .build();
+        dataSource.setPoolName("ledger-stream");
+        dataSource.setMaximumPoolSize(Math.max(maxPoolSize, 1));
+        dataSource.setReadOnly(true);
+        dataSource.setAutoCommit(false);
+
+        Configuration configuration = new Configuration(new Environment("ledger-stream", new JdbcTransactionFactory(), dataSource));
+        // 映射语句按 _databaseId 选择排序表达式
+        configuration.setDatabaseId(databaseIdOf(jdbcUrl));
+        configuration.addMapper(LedgerStreamMapper.class);
+        this.sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+        // MySQL 按 UTF-8 字节即码点排序；H2 的字符串比较与 String.compareTo 相同
+        this.customerOrder = DATABASE_MYSQL.equals(configuration.getDatabaseId())
+                ? LedgerStreamSource::compareCodePoints : Comparator.naturalOrder();
+    }
+
+    /**
+     * 打开一个只读会话，会话内的多个游标共用一个连接与一个读视图，关闭会话即关闭其中的游标
+     */
+    public SqlSession openSession() {
+        return sqlSessionFactory.openSession();
+    }
+
+    /**
+     * 流式查询返回的客户顺序
+     */
+    public Comparator<String> customerOrder() {
+        return customerOrder;
+    }
+
+    /**
+     * 按连接串识别数据库，其他数据库按 H2 的写法处理
+     */
+    static String databaseIdOf(String url) {
+        return url != null && url.startsWith("jdbc:mysql:") ? DATABASE_MYSQL : DATABASE_H2;
+    }
+
+    static int compareCodePoints(String left, String right) {
+        int i = 0;
+        int j = 0;
+        while (i < left.length() && j < right.length()) {
+            int a = left.codePointAt(i);
+            int b = right.codePointAt(j);
+            if (a != b) {
+                return Integer.compare(a, b);
+            }
+            i += Character.charCount(a);
+            j += Character.charCount(b);
+        }
+        return Integer.compare(left.length() - i, right.length() - j);
+    }
+
+    /**
+     * MySQL 连接串追加 useCursorFetch=true，已配置该参数或非 MySQL（如 H2）时原样返回
+     */
+    static String withCursorFetch(String url) {
+        if (url == null || !url.startsWith("jdbc:mysql:") || url.contains(CURSOR_FETCH)) {
+            return url;
+        }
+        return url + (url.contains("?") ? "&" : "?") + CURSOR_FETCH + "=true";
+    }
+
+    @Override
+    public void destroy() {
+        dataSource.close();
+    }
+}
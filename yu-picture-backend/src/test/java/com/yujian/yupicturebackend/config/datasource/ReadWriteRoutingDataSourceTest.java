@@ -0,0 +1,135 @@
+package com.yujian.yupicturebackend.config.datasource;
+
+import com.yujian.yupicturebackend.mapper.BankReceiptMapper;
+import com.yujian.yupicturebackend.service.verification.CustomerBatch;
+import com.yujian.yupicturebackend.service.verification.VerificationService;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.Resource;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 校验读写分离路由：主库与副本各自套用连接池参数，只读事务走副本，@PinPrimary 与读写事务走主库，副本不可达时回落到主库。
+ * <p>
+ * 主库与副本是两个独立的 H2 内存库，只在主库写入台账，按查到的行数判断语句落在哪个库上。
+ */
+@SpringBootTest(properties = {
+        "datasource.routing.enabled=true",
+        "datasource.routing.health-check-interval-seconds=0",
+        "spring.datasource.url=" + ReadWriteRoutingDataSourceTest.PRIMARY_URL,
+        "spring.datasource.hikari.maximum-pool-size=6",
+        "spring.datasource.hikari.connection-timeout=15000",
+        "datasource.routing.replicas[0].name=" + ReadWriteRoutingDataSourceTest.REPLICA_NAME,
+        "datasource.routing.replicas[0].url=" + ReadWriteRoutingDataSourceTest.REPLICA_URL,
+        "datasource.routing.replicas[0].username=sa",
+        "datasource.routing.replicas[0].hikari.maximum-pool-size=3"
+})
+@ActiveProfiles("h2")
+class ReadWriteRoutingDataSourceTest {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:routing_primary;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:routing_replica;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_NAME = "replica-test";
+    private static final String CUSTOMER = "Customer_0001";
+
+    @Resource
+    private ReadWriteRoutingDataSource routingDataSource;
+    @Resource
+    private PlatformTransactionManager transactionManager;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+    @Resource
+    private BankReceiptMapper bankReceiptMapper;
+    @Resource
+    private VerificationService verificationService;
+
+    @BeforeEach
+    void setUp() {
+        // 副本只建表不写数据
+        DriverManagerDataSource replica = new DriverManagerDataSource(REPLICA_URL, "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("verification-h2-schema.sql")).execute(replica);
+        new JdbcTemplate(replica).update("DELETE FROM bank_receipt");
+
+        // 事务之外的写入走主库
+        jdbcTemplate.update("DELETE FROM bank_receipt");
+        jdbcTemplate.update("INSERT INTO bank_receipt (id, payer_name, payer_account, payment_amount, payment_datetime, used_amount, status)"
+                + " VALUES (1, ?, '62220001', 100.00, ?, 0.00, 0)", CUSTOMER, Timestamp.valueOf("2025-01-01 00:00:00"));
+    }
+
+    @Test
+    void hikariSettingsApplyToEveryTarget() {
+        Map<Object, DataSource> targets = routingDataSource.getResolvedDataSources();
+        HikariDataSource primary = (HikariDataSource) targets.get(ReadWriteRoutingDataSource.PRIMARY);
+        HikariDataSource replica = (HikariDataSource) targets.get(REPLICA_NAME);
+
+        assertEquals(6, primary.getMaximumPoolSize());
+        assertEquals(15000, primary.getConnectionTimeout());
+        // 副本沿用主库的连接池参数，单独配置的项覆盖主库
+        assertEquals(3, replica.getMaximumPoolSize());
+        assertEquals(15000, replica.getConnectionTimeout());
+        assertEquals(REPLICA_NAME, replica.getPoolName());
+        assertTrue(replica.isReadOnly());
+    }
+
+    @Test
+    void readOnlyTransactionReadsFromReplica() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+
+        assertEquals(Long.valueOf(0), readOnly.execute(status -> bankReceiptMapper.selectCount(null)));
+        assertEquals(Long.valueOf(1), readWrite.execute(status -> bankReceiptMapper.selectCount(null)));
+        assertEquals(0L, DataSourceRouting.onReplica(() -> bankReceiptMapper.selectCount(null)));
+        assertEquals(1L, bankReceiptMapper.selectCount(null));
+    }
+
+    @Test
+    void pinPrimaryOverridesReadOnlyTransaction() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        assertEquals(Long.valueOf(1), readOnly.execute(status -> DataSourceRouting.onPrimary(() -> bankReceiptMapper.selectCount(null))));
+
+        // loadCustomerBatch 是只读事务，标注了 @PinPrimary，必须读到主库刚写入的收款单
+        VerificationService.LoadedBatch loaded =
+                verificationService.loadCustomerBatch(CustomerBatch.range(Collections.singletonList(CUSTOMER)));
+        assertEquals(1, loaded.getReceipts().size());
+    }
+
+    @Test
+    void unreachableReplicaFallsBackToPrimary() throws Exception {
+        DriverManagerDataSource primary = new DriverManagerDataSource(PRIMARY_URL, "sa", "");
+        DataSource unreachable = new DriverManagerDataSource("jdbc:unreachable:replica");
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary,
+                Collections.singletonMap("replica-down", unreachable), 0, 1);
+        routing.afterPropertiesSet();
+        try {
+            assertEquals(1, routing.getHealthyReplicaCount());
+            DataSourceRouting.enterReplica();
+            try (Connection connection = routing.getConnection()) {
+                assertTrue(connection.getMetaData().getURL().contains("routing_primary"));
+            } finally {
+                DataSourceRouting.exitReplica();
+            }
+            assertEquals(0, routing.getHealthyReplicaCount());
+        } finally {
+            routing.destroy();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.yujian.yupicturebackend.service.archive;
+
+import com.yujian.yupicturebackend.model.enums.LedgerArchiveTableEnum;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 校验已结清数据归档：只移动结清超过保留期的行，按检查点逐块推进，一轮结束后检查点归零；
+ * 手动触发的一轮归档处理全部台账表。
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+class LedgerArchiveJobTest {
+
+    private static final Timestamp LONG_AGO = Timestamp.valueOf("2020-01-01 00:00:00");
+    private static final Date SETTLED_BEFORE = Timestamp.valueOf("2021-01-01 00:00:00");
+
+    @Resource
+    private LedgerArchiveService archiveService;
+    @Resource
+    private LedgerArchiveJob archiveJob;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        for (String table : new String[]{"bank_receipt", "rent_schedule", "bank_receipt_history",
+                "rent_schedule_history", "ledger_archive_checkpoint"}) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void archivesOnlyRowsSettledBeforeRetention() {
+        receipt(1, 2, LONG_AGO);
+        receipt(2, 2, Timestamp.valueOf(LocalDateTime.now()));
+        receipt(3, 1, LONG_AGO);
+        receipt(4, 2, LONG_AGO);
+
+        archiveService.ensureCheckpoint(LedgerArchiveTableEnum.BANK_RECEIPT);
+        assertEquals(2, archiveService.archiveChunk(LedgerArchiveTableEnum.BANK_RECEIPT, SETTLED_BEFORE, 500));
+
+        assertEquals(Arrays.asList(2L, 3L), ids("bank_receipt"));
+        assertEquals(Arrays.asList(1L, 4L), ids("bank_receipt_history"));
+        Map<String, Object> archived = jdbcTemplate.queryForMap(
+                "SELECT payer_name, used_amount, status, update_time FROM bank_receipt_history WHERE id = 1");
+        assertEquals("Customer_1", archived.get("payer_name"));
+        assertEquals(0, new BigDecimal("100.00").compareTo((BigDecimal) archived.get("used_amount")));
+        assertEquals(LONG_AGO, archived.get("update_time"));
+        Map<String, Object> checkpoint = checkpoint(LedgerArchiveTableEnum.BANK_RECEIPT);
+        assertEquals(4L, ((Number) checkpoint.get("last_id")).longValue());
+        assertEquals(2L, ((Number) checkpoint.get("archived_rows")).longValue());
+
+        // 扫描到表尾后检查点归零，下一轮从表头开始
+        assertEquals(0, archiveService.archiveChunk(LedgerArchiveTableEnum.BANK_RECEIPT, SETTLED_BEFORE, 500));
+        archiveService.finishPass(LedgerArchiveTableEnum.BANK_RECEIPT);
+        checkpoint = checkpoint(LedgerArchiveTableEnum.BANK_RECEIPT);
+        assertEquals(0L, ((Number) checkpoint.get("last_id")).longValue());
+        assertEquals(1, ((Number) checkpoint.get("pass_count")).intValue());
+    }
+
+    @Test
+    void chunksAdvanceCheckpointInIdOrder() {
+        for (long id = 1; id <= 5; id++) {
+            schedule(id, 2, LONG_AGO);
+        }
+        schedule(6, 0, LONG_AGO);
+
+        archiveService.ensureCheckpoint(LedgerArchiveTableEnum.RENT_SCHEDULE);
+        int[] expectedRows = {2, 2, 1, 0};
+        long[] expectedLastId = {2, 4, 5, 5};
+        for (int i = 0; i < expectedRows.length; i++) {
+            assertEquals(expectedRows[i], archiveService.archiveChunk(LedgerArchiveTableEnum.RENT_SCHEDULE, SETTLED_BEFORE, 2));
+            assertEquals(expectedLastId[i], ((Number) checkpoint(LedgerArchiveTableEnum.RENT_SCHEDULE).get("last_id")).longValue());
+        }
+        assertEquals(Collections.singletonList(6L), ids("rent_schedule"));
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), ids("rent_schedule_history"));
+    }
+
+    @Test
+    void triggeredRoundArchivesEveryTable() throws InterruptedException {
+        receipt(1, 2, LONG_AGO);
+        receipt(2, 0, LONG_AGO);
+        schedule(1, 2, LONG_AGO);
+        schedule(2, 2, LONG_AGO);
+
+        assertTrue(archiveJob.trigger());
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!passFinished(LedgerArchiveTableEnum.BANK_RECEIPT) || !passFinished(LedgerArchiveTableEnum.RENT_SCHEDULE)) {
+            assertTrue(System.currentTimeMillis() < deadline, "归档一轮未在 30 秒内完成");
+            Thread.sleep(50);
+        }
+
+        assertEquals(Collections.singletonList(2L), ids("bank_receipt"));
+        assertEquals(Collections.singletonList(1L), ids("bank_receipt_history"));
+        assertEquals(Collections.emptyList(), ids("rent_schedule"));
+        assertEquals(Arrays.asList(1L, 2L), ids("rent_schedule_history"));
+    }
+
+    private void receipt(long id, int status, Timestamp updateTime) {
+        jdbcTemplate.update("INSERT INTO bank_receipt (id, payer_name, payer_account, payment_amount, payment_datetime,"
+                        + " used_amount, status, update_time) VALUES (?, ?, ?, 200.00, ?, 100.00, ?, ?)",
+                id, "Customer_" + id, "6222" + id, LONG_AGO, status, updateTime);
+    }
+
+    private void schedule(long id, int status, Timestamp updateTime) {
+        jdbcTemplate.update("INSERT INTO rent_schedule (id, lessee_name, due_date, total_due_amount, principal_due, interest_due,"
+                        + " principal_received, interest_received, status, update_time)"
+                        + " VALUES (?, ?, DATE '2019-12-01', 110.00, 100.00, 10.00, 100.00, 10.00, ?, ?)",
+                id, "Customer_" + id, status, updateTime);
+    }
+
+    private List<Long> ids(String table) {
+        return jdbcTemplate.queryForList("SELECT id FROM " + table + " ORDER BY id", Long.class);
+    }
+
+    private Map<String, Object> checkpoint(LedgerArchiveTableEnum table) {
+        return jdbcTemplate.queryForMap("SELECT last_id, archived_rows, pass_count FROM ledger_archive_checkpoint"
+                + " WHERE table_name = ?", table.getValue());
+    }
+
+    private boolean passFinished(LedgerArchiveTableEnum table) {
+        Integer passes = jdbcTemplate.query("SELECT pass_count FROM ledger_archive_checkpoint WHERE table_name = ?",
+                rs -> rs.next() ? rs.getInt(1) : 0, table.getValue());
+        return passes != null && passes > 0;
+    }
+}
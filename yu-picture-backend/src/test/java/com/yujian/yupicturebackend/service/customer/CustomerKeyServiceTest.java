@@ -0,0 +1,104 @@
+package com.yujian.yupicturebackend.service.customer;
+
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.model.enums.LedgerArchiveTableEnum;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 校验客户整数键：名称登记幂等、按客户顺序解析 ID，未登记的客户对应位置为空；
+ * 存量行按主键分块回填，回填完成前 ensureFullyKeyed 拒绝按整数键核销。
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+class CustomerKeyServiceTest {
+
+    @Resource
+    private CustomerKeyService customerKeyService;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        for (String table : new String[]{"bank_receipt", "rent_schedule", "customer"}) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void ensureIdsRegistersEachNameOnce() {
+        Map<String, Long> first = customerKeyService.ensureIds(Arrays.asList("Customer_A", "Customer_B", "Customer_A", null));
+        assertEquals(2, first.size());
+        assertNotEquals(first.get("Customer_A"), first.get("Customer_B"));
+
+        Map<String, Long> second = customerKeyService.ensureIds(Arrays.asList("Customer_B", "Customer_C"));
+        assertEquals(first.get("Customer_B"), second.get("Customer_B"));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM customer", Integer.class).intValue());
+
+        // 按传入的客户顺序返回，与批次中的客户一一对应
+        assertEquals(Arrays.asList(second.get("Customer_C"), first.get("Customer_A"), first.get("Customer_B")),
+                customerKeyService.resolveIds(Arrays.asList("Customer_C", "Customer_A", "Customer_B")));
+    }
+
+    @Test
+    void resolveIdsLeavesUnregisteredCustomersEmpty() {
+        Long id = customerKeyService.ensureIds(Collections.singletonList("Customer_A")).get("Customer_A");
+        // 未登记的客户没有已回填的行，对应位置为空，不影响同批次其他客户
+        assertEquals(Arrays.asList(null, id),
+                customerKeyService.resolveIds(Arrays.asList("Customer_Missing", "Customer_A")));
+    }
+
+    @Test
+    void backfillKeysEveryRowChunkByChunk() {
+        for (long id = 1; id <= 5; id++) {
+            receipt(id, "Customer_" + (id % 2));
+            schedule(id, "Customer_" + (id % 3));
+        }
+        assertThrows(BusinessException.class, () -> customerKeyService.ensureFullyKeyed());
+
+        assertEquals(Arrays.asList(1L, 2L), customerKeyService.backfillChunk(LedgerArchiveTableEnum.BANK_RECEIPT, 0, 2));
+        assertEquals(Arrays.asList(3L, 4L), customerKeyService.backfillChunk(LedgerArchiveTableEnum.BANK_RECEIPT, 2, 2));
+        assertEquals(Collections.singletonList(5L), customerKeyService.backfillChunk(LedgerArchiveTableEnum.BANK_RECEIPT, 4, 2));
+        assertTrue(customerKeyService.backfillChunk(LedgerArchiveTableEnum.BANK_RECEIPT, 5, 2).isEmpty());
+        // 收款单回填完成、租金计划未回填时仍然拒绝
+        assertThrows(BusinessException.class, () -> customerKeyService.ensureFullyKeyed());
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), customerKeyService.backfillChunk(LedgerArchiveTableEnum.RENT_SCHEDULE, 0, 10));
+        assertDoesNotThrow(() -> customerKeyService.ensureFullyKeyed());
+
+        // 同名客户的收款单与租金计划回填为同一个客户 ID
+        List<Long> ids = customerKeyService.resolveIds(Arrays.asList("Customer_0", "Customer_1", "Customer_2"));
+        for (Map<String, Object> row : jdbcTemplate.queryForList("SELECT payer_name AS name, customer_id FROM bank_receipt"
+                + " UNION ALL SELECT lessee_name AS name, customer_id FROM rent_schedule")) {
+            int index = Integer.parseInt(((String) row.get("name")).substring("Customer_".length()));
+            assertEquals(ids.get(index), ((Number) row.get("customer_id")).longValue(), String.valueOf(row));
+        }
+    }
+
+    private void receipt(long id, String customerName) {
+        jdbcTemplate.update("INSERT INTO bank_receipt (id, payer_name, payer_account, payment_amount, payment_datetime,"
+                + " used_amount, status) VALUES (?, ?, ?, 100.00, TIMESTAMP '2025-01-01 00:00:00', 0.00, 0)",
+                id, customerName, "6222" + id);
+    }
+
+    private void schedule(long id, String customerName) {
+        jdbcTemplate.update("INSERT INTO rent_schedule (id, lessee_name, due_date, total_due_amount, principal_due, interest_due,"
+                + " principal_received, interest_received, status)"
+                + " VALUES (?, ?, DATE '2025-01-01', 110.00, 100.00, 10.00, 0.00, 0.00, 0)", id, customerName);
+    }
+}
@@ -0,0 +1,119 @@
+package com.yujian.yupicturebackend.service.impl;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import com.yujian.yupicturebackend.service.IBankReceiptService;
+import com.yujian.yupicturebackend.service.IRentScheduleService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 校验收款单与租金计划服务的脏客户标记：改到其他客户名下时新旧客户都被标记，只按 id 改写时标记库中的客户，
+ * 按 id 删除（单个、批量、实体）时标记被删行原属的客户。
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+class LedgerDirtyMarkingTest {
+
+    @Resource
+    private IBankReceiptService bankReceiptService;
+    @Resource
+    private IRentScheduleService rentScheduleService;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        for (String table : new String[]{"bank_receipt", "rent_schedule", "customer", "verification_dirty_customer"}) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void renameMarksPreviousAndNewCustomer() {
+        receipt(1L, "Customer_A");
+        schedule(1L, "Customer_C");
+
+        BankReceipt receipt = new BankReceipt();
+        receipt.setId(1L);
+        receipt.setPayerName("Customer_B");
+        assertTrue(bankReceiptService.updateById(receipt));
+        assertEquals(Arrays.asList("Customer_A", "Customer_B"), dirtyCustomers());
+
+        clearDirty();
+        RentSchedule schedule = new RentSchedule();
+        schedule.setId(1L);
+        schedule.setLesseeName("Customer_D");
+        assertTrue(rentScheduleService.updateBatchById(Collections.singletonList(schedule)));
+        assertEquals(Arrays.asList("Customer_C", "Customer_D"), dirtyCustomers());
+    }
+
+    @Test
+    void updateWithoutNameMarksStoredCustomer() {
+        schedule(1L, "Customer_A");
+
+        RentSchedule schedule = new RentSchedule();
+        schedule.setId(1L);
+        schedule.setStatus(1);
+        assertTrue(rentScheduleService.updateById(schedule));
+        assertEquals(Collections.singletonList("Customer_A"), dirtyCustomers());
+    }
+
+    @Test
+    void removeMarksStoredCustomer() {
+        receipt(1L, "Customer_A");
+        receipt(2L, "Customer_B");
+        receipt(3L, "Customer_C");
+
+        assertTrue(bankReceiptService.removeById(1L));
+        assertEquals(Collections.singletonList("Customer_A"), dirtyCustomers());
+
+        clearDirty();
+        BankReceipt entity = new BankReceipt();
+        entity.setId(3L);
+        assertTrue(bankReceiptService.removeByIds(Arrays.asList(2L, entity)));
+        assertEquals(Arrays.asList("Customer_B", "Customer_C"), dirtyCustomers());
+
+        schedule(1L, "Customer_D");
+        schedule(2L, "Customer_E");
+        clearDirty();
+        RentSchedule schedule = new RentSchedule();
+        schedule.setId(1L);
+        assertTrue(rentScheduleService.removeById(schedule));
+        assertTrue(rentScheduleService.removeBatchByIds(Collections.singletonList(2L)));
+        assertEquals(Arrays.asList("Customer_D", "Customer_E"), dirtyCustomers());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM rent_schedule", Integer.class).intValue());
+    }
+
+    private List<String> dirtyCustomers() {
+        return jdbcTemplate.queryForList("SELECT customer_name FROM verification_dirty_customer ORDER BY customer_name",
+                String.class);
+    }
+
+    private void clearDirty() {
+        jdbcTemplate.update("DELETE FROM verification_dirty_customer");
+    }
+
+    private void receipt(long id, String customerName) {
+        jdbcTemplate.update("INSERT INTO bank_receipt (id, payer_name, payer_account, payment_amount, payment_datetime,"
+                + " used_amount, status) VALUES (?, ?, ?, 100.00, TIMESTAMP '2025-01-01 00:00:00', 0.00, 0)",
+                id, customerName, "6222" + id);
+    }
+
+    private void schedule(long id, String customerName) {
+        jdbcTemplate.update("INSERT INTO rent_schedule (id, lessee_name, due_date, total_due_amount, principal_due, interest_due,"
+                + " principal_received, interest_received, status)"
+                + " VALUES (?, ?, DATE '2025-01-01', 110.00, 100.00, 10.00, 0.00, 0.00, 0)", id, customerName);
+    }
+}
@@ -0,0 +1,111 @@
+package com.yujian.yupicturebackend.service.impl;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import com.yujian.yupicturebackend.service.IBankReceiptService;
+import com.yujian.yupicturebackend.service.IRentScheduleService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 校验收款单与租金计划服务按 id 更新时的版本号处理：带过期版本号的更新不生效并返回 false，
+ * 带当前版本号的更新生效并让版本号加 1，不带版本号的更新同样让版本号加 1。
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+class LedgerOptimisticLockTest {
+
+    @Resource
+    private IBankReceiptService bankReceiptService;
+    @Resource
+    private IRentScheduleService rentScheduleService;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        for (String table : new String[]{"bank_receipt", "rent_schedule", "customer", "verification_dirty_customer"}) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+        jdbcTemplate.update("INSERT INTO bank_receipt (id, payer_name, payer_account, payment_amount, payment_datetime,"
+                + " used_amount, status, version) VALUES (1, 'Customer_A', '62221', 100.00,"
+                + " TIMESTAMP '2025-01-01 00:00:00', 0.00, 0, 3)");
+        jdbcTemplate.update("INSERT INTO rent_schedule (id, lessee_name, due_date, total_due_amount, principal_due, interest_due,"
+                + " principal_received, interest_received, status, version)"
+                + " VALUES (1, 'Customer_A', DATE '2025-01-01', 110.00, 100.00, 10.00, 0.00, 0.00, 0, 3)");
+        jdbcTemplate.update("INSERT INTO rent_schedule (id, lessee_name, due_date, total_due_amount, principal_due, interest_due,"
+                + " principal_received, interest_received, status, version)"
+                + " VALUES (2, 'Customer_A', DATE '2025-02-01', 110.00, 100.00, 10.00, 0.00, 0.00, 0, 3)");
+    }
+
+    @Test
+    void staleVersionIsRejected() {
+        BankReceipt receipt = new BankReceipt();
+        receipt.setId(1L);
+        receipt.setStatus(1);
+        receipt.setVersion(2);
+        assertFalse(bankReceiptService.updateById(receipt));
+        assertEquals(0, receiptColumn("status"));
+        assertEquals(3, receiptColumn("version"));
+
+        // 批量更新中过期的一行不生效，其余行照常更新
+        RentSchedule stale = schedule(1L, 2);
+        RentSchedule current = schedule(2L, 3);
+        assertFalse(rentScheduleService.updateBatchById(Arrays.asList(stale, current)));
+        assertEquals(0, scheduleColumn(1L, "status"));
+        assertEquals(3, scheduleColumn(1L, "version"));
+        assertEquals(1, scheduleColumn(2L, "status"));
+        assertEquals(4, scheduleColumn(2L, "version"));
+    }
+
+    @Test
+    void currentVersionUpdatesAndBumpsVersion() {
+        BankReceipt receipt = new BankReceipt();
+        receipt.setId(1L);
+        receipt.setStatus(1);
+        receipt.setVersion(3);
+        assertTrue(bankReceiptService.updateById(receipt));
+        assertEquals(1, receiptColumn("status"));
+        assertEquals(4, receiptColumn("version"));
+    }
+
+    @Test
+    void updateWithoutVersionStillBumpsVersion() {
+        BankReceipt receipt = new BankReceipt();
+        receipt.setId(1L);
+        receipt.setStatus(1);
+        assertTrue(bankReceiptService.updateById(receipt));
+        assertEquals(1, receiptColumn("status"));
+        assertEquals(4, receiptColumn("version"));
+
+        assertTrue(rentScheduleService.saveOrUpdateBatch(Arrays.asList(schedule(1L, null), schedule(2L, null))));
+        assertEquals(4, scheduleColumn(1L, "version"));
+        assertEquals(4, scheduleColumn(2L, "version"));
+    }
+
+    private RentSchedule schedule(long id, Integer version) {
+        RentSchedule schedule = new RentSchedule();
+        schedule.setId(id);
+        schedule.setStatus(1);
+        schedule.setVersion(version);
+        return schedule;
+    }
+
+    private int receiptColumn(String column) {
+        return jdbcTemplate.queryForObject("SELECT " + column + " FROM bank_receipt WHERE id = 1", Integer.class);
+    }
+
+    private int scheduleColumn(long id, String column) {
+        return jdbcTemplate.queryForObject("SELECT " + column + " FROM rent_schedule WHERE id = ?", Integer.class, id);
+    }
+}
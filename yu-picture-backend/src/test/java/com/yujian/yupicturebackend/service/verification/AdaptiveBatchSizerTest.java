@@ -0,0 +1,171 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 校验自适应批次按实测耗时放大、缩小批次与回写分块，并遵守单步倍数、上下限与抖动阈值。
+ */
+class AdaptiveBatchSizerTest {
+
+    private static final int WINDOW = 2;
+    private static final int CUSTOMERS_PER_BATCH = 100;
+    private static final int ROWS_PER_BATCH = 1000;
+
+    private final RecordingCursor cursor = new RecordingCursor();
+
+    @Test
+    void fastBatchesGrowByAtMostOneStep() {
+        AdaptiveBatchSizer sizer = newSizer(settings());
+        // 每批 500 ms，目标 2000 ms，期望放大 4 倍，单步最多一倍
+        recordWindow(sizer, 500, 50);
+
+        assertEquals(2000, cursor.targetBatchRows);
+        assertEquals(200, cursor.pageSize);
+        // 回写每行 0.05 ms，单条 UPDATE 目标 200 ms 期望 4000 行，单步最多一倍
+        assertEquals(1000, sizer.getFlushChunkSize());
+        assertEquals(2, sizer.getAdjustments());
+    }
+
+    @Test
+    void slowBatchesShrinkByAtMostOneStep() {
+        AdaptiveBatchSizer sizer = newSizer(settings());
+        // 每批 8000 ms，期望缩小到 1/4，单步最多一半
+        recordWindow(sizer, 8000, 4000);
+
+        assertEquals(500, cursor.targetBatchRows);
+        assertEquals(50, cursor.pageSize);
+        assertEquals(250, sizer.getFlushChunkSize());
+    }
+
+    @Test
+    void adjustmentsStayWithinConfiguredBounds() {
+        AdaptiveBatchSizer.Settings settings = settings();
+        settings.setMaxBatchRows(1500);
+        settings.setMaxBatchCustomers(120);
+        settings.setMaxFlushChunk(600);
+        AdaptiveBatchSizer sizer = newSizer(settings);
+        recordWindow(sizer, 500, 50);
+
+        assertEquals(1500, cursor.targetBatchRows);
+        assertEquals(120, cursor.pageSize);
+        assertEquals(600, sizer.getFlushChunkSize());
+
+        settings.setMinBatchRows(800);
+        settings.setMinBatchCustomers(90);
+        settings.setMinFlushChunk(400);
+        recordWindow(sizer, 60_000, 60_000);
+
+        assertEquals(800, cursor.targetBatchRows);
+        assertEquals(90, cursor.pageSize);
+        assertEquals(400, sizer.getFlushChunkSize());
+    }
+
+    @Test
+    void smallChangesAreIgnored() {
+        AdaptiveBatchSizer sizer = newSizer(settings());
+        // 每批 1900 ms，期望约 1053 行，变化不足 10%
+        recordWindow(sizer, 1900, 400);
+
+        assertEquals(0, cursor.resizeCount);
+        assertEquals(500, sizer.getFlushChunkSize());
+        assertEquals(0, sizer.getAdjustments());
+    }
+
+    @Test
+    void adjustsOnlyAfterFullWindow() {
+        AdaptiveBatchSizer sizer = newSizer(settings());
+        sizer.record(rangeBatch(), millis(500), 0, millis(50), ROWS_PER_BATCH, ROWS_PER_BATCH);
+
+        assertEquals(0, cursor.resizeCount);
+        assertEquals(0, sizer.getAdjustments());
+    }
+
+    @Test
+    void dedicatedBatchesAndDisabledSizerAreIgnored() {
+        AdaptiveBatchSizer sizer = newSizer(settings());
+        for (int i = 0; i < WINDOW; i++) {
+            sizer.record(CustomerBatch.dedicated("whale"), millis(10), 0, millis(1), ROWS_PER_BATCH, ROWS_PER_BATCH);
+        }
+        assertEquals(0, sizer.getAdjustments());
+
+        AdaptiveBatchSizer.Settings disabled = settings();
+        disabled.setEnabled(false);
+        AdaptiveBatchSizer disabledSizer = newSizer(disabled);
+        recordWindow(disabledSizer, 500, 50);
+        assertEquals(0, disabledSizer.getAdjustments());
+        assertEquals(500, disabledSizer.getFlushChunkSize());
+        assertEquals(0, cursor.resizeCount);
+    }
+
+    private AdaptiveBatchSizer newSizer(AdaptiveBatchSizer.Settings settings) {
+        return new AdaptiveBatchSizer(cursor, settings, CUSTOMERS_PER_BATCH, ROWS_PER_BATCH, 500);
+    }
+
+    /**
+     * 报告一个窗口的批次，耗时全部计在读取与回写阶段
+     */
+    private static void recordWindow(AdaptiveBatchSizer sizer, long batchMillis, long flushMillis) {
+        for (int i = 0; i < WINDOW; i++) {
+            sizer.record(rangeBatch(), millis(batchMillis - flushMillis), 0, millis(flushMillis),
+                    ROWS_PER_BATCH, ROWS_PER_BATCH);
+        }
+    }
+
+    private static CustomerBatch rangeBatch() {
+        List<String> customerNames = new ArrayList<>(CUSTOMERS_PER_BATCH);
+        for (int i = 0; i < CUSTOMERS_PER_BATCH; i++) {
+            customerNames.add(String.format("Customer_%03d", i));
+        }
+        return CustomerBatch.range(customerNames);
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static AdaptiveBatchSizer.Settings settings() {
+        AdaptiveBatchSizer.Settings settings = new AdaptiveBatchSizer.Settings();
+        settings.setEnabled(true);
+        settings.setTargetBatchMillis(2000);
+        settings.setTargetStatementMillis(200);
+        settings.setWindowBatches(WINDOW);
+        settings.setMinBatchRows(100);
+        settings.setMaxBatchRows(50000);
+        settings.setMinBatchCustomers(10);
+        settings.setMaxBatchCustomers(2000);
+        settings.setMinFlushChunk(100);
+        settings.setMaxFlushChunk(2000);
+        return settings;
+    }
+
+    /**
+     * 只记录调整结果的游标
+     */
+    private static class RecordingCursor extends KeysetBatchCursor {
+
+        private int targetBatchRows;
+        private int resizeCount;
+
+        RecordingCursor() {
+            super(CUSTOMERS_PER_BATCH);
+        }
+
+        @Override
+        void resize(int pageSize, int targetBatchRows) {
+            super.resize(pageSize, targetBatchRows);
+            this.targetBatchRows = targetBatchRows;
+            resizeCount++;
+        }
+
+        @Override
+        protected CustomerBatch fetchNextPage() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 校验定点（分）核销内核与 BigDecimal 核销路径产生完全相同的租金计划、收款单更新与核销汇总。
+ */
+class AllocationKernelEquivalenceTest {
+
+    private final VerificationService decimalService = new VerificationService(false, 1.0);
+    private final VerificationService centsService = new VerificationService(true, 1.0);
+
+    @Test
+    void randomScenariosProduceIdenticalUpdates() {
+        for (long seed = 0; seed < 2000; seed++) {
+            assertEquivalent("seed-" + seed, AllocationScenario.random(new Random(seed)));
+        }
+    }
+
+    @Test
+    void interestIsCoveredBeforePrincipal() {
+        AllocationScenario scenario = new AllocationScenario();
+        scenario.receipts.add(AllocationScenario.receipt(1L, "100.00", "0.00"));
+        scenario.receipts.add(AllocationScenario.receipt(2L, "50.00", "0.00"));
+        scenario.schedules.add(AllocationScenario.schedule(1L, "80.00", "30.00", "0.00", "0.00"));
+        scenario.schedules.add(AllocationScenario.schedule(2L, "80.00", "30.00", "0.00", "0.00"));
+
+        VerificationService.ProcessingOutcome outcome = assertEquivalent("interest-first", scenario);
+        assertEquals(2, outcome.getResult().getVerifiedCount());
+        assertEquals(0, new BigDecimal("90.00").compareTo(outcome.getResult().getTotalPrincipal()));
+        assertEquals(0, new BigDecimal("60.00").compareTo(outcome.getResult().getTotalInterest()));
+        assertEquals(Integer.valueOf(VerificationService.STATUS_USED), outcome.getUpdatedSchedules().get(0).getStatus());
+        assertEquals(Integer.valueOf(VerificationService.STATUS_PARTIALLY_USED), outcome.getUpdatedSchedules().get(1).getStatus());
+    }
+
+    @Test
+    void paymentWithoutSchedulesIsLeftUntouched() {
+        AllocationScenario scenario = new AllocationScenario();
+        scenario.receipts.add(AllocationScenario.receipt(1L, "100.00", "20.00"));
+
+        VerificationService.ProcessingOutcome outcome = assertEquivalent("no-schedule", scenario);
+        assertTrue(outcome.getUpdatedReceipts().isEmpty());
+        assertTrue(outcome.getUpdatedSchedules().isEmpty());
+    }
+
+    @Test
+    void dirtyAmountsAreTreatedAsZeroAndClipped() {
+        AllocationScenario scenario = new AllocationScenario();
+        scenario.receipts.add(AllocationScenario.receipt(1L, null, "0.00"));
+        scenario.receipts.add(AllocationScenario.receipt(2L, "50.00", "80.00"));
+        scenario.receipts.add(AllocationScenario.receipt(3L, "60.00", null));
+        scenario.receipts.add(null);
+        scenario.schedules.add(AllocationScenario.schedule(1L, null, "10.00", "0.00", null));
+        scenario.schedules.add(AllocationScenario.schedule(2L, "40.00", "5.00", "50.00", "9.00"));
+
+        assertEquivalent("dirty", scenario);
+    }
+
+    @Test
+    void amountsBeyondCentPrecisionFallBackToDecimalPath() {
+        AllocationScenario scenario = new AllocationScenario();
+        scenario.receipts.add(AllocationScenario.receipt(1L, "10.005", "0.00"));
+        scenario.schedules.add(AllocationScenario.schedule(1L, "8.00", "2.00", "0.00", "0.00"));
+
+        AllocationScenario copy = scenario.copy();
+        assertNull(new CentsAllocationKernel().allocate("fallback", copy.receipts, copy.schedules));
+        assertEquivalent("fallback", scenario);
+    }
+
+    @Test
+    void centsConversionIsExact() {
+        assertEquals(0L, CentsAllocationKernel.toCents(null));
+        assertEquals(1234L, CentsAllocationKernel.toCents(new BigDecimal("12.34")));
+        assertEquals(1200L, CentsAllocationKernel.toCents(new BigDecimal("12")));
+        assertEquals(1230L, CentsAllocationKernel.toCents(new BigDecimal("12.300")));
+        assertEquals(new BigDecimal("9999999999999999.99"),
+                CentsAllocationKernel.fromCents(CentsAllocationKernel.toCents(new BigDecimal("9999999999999999.99"))));
+    }
+
+    private VerificationService.ProcessingOutcome assertEquivalent(String label, AllocationScenario scenario) {
+        AllocationScenario decimalInput = scenario.copy();
+        AllocationScenario centsInput = scenario.copy();
+
+        VerificationService.ProcessingOutcome expected =
+                decimalService.allocateCustomer(label, decimalInput.receipts, decimalInput.schedules);
+        VerificationService.ProcessingOutcome actual =
+                centsService.allocateCustomer(label, centsInput.receipts, centsInput.schedules);
+        assertNotNull(actual, label);
+
+        assertEquals(expected.getResult().getVerifiedCount(), actual.getResult().getVerifiedCount(), label);
+        assertAmountEquals(label + " principal", expected.getResult().getTotalPrincipal(), actual.getResult().getTotalPrincipal());
+        assertAmountEquals(label + " interest", expected.getResult().getTotalInterest(), actual.getResult().getTotalInterest());
+
+        assertEquals(AllocationScenario.scheduleIds(expected.getUpdatedSchedules()),
+                AllocationScenario.scheduleIds(actual.getUpdatedSchedules()), label + " updated schedules");
+        assertEquals(AllocationScenario.receiptIds(expected.getUpdatedReceipts()),
+                AllocationScenario.receiptIds(actual.getUpdatedReceipts()), label + " updated receipts");
+
+        // 比较全部行的最终状态，确保未变化的行也没有被改写
+        for (int i = 0; i < decimalInput.schedules.size(); i++) {
+            RentSchedule e = decimalInput.schedules.get(i);
+            RentSchedule a = centsInput.schedules.get(i);
+            String rowLabel = label + " schedule#" + e.getId();
+            assertAmountEquals(rowLabel + " interestReceived", e.getInterestReceived(), a.getInterestReceived());
+            assertAmountEquals(rowLabel + " principalReceived", e.getPrincipalReceived(), a.getPrincipalReceived());
+            assertEquals(e.getStatus(), a.getStatus(), rowLabel + " status");
+            assertEquals(e.getChangedColumns(), a.getChangedColumns(), rowLabel + " changedColumns");
+        }
+        for (int i = 0; i < decimalInput.receipts.size(); i++) {
+            BankReceipt e = decimalInput.receipts.get(i);
+            BankReceipt a = centsInput.receipts.get(i);
+            if (e == null) {
+                assertNull(a, label);
+                continue;
+            }
+            String rowLabel = label + " receipt#" + e.getId();
+            assertAmountEquals(rowLabel + " usedAmount", e.getUsedAmount(), a.getUsedAmount());
+            assertEquals(e.getStatus(), a.getStatus(), rowLabel + " status");
+            assertEquals(e.getChangedColumns(), a.getChangedColumns(), rowLabel + " changedColumns");
+        }
+        return actual;
+    }
+
+    private static void assertAmountEquals(String label, BigDecimal expected, BigDecimal actual) {
+        if (expected == null || actual == null) {
+            assertEquals(expected, actual, label);
+            return;
+        }
+        assertEquals(0, expected.compareTo(actual), label + " expected " + expected + " but was " + actual);
+    }
+
+    /**
+     * 单个客户的核销输入，随机生成时会混入空值、负余额、已结清与超出两位小数的脏数据。
+     */
+    static class AllocationScenario {
+        final List<BankReceipt> receipts = new ArrayList<>();
+        final List<RentSchedule> schedules = new ArrayList<>();
+
+        static AllocationScenario random(Random random) {
+            AllocationScenario scenario = new AllocationScenario();
+            // 少量场景混入超出分精度的金额，覆盖定点内核的回退路径
+            boolean subCent = random.nextInt(10) == 0;
+            int receiptCount = random.nextInt(6);
+            int scheduleCount = random.nextInt(9);
+            for (int i = 0; i < receiptCount; i++) {
+                BankReceipt receipt = new BankReceipt();
+                receipt.setId((long) i + 1);
+                receipt.setPaymentAmount(randomAmount(random, subCent, 3000));
+                receipt.setUsedAmount(random.nextInt(3) == 0 ? randomAmount(random, subCent, 1500) : BigDecimal.ZERO);
+                receipt.setStatus(0);
+                scenario.receipts.add(receipt);
+            }
+            for (int j = 0; j < scheduleCount; j++) {
+                RentSchedule schedule = new RentSchedule();
+                schedule.setId((long) j + 1);
+                schedule.setPrincipalDue(randomAmount(random, subCent, 2000));
+                schedule.setInterestDue(randomAmount(random, subCent, 100));
+                schedule.setPrincipalReceived(random.nextInt(4) == 0 ? randomAmount(random, subCent, 1000) : new BigDecimal("0.00"));
+                schedule.setInterestReceived(random.nextInt(4) == 0 ? randomAmount(random, subCent, 80) : new BigDecimal("0.00"));
+                schedule.setStatus(0);
+                scenario.schedules.add(schedule);
+            }
+            return scenario;
+        }
+
+        private static BigDecimal randomAmount(Random random, boolean subCent, int maxYuan) {
+            int kind = random.nextInt(20);
+            if (kind == 0) {
+                return null;
+            }
+            if (kind == 1) {
+                return BigDecimal.ZERO;
+            }
+            if (kind == 2) {
+                // 整数金额，scale 为 0
+                return BigDecimal.valueOf(random.nextInt(maxYuan));
+            }
+            if (kind == 3 && subCent) {
+                // 超出分精度的脏数据，定点内核需要回退
+                return BigDecimal.valueOf(random.nextInt(maxYuan * 1000), 3);
+            }
+            return BigDecimal.valueOf(random.nextInt(maxYuan * 100), 2);
+        }
+
+        static BankReceipt receipt(Long id, String paymentAmount, String usedAmount) {
+            BankReceipt receipt = new BankReceipt();
+            receipt.setId(id);
+            receipt.setPaymentAmount(paymentAmount == null ? null : new BigDecimal(paymentAmount));
+            receipt.setUsedAmount(usedAmount == null ? null : new BigDecimal(usedAmount));
+            receipt.setStatus(0);
+            return receipt;
+        }
+
+        static RentSchedule schedule(Long id, String principalDue, String interestDue,
+                                     String principalReceived, String interestReceived) {
+            RentSchedule schedule = new RentSchedule();
+            schedule.setId(id);
+            schedule.setPrincipalDue(principalDue == null ? null : new BigDecimal(principalDue));
+            schedule.setInterestDue(interestDue == null ? null : new BigDecimal(interestDue));
+            schedule.setPrincipalReceived(principalReceived == null ? null : new BigDecimal(principalReceived));
+            schedule.setInterestReceived(interestReceived == null ? null : new BigDecimal(interestReceived));
+            schedule.setStatus(0);
+            return schedule;
+        }
+
+        AllocationScenario copy() {
+            AllocationScenario copy = new AllocationScenario();
+            for (BankReceipt receipt : receipts) {
+                if (receipt == null) {
+                    copy.receipts.add(null);
+                    continue;
+                }
+                BankReceipt clone = new BankReceipt();
+                clone.setId(receipt.getId());
+                clone.setPaymentAmount(receipt.getPaymentAmount());
+                clone.setUsedAmount(receipt.getUsedAmount());
+                clone.setStatus(receipt.getStatus());
+                copy.receipts.add(clone);
+            }
+            for (RentSchedule schedule : schedules) {
+                RentSchedule clone = new RentSchedule();
+                clone.setId(schedule.getId());
+                clone.setPrincipalDue(schedule.getPrincipalDue());
+                clone.setInterestDue(schedule.getInterestDue());
+                clone.setPrincipalReceived(schedule.getPrincipalReceived());
+                clone.setInterestReceived(schedule.getInterestReceived());
+                clone.setStatus(schedule.getStatus());
+                copy.schedules.add(clone);
+            }
+            return copy;
+        }
+
+        static List<Long> scheduleIds(List<RentSchedule> schedules) {
+            List<Long> ids = new ArrayList<>();
+            for (RentSchedule schedule : schedules) {
+                ids.add(schedule.getId());
+            }
+            return ids;
+        }
+
+        static List<Long> receiptIds(List<BankReceipt> receipts) {
+            if (receipts == null) {
+                return Collections.emptyList();
+            }
+            List<Long> ids = new ArrayList<>();
+            for (BankReceipt receipt : receipts) {
+                ids.add(receipt.getId());
+            }
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import com.yujian.yupicturebackend.mapper.BankReceiptMapper;
+import com.yujian.yupicturebackend.mapper.RentScheduleMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 校验核销结果的批量回写（按分块的多行 UPDATE，只写变更列）与逐行 updateById 对同一份分摊结果写出完全相同的行，
+ * 包括版本号加 1。
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+class BulkWriteEquivalenceTest {
+
+    private static final int CUSTOMERS = 120;
+
+    @Resource
+    private VerificationService verificationService;
+    @Resource
+    private VerificationBulkWriter bulkWriter;
+    @Resource
+    private RentScheduleMapper rentScheduleMapper;
+    @Resource
+    private BankReceiptMapper bankReceiptMapper;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    private VerificationLedgerFixture ledger;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new VerificationLedgerFixture(jdbcTemplate);
+    }
+
+    @Test
+    void bulkWriteMatchesPerRowUpdate() {
+        for (long seed = 1; seed <= 3; seed++) {
+            List<String> customerNames = ledger.seed(seed, CUSTOMERS);
+            VerificationService.ProcessingOutcome perRowOutcome = allocate(customerNames);
+            assertFalse(perRowOutcome.getUpdatedSchedules().isEmpty(), "seed-" + seed + " 没有需要回写的计划");
+            transactionTemplate.executeWithoutResult(status -> {
+                for (RentSchedule schedule : perRowOutcome.getUpdatedSchedules()) {
+                    assertEquals(1, rentScheduleMapper.updateById(schedule));
+                }
+                for (BankReceipt receipt : perRowOutcome.getUpdatedReceipts()) {
+                    assertEquals(1, bankReceiptMapper.updateById(receipt));
+                }
+            });
+            List<Map<String, Object>> expectedReceipts = receipts();
+            List<Map<String, Object>> expectedSchedules = schedules();
+
+            // 分块小于单个客户的行数，覆盖同一客户跨分块回写
+            for (int chunkSize : new int[]{1, 7, 5000}) {
+                ledger.seed(seed, CUSTOMERS);
+                VerificationService.ProcessingOutcome bulkOutcome = allocate(customerNames);
+                Set<String> conflicted = transactionTemplate.execute(status -> bulkWriter.write(
+                        bulkOutcome.getUpdatedSchedules(), bulkOutcome.getUpdatedReceipts(), chunkSize));
+                String label = "seed-" + seed + "/chunk-" + chunkSize;
+                assertTrue(conflicted.isEmpty(), label);
+                assertEquals(expectedReceipts, receipts(), label);
+                assertEquals(expectedSchedules, schedules(), label);
+            }
+        }
+    }
+
+    private VerificationService.ProcessingOutcome allocate(List<String> customerNames) {
+        VerificationService.LoadedBatch loaded = verificationService.loadCustomerBatch(CustomerBatch.range(customerNames));
+        return verificationService.allocateLoadedCustomers(customerNames, loaded.getCustomerIds(),
+                loaded.getReceipts(), loaded.getSchedules());
+    }
+
+    private List<Map<String, Object>> receipts() {
+        return jdbcTemplate.queryForList("SELECT id, payer_name, payment_amount, used_amount, status, version"
+                + " FROM bank_receipt ORDER BY id");
+    }
+
+    private List<Map<String, Object>> schedules() {
+        return jdbcTemplate.queryForList("SELECT id, lessee_name, due_date, principal_due, interest_due, principal_received,"
+                + " interest_received, status, version FROM rent_schedule ORDER BY id");
+    }
+}
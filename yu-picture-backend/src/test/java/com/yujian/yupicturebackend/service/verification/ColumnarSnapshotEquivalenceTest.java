@@ -0,0 +1,266 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 校验列式快照的分摊与定点（分）核销内核逐客户一致：同一批随机客户装入快照后按不同大小的批次分摊，
+ * 合计结果、变更行与各行的最终金额、状态都与内核相同；快照关闭后段全部交还内存池，再次装载时复用。
+ * 大小写不同、只差尾部空格的客户名是不同的客户，按不区分大小写的顺序交错装载时报错而不是合并客户。
+ */
+class ColumnarSnapshotEquivalenceTest {
+
+    private static final long BASE_TIME = 1_700_000_000_000L;
+
+    private final VerificationService centsService = new VerificationService(true, 1.0);
+
+    @Test
+    void randomCustomersMatchCentsKernel() {
+        OffHeapArena arena = new OffHeapArena(64);
+        Random random = new Random(20240601L);
+        long seed = 0;
+        for (int round = 0; round < 10; round++) {
+            List<String> names = new ArrayList<>();
+            List<AllocationKernelEquivalenceTest.AllocationScenario> scenarios = new ArrayList<>();
+            while (scenarios.size() < 200) {
+                AllocationKernelEquivalenceTest.AllocationScenario scenario =
+                        AllocationKernelEquivalenceTest.AllocationScenario.random(new Random(seed++));
+                // 快照的数据来自 DECIMAL(18,2) 列，不会出现空行与超出分精度的金额
+                scenario.receipts.removeIf(receipt -> receipt == null);
+                if (!centsExact(scenario)) {
+                    continue;
+                }
+                names.add(String.format("Customer_%04d", scenarios.size()));
+                scenarios.add(scenario);
+            }
+            assignKeys(scenarios);
+
+            try (ColumnarSnapshot snapshot = load(arena, names, scenarios)) {
+                int from = 0;
+                while (from < names.size()) {
+                    int to = Math.min(names.size(), from + 1 + random.nextInt(16));
+                    assertBatchEquivalent("round-" + round + " [" + from + "," + to + ")", snapshot,
+                            names.subList(from, to), scenarios.subList(from, to));
+                    from = to;
+                }
+            }
+            assertEquals(0L, arena.getInUseBytes(), "快照关闭后段应全部交还内存池");
+        }
+        assertTrue(arena.getIdleBytes() > 0, "保留上限以内的段应留作复用");
+        arena.destroy();
+        assertEquals(0L, arena.getIdleBytes());
+    }
+
+    @Test
+    void customersMissingFromSnapshotAreSkipped() {
+        AllocationKernelEquivalenceTest.AllocationScenario scenario = new AllocationKernelEquivalenceTest.AllocationScenario();
+        scenario.receipts.add(AllocationKernelEquivalenceTest.AllocationScenario.receipt(1L, "100.00", "0.00"));
+        scenario.schedules.add(AllocationKernelEquivalenceTest.AllocationScenario.schedule(1L, "80.00", "30.00", "0.00", "0.00"));
+        List<String> names = Collections.singletonList("Customer_0000");
+        List<AllocationKernelEquivalenceTest.AllocationScenario> scenarios = Collections.singletonList(scenario);
+        assignKeys(scenarios);
+
+        OffHeapArena arena = new OffHeapArena(0);
+        try (ColumnarSnapshot snapshot = load(arena, names, scenarios)) {
+            VerificationService.ProcessingOutcome outcome = snapshot.allocate(Arrays.asList("Customer_9999", "Customer_0000"));
+            assertEquals(1, outcome.getResult().getVerifiedCount());
+            assertEquals(0, new BigDecimal("70.00").compareTo(outcome.getResult().getTotalPrincipal()));
+            assertEquals(0, new BigDecimal("30.00").compareTo(outcome.getResult().getTotalInterest()));
+        }
+        assertEquals(0L, arena.getInUseBytes());
+        assertEquals(0L, arena.getIdleBytes());
+    }
+
+    @Test
+    void caseAndTrailingSpaceVariantsAreDistinctCustomers() {
+        List<String> names = new ArrayList<>(Arrays.asList("alice", "Alice", "ALICE", "Alice ", "Alice  ", "bob", "Bob ", "BOB"));
+        // 按流式查询的二进制顺序装载，同名的行相邻
+        names.sort(Comparator.naturalOrder());
+        List<AllocationKernelEquivalenceTest.AllocationScenario> scenarios = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            AllocationKernelEquivalenceTest.AllocationScenario scenario = new AllocationKernelEquivalenceTest.AllocationScenario();
+            scenario.receipts.add(AllocationKernelEquivalenceTest.AllocationScenario.receipt(null, (100 + i * 10) + ".00", "0.00"));
+            scenario.receipts.add(AllocationKernelEquivalenceTest.AllocationScenario.receipt(null, "5.00", "0.00"));
+            scenario.schedules.add(AllocationKernelEquivalenceTest.AllocationScenario.schedule(null, (60 + i * 10) + ".00", "10.00", "0.00", "0.00"));
+            scenario.schedules.add(AllocationKernelEquivalenceTest.AllocationScenario.schedule(null, "80.00", "10.00", "0.00", "0.00"));
+            scenarios.add(scenario);
+        }
+        assignKeys(scenarios);
+
+        OffHeapArena arena = new OffHeapArena(0);
+        try (ColumnarSnapshot snapshot = load(arena, names, scenarios)) {
+            // 批次按 _ci 排序规则下不区分大小写的顺序排列客户
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < names.size(); i++) {
+                order.add(i);
+            }
+            order.sort(Comparator.comparing(names::get, String.CASE_INSENSITIVE_ORDER));
+            List<String> batchNames = new ArrayList<>();
+            List<AllocationKernelEquivalenceTest.AllocationScenario> batchScenarios = new ArrayList<>();
+            for (int i : order) {
+                batchNames.add(names.get(i));
+                batchScenarios.add(scenarios.get(i));
+            }
+            assertBatchEquivalent("variants", snapshot, batchNames, batchScenarios);
+        }
+
+        // 按列的 _ci 排序规则读取时，比较相等的客户的行按付款时间交错出现
+        try (ColumnarSnapshot snapshot = new ColumnarSnapshot(arena)) {
+            snapshot.addReceipt(receiptOf(1L, "Alice", 0));
+            snapshot.addReceipt(receiptOf(2L, "alice", 1));
+            assertThrows(BusinessException.class, () -> snapshot.addReceipt(receiptOf(3L, "Alice", 2)));
+        }
+        assertEquals(0L, arena.getInUseBytes());
+    }
+
+    private static BankReceipt receiptOf(long id, String payerName, int minute) {
+        BankReceipt receipt = AllocationKernelEquivalenceTest.AllocationScenario.receipt(id, "10.00", "0.00");
+        receipt.setPayerName(payerName);
+        receipt.setPaymentDatetime(new Date(BASE_TIME + minute * 60_000L));
+        receipt.setVersion(0);
+        return receipt;
+    }
+
+    private void assertBatchEquivalent(String label, ColumnarSnapshot snapshot, List<String> names,
+                                       List<AllocationKernelEquivalenceTest.AllocationScenario> scenarios) {
+        VerificationService.ProcessingOutcome expected = new VerificationService.ProcessingOutcome();
+        Map<Long, RentSchedule> expectedSchedules = new HashMap<>();
+        Map<Long, BankReceipt> expectedReceipts = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            AllocationKernelEquivalenceTest.AllocationScenario input = scenarios.get(i).copy();
+            VerificationService.ProcessingOutcome customerOutcome =
+                    centsService.allocateCustomer(names.get(i), input.receipts, input.schedules);
+            assertNotNull(customerOutcome, label);
+            expected.add(names.get(i), customerOutcome);
+            for (RentSchedule schedule : input.schedules) {
+                expectedSchedules.put(schedule.getId(), schedule);
+            }
+            for (BankReceipt receipt : input.receipts) {
+                expectedReceipts.put(receipt.getId(), receipt);
+            }
+        }
+
+        VerificationService.ProcessingOutcome actual = snapshot.allocate(names);
+
+        assertEquals(expected.getResult().getVerifiedCount(), actual.getResult().getVerifiedCount(), label);
+        assertAmountEquals(label + " principal", expected.getResult().getTotalPrincipal(), actual.getResult().getTotalPrincipal());
+        assertAmountEquals(label + " interest", expected.getResult().getTotalInterest(), actual.getResult().getTotalInterest());
+        assertEquals(AllocationKernelEquivalenceTest.AllocationScenario.scheduleIds(expected.getUpdatedSchedules()),
+                AllocationKernelEquivalenceTest.AllocationScenario.scheduleIds(actual.getUpdatedSchedules()), label + " updated schedules");
+        assertEquals(AllocationKernelEquivalenceTest.AllocationScenario.receiptIds(expected.getUpdatedReceipts()),
+                AllocationKernelEquivalenceTest.AllocationScenario.receiptIds(actual.getUpdatedReceipts()), label + " updated receipts");
+
+        // 快照只带出发生变化的列，逐列与内核改写后的行比较
+        for (RentSchedule a : actual.getUpdatedSchedules()) {
+            RentSchedule e = expectedSchedules.get(a.getId());
+            String rowLabel = label + " schedule#" + a.getId();
+            assertEquals(e.getChangedColumns(), a.getChangedColumns(), rowLabel + " changedColumns");
+            if (a.getInterestReceived() != null) {
+                assertAmountEquals(rowLabel + " interestReceived", e.getInterestReceived(), a.getInterestReceived());
+            }
+            if (a.getPrincipalReceived() != null) {
+                assertAmountEquals(rowLabel + " principalReceived", e.getPrincipalReceived(), a.getPrincipalReceived());
+            }
+            assertEquals(e.getStatus(), a.getStatus(), rowLabel + " status");
+            assertEquals(Integer.valueOf(0), a.getVersion(), rowLabel + " version");
+        }
+        for (BankReceipt a : actual.getUpdatedReceipts()) {
+            BankReceipt e = expectedReceipts.get(a.getId());
+            String rowLabel = label + " receipt#" + a.getId();
+            assertEquals(e.getChangedColumns(), a.getChangedColumns(), rowLabel + " changedColumns");
+            assertAmountEquals(rowLabel + " usedAmount", e.getUsedAmount(), a.getUsedAmount());
+            assertEquals(e.getStatus(), a.getStatus(), rowLabel + " status");
+            assertEquals(Integer.valueOf(0), a.getVersion(), rowLabel + " version");
+        }
+    }
+
+    /**
+     * 按装载顺序装入快照：收款单按 (客户, 付款时间, id)，租金计划按 (客户, 到期日, id)
+     */
+    private static ColumnarSnapshot load(OffHeapArena arena, List<String> names,
+                                         List<AllocationKernelEquivalenceTest.AllocationScenario> scenarios) {
+        ColumnarSnapshot snapshot = new ColumnarSnapshot(arena);
+        for (int i = 0; i < names.size(); i++) {
+            List<BankReceipt> receipts = scenarios.get(i).copy().receipts;
+            for (int r = 0; r < receipts.size(); r++) {
+                BankReceipt receipt = receipts.get(r);
+                receipt.setPayerName(names.get(i));
+                receipt.setPaymentDatetime(new Date(BASE_TIME + r * 60_000L));
+                receipt.setVersion(0);
+                snapshot.addReceipt(receipt);
+            }
+        }
+        snapshot.sealReceipts();
+        for (int i = 0; i < names.size(); i++) {
+            List<RentSchedule> schedules = scenarios.get(i).copy().schedules;
+            for (int s = 0; s < schedules.size(); s++) {
+                RentSchedule schedule = schedules.get(s);
+                schedule.setLesseeName(names.get(i));
+                schedule.setDueDate(new Date(BASE_TIME + s * 86_400_000L));
+                schedule.setVersion(0);
+                snapshot.addSchedule(schedule);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 各客户的行 id 在快照内互不相同，便于按 id 比较
+     */
+    private static void assignKeys(List<AllocationKernelEquivalenceTest.AllocationScenario> scenarios) {
+        long nextReceiptId = 1;
+        long nextScheduleId = 1;
+        for (AllocationKernelEquivalenceTest.AllocationScenario scenario : scenarios) {
+            for (BankReceipt receipt : scenario.receipts) {
+                receipt.setId(nextReceiptId++);
+            }
+            for (RentSchedule schedule : scenario.schedules) {
+                schedule.setId(nextScheduleId++);
+            }
+        }
+    }
+
+    private static boolean centsExact(AllocationKernelEquivalenceTest.AllocationScenario scenario) {
+        try {
+            for (BankReceipt receipt : scenario.receipts) {
+                CentsAllocationKernel.toCents(receipt.getPaymentAmount());
+                CentsAllocationKernel.toCents(receipt.getUsedAmount());
+            }
+            for (RentSchedule schedule : scenario.schedules) {
+                CentsAllocationKernel.toCents(schedule.getPrincipalDue());
+                CentsAllocationKernel.toCents(schedule.getInterestDue());
+                CentsAllocationKernel.toCents(schedule.getPrincipalReceived());
+                CentsAllocationKernel.toCents(schedule.getInterestReceived());
+            }
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    private static void assertAmountEquals(String label, BigDecimal expected, BigDecimal actual) {
+        if (expected == null || actual == null) {
+            assertEquals(expected, actual, label);
+            return;
+        }
+        assertEquals(0, expected.compareTo(actual), label + " expected " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,209 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.mapper.BankReceiptMapper;
+import com.yujian.yupicturebackend.model.dto.verification.CustomerWorkload;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 校验全量核销的客户发现：键集分页按 payer_name 顺序续读（payer_name > 上一页最后一个客户），
+ * 续跑起点只对第一页生效且包含起点本身；没有待核销收款或没有待核销租金计划的客户不被发现；
+ * 最后一页不满时剩余客户也成批，全部批次恰好覆盖每个待核销客户一次。
+ * 按权重规划时大客户只出现在各自的专属批次中且排在最前，区间批次的权重不超过目标行数，并在大客户处断开。
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+class CustomerBatchCursorTest {
+
+    private static final int CUSTOMERS = 30;
+    private static final int PAGE_SIZE = 4;
+
+    @Resource
+    private BankReceiptMapper bankReceiptMapper;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    private VerificationLedgerFixture ledger;
+    /**
+     * 应被发现的客户及其待核销行数，按名称顺序
+     */
+    private final Map<String, Long> openWorkloads = new LinkedHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        ledger = new VerificationLedgerFixture(jdbcTemplate);
+        ledger.clear();
+        openWorkloads.clear();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            String customerName = String.format("Cursor_%02d", i);
+            int receipts = 1 + i % 3;
+            int schedules = 1 + i % 4;
+            for (int r = 0; r < receipts; r++) {
+                // 收款已全部用完的客户没有待核销收款
+                BigDecimal used = i % 7 == 5 ? new BigDecimal("100.00") : BigDecimal.ZERO;
+                ledger.receipt(customerName, new BigDecimal("100.00"), used, VerificationLedgerFixture.BASE_DATE.atStartOfDay());
+            }
+            for (int s = 0; s < schedules; s++) {
+                // 租金计划已全部结清的客户没有待核销计划
+                boolean settled = i % 7 == 3;
+                ledger.schedule(customerName, VerificationLedgerFixture.BASE_DATE.plusMonths(s), new BigDecimal("10.00"),
+                        new BigDecimal("1.00"), settled ? new BigDecimal("10.00") : BigDecimal.ZERO,
+                        settled ? new BigDecimal("1.00") : BigDecimal.ZERO);
+            }
+            if (i % 7 != 3 && i % 7 != 5) {
+                openWorkloads.put(customerName, (long) (receipts + schedules));
+            }
+        }
+    }
+
+    @Test
+    void workloadPagesContinueAfterLastCustomer() {
+        List<String> expected = new ArrayList<>(openWorkloads.keySet());
+
+        List<CustomerWorkload> first = bankReceiptMapper.selectCustomerWorkloads(null, null, PAGE_SIZE);
+        assertEquals(expected.subList(0, PAGE_SIZE), names(first));
+        for (CustomerWorkload workload : first) {
+            assertEquals(openWorkloads.get(workload.getCustomerName()).longValue(), workload.weight());
+        }
+
+        // 续读时以上一页最后一个客户为界（不包含），起点不再生效
+        String last = first.get(PAGE_SIZE - 1).getCustomerName();
+        List<CustomerWorkload> second = bankReceiptMapper.selectCustomerWorkloads(last, expected.get(0), PAGE_SIZE);
+        assertEquals(expected.subList(PAGE_SIZE, 2 * PAGE_SIZE), names(second));
+
+        // 起点包含自身；起点是不需要核销的客户时从其后第一个待核销客户开始
+        assertEquals(expected.get(5), bankReceiptMapper.selectCustomerWorkloads(null, expected.get(5), 1).get(0).getCustomerName());
+        assertEquals("Cursor_04", bankReceiptMapper.selectCustomerWorkloads(null, "Cursor_03", 1).get(0).getCustomerName());
+    }
+
+    @Test
+    void batchesCoverEveryOpenCustomerExactlyOnce() {
+        List<CustomerBatch> batches = drain(new CustomerBatchCursor(bankReceiptMapper, PAGE_SIZE, null,
+                Integer.MAX_VALUE, 0, 0, disabledPriority()));
+
+        List<String> covered = new ArrayList<>();
+        for (CustomerBatch batch : batches) {
+            assertTrue(batch.isContiguous());
+            assertTrue(batch.size() <= PAGE_SIZE);
+            covered.addAll(batch.getCustomerNames());
+        }
+        assertEquals(new ArrayList<>(openWorkloads.keySet()), covered);
+        // 最后一页不满，剩余客户单独成批
+        int remainder = openWorkloads.size() % PAGE_SIZE;
+        assertTrue(remainder > 0);
+        assertEquals(remainder, batches.get(batches.size() - 1).size());
+    }
+
+    @Test
+    void startCustomerAppliesToFirstPageOnly() {
+        List<String> expected = new ArrayList<>(openWorkloads.keySet());
+        String start = expected.get(7);
+
+        List<CustomerBatch> batches = drain(new CustomerBatchCursor(bankReceiptMapper, PAGE_SIZE, start,
+                Integer.MAX_VALUE, 0, 0, disabledPriority()));
+
+        List<String> covered = new ArrayList<>();
+        for (CustomerBatch batch : batches) {
+            covered.addAll(batch.getCustomerNames());
+        }
+        assertEquals(start, batches.get(0).getFirstCustomer());
+        assertEquals(expected.subList(7, expected.size()), covered);
+    }
+
+    @Test
+    void whalesOnlyInDedicatedBatchesAndRangesRespectTargetRows() {
+        // 待核销计划达到 4 期、且有待核销收款的客户为大客户
+        List<String> whales = new ArrayList<>();
+        for (String customerName : openWorkloads.keySet()) {
+            if (Integer.parseInt(customerName.substring("Cursor_".length())) % 4 == 3) {
+                whales.add(customerName);
+            }
+        }
+        int targetBatchRows = 6;
+
+        List<CustomerBatch> batches = drain(new CustomerBatchCursor(bankReceiptMapper, 100, null,
+                targetBatchRows, 4, 10, disabledPriority()));
+
+        List<String> dedicated = new ArrayList<>();
+        List<CustomerBatch> ranges = new ArrayList<>();
+        for (CustomerBatch batch : batches) {
+            if (batch.isDedicated()) {
+                assertTrue(ranges.isEmpty(), "专属批次应排在区间批次之前");
+                assertEquals(1, batch.size());
+                dedicated.add(batch.getFirstCustomer());
+            } else {
+                ranges.add(batch);
+            }
+        }
+        assertEquals(new HashSet<>(whales), new HashSet<>(dedicated));
+        assertEquals(whales.size(), dedicated.size());
+
+        List<String> covered = new ArrayList<>(dedicated);
+        for (int b = 0; b < ranges.size(); b++) {
+            CustomerBatch range = ranges.get(b);
+            for (String whale : whales) {
+                // 区间不跨过大客户，按名称区间加载时不会读到大客户的数据
+                assertTrue(whale.compareTo(range.getFirstCustomer()) < 0 || whale.compareTo(range.getLastCustomer()) > 0,
+                        range + " 包含大客户 " + whale);
+            }
+            long weight = weight(range.getCustomerNames());
+            assertTrue(weight <= targetBatchRows || range.size() == 1, range + " 超过目标行数");
+            if (b + 1 < ranges.size()) {
+                CustomerBatch next = ranges.get(b + 1);
+                boolean brokenAtWhale = false;
+                for (String whale : whales) {
+                    brokenAtWhale |= whale.compareTo(range.getLastCustomer()) > 0 && whale.compareTo(next.getFirstCustomer()) < 0;
+                }
+                // 相邻区间只在大客户处或权重放不下下一个客户时断开
+                assertTrue(brokenAtWhale || weight + openWorkloads.get(next.getFirstCustomer()) > targetBatchRows,
+                        range + " 与 " + next + " 本可合并");
+            }
+            covered.addAll(range.getCustomerNames());
+        }
+        Collections.sort(covered);
+        assertEquals(new ArrayList<>(openWorkloads.keySet()), covered);
+    }
+
+    private long weight(List<String> customerNames) {
+        long weight = 0;
+        for (String customerName : customerNames) {
+            weight += openWorkloads.get(customerName);
+        }
+        return weight;
+    }
+
+    private static List<CustomerBatch> drain(CustomerBatchCursor cursor) {
+        List<CustomerBatch> batches = new ArrayList<>();
+        while (cursor.hasNext()) {
+            batches.add(cursor.next());
+        }
+        return batches;
+    }
+
+    private static VerificationPriorityPolicy disabledPriority() {
+        return new VerificationPriorityPolicy(false, 90, 30, BigDecimal.ZERO, BigDecimal.ZERO, 0);
+    }
+
+    private static List<String> names(List<CustomerWorkload> workloads) {
+        List<String> names = new ArrayList<>(workloads.size());
+        for (CustomerWorkload workload : workloads) {
+            names.add(workload.getCustomerName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,124 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.model.enums.LedgerArchiveTableEnum;
+import com.yujian.yupicturebackend.model.enums.VerificationModeEnum;
+import com.yujian.yupicturebackend.model.enums.VerificationPriorityEnum;
+import com.yujian.yupicturebackend.service.customer.CustomerKeyService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 校验开启客户整数键后的核销：名称列表批次按 customer_id 读取与分组，结果与逐客户按名称核销相同；
+ * 连续区间批次仍按名称读取，customer_id 为空的行不会被漏掉；仍有未回填的行时拒绝开始核销。
+ */
+@SpringBootTest(properties = "verification.customer-key-enabled=true")
+@ActiveProfiles("h2")
+class CustomerKeyVerificationTest {
+
+    private static final int CUSTOMERS = 90;
+
+    @Resource
+    private VerificationService verificationService;
+
+    @Resource
+    private MergeJoinBatchService mergeJoinBatchService;
+    @Resource
+    private VerificationOrchestrator orchestrator;
+    @Resource
+    private CustomerKeyService customerKeyService;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    private VerificationLedgerFixture ledger;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new VerificationLedgerFixture(jdbcTemplate);
+    }
+
+    @Test
+    void nameListBatchesByKeyMatchNamePath() {
+        List<String> customerNames = ledger.seed(7, CUSTOMERS);
+        List<String> sparse = new ArrayList<>();
+        for (int i = 0; i < customerNames.size(); i += 3) {
+            sparse.add(customerNames.get(i));
+        }
+        backfill();
+        // 逐客户核销只按名称读取，不受客户整数键影响，作为对照
+        for (String customerName : sparse) {
+            verificationService.processCustomer(customerName);
+        }
+        List<Map<String, Object>> expectedReceipts = ledger.receipts();
+        List<Map<String, Object>> expectedSchedules = ledger.schedules();
+
+        ledger.seed(7, CUSTOMERS);
+        backfill();
+        VerificationService.VerificationResult loaded = verificationService.processCustomerBatch(
+                CustomerBatch.prioritized(sparse, VerificationPriorityEnum.NORMAL));
+        assertTrue(loaded.getVerifiedCount() > 0, "没有核销任何计划");
+        assertEquals(expectedReceipts, ledger.receipts());
+        assertEquals(expectedSchedules, ledger.schedules());
+
+        ledger.seed(7, CUSTOMERS);
+        backfill();
+        VerificationService.StreamedBatch streamed = mergeJoinBatchService.mergeJoinBatch(
+                CustomerBatch.prioritized(sparse, VerificationPriorityEnum.NORMAL), 7);
+        assertEquals(expectedReceipts, ledger.receipts());
+        assertEquals(expectedSchedules, ledger.schedules());
+        assertEquals(loaded.getVerifiedCount(), streamed.getResult().getVerifiedCount());
+    }
+
+    @Test
+    void contiguousBatchesReadRowsWithoutKeys() {
+        List<String> customerNames = ledger.seed(11, 20);
+        backfill();
+        // 绕过服务层写入的行没有 customer_id，连续区间批次按名称范围扫描，仍然核销这些行
+        String unkeyed = "Customer_9999";
+        long receiptId = ledger.receipt(unkeyed, new BigDecimal("100.00"), BigDecimal.ZERO,
+                VerificationLedgerFixture.BASE_DATE.atStartOfDay());
+        long scheduleId = ledger.schedule(unkeyed, VerificationLedgerFixture.BASE_DATE, new BigDecimal("80.00"),
+                new BigDecimal("10.00"), BigDecimal.ZERO, BigDecimal.ZERO);
+        customerNames.add(unkeyed);
+
+        verificationService.processCustomerBatch(CustomerBatch.range(customerNames));
+
+        assertEquals(VerificationService.STATUS_USED, jdbcTemplate.queryForObject(
+                "SELECT status FROM rent_schedule WHERE id = ?", Integer.class, scheduleId).intValue());
+        assertEquals(VerificationService.STATUS_PARTIALLY_USED, jdbcTemplate.queryForObject(
+                "SELECT status FROM bank_receipt WHERE id = ?", Integer.class, receiptId).intValue());
+    }
+
+    @Test
+    void runsRefuseToStartWhileKeysAreMissing() {
+        ledger.seed(13, 10);
+        assertThrows(BusinessException.class, () -> orchestrator.submit(VerificationModeEnum.FULL));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM verification_run", Integer.class).intValue());
+
+        backfill();
+        customerKeyService.ensureFullyKeyed();
+    }
+
+    private void backfill() {
+        for (LedgerArchiveTableEnum table : LedgerArchiveTableEnum.values()) {
+            long lastId = 0;
+            List<Long> ids;
+            while (!(ids = customerKeyService.backfillChunk(table, lastId, 50)).isEmpty()) {
+                lastId = ids.get(ids.size() - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 校验逐客户日志抽样：抽中的客户数接近配置的比例，同一客户的过程日志要么全部按 INFO 输出、要么全部降为 DEBUG，
+ * 有收款但无租金计划的告警不受抽样影响，定点与 BigDecimal 两条核销路径一致。
+ */
+class CustomerLogSamplerTest {
+
+    private static final int CUSTOMERS = 20_000;
+
+    private final Logger processLogger = (Logger) LoggerFactory.getLogger("VerificationProcess");
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    private Level previousLevel;
+
+    @BeforeEach
+    void setUp() {
+        previousLevel = processLogger.getLevel();
+        processLogger.setLevel(Level.INFO);
+        appender.start();
+        processLogger.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        processLogger.detachAppender(appender);
+        appender.stop();
+        processLogger.setLevel(previousLevel);
+    }
+
+    @Test
+    void sampledShareFollowsConfiguredRate() {
+        for (double rate : new double[]{0.01, 0.1, 0.5}) {
+            CustomerLogSampler sampler = new CustomerLogSampler(rate);
+            int sampled = 0;
+            for (int i = 0; i < CUSTOMERS; i++) {
+                if (sampler.isSampled(customerName(i))) {
+                    sampled++;
+                }
+            }
+            double share = (double) sampled / CUSTOMERS;
+            assertEquals(rate, share, rate * 0.2 + 0.002, "rate " + rate);
+        }
+
+        CustomerLogSampler none = new CustomerLogSampler(0);
+        CustomerLogSampler tenth = new CustomerLogSampler(0.1);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(CustomerLogSampler.ALL.isSampled(customerName(i)));
+            assertFalse(none.isSampled(customerName(i)));
+            // 同一客户的抽样结果固定，重复核销时日志仍连贯
+            assertEquals(tenth.isSampled(customerName(i)), new CustomerLogSampler(0.1).isSampled(customerName(i)));
+        }
+        assertTrue(new CustomerLogSampler(Double.NaN).isSampled("Customer_A"));
+        assertTrue(new CustomerLogSampler(7).isSampled("Customer_A"));
+        assertFalse(new CustomerLogSampler(-1).isSampled("Customer_A"));
+    }
+
+    @Test
+    void processLinesOfSampledCustomersOnlyAtConfiguredRate() {
+        for (boolean centsKernel : new boolean[]{true, false}) {
+            appender.list.clear();
+            VerificationService service = new VerificationService(centsKernel, 0.1);
+            CustomerLogSampler sampler = new CustomerLogSampler(0.1);
+            Set<String> expected = new HashSet<>();
+            for (int i = 0; i < 2000; i++) {
+                String customerName = customerName(i);
+                if (sampler.isSampled(customerName)) {
+                    expected.add(customerName);
+                }
+                service.allocateCustomer(customerName, receipts(customerName), schedules(customerName));
+            }
+
+            // 每个抽中的客户依次输出开始、待核销总金额、处理完毕三行，未抽中的客户一行都不输出
+            Map<String, Integer> linesPerCustomer = new HashMap<>();
+            for (ILoggingEvent event : appender.list) {
+                assertEquals(Level.INFO, event.getLevel());
+                String customerName = (String) event.getArgumentArray()[0];
+                linesPerCustomer.merge(customerName, 1, Integer::sum);
+            }
+            assertEquals(expected, linesPerCustomer.keySet(), "cents " + centsKernel);
+            for (Map.Entry<String, Integer> entry : linesPerCustomer.entrySet()) {
+                assertEquals(3, entry.getValue().intValue(), entry.getKey());
+            }
+            assertEquals(0.1, (double) expected.size() / 2000, 0.03);
+        }
+    }
+
+    @Test
+    void paymentWithoutSchedulesIsAlwaysLogged() {
+        for (boolean centsKernel : new boolean[]{true, false}) {
+            appender.list.clear();
+            VerificationService service = new VerificationService(centsKernel, 0);
+            for (int i = 0; i < 50; i++) {
+                String customerName = customerName(i);
+                service.allocateCustomer(customerName, receipts(customerName), Collections.emptyList());
+            }
+
+            assertEquals(50, appender.list.size(), "cents " + centsKernel);
+            for (int i = 0; i < 50; i++) {
+                ILoggingEvent event = appender.list.get(i);
+                assertEquals(Level.WARN, event.getLevel());
+                assertEquals(customerName(i), event.getArgumentArray()[0]);
+            }
+        }
+    }
+
+    private static String customerName(int i) {
+        return String.format("Customer_%06d", i);
+    }
+
+    private static List<BankReceipt> receipts(String customerName) {
+        BankReceipt receipt = AllocationKernelEquivalenceTest.AllocationScenario.receipt(1L, "100.00", "0.00");
+        receipt.setPayerName(customerName);
+        List<BankReceipt> receipts = new ArrayList<>();
+        receipts.add(receipt);
+        return receipts;
+    }
+
+    private static List<RentSchedule> schedules(String customerName) {
+        RentSchedule schedule = AllocationKernelEquivalenceTest.AllocationScenario.schedule(1L, "80.00", "10.00", "0.00", "0.00");
+        schedule.setLesseeName(customerName);
+        List<RentSchedule> schedules = new ArrayList<>();
+        schedules.add(schedule);
+        return schedules;
+    }
+}
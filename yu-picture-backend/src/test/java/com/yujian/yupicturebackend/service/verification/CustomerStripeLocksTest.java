@@ -0,0 +1,112 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 校验客户分段锁：同一运行令牌的批次共享分段，其他令牌占用的客户推迟并标记为脏客户，
+ * 运行被接管后的新令牌与原令牌互斥，单客户核销等待超时后推迟。
+ */
+class CustomerStripeLocksTest {
+
+    private static final int STRIPES = 4;
+
+    private final DirtyCustomerTracker dirtyCustomerTracker = mock(DirtyCustomerTracker.class);
+    private final CustomerStripeLocks locks = new CustomerStripeLocks(null, dirtyCustomerTracker,
+            VerificationMetrics.NOOP, "local", "test", STRIPES, 30, 50);
+
+    @AfterEach
+    void tearDown() {
+        locks.destroy();
+    }
+
+    @Test
+    void runTokenIncludesOwner() {
+        assertEquals("run:5:abc", CustomerStripeLocks.runToken(5L, "abc"));
+        assertEquals("run:5", CustomerStripeLocks.runToken(5L, null));
+    }
+
+    @Test
+    void sameRunSharesStripes() {
+        String token = CustomerStripeLocks.runToken(1L, "owner-a");
+        List<String> customers = customersOnStripe(0, 4);
+
+        CustomerStripeLocks.StripeLease first = locks.lockBatch(token, CustomerBatch.range(customers.subList(0, 2)));
+        CustomerStripeLocks.StripeLease second = locks.lockBatch(token, CustomerBatch.range(customers.subList(2, 4)));
+
+        assertEquals(customers.subList(0, 2), first.getBatch().getCustomerNames());
+        assertEquals(customers.subList(2, 4), second.getBatch().getCustomerNames());
+        assertTrue(second.getDeferred().isEmpty());
+        verify(dirtyCustomerTracker, never()).markDirty(anyCollection());
+    }
+
+    @Test
+    void takenOverRunDefersCustomersHeldByPreviousOwner() {
+        List<String> held = customersOnStripe(1, 1);
+        List<String> free = customersOnStripe(2, 1);
+        CustomerStripeLocks.StripeLease previous =
+                locks.lockBatch(CustomerStripeLocks.runToken(1L, "owner-a"), CustomerBatch.range(held));
+
+        List<String> names = Arrays.asList(held.get(0), free.get(0));
+        CustomerStripeLocks.StripeLease current =
+                locks.lockBatch(CustomerStripeLocks.runToken(1L, "owner-b"), CustomerBatch.range(names));
+
+        assertEquals(free, current.getBatch().getCustomerNames());
+        assertEquals(new LinkedHashSet<>(held), current.getDeferred());
+        verify(dirtyCustomerTracker).markDirty(new LinkedHashSet<>(held));
+
+        // 原持有者释放后，新令牌可以占用
+        locks.release(previous);
+        locks.release(current);
+        CustomerStripeLocks.StripeLease retry =
+                locks.lockBatch(CustomerStripeLocks.runToken(1L, "owner-b"), CustomerBatch.range(names));
+        assertEquals(names, retry.getBatch().getCustomerNames());
+        locks.release(retry);
+    }
+
+    @Test
+    void customerWaitsThenDefers() throws InterruptedException {
+        String customer = customersOnStripe(3, 1).get(0);
+        CustomerStripeLocks.StripeLease batchLease =
+                locks.lockBatch(CustomerStripeLocks.runToken(1L, "owner-a"), CustomerBatch.range(Collections.singletonList(customer)));
+
+        assertNull(locks.lockCustomer(customer));
+        verify(dirtyCustomerTracker).markDirty(Collections.singletonList(customer));
+
+        locks.release(batchLease);
+        // 重复释放被忽略
+        locks.release(batchLease);
+        CustomerStripeLocks.StripeLease customerLease = locks.lockCustomer(customer);
+        assertNotNull(customerLease);
+        locks.release(customerLease);
+    }
+
+    /**
+     * 按名称顺序找出落在指定分段上的若干客户
+     */
+    private List<String> customersOnStripe(int stripe, int count) {
+        List<String> customers = new ArrayList<>(count);
+        for (int i = 0; customers.size() < count; i++) {
+            String customerName = String.format("Customer_%04d", i);
+            if (locks.stripeOf(customerName) == stripe) {
+                customers.add(customerName);
+            }
+        }
+        return customers;
+    }
+}
@@ -0,0 +1,65 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 校验进程内分段租约：同一令牌可重复占用并按次数释放，其他令牌在租约到期前拿不到分段，续期推迟到期时间。
+ */
+class LocalStripeLeaseStoreTest {
+
+    private static final long LEASE_MILLIS = 60_000;
+
+    private final LocalStripeLeaseStore store = new LocalStripeLeaseStore();
+
+    @Test
+    void sameTokenReentersAndReleasesByCount() {
+        assertEquals(Arrays.asList(1, 2), store.tryAcquire(Arrays.asList(1, 2), "run:1:a", LEASE_MILLIS));
+        assertEquals(Collections.singletonList(2), store.tryAcquire(Collections.singletonList(2), "run:1:a", LEASE_MILLIS));
+
+        // 分段 2 被占用两次，释放一次后仍属于原令牌
+        store.release(Arrays.asList(1, 2), "run:1:a");
+        assertEquals(Collections.singletonList(1), store.tryAcquire(Arrays.asList(1, 2), "run:2:b", LEASE_MILLIS));
+
+        store.release(Collections.singletonList(2), "run:1:a");
+        assertEquals(Collections.singletonList(2), store.tryAcquire(Collections.singletonList(2), "run:2:b", LEASE_MILLIS));
+    }
+
+    @Test
+    void otherTokenIsBlockedUntilRelease() {
+        store.tryAcquire(Arrays.asList(3, 4), "run:1:a", LEASE_MILLIS);
+
+        assertEquals(Collections.singletonList(5), store.tryAcquire(Arrays.asList(3, 4, 5), "run:1:b", LEASE_MILLIS));
+        // 其他令牌的释放不影响持有者
+        store.release(Arrays.asList(3, 4), "run:1:b");
+        assertEquals(Collections.emptyList(), store.tryAcquire(Arrays.asList(3, 4), "customer:x", LEASE_MILLIS));
+
+        store.release(Arrays.asList(3, 4), "run:1:a");
+        assertEquals(Arrays.asList(3, 4), store.tryAcquire(Arrays.asList(3, 4), "customer:x", LEASE_MILLIS));
+    }
+
+    @Test
+    void expiredLeaseIsTakenOver() throws InterruptedException {
+        store.tryAcquire(Collections.singletonList(7), "run:1:a", 1);
+        Thread.sleep(10);
+
+        assertEquals(Collections.singletonList(7), store.tryAcquire(Collections.singletonList(7), "run:1:b", LEASE_MILLIS));
+        // 原持有者迟到的续期与释放不会夺回或删除新持有者的分段
+        store.renew(Collections.singletonList(7), "run:1:a", LEASE_MILLIS);
+        store.release(Collections.singletonList(7), "run:1:a");
+        assertEquals(Collections.emptyList(), store.tryAcquire(Collections.singletonList(7), "run:1:a", LEASE_MILLIS));
+    }
+
+    @Test
+    void renewExtendsLease() throws InterruptedException {
+        store.tryAcquire(Collections.singletonList(9), "run:1:a", 50);
+        store.renew(Collections.singletonList(9), "run:1:a", LEASE_MILLIS);
+        Thread.sleep(100);
+
+        assertEquals(Collections.emptyList(), store.tryAcquire(Collections.singletonList(9), "run:1:b", LEASE_MILLIS));
+    }
+}
@@ -0,0 +1,137 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.VerificationDirtyCustomer;
+import com.yujian.yupicturebackend.model.enums.VerificationPriorityEnum;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 校验流式归并核销（服务端游标逐客户归并、分块回写）与整批加载核销对同一份台账产生完全相同的回写结果，
+ * 包括大小写不同、只差尾部空格的客户名按不区分大小写的顺序排列在批次中的情况。
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+class MergeJoinEquivalenceTest {
+
+    private static final int CUSTOMERS = 120;
+
+    @Resource
+    private VerificationService verificationService;
+
+    @Resource
+    private MergeJoinBatchService mergeJoinBatchService;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    private VerificationLedgerFixture ledger;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new VerificationLedgerFixture(jdbcTemplate);
+    }
+
+    @Test
+    void mergeJoinMatchesLoadAll() {
+        for (long seed = 1; seed <= 3; seed++) {
+            List<String> customerNames = ledger.seed(seed, CUSTOMERS);
+            VerificationService.VerificationResult loadAll =
+                    verificationService.processCustomerBatch(CustomerBatch.range(customerNames));
+            List<Map<String, Object>> expectedReceipts = ledger.receipts();
+            List<Map<String, Object>> expectedSchedules = ledger.schedules();
+            assertTrue(loadAll.getVerifiedCount() > 0, "seed-" + seed + " 没有核销任何计划");
+
+            // 分块小于单个客户的行数，覆盖客户中途分块回写
+            for (int chunkSize : new int[]{1, 7, 5000}) {
+                ledger.seed(seed, CUSTOMERS);
+                VerificationService.StreamedBatch mergeJoin =
+                        mergeJoinBatchService.mergeJoinBatch(CustomerBatch.range(customerNames), chunkSize);
+                String label = "seed-" + seed + "/chunk-" + chunkSize;
+                assertEquals(expectedReceipts, ledger.receipts(), label);
+                assertEquals(expectedSchedules, ledger.schedules(), label);
+                assertEquals(loadAll.getVerifiedCount(), mergeJoin.getResult().getVerifiedCount(), label);
+                assertEquals(0, loadAll.getTotalPrincipal().compareTo(mergeJoin.getResult().getTotalPrincipal()), label);
+                assertEquals(0, loadAll.getTotalInterest().compareTo(mergeJoin.getResult().getTotalInterest()), label);
+            }
+        }
+    }
+
+    @Test
+    void mergeJoinMatchesLoadAllForSparseBatch() {
+        List<String> customerNames = ledger.seed(7, CUSTOMERS);
+        List<VerificationDirtyCustomer> sparse = new ArrayList<>();
+        for (int i = 0; i < customerNames.size(); i += 3) {
+            VerificationDirtyCustomer mark = new VerificationDirtyCustomer();
+            mark.setCustomerName(customerNames.get(i));
+            mark.setMarkVersion(1L);
+            sparse.add(mark);
+        }
+        verificationService.processCustomerBatch(CustomerBatch.dirty(sparse));
+        List<Map<String, Object>> expectedReceipts = ledger.receipts();
+        List<Map<String, Object>> expectedSchedules = ledger.schedules();
+
+        ledger.seed(7, CUSTOMERS);
+        mergeJoinBatchService.mergeJoinBatch(CustomerBatch.dirty(sparse), 3);
+        assertEquals(expectedReceipts, ledger.receipts());
+        assertEquals(expectedSchedules, ledger.schedules());
+    }
+
+    @Test
+    void mergeJoinMatchesLoadAllForCaseAndTrailingSpaceVariants() {
+        List<String> customerNames = Arrays.asList("alice", "Alice", "ALICE", "Alice ", "Alice  ", "bob", "Bob ", "BOB");
+        seedVariants(customerNames);
+        List<String> ordered = new ArrayList<>(customerNames);
+        ordered.sort(Comparator.naturalOrder());
+        VerificationService.VerificationResult loadAll = verificationService.processCustomerBatch(CustomerBatch.range(ordered));
+        List<Map<String, Object>> expectedReceipts = ledger.receipts();
+        List<Map<String, Object>> expectedSchedules = ledger.schedules();
+        assertEquals(customerNames.size() * 2, loadAll.getVerifiedCount());
+
+        // 模拟 _ci 排序规则下客户发现查询返回的顺序：不区分大小写，与游标的二进制顺序不同
+        List<String> caseInsensitive = new ArrayList<>(customerNames);
+        caseInsensitive.sort(String.CASE_INSENSITIVE_ORDER);
+        // 区间批次的首尾在 H2 上按二进制比较，不区分大小写的顺序只能以名称列表批次模拟
+        for (CustomerBatch batch : new CustomerBatch[]{CustomerBatch.range(ordered),
+                CustomerBatch.prioritized(caseInsensitive, VerificationPriorityEnum.CRITICAL)}) {
+            seedVariants(customerNames);
+            VerificationService.StreamedBatch mergeJoin = mergeJoinBatchService.mergeJoinBatch(batch, 3);
+            String label = batch.getCustomerNames() + (batch.isContiguous() ? " range" : " list");
+            assertEquals(expectedReceipts, ledger.receipts(), label);
+            assertEquals(expectedSchedules, ledger.schedules(), label);
+            assertEquals(loadAll.getVerifiedCount(), mergeJoin.getResult().getVerifiedCount(), label);
+            assertEquals(0, loadAll.getTotalPrincipal().compareTo(mergeJoin.getResult().getTotalPrincipal()), label);
+        }
+    }
+
+    /**
+     * 每个客户一张收款单、两期租金计划，金额随客户不同，任何两个客户的行混在一起分摊都会改变结果
+     */
+    private void seedVariants(List<String> customerNames) {
+        ledger.clear();
+        for (int i = 0; i < customerNames.size(); i++) {
+            String customerName = customerNames.get(i);
+            BigDecimal principal = new BigDecimal(100 + i * 10);
+            ledger.receipt(customerName, principal.multiply(new BigDecimal(2)).add(new BigDecimal(20)), BigDecimal.ZERO,
+                    VerificationLedgerFixture.BASE_DATE.atStartOfDay().plusHours(i));
+            ledger.receipt(customerName, new BigDecimal("5.00"), BigDecimal.ZERO,
+                    VerificationLedgerFixture.BASE_DATE.atStartOfDay().plusHours(100 - i));
+            for (int m = 0; m < 2; m++) {
+                ledger.schedule(customerName, VerificationLedgerFixture.BASE_DATE.plusMonths(m), principal, BigDecimal.TEN,
+                        BigDecimal.ZERO, BigDecimal.ZERO);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * 校验 Redis 分段租约的键与参数：分段键带哈希标签，Lua 脚本返回的下标（从 1 开始）还原为分段编号，空分段不访问 Redis。
+ */
+class RedisStripeLeaseStoreTest {
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final RedisStripeLeaseStore store = new RedisStripeLeaseStore(redisTemplate, "verification:stripe");
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void acquireMapsScriptPositionsToStripes() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), eq("run:1:a"), eq("30000")))
+                .thenReturn(Arrays.asList(1L, 3L));
+
+        assertEquals(Arrays.asList(2, 7), store.tryAcquire(Arrays.asList(2, 5, 7), "run:1:a", 30_000));
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(Arrays.asList("{verification:stripe}:2", "{verification:stripe}:5", "{verification:stripe}:7")),
+                eq("run:1:a"), eq("30000"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void acquireWithoutReplyAcquiresNothing() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), eq("run:1:a"), eq("30000"))).thenReturn(null);
+
+        assertEquals(Collections.emptyList(), store.tryAcquire(Arrays.asList(2, 5), "run:1:a", 30_000));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void renewAndReleasePassToken() {
+        store.renew(Collections.singletonList(4), "run:1:a", 30_000);
+        store.release(Collections.singletonList(4), "run:1:a");
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(Collections.singletonList("{verification:stripe}:4")),
+                eq("run:1:a"), eq("30000"));
+        verify(redisTemplate).execute(any(RedisScript.class), eq(Collections.singletonList("{verification:stripe}:4")),
+                eq("run:1:a"));
+    }
+
+    @Test
+    void emptyStripesSkipRedis() {
+        assertEquals(Collections.emptyList(), store.tryAcquire(Collections.emptyList(), "run:1:a", 30_000));
+        store.renew(Collections.emptyList(), "run:1:a", 30_000);
+        store.release(Collections.emptyList(), "run:1:a");
+
+        verifyNoInteractions(redisTemplate);
+    }
+}
@@ -0,0 +1,186 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import com.yujian.yupicturebackend.mapper.BankReceiptMapper;
+import com.yujian.yupicturebackend.mapper.RentScheduleMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import javax.annotation.Resource;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 校验库内集合运算核销与 {@link VerificationService#processSingleCustomer} 对同一批随机客户产生完全相同的回写与汇总。
+ * 随机场景与 {@link AllocationKernelEquivalenceTest} 共用；数据库列均为 NOT NULL 且精确到分，
+ * 场景中的空值按 0 写入，含超出分精度金额的场景跳过。
+ * <p>
+ * 集合核销依赖 UPDATE ... JOIN，H2 不支持，测试在 Testcontainers 启动的 MySQL 8 上运行，表结构见 verification-mysql-schema.sql；
+ * 没有可用的 Docker 时跳过。测试数据使用独立的客户名前缀，结束后删除。
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest(properties = "verification.lock.provider=local")
+class SetBasedAllocationEquivalenceTest {
+
+    @Container
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>(DockerImageName.parse("mysql:8.0"))
+            .withUrlParam("rewriteBatchedStatements", "true")
+            .withInitScript("verification-mysql-schema.sql");
+
+    @DynamicPropertySource
+    static void mysqlProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+    }
+
+    private final String prefix = "set-based-eq-" + System.currentTimeMillis() + "-";
+    private final VerificationService referenceService = new VerificationService(false, 1.0);
+
+    @Resource
+    private SetBasedBatchService setBasedBatchService;
+    @Resource
+    private BankReceiptMapper bankReceiptMapper;
+    @Resource
+    private RentScheduleMapper rentScheduleMapper;
+
+    @AfterEach
+    void cleanUp() {
+        bankReceiptMapper.delete(new QueryWrapper<BankReceipt>().likeRight("payer_name", prefix));
+        rentScheduleMapper.delete(new QueryWrapper<RentSchedule>().likeRight("lessee_name", prefix));
+    }
+
+    @Test
+    void randomCustomersProduceIdenticalUpdates() {
+        List<String> customerNames = new ArrayList<>();
+        List<AllocationKernelEquivalenceTest.AllocationScenario> expectedRows = new ArrayList<>();
+        VerificationService.VerificationResult expected = new VerificationService.VerificationResult();
+        for (long seed = 0; seed < 300; seed++) {
+            AllocationKernelEquivalenceTest.AllocationScenario scenario =
+                    normalize(AllocationKernelEquivalenceTest.AllocationScenario.random(new Random(seed)));
+            if (scenario == null) {
+                continue;
+            }
+            String customerName = prefix + String.format("%04d", seed);
+            insert(customerName, scenario);
+            AllocationKernelEquivalenceTest.AllocationScenario reference = scenario.copy();
+            expected.merge(referenceService.processSingleCustomer(customerName, reference.receipts, reference.schedules)
+                    .getResult());
+            customerNames.add(customerName);
+            expectedRows.add(reference);
+        }
+
+        // 前一半客户关闭区间扫描、按名称列表执行，后一半按名称区间执行，覆盖两种客户范围
+        int half = customerNames.size() / 2;
+        VerificationService.VerificationResult actual = new VerificationService.VerificationResult();
+        actual.merge(setBasedBatchService.setBasedBatch(
+                CustomerBatch.range(customerNames.subList(0, half)), false).getResult());
+        actual.merge(setBasedBatchService.setBasedBatch(
+                CustomerBatch.range(customerNames.subList(half, customerNames.size())), true).getResult());
+
+        assertEquals(expected.getVerifiedCount(), actual.getVerifiedCount());
+        assertAmountEquals("principal", expected.getTotalPrincipal(), actual.getTotalPrincipal());
+        assertAmountEquals("interest", expected.getTotalInterest(), actual.getTotalInterest());
+        for (int i = 0; i < customerNames.size(); i++) {
+            assertRows(customerNames.get(i), expectedRows.get(i));
+        }
+    }
+
+    private void assertRows(String label, AllocationKernelEquivalenceTest.AllocationScenario expected) {
+        for (RentSchedule e : expected.schedules) {
+            RentSchedule a = rentScheduleMapper.selectById(e.getId());
+            String rowLabel = label + " schedule#" + e.getId();
+            assertAmountEquals(rowLabel + " interestReceived", e.getInterestReceived(), a.getInterestReceived());
+            assertAmountEquals(rowLabel + " principalReceived", e.getPrincipalReceived(), a.getPrincipalReceived());
+            assertEquals(e.getStatus(), a.getStatus(), rowLabel + " status");
+        }
+        for (BankReceipt e : expected.receipts) {
+            BankReceipt a = bankReceiptMapper.selectById(e.getId());
+            String rowLabel = label + " receipt#" + e.getId();
+            assertAmountEquals(rowLabel + " usedAmount", e.getUsedAmount(), a.getUsedAmount());
+            assertEquals(e.getStatus(), a.getStatus(), rowLabel + " status");
+        }
+    }
+
+    /**
+     * 写入场景中的行并把 id 换成数据库生成的主键；收款单付款时间、租金计划应收日期按列表顺序递增
+     */
+    private void insert(String customerName, AllocationKernelEquivalenceTest.AllocationScenario scenario) {
+        long base = 1700000000000L;
+        for (int i = 0; i < scenario.receipts.size(); i++) {
+            BankReceipt receipt = scenario.receipts.get(i);
+            receipt.setId(null);
+            receipt.setPayerName(customerName);
+            receipt.setPayerAccount("6222000000000000");
+            receipt.setPaymentDatetime(new Date(base + i * 1000L));
+            bankReceiptMapper.insert(receipt);
+        }
+        for (int j = 0; j < scenario.schedules.size(); j++) {
+            RentSchedule schedule = scenario.schedules.get(j);
+            schedule.setId(null);
+            schedule.setLesseeName(customerName);
+            schedule.setDueDate(new Date(base + j * 86400000L));
+            schedule.setTotalDueAmount(schedule.getPrincipalDue().add(schedule.getInterestDue()));
+            rentScheduleMapper.insert(schedule);
+        }
+    }
+
+    /**
+     * 空收款单去掉、空金额按 0 处理；含超出分精度金额的场景无法原样写入数据库，返回 null
+     */
+    private static AllocationKernelEquivalenceTest.AllocationScenario normalize(
+            AllocationKernelEquivalenceTest.AllocationScenario scenario) {
+        AllocationKernelEquivalenceTest.AllocationScenario normalized = new AllocationKernelEquivalenceTest.AllocationScenario();
+        for (BankReceipt receipt : scenario.receipts) {
+            if (receipt == null) {
+                continue;
+            }
+            receipt.setPaymentAmount(cents(receipt.getPaymentAmount()));
+            receipt.setUsedAmount(cents(receipt.getUsedAmount()));
+            if (receipt.getPaymentAmount() == null || receipt.getUsedAmount() == null) {
+                return null;
+            }
+            normalized.receipts.add(receipt);
+        }
+        for (RentSchedule schedule : scenario.schedules) {
+            schedule.setPrincipalDue(cents(schedule.getPrincipalDue()));
+            schedule.setInterestDue(cents(schedule.getInterestDue()));
+            schedule.setPrincipalReceived(cents(schedule.getPrincipalReceived()));
+            schedule.setInterestReceived(cents(schedule.getInterestReceived()));
+            if (schedule.getPrincipalDue() == null || schedule.getInterestDue() == null
+                    || schedule.getPrincipalReceived() == null || schedule.getInterestReceived() == null) {
+                return null;
+            }
+            normalized.schedules.add(schedule);
+        }
+        return normalized;
+    }
+
+    /**
+     * 空值按 0，统一为两位小数；超出分精度时返回 null
+     */
+    private static BigDecimal cents(BigDecimal amount) {
+        if (amount == null) {
+            return new BigDecimal("0.00");
+        }
+        return amount.stripTrailingZeros().scale() > 2 ? null : amount.setScale(2);
+    }
+
+    private static void assertAmountEquals(String label, BigDecimal expected, BigDecimal actual) {
+        assertEquals(0, expected.compareTo(actual), label + " expected " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,142 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.VerificationRun;
+import com.yujian.yupicturebackend.model.enums.VerificationModeEnum;
+import com.yujian.yupicturebackend.model.enums.VerificationRunStatusEnum;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * 校验按应收日期截止日核销：应收日期晚于截止日的租金计划在各条核销路径上都保持原样；
+ * 截止日不同的未完成运行不会被续跑，而是被放弃后新建运行，截止日相同（同一天）时续跑原运行。
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+class VerificationAsOfDateTest {
+
+    private static final int CUSTOMERS = 120;
+    private static final long SEED = 17;
+    private static final long TIMEOUT_SECONDS = 60;
+    private static final Date AS_OF = java.sql.Date.valueOf(VerificationLedgerFixture.BASE_DATE.plusMonths(2));
+
+    @Resource
+    private VerificationService verificationService;
+
+    @Resource
+    private MergeJoinBatchService mergeJoinBatchService;
+    @Resource
+    private VerificationOrchestrator orchestrator;
+    @Resource
+    private VerificationCheckpointService checkpointService;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    private VerificationLedgerFixture ledger;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new VerificationLedgerFixture(jdbcTemplate);
+    }
+
+    @Test
+    void schedulesDueAfterCutoffStayUntouched() throws Exception {
+        List<String> customerNames = ledger.seed(SEED, CUSTOMERS);
+        List<Map<String, Object>> before = ledger.schedules();
+
+        verificationService.processCustomerBatch(CustomerBatch.range(customerNames).withAsOfDate(AS_OF));
+        List<Map<String, Object>> loadAll = ledger.schedules();
+        assertCutoffRespected("load-all", before, loadAll);
+
+        ledger.seed(SEED, CUSTOMERS);
+        mergeJoinBatchService.mergeJoinBatch(CustomerBatch.range(customerNames).withAsOfDate(AS_OF), 7);
+        assertCutoffRespected("merge-join", before, ledger.schedules());
+        assertEquals(loadAll, ledger.schedules(), "merge-join");
+
+        // 经编排器提交：截止日随运行记录下发到每个批次
+        ledger.seed(SEED, CUSTOMERS);
+        VerificationJob job = orchestrator.submit(VerificationModeEnum.FULL, AS_OF);
+        job.getCompletion().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertCutoffRespected("orchestrator", before, ledger.schedules());
+        assertEquals(loadAll, ledger.schedules(), "orchestrator");
+        Map<String, Object> run = jdbcTemplate.queryForMap("SELECT status, as_of_date FROM verification_run WHERE id = ?",
+                job.getJobId());
+        assertEquals(VerificationRunStatusEnum.COMPLETED.getValue(), run.get("status"));
+        assertEquals(AS_OF, run.get("as_of_date"));
+    }
+
+    @Test
+    void resumeRequiresSameCutoff() {
+        ledger.clear();
+        long failed = insertFailedRun(AS_OF);
+
+        // 截止日不同：放弃原运行，新建运行
+        VerificationRun other = checkpointService.startOrResume(VerificationModeEnum.FULL,
+                java.sql.Date.valueOf(LocalDate.of(2025, 4, 1)), Collections.emptyList());
+        assertNotEquals(Long.valueOf(failed), other.getId());
+        assertEquals(VerificationRunStatusEnum.ABANDONED.getValue(), runStatus(failed));
+        checkpointService.fail(other, new IllegalStateException("test"));
+
+        // 不带截止日的核销同样不续跑带截止日的运行
+        long dated = insertFailedRun(AS_OF);
+        VerificationRun unbounded = checkpointService.startOrResume(VerificationModeEnum.FULL, null, Collections.emptyList());
+        assertNotEquals(Long.valueOf(dated), unbounded.getId());
+        assertEquals(VerificationRunStatusEnum.ABANDONED.getValue(), runStatus(dated));
+        checkpointService.fail(unbounded, new IllegalStateException("test"));
+
+        // 截止日为同一天（时间部分不同）时续跑原运行
+        long sameDay = insertFailedRun(AS_OF);
+        VerificationRun resumed = checkpointService.startOrResume(VerificationModeEnum.FULL,
+                new Date(AS_OF.getTime() + TimeUnit.HOURS.toMillis(15)), Collections.emptyList());
+        assertEquals(Long.valueOf(sameDay), resumed.getId());
+        assertEquals(VerificationRunStatusEnum.RUNNING.getValue(), runStatus(sameDay));
+        assertEquals(1, resumed.getResumeCount().intValue());
+        checkpointService.fail(resumed, new IllegalStateException("test"));
+    }
+
+    /**
+     * 应收日期晚于截止日的计划与核销前完全相同，不晚于截止日的计划至少有一期被核销
+     */
+    private static void assertCutoffRespected(String label, List<Map<String, Object>> before, List<Map<String, Object>> after) {
+        assertEquals(before.size(), after.size(), label);
+        List<Object> changedIds = new ArrayList<>();
+        for (int i = 0; i < before.size(); i++) {
+            Map<String, Object> original = before.get(i);
+            Map<String, Object> current = after.get(i);
+            if (((Date) original.get("due_date")).after(AS_OF)) {
+                assertEquals(original, current, label + " 截止日之后的计划被改动");
+            } else if (!original.equals(current)) {
+                changedIds.add(original.get("id"));
+            }
+        }
+        assertFalse(changedIds.isEmpty(), label + " 截止日之前的计划没有被核销");
+    }
+
+    private long insertFailedRun(Date asOfDate) {
+        Timestamp start = new Timestamp(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+        jdbcTemplate.update("INSERT INTO verification_run (mode, status, resume_count, as_of_date, start_time, end_time)"
+                        + " VALUES (?, ?, 0, ?, ?, ?)", VerificationModeEnum.FULL.getValue(),
+                VerificationRunStatusEnum.FAILED.getValue(), asOfDate, start, start);
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM verification_run", Long.class);
+    }
+
+    private String runStatus(long runId) {
+        return jdbcTemplate.queryForObject("SELECT status FROM verification_run WHERE id = ?", String.class, runId);
+    }
+}
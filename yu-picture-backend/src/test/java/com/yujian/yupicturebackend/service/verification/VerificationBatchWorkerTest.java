@@ -0,0 +1,157 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import com.yujian.yupicturebackend.domain.VerificationBatch;
+import com.yujian.yupicturebackend.model.dto.verification.VerificationBatchMessage;
+import com.yujian.yupicturebackend.model.dto.verification.VerificationBatchReply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 校验分布式核销工作节点的消息处理：处理失败的批次逐级转入重试队列，次数耗尽后转入停放队列；
+ * 重复投递的已完成批次不再回写，按检查点上的结果回复；转投与回复都得到 Broker 确认后才确认原消息。
+ */
+class VerificationBatchWorkerTest {
+
+    private static final String BATCH_QUEUE = "verification.batch.test";
+    private static final String REPLY_QUEUE = "amq.gen-reply";
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final MergeJoinBatchService mergeJoinBatchService = mock(MergeJoinBatchService.class);
+    private final VerificationCheckpointService checkpointService = mock(VerificationCheckpointService.class);
+    private final CustomerStripeLocks stripeLocks = new CustomerStripeLocks(null, mock(DirtyCustomerTracker.class),
+            VerificationMetrics.NOOP, "local", "test", 16, 30, 50);
+    private final VerificationBatchWorker worker = new VerificationBatchWorker(mock(ConnectionFactory.class),
+            mergeJoinBatchService, checkpointService, stripeLocks, VerificationMetrics.NOOP, BATCH_QUEUE, 1, 1,
+            MAX_ATTEMPTS, new long[]{5, 30});
+    private final Channel channel = mock(Channel.class);
+
+    /**
+     * 信道上发布的消息：目标队列与消息体，按发布顺序记录
+     */
+    private final List<String> publishedQueues = new ArrayList<>();
+    private final List<byte[]> publishedBodies = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        doAnswer(invocation -> {
+            publishedQueues.add(invocation.getArgument(1));
+            publishedBodies.add(invocation.getArgument(3));
+            return null;
+        }).when(channel).basicPublish(eq(""), anyString(), any(AMQP.BasicProperties.class), any(byte[].class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        stripeLocks.destroy();
+    }
+
+    @Test
+    void failedBatchMovesThroughRetryTiersThenParks() throws Exception {
+        when(mergeJoinBatchService.processPendingBatch(any(), anyInt())).thenThrow(new IllegalStateException("Deadlock found"));
+
+        VerificationBatchMessage message = message(1);
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            publishedQueues.clear();
+            publishedBodies.clear();
+            worker.handle(channel, delivery(attempt, message));
+
+            VerificationBatchReply reply = VerificationQueues.decodeReply(publishedBodies.get(1));
+            assertEquals(REPLY_QUEUE, publishedQueues.get(1));
+            assertEquals(attempt, reply.getAttempt().intValue());
+            assertEquals("Deadlock found", reply.getErrorMessage());
+            message = VerificationQueues.decodeMessage(publishedBodies.get(0));
+            if (attempt < MAX_ATTEMPTS) {
+                // 第 n 次失败转入第 n 级重试队列，处理次数加 1
+                assertEquals(VerificationQueues.retryQueue(BATCH_QUEUE, attempt - 1), publishedQueues.get(0));
+                assertEquals(attempt + 1, message.getAttempt().intValue());
+                assertTrue(reply.getRetrying());
+                assertNull(reply.getParked());
+            } else {
+                assertEquals(VerificationQueues.parkingQueue(BATCH_QUEUE), publishedQueues.get(0));
+                assertEquals(MAX_ATTEMPTS, message.getAttempt().intValue());
+                assertTrue(reply.getParked());
+                assertNull(reply.getRetrying());
+            }
+            assertEquals("Deadlock found", message.getLastError());
+        }
+
+        // 每次都是转投与回复各自得到确认之后才确认原消息
+        InOrder order = inOrder(channel);
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            order.verify(channel).basicPublish(eq(""), anyString(), any(AMQP.BasicProperties.class), any(byte[].class));
+            order.verify(channel).waitForConfirmsOrDie(anyLong());
+            order.verify(channel).basicPublish(eq(""), eq(REPLY_QUEUE), any(AMQP.BasicProperties.class), any(byte[].class));
+            order.verify(channel).waitForConfirmsOrDie(anyLong());
+            order.verify(channel).basicAck(attempt, false);
+        }
+        verify(mergeJoinBatchService, times(MAX_ATTEMPTS)).processPendingBatch(any(), anyInt());
+    }
+
+    @Test
+    void redeliveredCompletedBatchRepliesFromCheckpoint() throws Exception {
+        // 检查点已完成，processPendingBatch 判重后返回 null
+        when(mergeJoinBatchService.processPendingBatch(any(), anyInt())).thenReturn(null);
+        VerificationBatch record = new VerificationBatch();
+        record.setId(42L);
+        record.setStatus(VerificationCheckpointService.BATCH_DONE);
+        record.setVerifiedCount(5);
+        record.setTotalPrincipal(new BigDecimal("300.00"));
+        record.setTotalInterest(new BigDecimal("12.50"));
+        when(checkpointService.getBatch(42L)).thenReturn(record);
+
+        worker.handle(channel, delivery(7, message(1)));
+
+        assertEquals(Collections.singletonList(REPLY_QUEUE), publishedQueues);
+        VerificationBatchReply reply = VerificationQueues.decodeReply(publishedBodies.get(0));
+        assertFalse(reply.getProcessed());
+        assertNull(reply.getErrorMessage());
+        assertEquals(5, reply.getVerifiedCount().intValue());
+        assertEquals(0, new BigDecimal("300.00").compareTo(reply.getTotalPrincipal()));
+        assertEquals(0, new BigDecimal("12.50").compareTo(reply.getTotalInterest()));
+        InOrder order = inOrder(channel);
+        order.verify(channel).waitForConfirmsOrDie(anyLong());
+        order.verify(channel).basicAck(7, false);
+    }
+
+    private static VerificationBatchMessage message(int attempt) {
+        VerificationBatchMessage message = VerificationQueues.toMessage(9L, CustomerStripeLocks.runToken(9L, "owner"),
+                CustomerBatch.range(Arrays.asList("Customer_A", "Customer_B")).withCheckpointId(42L), 500);
+        message.setAttempt(attempt);
+        return message;
+    }
+
+    private static Delivery delivery(long deliveryTag, VerificationBatchMessage message) {
+        CustomerBatch batch = VerificationQueues.toBatch(message);
+        return new Delivery(new Envelope(deliveryTag, true, "", BATCH_QUEUE),
+                VerificationQueues.batchProperties(batch, REPLY_QUEUE), VerificationQueues.encode(message));
+    }
+}
@@ -0,0 +1,212 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.mapper.BankReceiptMapper;
+import com.yujian.yupicturebackend.mapper.RentScheduleMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 校验核销结果的批量回写：只写有变更的行并按主键升序分块；先锁租金计划再锁收款单；
+ * 锁定后版本号不一致或行已不存在的客户整体不写入并返回给调用方；写入行数与分块行数不一致时抛出异常。
+ */
+class VerificationBulkWriterTest {
+
+    private final RentScheduleMapper rentScheduleMapper = mock(RentScheduleMapper.class);
+    private final BankReceiptMapper bankReceiptMapper = mock(BankReceiptMapper.class);
+    private final VerificationBulkWriter writer = new VerificationBulkWriter(rentScheduleMapper, bankReceiptMapper,
+            VerificationMetrics.NOOP);
+
+    /**
+     * 数据库中各行当前的版本号，不在其中的行视为已不存在
+     */
+    private final Map<Long, Integer> scheduleVersions = new HashMap<>();
+    private final Map<Long, Integer> receiptVersions = new HashMap<>();
+    /**
+     * 每次多行 UPDATE 写入的主键，按调用顺序记录
+     */
+    private final List<List<Long>> scheduleWrites = new ArrayList<>();
+    private final List<List<Long>> receiptWrites = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        when(rentScheduleMapper.selectVersionsForUpdate(anyList())).thenAnswer(invocation -> {
+            List<RentSchedule> locked = new ArrayList<>();
+            for (Long id : invocation.<List<Long>>getArgument(0)) {
+                if (scheduleVersions.containsKey(id)) {
+                    RentSchedule row = new RentSchedule();
+                    row.setId(id);
+                    row.setVersion(scheduleVersions.get(id));
+                    locked.add(row);
+                }
+            }
+            return locked;
+        });
+        when(bankReceiptMapper.selectVersionsForUpdate(anyList())).thenAnswer(invocation -> {
+            List<BankReceipt> locked = new ArrayList<>();
+            for (Long id : invocation.<List<Long>>getArgument(0)) {
+                if (receiptVersions.containsKey(id)) {
+                    BankReceipt row = new BankReceipt();
+                    row.setId(id);
+                    row.setVersion(receiptVersions.get(id));
+                    locked.add(row);
+                }
+            }
+            return locked;
+        });
+        when(rentScheduleMapper.updateVerifiedColumns(anyList(), anyList(), anyList(), anyList())).thenAnswer(invocation -> {
+            List<RentSchedule> rows = invocation.getArgument(0);
+            List<Long> ids = new ArrayList<>();
+            for (RentSchedule row : rows) {
+                ids.add(row.getId());
+            }
+            scheduleWrites.add(ids);
+            return rows.size();
+        });
+        when(bankReceiptMapper.updateVerifiedColumns(anyList(), anyList(), anyList())).thenAnswer(invocation -> {
+            List<BankReceipt> rows = invocation.getArgument(0);
+            List<Long> ids = new ArrayList<>();
+            for (BankReceipt row : rows) {
+                ids.add(row.getId());
+            }
+            receiptWrites.add(ids);
+            return rows.size();
+        });
+    }
+
+    @Test
+    void writesOnlyChangedRowsInIdOrder() {
+        List<RentSchedule> schedules = Arrays.asList(
+                schedule(5L, "Customer_A", ChangedColumns.STATUS),
+                schedule(1L, "Customer_A", ChangedColumns.PRINCIPAL_RECEIVED | ChangedColumns.STATUS),
+                schedule(2L, "Customer_A", 0),
+                schedule(3L, "Customer_B", ChangedColumns.INTEREST_RECEIVED));
+        List<BankReceipt> receipts = Arrays.asList(
+                receipt(20L, "Customer_B", ChangedColumns.USED_AMOUNT),
+                receipt(10L, "Customer_A", ChangedColumns.USED_AMOUNT | ChangedColumns.STATUS),
+                receipt(30L, "Customer_A", 0));
+
+        Set<String> conflicted = writer.write(schedules, receipts, 2);
+
+        assertTrue(conflicted.isEmpty());
+        // 未变更的行既不加锁也不写入，其余行按主键升序分块
+        verify(rentScheduleMapper).selectVersionsForUpdate(Arrays.asList(1L, 3L));
+        verify(rentScheduleMapper).selectVersionsForUpdate(Collections.singletonList(5L));
+        verify(bankReceiptMapper).selectVersionsForUpdate(Arrays.asList(10L, 20L));
+        assertEquals(Arrays.asList(Arrays.asList(1L, 3L), Collections.singletonList(5L)), scheduleWrites);
+        assertEquals(Collections.singletonList(Arrays.asList(10L, 20L)), receiptWrites);
+    }
+
+    @Test
+    void versionMismatchExcludesWholeCustomer() {
+        // Customer_B 的收款单在读取后被改动，它的租金计划即便版本号一致也不写入
+        receiptVersions.put(21L, 1);
+        List<RentSchedule> schedules = Arrays.asList(
+                schedule(1L, "Customer_A", ChangedColumns.STATUS),
+                schedule(2L, "Customer_B", ChangedColumns.STATUS));
+        List<BankReceipt> receipts = Arrays.asList(
+                receipt(11L, "Customer_A", ChangedColumns.USED_AMOUNT),
+                receipt(21L, "Customer_B", ChangedColumns.USED_AMOUNT));
+
+        Set<String> conflicted = writer.write(schedules, receipts, 500);
+
+        assertEquals(Collections.singleton("Customer_B"), conflicted);
+        assertEquals(Collections.singletonList(Collections.singletonList(1L)), scheduleWrites);
+        assertEquals(Collections.singletonList(Collections.singletonList(11L)), receiptWrites);
+    }
+
+    @Test
+    void missingLockedRowCountsAsConflict() {
+        List<RentSchedule> schedules = Arrays.asList(
+                schedule(1L, "Customer_A", ChangedColumns.STATUS),
+                schedule(2L, "Customer_B", ChangedColumns.STATUS));
+        List<BankReceipt> receipts = Collections.singletonList(receipt(21L, "Customer_B", ChangedColumns.USED_AMOUNT));
+        // 租金计划 2 在读取后被删除，锁定时读不到
+        scheduleVersions.remove(2L);
+
+        Set<String> conflicted = writer.write(schedules, receipts, 500);
+
+        assertEquals(Collections.singleton("Customer_B"), conflicted);
+        assertEquals(Collections.singletonList(Collections.singletonList(1L)), scheduleWrites);
+        // Customer_B 没有可写的行，收款单不发出空的 UPDATE
+        verify(bankReceiptMapper, never()).updateVerifiedColumns(anyList(), anyList(), anyList());
+    }
+
+    @Test
+    void updatedCountMismatchThrows() {
+        List<RentSchedule> schedules = Arrays.asList(
+                schedule(1L, "Customer_A", ChangedColumns.STATUS),
+                schedule(2L, "Customer_A", ChangedColumns.STATUS));
+        when(rentScheduleMapper.updateVerifiedColumns(anyList(), anyList(), anyList(), anyList())).thenReturn(1);
+
+        assertThrows(BusinessException.class, () -> writer.write(schedules, Collections.emptyList(), 500));
+
+        List<BankReceipt> receipts = Collections.singletonList(receipt(11L, "Customer_A", ChangedColumns.USED_AMOUNT));
+        when(bankReceiptMapper.updateVerifiedColumns(anyList(), anyList(), anyList())).thenReturn(0);
+        assertThrows(BusinessException.class, () -> writer.write(Collections.emptyList(), receipts, 500));
+    }
+
+    @Test
+    void locksSchedulesBeforeReceipts() {
+        List<RentSchedule> schedules = Arrays.asList(
+                schedule(1L, "Customer_A", ChangedColumns.STATUS),
+                schedule(2L, "Customer_B", ChangedColumns.STATUS));
+        List<BankReceipt> receipts = Arrays.asList(
+                receipt(11L, "Customer_A", ChangedColumns.USED_AMOUNT),
+                receipt(21L, "Customer_B", ChangedColumns.USED_AMOUNT));
+
+        writer.write(schedules, receipts, 1);
+
+        // 全部行先按租金计划、收款单的顺序锁定，之后才开始写入
+        InOrder order = inOrder(rentScheduleMapper, bankReceiptMapper);
+        order.verify(rentScheduleMapper).selectVersionsForUpdate(Collections.singletonList(1L));
+        order.verify(rentScheduleMapper).selectVersionsForUpdate(Collections.singletonList(2L));
+        order.verify(bankReceiptMapper).selectVersionsForUpdate(Collections.singletonList(11L));
+        order.verify(bankReceiptMapper).selectVersionsForUpdate(Collections.singletonList(21L));
+        order.verify(rentScheduleMapper, times(2)).updateVerifiedColumns(any(), any(), any(), any());
+        order.verify(bankReceiptMapper, times(2)).updateVerifiedColumns(any(), any(), any());
+    }
+
+    private RentSchedule schedule(long id, String lesseeName, int changedColumns) {
+        RentSchedule schedule = new RentSchedule();
+        schedule.setId(id);
+        schedule.setLesseeName(lesseeName);
+        schedule.setVersion(0);
+        schedule.setChangedColumns(changedColumns);
+        scheduleVersions.put(id, 0);
+        return schedule;
+    }
+
+    private BankReceipt receipt(long id, String payerName, int changedColumns) {
+        BankReceipt receipt = new BankReceipt();
+        receipt.setId(id);
+        receipt.setPayerName(payerName);
+        receipt.setVersion(0);
+        receipt.setChangedColumns(changedColumns);
+        receiptVersions.putIfAbsent(id, 0);
+        return receipt;
+    }
+}
@@ -0,0 +1,124 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.VerificationRun;
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.model.enums.VerificationModeEnum;
+import com.yujian.yupicturebackend.model.enums.VerificationRunStatusEnum;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 校验批次检查点的续跑与运行令牌隔离：中断的全量核销从未完成批次中最小的起始客户继续，已完成批次的客户不再核销；
+ * 运行被其他节点接管后，原令牌登记的批次不能再标记完成，其回写随事务回滚。
+ * 优先通道会在区间发现之前单独调度客户，与续跑起点无关，这里关闭以便只观察区间续跑。
+ */
+@SpringBootTest(properties = "verification.priority.enabled=false")
+@ActiveProfiles("h2")
+class VerificationCheckpointTest {
+
+    private static final int CUSTOMERS = 60;
+    private static final long SEED = 23;
+    private static final long TIMEOUT_SECONDS = 60;
+
+    @Resource
+    private VerificationService verificationService;
+    @Resource
+    private VerificationOrchestrator orchestrator;
+    @Resource
+    private VerificationCheckpointService checkpointService;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    private VerificationLedgerFixture ledger;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new VerificationLedgerFixture(jdbcTemplate);
+    }
+
+    @Test
+    void interruptedRunResumesFromFirstPendingBatch() throws Exception {
+        List<String> customerNames = ledger.seed(SEED, CUSTOMERS);
+        List<Map<String, Object>> before = ledger.schedules();
+
+        // 中断前：前 20 个客户的批次已完成（这里不实际核销，续跑若重新处理它们就会改动台账），
+        // 其后两个批次未完成，中间还有一个未完成的大客户专属批次
+        VerificationRun interrupted = checkpointService.startOrResume(VerificationModeEnum.FULL, null, Collections.emptyList());
+        CustomerBatch done = checkpointService.register(interrupted, CustomerBatch.range(customerNames.subList(0, 20)));
+        checkpointService.markDone(done, new VerificationService.VerificationResult());
+        checkpointService.register(interrupted, CustomerBatch.range(customerNames.subList(30, 40)));
+        checkpointService.register(interrupted, CustomerBatch.range(customerNames.subList(20, 30)));
+        checkpointService.register(interrupted, CustomerBatch.dedicated(customerNames.get(25)));
+        checkpointService.fail(interrupted, new IllegalStateException("进程退出"));
+
+        VerificationJob job = orchestrator.submit(VerificationModeEnum.FULL);
+        job.getCompletion().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertEquals(interrupted.getId(), job.getJobId());
+        Map<String, Object> run = jdbcTemplate.queryForMap("SELECT status, resume_count FROM verification_run WHERE id = ?",
+                interrupted.getId());
+        assertEquals(VerificationRunStatusEnum.COMPLETED.getValue(), run.get("status"));
+        assertEquals(1, ((Number) run.get("resume_count")).intValue());
+        // 续跑丢弃了原来的未完成批次，从 Customer_0020 起重新登记，之前已完成的批次保留
+        assertEquals(0, count("SELECT COUNT(*) FROM verification_batch WHERE run_id = ? AND status = 0", interrupted.getId()));
+        assertEquals(customerNames.get(20), jdbcTemplate.queryForObject(
+                "SELECT MIN(first_customer) FROM verification_batch WHERE run_id = ? AND id <> ?", String.class,
+                interrupted.getId(), done.getCheckpointId()));
+
+        List<Map<String, Object>> after = ledger.schedules();
+        int changedAfterStart = 0;
+        for (int i = 0; i < before.size(); i++) {
+            String lesseeName = (String) before.get(i).get("lessee_name");
+            if (lesseeName.compareTo(customerNames.get(20)) < 0) {
+                assertEquals(before.get(i), after.get(i), lesseeName + " 属于已完成的批次，不应再被核销");
+            } else if (!before.get(i).equals(after.get(i))) {
+                changedAfterStart++;
+            }
+        }
+        assertNotEquals(0, changedAfterStart);
+    }
+
+    @Test
+    void staleOwnerCannotCompleteBatchAfterTakeover() {
+        List<String> customerNames = ledger.seed(SEED, CUSTOMERS);
+        List<Map<String, Object>> before = ledger.schedules();
+
+        VerificationRun original = checkpointService.startOrResume(VerificationModeEnum.FULL, null, Collections.emptyList());
+        CustomerBatch staleBatch = checkpointService.register(original, CustomerBatch.range(customerNames.subList(0, 10)));
+        // 原持有节点被判定失效，其他节点以新令牌接管同一条运行记录
+        checkpointService.fail(original, new IllegalStateException("心跳超时"));
+        VerificationRun takenOver = checkpointService.startOrResume(VerificationModeEnum.FULL, null, Collections.emptyList());
+        assertEquals(original.getId(), takenOver.getId());
+        assertNotEquals(original.getOwnerToken(), takenOver.getOwnerToken());
+
+        // 原节点仍在处理接管前领到的批次：完成标记被拒绝，台账回写随事务回滚
+        assertThrows(BusinessException.class, () -> verificationService.processCustomerBatch(staleBatch));
+        assertEquals(0, count("SELECT COUNT(*) FROM verification_batch WHERE id = ? AND status = 1", staleBatch.getCheckpointId()));
+        assertEquals(before, ledger.schedules());
+
+        // 接管后续跑的起点是被拒绝的批次，接管节点以新令牌登记的批次可以正常提交
+        assertEquals(customerNames.get(0), checkpointService.prepareResume(takenOver));
+        CustomerBatch current = checkpointService.register(takenOver, CustomerBatch.range(customerNames.subList(0, 10)));
+        verificationService.processCustomerBatch(current);
+        assertEquals(1, count("SELECT COUNT(*) FROM verification_batch WHERE id = ? AND status = 1", current.getCheckpointId()));
+        assertNotEquals(before, ledger.schedules());
+        checkpointService.complete(takenOver, VerificationRunStatusEnum.COMPLETED);
+    }
+
+    private int count(String sql, Object... args) {
+        return jdbcTemplate.queryForObject(sql, Integer.class, args);
+    }
+}
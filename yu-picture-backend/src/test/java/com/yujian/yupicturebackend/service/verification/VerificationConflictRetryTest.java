@@ -0,0 +1,228 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.mapper.BankReceiptMapper;
+import com.yujian.yupicturebackend.mapper.RentScheduleMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 校验回写时的版本冲突处理：冲突客户按主键加锁重新读取、重新分摊并回写，新结果替换其所在批次中的旧结果；
+ * 其他客户只写入一次；重新核销先锁租金计划再锁收款单；重新核销后仍冲突时抛出异常。
+ */
+class VerificationConflictRetryTest {
+
+    private static final Date DUE_DATE = new Date(1_735_660_800_000L);
+
+    private final BankReceiptMapper bankReceiptMapper = mock(BankReceiptMapper.class);
+    private final RentScheduleMapper rentScheduleMapper = mock(RentScheduleMapper.class);
+    private final VerificationCheckpointService checkpointService = mock(VerificationCheckpointService.class);
+    private final VerificationService verificationService = new VerificationService(bankReceiptMapper, rentScheduleMapper,
+            new VerificationBulkWriter(rentScheduleMapper, bankReceiptMapper, VerificationMetrics.NOOP),
+            mock(DirtyCustomerTracker.class), checkpointService, VerificationMetrics.NOOP, null, false, false, 500, 1.0);
+
+    private final Map<Long, Integer> scheduleVersions = new HashMap<>();
+    private final Map<Long, Integer> receiptVersions = new HashMap<>();
+    private final List<List<Long>> scheduleWrites = new ArrayList<>();
+    private final List<List<Long>> receiptWrites = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        when(rentScheduleMapper.selectVersionsForUpdate(anyList())).thenAnswer(invocation -> {
+            List<RentSchedule> locked = new ArrayList<>();
+            for (Long id : invocation.<List<Long>>getArgument(0)) {
+                RentSchedule row = new RentSchedule();
+                row.setId(id);
+                row.setVersion(scheduleVersions.get(id));
+                locked.add(row);
+            }
+            return locked;
+        });
+        when(bankReceiptMapper.selectVersionsForUpdate(anyList())).thenAnswer(invocation -> {
+            List<BankReceipt> locked = new ArrayList<>();
+            for (Long id : invocation.<List<Long>>getArgument(0)) {
+                BankReceipt row = new BankReceipt();
+                row.setId(id);
+                row.setVersion(receiptVersions.get(id));
+                locked.add(row);
+            }
+            return locked;
+        });
+        when(rentScheduleMapper.updateVerifiedColumns(anyList(), anyList(), anyList(), anyList())).thenAnswer(invocation -> {
+            List<RentSchedule> rows = invocation.getArgument(0);
+            List<Long> ids = new ArrayList<>();
+            for (RentSchedule row : rows) {
+                ids.add(row.getId());
+            }
+            scheduleWrites.add(ids);
+            return rows.size();
+        });
+        when(bankReceiptMapper.updateVerifiedColumns(anyList(), anyList(), anyList())).thenAnswer(invocation -> {
+            List<BankReceipt> rows = invocation.getArgument(0);
+            List<Long> ids = new ArrayList<>();
+            for (BankReceipt row : rows) {
+                ids.add(row.getId());
+            }
+            receiptWrites.add(ids);
+            return rows.size();
+        });
+
+        // 重新核销时按名称取到的主键与按主键加锁读到的最新行：Customer_B 的收款单已被他人用掉 50.00，版本号变为 1
+        doReturn(Collections.singletonList(2L)).when(rentScheduleMapper).selectObjs(any());
+        doReturn(Collections.singletonList(20L)).when(bankReceiptMapper).selectObjs(any());
+        when(rentScheduleMapper.selectList(any())).thenAnswer(invocation ->
+                new ArrayList<>(Collections.singletonList(schedule(2L, "Customer_B", 0))));
+        when(bankReceiptMapper.selectList(any())).thenAnswer(invocation ->
+                new ArrayList<>(Collections.singletonList(receipt(20L, "Customer_B", "50.00", 1))));
+    }
+
+    @Test
+    void conflictedCustomerIsRetriedAndReplaced() {
+        scheduleVersions.put(1L, 0);
+        scheduleVersions.put(2L, 0);
+        receiptVersions.put(10L, 0);
+        receiptVersions.put(20L, 1);
+        CustomerBatch batchA = CustomerBatch.range(Collections.singletonList("Customer_A"));
+        CustomerBatch batchB = CustomerBatch.range(Collections.singletonList("Customer_B"));
+        VerificationService.ProcessingOutcome outcomeA = allocate("Customer_A", schedule(1L, "Customer_A", 0),
+                receipt(10L, "Customer_A", "0.00", 0));
+        VerificationService.ProcessingOutcome outcomeB = allocate("Customer_B", schedule(2L, "Customer_B", 0),
+                receipt(20L, "Customer_B", "0.00", 0));
+        VerificationService.VerificationResult staleA = copy(outcomeA.getResult());
+        VerificationService.VerificationResult staleB = copy(outcomeB.getResult());
+        VerificationService.VerificationResult fresh = verificationService.allocateCustomer("Customer_B",
+                Collections.singletonList(receipt(20L, "Customer_B", "50.00", 1)),
+                Collections.singletonList(schedule(2L, "Customer_B", 0))).getResult();
+
+        verificationService.flushBatches(Arrays.asList(batchA, batchB), Arrays.asList(outcomeA, outcomeB), 500);
+
+        // Customer_A 只写入一次，Customer_B 只写入重新核销的结果
+        assertEquals(Arrays.asList(Collections.singletonList(1L), Collections.singletonList(2L)), scheduleWrites);
+        assertEquals(Arrays.asList(Collections.singletonList(10L), Collections.singletonList(20L)), receiptWrites);
+        assertResultEquals(staleA, outcomeA.getResult());
+        assertResultEquals(fresh, outcomeB.getResult());
+        assertEquals(0, new BigDecimal("50.00").compareTo(fresh.getTotalPrincipal().add(fresh.getTotalInterest())));
+        assertFalse(sameResult(staleB, fresh), "重新核销的结果应与旧结果不同");
+        verify(checkpointService).markDone(batchA, outcomeA.getResult());
+        verify(checkpointService).markDone(batchB, outcomeB.getResult());
+
+        // 重新核销：先按名称取主键，再按主键加锁读取整行，租金计划先于收款单
+        InOrder order = inOrder(rentScheduleMapper, bankReceiptMapper);
+        order.verify(rentScheduleMapper).selectVersionsForUpdate(Arrays.asList(1L, 2L));
+        order.verify(bankReceiptMapper).selectVersionsForUpdate(Arrays.asList(10L, 20L));
+        order.verify(rentScheduleMapper).selectList(any());
+        order.verify(bankReceiptMapper).selectList(any());
+        order.verify(rentScheduleMapper).selectVersionsForUpdate(Collections.singletonList(2L));
+        order.verify(bankReceiptMapper).selectVersionsForUpdate(Collections.singletonList(20L));
+
+        assertLockedByPrimaryKey();
+    }
+
+    @Test
+    void persistentConflictThrows() {
+        scheduleVersions.put(2L, 0);
+        // 加锁读取之后版本号仍与回写时锁定的不一致
+        receiptVersions.put(20L, 2);
+        CustomerBatch batchB = CustomerBatch.range(Collections.singletonList("Customer_B"));
+        VerificationService.ProcessingOutcome outcomeB = allocate("Customer_B", schedule(2L, "Customer_B", 0),
+                receipt(20L, "Customer_B", "0.00", 0));
+
+        assertThrows(BusinessException.class, () -> verificationService.flushBatches(
+                Collections.singletonList(batchB), Collections.singletonList(outcomeB), 500));
+        assertTrue(scheduleWrites.isEmpty());
+        assertTrue(receiptWrites.isEmpty());
+        verify(checkpointService, never()).markDone(any(), any());
+    }
+
+    private VerificationService.ProcessingOutcome allocate(String customerName, RentSchedule schedule, BankReceipt receipt) {
+        return verificationService.allocateLoadedCustomers(Collections.singletonList(customerName), null,
+                Collections.singletonList(receipt), Collections.singletonList(schedule));
+    }
+
+    /**
+     * 重新核销的加锁读取只按主键过滤，不按名称加锁
+     */
+    @SuppressWarnings("unchecked")
+    private void assertLockedByPrimaryKey() {
+        ArgumentCaptor<Wrapper<RentSchedule>> scheduleWrapper = ArgumentCaptor.forClass(Wrapper.class);
+        verify(rentScheduleMapper).selectList(scheduleWrapper.capture());
+        ArgumentCaptor<Wrapper<BankReceipt>> receiptWrapper = ArgumentCaptor.forClass(Wrapper.class);
+        verify(bankReceiptMapper).selectList(receiptWrapper.capture());
+        for (String sql : Arrays.asList(scheduleWrapper.getValue().getSqlSegment(), receiptWrapper.getValue().getSqlSegment())) {
+            assertTrue(sql.contains("id IN") && sql.endsWith("FOR UPDATE"), sql);
+            assertFalse(sql.contains("_name"), sql);
+        }
+    }
+
+    private static RentSchedule schedule(long id, String lesseeName, int version) {
+        RentSchedule schedule = new RentSchedule();
+        schedule.setId(id);
+        schedule.setLesseeName(lesseeName);
+        schedule.setDueDate(DUE_DATE);
+        schedule.setTotalDueAmount(new BigDecimal("90.00"));
+        schedule.setPrincipalDue(new BigDecimal("80.00"));
+        schedule.setInterestDue(new BigDecimal("10.00"));
+        schedule.setPrincipalReceived(BigDecimal.ZERO);
+        schedule.setInterestReceived(BigDecimal.ZERO);
+        schedule.setStatus(VerificationService.STATUS_UNUSED);
+        schedule.setVersion(version);
+        return schedule;
+    }
+
+    private static BankReceipt receipt(long id, String payerName, String usedAmount, int version) {
+        BankReceipt receipt = new BankReceipt();
+        receipt.setId(id);
+        receipt.setPayerName(payerName);
+        receipt.setPaymentAmount(new BigDecimal("100.00"));
+        receipt.setPaymentDatetime(DUE_DATE);
+        receipt.setUsedAmount(new BigDecimal(usedAmount));
+        receipt.setStatus(new BigDecimal(usedAmount).signum() == 0 ? VerificationService.STATUS_UNUSED
+                : VerificationService.STATUS_PARTIALLY_USED);
+        receipt.setVersion(version);
+        return receipt;
+    }
+
+    private static VerificationService.VerificationResult copy(VerificationService.VerificationResult result) {
+        VerificationService.VerificationResult copy = new VerificationService.VerificationResult();
+        copy.merge(result);
+        return copy;
+    }
+
+    private static boolean sameResult(VerificationService.VerificationResult a, VerificationService.VerificationResult b) {
+        return a.getVerifiedCount() == b.getVerifiedCount()
+                && a.getTotalPrincipal().compareTo(b.getTotalPrincipal()) == 0
+                && a.getTotalInterest().compareTo(b.getTotalInterest()) == 0;
+    }
+
+    private static void assertResultEquals(VerificationService.VerificationResult expected,
+                                           VerificationService.VerificationResult actual) {
+        assertTrue(sameResult(expected, actual), "expected " + expected + " but was " + actual);
+    }
+}
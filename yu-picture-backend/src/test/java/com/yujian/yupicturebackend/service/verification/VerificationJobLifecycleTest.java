@@ -0,0 +1,124 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.model.enums.VerificationModeEnum;
+import com.yujian.yupicturebackend.model.enums.VerificationRunStatusEnum;
+import com.yujian.yupicturebackend.model.vo.VerificationJobVO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.sql.Timestamp;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * 校验核销任务的生命周期：运行中的任务进度为运行中，同一模式的第二次触发被拒绝；
+ * 取消后不再调度新批次，已进入流水线的批次照常提交，任务以已取消结束，下一次同模式的核销续跑该运行；
+ * 不在内存中的历史任务从运行记录读取进度。
+ */
+@SpringBootTest(properties = {
+        "verification.customer-batch-size=10",
+        "verification.pipeline.reader-threads=1",
+        "verification.pipeline.queue-capacity=1",
+        "verification.adaptive.enabled=false"
+})
+@ActiveProfiles("h2")
+class VerificationJobLifecycleTest {
+
+    private static final int CUSTOMERS = 200;
+    private static final long TIMEOUT_SECONDS = 60;
+
+    @SpyBean
+    private VerificationService verificationService;
+    @Resource
+    private VerificationOrchestrator orchestrator;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    private VerificationLedgerFixture ledger;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new VerificationLedgerFixture(jdbcTemplate);
+    }
+
+    @Test
+    void cancelRunningJobAndRejectSecondRunOfSameMode() throws Exception {
+        ledger.seed(31, CUSTOMERS);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            loading.countDown();
+            released.await();
+            return invocation.callRealMethod();
+        }).when(verificationService).loadCustomerBatch(any());
+
+        VerificationJob job = orchestrator.submit(VerificationModeEnum.FULL);
+        assertTrue(loading.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        VerificationJobVO running = orchestrator.getJobProgress(job.getJobId());
+        assertEquals(VerificationRunStatusEnum.RUNNING.getValue(), running.getStatus());
+        assertFalse(running.getCancelRequested());
+
+        // 同一模式的任务未结束前不能再次触发
+        assertThrows(BusinessException.class, () -> orchestrator.submit(VerificationModeEnum.FULL));
+
+        assertTrue(orchestrator.cancel(job.getJobId()));
+        // 重复取消不再发起
+        assertFalse(orchestrator.cancel(job.getJobId()));
+        assertTrue(orchestrator.getJobProgress(job.getJobId()).getCancelRequested());
+
+        released.countDown();
+        job.getCompletion().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        VerificationJobVO cancelled = orchestrator.getJobProgress(job.getJobId());
+        assertEquals(VerificationRunStatusEnum.CANCELLED.getValue(), cancelled.getStatus());
+        // 取消前已进入流水线的批次全部提交，之后没有再调度新批次
+        assertEquals(cancelled.getDiscoveredBatches(), cancelled.getCompletedBatches());
+        assertTrue(cancelled.getDiscoveredCustomers() < CUSTOMERS, "取消后仍在调度新批次");
+        assertEquals(VerificationRunStatusEnum.CANCELLED.getValue(), runStatus(job.getJobId()));
+        // 已结束的任务不能再取消
+        assertFalse(orchestrator.cancel(job.getJobId()));
+
+        // 任务结束后可以再次触发，被取消的运行由新任务续跑
+        VerificationJob resumed = orchestrator.submit(VerificationModeEnum.FULL);
+        assertEquals(job.getJobId(), resumed.getJobId());
+        resumed.getCompletion().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        VerificationJobVO completed = orchestrator.getJobProgress(resumed.getJobId());
+        assertEquals(VerificationRunStatusEnum.COMPLETED.getValue(), completed.getStatus());
+        assertTrue(completed.getResumed());
+    }
+
+    @Test
+    void historicalJobProgressComesFromRunRecord() {
+        ledger.clear();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.update("INSERT INTO verification_run (mode, status, resume_count, batch_count, verified_count,"
+                        + " start_time, end_time) VALUES (?, ?, 0, 3, 7, ?, ?)", VerificationModeEnum.INCREMENTAL.getValue(),
+                VerificationRunStatusEnum.COMPLETED.getValue(), now, now);
+        long runId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM verification_run", Long.class);
+
+        VerificationJobVO progress = orchestrator.getJobProgress(runId);
+        assertEquals(VerificationRunStatusEnum.COMPLETED.getValue(), progress.getStatus());
+        assertEquals(VerificationModeEnum.INCREMENTAL.getValue(), progress.getMode());
+        assertEquals(7, progress.getVerifiedCount().intValue());
+
+        assertThrows(BusinessException.class, () -> orchestrator.getJobProgress(runId + 1));
+        assertThrows(BusinessException.class, () -> orchestrator.cancel(runId));
+    }
+
+    private String runStatus(Long runId) {
+        return jdbcTemplate.queryForObject("SELECT status FROM verification_run WHERE id = ?", String.class, runId);
+    }
+}
@@ -0,0 +1,115 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 集成测试的台账数据：按固定随机种子写入收款单与租金计划，并读出核销后的全部行用于比较。
+ * 主键显式指定，同一种子重复写入得到完全相同的行。
+ */
+class VerificationLedgerFixture {
+
+    static final LocalDate BASE_DATE = LocalDate.of(2025, 1, 1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private long nextReceiptId = 1;
+    private long nextScheduleId = 1;
+
+    VerificationLedgerFixture(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 清空台账与核销相关表
+     */
+    void clear() {
+        for (String table : new String[]{"bank_receipt", "rent_schedule", "verification_dirty_customer",
+                "verification_batch", "verification_run", "customer"}) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+        nextReceiptId = 1;
+        nextScheduleId = 1;
+    }
+
+    /**
+     * 清空后按种子写入 customers 个客户，每个客户 0 ~ 3 张收款单、0 ~ 5 期租金计划，部分行已有核销金额
+     *
+     * @return 按名称排序的客户
+     */
+    List<String> seed(long seed, int customers) {
+        clear();
+        Random random = new Random(seed);
+        List<String> customerNames = new ArrayList<>(customers);
+        for (int c = 0; c < customers; c++) {
+            String customerName = String.format("Customer_%04d", c);
+            customerNames.add(customerName);
+            int receipts = random.nextInt(4);
+            for (int i = 0; i < receipts; i++) {
+                BigDecimal amount = cents(random, 50_000);
+                BigDecimal used = random.nextInt(4) == 0 ? amount.multiply(new BigDecimal("0.5")).setScale(2, RoundingMode.DOWN) : BigDecimal.ZERO;
+                receipt(customerName, amount, used, BASE_DATE.atStartOfDay().plusHours(random.nextInt(24 * 90)));
+            }
+            int schedules = random.nextInt(6);
+            for (int i = 0; i < schedules; i++) {
+                BigDecimal principal = cents(random, 20_000);
+                BigDecimal interest = cents(random, 2_000);
+                BigDecimal interestReceived = random.nextInt(5) == 0 ? interest : BigDecimal.ZERO;
+                schedule(customerName, BASE_DATE.plusMonths(i), principal, interest, BigDecimal.ZERO, interestReceived);
+            }
+        }
+        return customerNames;
+    }
+
+    long receipt(String customerName, BigDecimal amount, BigDecimal used, LocalDateTime paymentTime) {
+        long id = nextReceiptId++;
+        int status = used.signum() == 0 ? VerificationService.STATUS_UNUSED
+                : used.compareTo(amount) >= 0 ? VerificationService.STATUS_USED : VerificationService.STATUS_PARTIALLY_USED;
+        jdbcTemplate.update("INSERT INTO bank_receipt (id, payer_name, payer_account, payment_amount, payment_datetime, used_amount, status)"
+                        + " VALUES (?, ?, ?, ?, ?, ?, ?)",
+                id, customerName, "6222" + id, amount, Timestamp.valueOf(paymentTime), used, status);
+        return id;
+    }
+
+    long schedule(String customerName, LocalDate dueDate, BigDecimal principal, BigDecimal interest,
+                  BigDecimal principalReceived, BigDecimal interestReceived) {
+        long id = nextScheduleId++;
+        boolean settled = principalReceived.compareTo(principal) >= 0 && interestReceived.compareTo(interest) >= 0;
+        int status = settled ? VerificationService.STATUS_USED
+                : principalReceived.signum() > 0 || interestReceived.signum() > 0 ? VerificationService.STATUS_PARTIALLY_USED
+                : VerificationService.STATUS_UNUSED;
+        jdbcTemplate.update("INSERT INTO rent_schedule (id, lessee_name, due_date, total_due_amount, principal_due, interest_due,"
+                        + " principal_received, interest_received, status) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                id, customerName, Date.valueOf(dueDate), principal.add(interest), principal, interest,
+                principalReceived, interestReceived, status);
+        return id;
+    }
+
+    /**
+     * 全部收款单的核销状态，按主键排序
+     */
+    List<Map<String, Object>> receipts() {
+        return jdbcTemplate.queryForList("SELECT id, payer_name, used_amount, status FROM bank_receipt ORDER BY id");
+    }
+
+    /**
+     * 全部租金计划的核销状态，按主键排序
+     */
+    List<Map<String, Object>> schedules() {
+        return jdbcTemplate.queryForList("SELECT id, lessee_name, due_date, principal_received, interest_received, status"
+                + " FROM rent_schedule ORDER BY id");
+    }
+
+    private static BigDecimal cents(Random random, int maxYuan) {
+        return BigDecimal.valueOf(1 + random.nextInt(maxYuan * 100), 2);
+    }
+}
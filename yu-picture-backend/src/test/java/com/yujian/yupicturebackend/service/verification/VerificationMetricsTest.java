@@ -0,0 +1,129 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * 校验核销指标注册到 MeterRegistry 后按预期计数：运行、批次、客户发现计时器按标签区分并累加，
+ * 客户数与回写行数计数器随分摊、回写递增，各线程池的队列深度与活跃线程数以仪表导出。
+ */
+class VerificationMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private ThreadPoolExecutor computeExecutor;
+    private VerificationMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        computeExecutor = executor();
+        metrics = new VerificationMetrics(registry, computeExecutor, executor(), executor(), executor());
+    }
+
+    @AfterEach
+    void tearDown() {
+        computeExecutor.shutdownNow();
+    }
+
+    @Test
+    void runBatchAndDiscoveryTimersAreTaggedAndRecorded() {
+        metrics.recordRun("full", "completed", TimeUnit.SECONDS.toNanos(3));
+        metrics.recordRun("full", "completed", TimeUnit.SECONDS.toNanos(1));
+        metrics.recordRun("incremental", "failed", TimeUnit.MILLISECONDS.toNanos(5));
+
+        Timer fullCompleted = registry.get(VerificationMetrics.RUN_TIMER).tag("mode", "full").tag("status", "completed").timer();
+        assertEquals(2, fullCompleted.count());
+        assertEquals(4.0, fullCompleted.totalTime(TimeUnit.SECONDS), 1e-9);
+        assertEquals(1, registry.get(VerificationMetrics.RUN_TIMER).tag("status", "failed").timer().count());
+
+        metrics.recordBatch(TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.recordBatch(TimeUnit.MILLISECONDS.toNanos(30));
+        Timer batch = registry.get(VerificationMetrics.BATCH_TIMER).timer();
+        assertEquals(2, batch.count());
+        assertEquals(50.0, batch.totalTime(TimeUnit.MILLISECONDS), 1e-6);
+
+        assertEquals(7, metrics.timeDiscovery("workload", () -> 7).intValue());
+        metrics.timeDiscovery("workload", () -> 0);
+        metrics.timeDiscovery("whale", () -> 0);
+        assertEquals(2, registry.get(VerificationMetrics.DISCOVERY_TIMER).tag("query", "workload").timer().count());
+        assertEquals(1, registry.get(VerificationMetrics.DISCOVERY_TIMER).tag("query", "whale").timer().count());
+    }
+
+    @Test
+    void customerAndRowCountersIncrement() {
+        assertEquals("done", metrics.timeCustomerAllocation(() -> "done"));
+        metrics.timeCustomerAllocation(() -> null);
+        assertEquals(2.0, registry.get(VerificationMetrics.CUSTOMER_COUNTER).counter().count());
+        assertEquals(2, registry.get("verification.customer.allocation").timer().count());
+
+        metrics.recordReceiptFlush(TimeUnit.MILLISECONDS.toNanos(2), 40);
+        metrics.recordReceiptFlush(TimeUnit.MILLISECONDS.toNanos(2), 10);
+        metrics.recordScheduleFlush(TimeUnit.MILLISECONDS.toNanos(3), 25);
+        assertEquals(50.0, registry.get(VerificationMetrics.ROWS_WRITTEN_COUNTER)
+                .tag("table", VerificationMetrics.TABLE_BANK_RECEIPT).counter().count());
+        assertEquals(25.0, registry.get(VerificationMetrics.ROWS_WRITTEN_COUNTER)
+                .tag("table", VerificationMetrics.TABLE_RENT_SCHEDULE).counter().count());
+        assertEquals(2, registry.get("verification.flush.chunk")
+                .tag("table", VerificationMetrics.TABLE_BANK_RECEIPT).timer().count());
+
+        metrics.timeReceiptSelect(() -> null);
+        metrics.timeScheduleSelect(() -> null);
+        metrics.timeScheduleSelect(() -> null);
+        assertEquals(1, registry.get("verification.batch.select")
+                .tag("table", VerificationMetrics.TABLE_BANK_RECEIPT).timer().count());
+        assertEquals(2, registry.get("verification.batch.select")
+                .tag("table", VerificationMetrics.TABLE_RENT_SCHEDULE).timer().count());
+
+        metrics.recordBatchFailure("retry");
+        metrics.recordBatchFailure("retry");
+        metrics.recordLockDeferred("batch", 3);
+        metrics.recordVersionConflicts(4);
+        assertEquals(2.0, registry.get("verification.batch.failures").tag("outcome", "retry").counter().count());
+        assertEquals(3.0, registry.get("verification.lock.deferred").tag("scope", "batch").counter().count());
+        assertEquals(4.0, registry.get("verification.version.conflicts").counter().count());
+    }
+
+    @Test
+    void executorGaugesFollowPoolState() throws Exception {
+        for (String pool : new String[]{"compute", "reader", "writer", "job"}) {
+            assertNotNull(registry.get("verification.executor.queue.depth").tag("pool", pool).gauge());
+            assertNotNull(registry.get("verification.executor.active.threads").tag("pool", pool).gauge());
+        }
+        assertEquals(0.0, registry.get("verification.executor.queue.depth").tag("pool", "compute").gauge().value());
+
+        // 唯一的工作线程被占住后，后续任务在队列中排队
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        computeExecutor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        computeExecutor.execute(() -> {
+        });
+        computeExecutor.execute(() -> {
+        });
+        started.await(5, TimeUnit.SECONDS);
+        assertEquals(2.0, registry.get("verification.executor.queue.depth").tag("pool", "compute").gauge().value());
+        assertEquals(1.0, registry.get("verification.executor.active.threads").tag("pool", "compute").gauge().value());
+        release.countDown();
+    }
+
+    private static ThreadPoolExecutor executor() {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    }
+}
@@ -0,0 +1,134 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.exception.BusinessException;
+import com.yujian.yupicturebackend.model.enums.VerificationModeEnum;
+import com.yujian.yupicturebackend.model.enums.VerificationRunStatusEnum;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.annotation.Resource;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 校验核销编排：全量与增量核销同时进行时各自占用一份流水线线程，被对方占用而推迟的客户由下一次增量核销补上；
+ * 其他节点心跳正常的运行中记录不会被续跑，心跳失效后以新的持有令牌接管同一条运行记录。
+ */
+@SpringBootTest(properties = {
+        "verification.pipeline.reader-threads=2",
+        "verification.pipeline.writer-threads=1"
+})
+@ActiveProfiles("h2")
+class VerificationOrchestratorTest {
+
+    private static final int CUSTOMERS = 200;
+    private static final long TIMEOUT_SECONDS = 60;
+
+    @Resource
+    private VerificationOrchestrator orchestrator;
+    @Resource
+    private DirtyCustomerTracker dirtyCustomerTracker;
+    @Resource(name = "verificationReaderExecutor")
+    private ThreadPoolExecutor readerExecutor;
+    @Resource(name = "verificationWriterExecutor")
+    private ThreadPoolExecutor writerExecutor;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    private VerificationLedgerFixture ledger;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new VerificationLedgerFixture(jdbcTemplate);
+    }
+
+    @Test
+    void poolsHoldOneShareForEveryMode() {
+        int modes = VerificationModeEnum.values().length;
+        assertEquals(2 * modes, readerExecutor.getCorePoolSize());
+        assertEquals(modes, writerExecutor.getCorePoolSize());
+    }
+
+    @Test
+    void fullAndIncrementalRunsOverlap() throws Exception {
+        List<String> customerNames = ledger.seed(11, CUSTOMERS);
+        // 刚完成过一次全量核销，增量核销不会因兜底间隔升级为全量
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbcTemplate.update("INSERT INTO verification_run (mode, status, start_time, end_time) VALUES (?, ?, ?, ?)",
+                VerificationModeEnum.FULL.getValue(), VerificationRunStatusEnum.COMPLETED.getValue(), now, now);
+        dirtyCustomerTracker.markDirty(customerNames.subList(0, CUSTOMERS / 2));
+        VerificationJob full = orchestrator.submit(VerificationModeEnum.FULL);
+        VerificationJob incremental = orchestrator.submit(VerificationModeEnum.INCREMENTAL);
+        assertNotEquals(full.getJobId(), incremental.getJobId());
+
+        full.getCompletion().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        incremental.getCompletion().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(VerificationRunStatusEnum.COMPLETED.getValue(), runStatus(full.getJobId()));
+        assertEquals(VerificationRunStatusEnum.COMPLETED.getValue(), runStatus(incremental.getJobId()));
+        // 正被另一运行占用的客户被推迟，必须已记为脏客户，留给下一次增量核销
+        List<String> deferred = unverifiedCustomers();
+        List<String> dirty = jdbcTemplate.queryForList("SELECT customer_name FROM verification_dirty_customer", String.class);
+        assertTrue(dirty.containsAll(deferred), "推迟的客户未记为脏客户: " + deferred);
+
+        VerificationJob followUp = orchestrator.submit(VerificationModeEnum.INCREMENTAL);
+        followUp.getCompletion().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        // 全量核销与补跑的增量核销覆盖全部客户，结束后没有待核销的收款与计划同时存在的客户
+        assertEquals(Collections.emptyList(), unverifiedCustomers());
+    }
+
+    private List<String> unverifiedCustomers() {
+        return jdbcTemplate.queryForList("SELECT DISTINCT s.lessee_name FROM rent_schedule s WHERE s.status <> 2"
+                + " AND EXISTS (SELECT 1 FROM bank_receipt r WHERE r.payer_name = s.lessee_name AND r.status <> 2)", String.class);
+    }
+
+    @Test
+    void liveRunOfAnotherNodeIsNotResumed() throws Exception {
+        ledger.seed(13, CUSTOMERS);
+        long runId = insertRunningRun("other-node", new Timestamp(System.currentTimeMillis()));
+
+        assertThrows(BusinessException.class, () -> orchestrator.submit(VerificationModeEnum.FULL));
+        Map<String, Object> untouched = run(runId);
+        assertEquals(VerificationRunStatusEnum.RUNNING.getValue(), untouched.get("status"));
+        assertEquals("other-node", untouched.get("owner_token"));
+
+        // 心跳超过失效时长后视为持有节点已退出，接管续跑同一条运行记录
+        jdbcTemplate.update("UPDATE verification_run SET heartbeat_time = ? WHERE id = ?",
+                new Timestamp(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(5)), runId);
+        VerificationJob job = orchestrator.submit(VerificationModeEnum.FULL);
+        assertEquals(Long.valueOf(runId), job.getJobId());
+        job.getCompletion().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        Map<String, Object> resumed = run(runId);
+        assertEquals(VerificationRunStatusEnum.COMPLETED.getValue(), resumed.get("status"));
+        assertEquals(1, ((Number) resumed.get("resume_count")).intValue());
+        assertNotEquals("other-node", resumed.get("owner_token"));
+        assertTrue(job.getLeaseToken().endsWith(":" + resumed.get("owner_token")));
+    }
+
+    private long insertRunningRun(String ownerToken, Timestamp heartbeatTime) {
+        jdbcTemplate.update("INSERT INTO verification_run (mode, status, resume_count, owner_token, heartbeat_time, start_time)"
+                        + " VALUES (?, ?, 0, ?, ?, ?)", VerificationModeEnum.FULL.getValue(),
+                VerificationRunStatusEnum.RUNNING.getValue(), ownerToken, heartbeatTime, heartbeatTime);
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM verification_run", Long.class);
+    }
+
+    private Map<String, Object> run(long runId) {
+        return jdbcTemplate.queryForMap("SELECT status, resume_count, owner_token FROM verification_run WHERE id = ?", runId);
+    }
+
+    private String runStatus(long runId) {
+        return (String) run(runId).get("status");
+    }
+}
@@ -0,0 +1,176 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import com.yujian.yupicturebackend.domain.VerificationRun;
+import com.yujian.yupicturebackend.model.enums.VerificationModeEnum;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 校验三段式流水线的背压与出错处理：回写阻塞时读取在各段队列填满后停下，不会无限制地预读批次；
+ * 任一阶段抛出异常时整条流水线中止并把异常交给调用方，不会挂起，已占用的分段锁全部释放。
+ */
+class VerificationPipelineTest {
+
+    private static final int BATCHES = 20;
+    private static final int QUEUE_CAPACITY = 1;
+
+    private final VerificationService verificationService = mock(VerificationService.class);
+    private final CustomerStripeLocks stripeLocks = new CustomerStripeLocks(null, mock(DirtyCustomerTracker.class),
+            VerificationMetrics.NOOP, "local", "test", 64, 30, 50);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<ThreadPoolExecutor> executors = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        when(verificationService.loadCustomerBatch(any())).thenAnswer(invocation -> {
+            loads.incrementAndGet();
+            CustomerBatch batch = invocation.getArgument(0);
+            return new VerificationService.LoadedBatch(batch, null, new ArrayList<>(), new ArrayList<>());
+        });
+        // 每个批次回写一行，回写阶段不合并批次
+        when(verificationService.allocateLoadedCustomers(anyList(), any(), anyList(), anyList())).thenAnswer(invocation ->
+                new VerificationService.ProcessingOutcome(new VerificationService.VerificationResult(),
+                        Collections.singletonList(new RentSchedule()), Collections.emptyList()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (ThreadPoolExecutor executor : executors) {
+            executor.shutdownNow();
+        }
+        stripeLocks.destroy();
+    }
+
+    @Test
+    void slowWriterStallsLoaderAtQueueCapacity() throws Exception {
+        CountDownLatch writerReleased = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writerReleased.await();
+            return null;
+        }).when(verificationService).flushBatches(anyList(), anyList(), anyInt());
+        VerificationPipeline pipeline = pipeline();
+        ThreadPoolExecutor driver = executor();
+
+        Future<List<VerificationService.VerificationResult>> run =
+                driver.submit(() -> pipeline.run(new ListCursor(BATCHES), UnaryOperator.identity()));
+
+        // 回写线程手里 1 个、回写队列 1 个、分摊线程手里 1 个、分摊队列 1 个、读取线程手里 1 个
+        int stalledLoads = 3 + 2 * QUEUE_CAPACITY;
+        waitUntil(() -> loads.get() >= stalledLoads);
+        TimeUnit.MILLISECONDS.sleep(600);
+        assertEquals(stalledLoads, loads.get());
+
+        writerReleased.countDown();
+        List<VerificationService.VerificationResult> results = run.get(10, TimeUnit.SECONDS);
+        assertEquals(BATCHES, loads.get());
+        assertEquals(BATCHES, results.size());
+        assertEquals(BATCHES, pipeline.getBatchCount());
+    }
+
+    @Test
+    void stageFailureFailsRunInsteadOfHanging() {
+        IllegalStateException boom = new IllegalStateException("分摊出错");
+        AtomicInteger allocations = new AtomicInteger();
+        when(verificationService.allocateLoadedCustomers(anyList(), any(), anyList(), anyList())).thenAnswer(invocation -> {
+            if (allocations.incrementAndGet() == 3) {
+                throw boom;
+            }
+            return new VerificationService.ProcessingOutcome(new VerificationService.VerificationResult(),
+                    Collections.singletonList(new RentSchedule()), Collections.emptyList());
+        });
+        VerificationPipeline pipeline = pipeline();
+
+        ExecutionException failure = assertTimeoutPreemptively(Duration.ofSeconds(10), () ->
+                assertThrows(ExecutionException.class,
+                        () -> pipeline.run(new ListCursor(BATCHES), UnaryOperator.identity())));
+
+        assertSame(boom, failure.getCause());
+        assertTrue(loads.get() < BATCHES);
+        // 中止时已加锁的批次全部释放，其他运行可以立即占用同一批客户
+        CustomerStripeLocks.StripeLease lease = stripeLocks.lockBatch(CustomerStripeLocks.runToken(2L, "other"),
+                CustomerBatch.range(ListCursor.customers(0, BATCHES)));
+        assertTrue(lease.getDeferred().isEmpty());
+        stripeLocks.release(lease);
+    }
+
+    private VerificationPipeline pipeline() {
+        VerificationRun run = new VerificationRun();
+        run.setId(1L);
+        run.setOwnerToken("owner");
+        VerificationJob job = new VerificationJob(run, VerificationModeEnum.FULL, Runnable::run);
+        AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer(new ListCursor(0), new AdaptiveBatchSizer.Settings(), 1, 1, 500);
+        return new VerificationPipeline(verificationService, VerificationMetrics.NOOP, stripeLocks, job, batchSizer,
+                executor(), 1, executor(), 1, executor(), 1, QUEUE_CAPACITY, 1);
+    }
+
+    private ThreadPoolExecutor executor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        executors.add(executor);
+        return executor;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+    }
+
+    /**
+     * 每批一个客户的游标
+     */
+    private static class ListCursor extends KeysetBatchCursor {
+        private final int batches;
+        private int next;
+
+        ListCursor(int batches) {
+            super(1);
+            this.batches = batches;
+        }
+
+        static List<String> customers(int from, int to) {
+            List<String> names = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                names.add(String.format("Customer_%04d", i));
+            }
+            return names;
+        }
+
+        @Override
+        protected CustomerBatch fetchNextPage() {
+            if (next >= batches) {
+                return null;
+            }
+            return CustomerBatch.range(customers(next, ++next));
+        }
+    }
+}
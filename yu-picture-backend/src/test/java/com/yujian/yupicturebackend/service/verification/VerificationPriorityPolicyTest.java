@@ -0,0 +1,124 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.model.dto.verification.CustomerWorkload;
+import com.yujian.yupicturebackend.model.enums.VerificationPriorityEnum;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * 校验调度优先级的通道划分：逾期天数与收款余额任一达到阈值即进入对应通道，阈值边界与通道内的紧急程度排序。
+ */
+class VerificationPriorityPolicyTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 6, 30);
+    private static final BigDecimal CRITICAL_AMOUNT = new BigDecimal("1000000");
+    private static final BigDecimal HIGH_AMOUNT = new BigDecimal("100000");
+
+    private final VerificationPriorityPolicy policy = newPolicy(true, 90, 30, CRITICAL_AMOUNT, HIGH_AMOUNT, 2000);
+
+    @Test
+    void overdueDaysSelectLane() {
+        assertEquals(VerificationPriorityEnum.CRITICAL, policy.laneOf(workload("a", 91, "0"), TODAY));
+        assertEquals(VerificationPriorityEnum.HIGH, policy.laneOf(workload("b", 90, "0"), TODAY));
+        assertEquals(VerificationPriorityEnum.HIGH, policy.laneOf(workload("c", 31, "0"), TODAY));
+        // 逾期天数恰好等于阈值不算超过
+        assertEquals(VerificationPriorityEnum.NORMAL, policy.laneOf(workload("d", 30, "0"), TODAY));
+        assertEquals(VerificationPriorityEnum.NORMAL, policy.laneOf(workload("e", -10, "0"), TODAY));
+    }
+
+    @Test
+    void receiptAmountSelectsLane() {
+        assertEquals(VerificationPriorityEnum.CRITICAL, policy.laneOf(workload("a", 0, "1000000"), TODAY));
+        assertEquals(VerificationPriorityEnum.HIGH, policy.laneOf(workload("b", 0, "999999.99"), TODAY));
+        assertEquals(VerificationPriorityEnum.HIGH, policy.laneOf(workload("c", 0, "100000"), TODAY));
+        assertEquals(VerificationPriorityEnum.NORMAL, policy.laneOf(workload("d", 0, "99999.99"), TODAY));
+
+        // 没有待核销计划、余额为空的客户走普通通道
+        CustomerWorkload empty = new CustomerWorkload();
+        empty.setCustomerName("f");
+        assertEquals(VerificationPriorityEnum.NORMAL, policy.laneOf(empty, TODAY));
+    }
+
+    @Test
+    void eitherCriterionPromotesToHigherLane() {
+        assertEquals(VerificationPriorityEnum.CRITICAL, policy.laneOf(workload("a", 31, "1000000"), TODAY));
+        assertEquals(VerificationPriorityEnum.CRITICAL, policy.laneOf(workload("b", 120, "10"), TODAY));
+    }
+
+    @Test
+    void criticalThresholdsNeverBelowHigh() {
+        // 紧急阈值配得比高优先阈值还低时，按高优先阈值处理，不会出现只进紧急、不进高优先的区间
+        VerificationPriorityPolicy misconfigured = newPolicy(true, 10, 30, new BigDecimal("50000"), HIGH_AMOUNT, 2000);
+        assertEquals(VerificationPriorityEnum.NORMAL, misconfigured.laneOf(workload("a", 20, "60000"), TODAY));
+        assertEquals(VerificationPriorityEnum.CRITICAL, misconfigured.laneOf(workload("b", 31, "0"), TODAY));
+        assertEquals(VerificationPriorityEnum.CRITICAL, misconfigured.laneOf(workload("c", 0, "100000"), TODAY));
+    }
+
+    @Test
+    void disabledPolicyKeepsEveryoneNormal() {
+        VerificationPriorityPolicy disabled = newPolicy(false, 90, 30, CRITICAL_AMOUNT, HIGH_AMOUNT, 2000);
+        assertFalse(disabled.isEnabled());
+        assertEquals(VerificationPriorityEnum.NORMAL, disabled.laneOf(workload("a", 365, "5000000"), TODAY));
+
+        VerificationPriorityPolicy noCapacity = newPolicy(true, 90, 30, CRITICAL_AMOUNT, HIGH_AMOUNT, 0);
+        assertFalse(noCapacity.isEnabled());
+        assertEquals(VerificationPriorityEnum.NORMAL, noCapacity.laneOf(workload("a", 365, "5000000"), TODAY));
+    }
+
+    @Test
+    void urgencyOrdersByOldestDueDateThenAmount() {
+        CustomerWorkload older = workload("older", 60, "10");
+        CustomerWorkload richer = workload("richer", 40, "500");
+        CustomerWorkload poorer = workload("poorer", 40, "100");
+        CustomerWorkload noSchedule = workload("no-schedule", 0, "900000");
+        noSchedule.setOldestDueDate(null);
+        List<CustomerWorkload> workloads = new ArrayList<>(Arrays.asList(noSchedule, poorer, richer, older));
+
+        workloads.sort(VerificationPriorityPolicy.URGENCY);
+
+        assertEquals(Arrays.asList("older", "richer", "poorer", "no-schedule"), names(workloads));
+    }
+
+    @Test
+    void highDueBeforeIsHighOverdueDaysAgo() {
+        assertEquals(toDate(TODAY.minusDays(30)), policy.highDueBefore(TODAY));
+    }
+
+    private static VerificationPriorityPolicy newPolicy(boolean enabled, int criticalOverdueDays, int highOverdueDays,
+                                                        BigDecimal criticalAmount, BigDecimal highAmount, int maxCustomers) {
+        return new VerificationPriorityPolicy(enabled, criticalOverdueDays, highOverdueDays, criticalAmount, highAmount, maxCustomers);
+    }
+
+    /**
+     * 最早一期未结清计划逾期 overdueDays 天、待核销余额为 openAmount 的客户
+     */
+    private static CustomerWorkload workload(String customerName, int overdueDays, String openAmount) {
+        CustomerWorkload workload = new CustomerWorkload();
+        workload.setCustomerName(customerName);
+        workload.setOldestDueDate(toDate(TODAY.minusDays(overdueDays)));
+        workload.setOpenReceiptAmount(new BigDecimal(openAmount));
+        return workload;
+    }
+
+    private static List<String> names(List<CustomerWorkload> workloads) {
+        List<String> names = new ArrayList<>(workloads.size());
+        for (CustomerWorkload workload : workloads) {
+            names.add(workload.getCustomerName());
+        }
+        return names;
+    }
+
+    private static Date toDate(LocalDate date) {
+        return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,145 @@
+-- 核销集成测试在内嵌 H2（MySQL 兼容模式）中使用的表结构，与 README.md 中的建表语句一致，去掉了列注释与内联索引
+CREATE TABLE IF NOT EXISTS `bank_receipt` (
+`id` BIGINT AUTO_INCREMENT,
+`payer_name` VARCHAR(255) NOT NULL,
+`customer_id` BIGINT,
+`payer_bank` VARCHAR(255),
+`payer_account` VARCHAR(255) NOT NULL,
+`payment_amount` DECIMAL(18, 2) NOT NULL,
+`payment_datetime` DATETIME NOT NULL,
+`used_amount` DECIMAL(18, 2) NOT NULL DEFAULT 0.00,
+`status` TINYINT NOT NULL DEFAULT 0,
+`version` INT NOT NULL DEFAULT 0,
+`create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+`update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+PRIMARY KEY (`id`)
+);
+CREATE INDEX IF NOT EXISTS idx_payment_datetime ON bank_receipt(payment_datetime);
+CREATE INDEX IF NOT EXISTS idx_bankreceipt_status_payer ON bank_receipt(status, payer_name);
+CREATE INDEX IF NOT EXISTS idx_status_payer_amount ON bank_receipt(status, payer_name, payment_amount, used_amount);
+CREATE INDEX IF NOT EXISTS idx_payer_name_status ON bank_receipt(payer_name, status, payment_datetime);
+CREATE INDEX IF NOT EXISTS idx_customer_status_payment ON bank_receipt(customer_id, status, payment_datetime);
+CREATE INDEX IF NOT EXISTS idx_receipt_status_id_update_time ON bank_receipt(status, id, update_time);
+
+CREATE TABLE IF NOT EXISTS `rent_schedule` (
+`id` BIGINT AUTO_INCREMENT,
+`lessee_name` VARCHAR(255) NOT NULL,
+`customer_id` BIGINT,
+`due_date` DATE NOT NULL,
+`total_due_amount` DECIMAL(18, 2) NOT NULL,
+`principal_due` DECIMAL(18, 2) NOT NULL,
+`interest_due` DECIMAL(18, 2) NOT NULL,
+`principal_received` DECIMAL(18, 2) NOT NULL DEFAULT 0.00,
+`interest_received` DECIMAL(18, 2) NOT NULL DEFAULT 0.00,
+`status` TINYINT NOT NULL DEFAULT 0,
+`version` INT NOT NULL DEFAULT 0,
+`create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+`update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+PRIMARY KEY (`id`)
+);
+CREATE INDEX IF NOT EXISTS idx_due_date ON rent_schedule(due_date);
+CREATE INDEX IF NOT EXISTS idx_lessee_name_status ON rent_schedule(lessee_name, status, due_date);
+CREATE INDEX IF NOT EXISTS idx_status_due_lessee ON rent_schedule(status, due_date, lessee_name);
+CREATE INDEX IF NOT EXISTS idx_customer_status_due ON rent_schedule(customer_id, status, due_date);
+CREATE INDEX IF NOT EXISTS idx_schedule_status_id_update_time ON rent_schedule(status, id, update_time);
+
+CREATE TABLE IF NOT EXISTS `verification_dirty_customer` (
+`customer_name` VARCHAR(255) NOT NULL,
+`mark_version` BIGINT NOT NULL DEFAULT 1,
+`create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+`update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+PRIMARY KEY (`customer_name`)
+);
+CREATE INDEX IF NOT EXISTS idx_update_time ON verification_dirty_customer(update_time);
+
+CREATE TABLE IF NOT EXISTS `verification_run` (
+`id` BIGINT AUTO_INCREMENT,
+`mode` VARCHAR(32) NOT NULL,
+`status` VARCHAR(32) NOT NULL,
+`as_of_date` DATE,
+`resume_count` INT NOT NULL DEFAULT 0,
+`batch_count` INT NOT NULL DEFAULT 0,
+`verified_count` INT NOT NULL DEFAULT 0,
+`total_principal` DECIMAL(18, 2) NOT NULL DEFAULT 0.00,
+`total_interest` DECIMAL(18, 2) NOT NULL DEFAULT 0.00,
+`error_message` VARCHAR(512),
+`owner_token` VARCHAR(64),
+`heartbeat_time` DATETIME,
+`start_time` DATETIME NOT NULL,
+`end_time` DATETIME,
+`create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+`update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+PRIMARY KEY (`id`)
+);
+CREATE INDEX IF NOT EXISTS idx_mode_status ON verification_run(`mode`, `status`);
+
+CREATE TABLE IF NOT EXISTS `verification_batch` (
+`id` BIGINT AUTO_INCREMENT,
+`run_id` BIGINT NOT NULL,
+`first_customer` VARCHAR(255) NOT NULL,
+`last_customer` VARCHAR(255) NOT NULL,
+`customer_count` INT NOT NULL,
+`dedicated` TINYINT NOT NULL DEFAULT 0,
+`priority` TINYINT NOT NULL DEFAULT 0,
+`status` TINYINT NOT NULL DEFAULT 0,
+`verified_count` INT,
+`total_principal` DECIMAL(18, 2),
+`total_interest` DECIMAL(18, 2),
+`create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+`update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+PRIMARY KEY (`id`)
+);
+CREATE INDEX IF NOT EXISTS idx_run_status_first ON verification_batch(run_id, status, first_customer);
+
+CREATE TABLE IF NOT EXISTS `customer` (
+`id` BIGINT AUTO_INCREMENT,
+`customer_name` VARCHAR(255) NOT NULL,
+`create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+PRIMARY KEY (`id`)
+);
+CREATE UNIQUE INDEX IF NOT EXISTS uk_customer_name ON customer(customer_name);
+
+CREATE TABLE IF NOT EXISTS `bank_receipt_history` (
+`id` BIGINT NOT NULL,
+`payer_name` VARCHAR(255) NOT NULL,
+`customer_id` BIGINT,
+`payer_bank` VARCHAR(255),
+`payer_account` VARCHAR(255) NOT NULL,
+`payment_amount` DECIMAL(18, 2) NOT NULL,
+`payment_datetime` DATETIME NOT NULL,
+`used_amount` DECIMAL(18, 2) NOT NULL,
+`status` TINYINT NOT NULL,
+`create_time` DATETIME NOT NULL,
+`update_time` DATETIME NOT NULL,
+`archived_time` DATETIME NOT NULL,
+PRIMARY KEY (`id`)
+);
+CREATE INDEX IF NOT EXISTS idx_payer_name_payment ON bank_receipt_history(payer_name, payment_datetime);
+
+CREATE TABLE IF NOT EXISTS `rent_schedule_history` (
+`id` BIGINT NOT NULL,
+`lessee_name` VARCHAR(255) NOT NULL,
+`customer_id` BIGINT,
+`due_date` DATE NOT NULL,
+`total_due_amount` DECIMAL(18, 2) NOT NULL,
+`principal_due` DECIMAL(18, 2) NOT NULL,
+`interest_due` DECIMAL(18, 2) NOT NULL,
+`principal_received` DECIMAL(18, 2) NOT NULL,
+`interest_received` DECIMAL(18, 2) NOT NULL,
+`status` TINYINT NOT NULL,
+`create_time` DATETIME NOT NULL,
+`update_time` DATETIME NOT NULL,
+`archived_time` DATETIME NOT NULL,
+PRIMARY KEY (`id`)
+);
+CREATE INDEX IF NOT EXISTS idx_lessee_name_due ON rent_schedule_history(lessee_name, due_date);
+
+CREATE TABLE IF NOT EXISTS `ledger_archive_checkpoint` (
+`table_name` VARCHAR(64) NOT NULL,
+`last_id` BIGINT NOT NULL DEFAULT 0,
+`archived_rows` BIGINT NOT NULL DEFAULT 0,
+`pass_count` INT NOT NULL DEFAULT 0,
+`last_pass_time` DATETIME,
+`update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+PRIMARY KEY (`table_name`)
+);
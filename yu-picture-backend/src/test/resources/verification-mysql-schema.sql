@@ -0,0 +1,109 @@
+-- 依赖 MySQL 方言的集成测试在容器 MySQL 中使用的表结构，与 README.md 中的建表语句一致，去掉了列注释
+CREATE TABLE `bank_receipt` (
+`id` BIGINT AUTO_INCREMENT,
+`payer_name` VARCHAR(255) NOT NULL,
+`customer_id` BIGINT,
+`payer_bank` VARCHAR(255),
+`payer_account` VARCHAR(255) NOT NULL,
+`payment_amount` DECIMAL(18, 2) NOT NULL,
+`payment_datetime` DATETIME NOT NULL,
+`used_amount` DECIMAL(18, 2) NOT NULL DEFAULT 0.00,
+`status` TINYINT NOT NULL DEFAULT 0,
+`version` INT NOT NULL DEFAULT 0,
+`create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+`update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+PRIMARY KEY (`id`),
+INDEX `idx_payment_datetime` (`payment_datetime`),
+INDEX `idx_bankreceipt_status_payer` (`status`, `payer_name`),
+INDEX `idx_status_payer_amount` (`status`, `payer_name`, `payment_amount`, `used_amount`),
+INDEX `idx_payer_name_status` (`payer_name`, `status`, `payment_datetime`),
+INDEX `idx_customer_status_payment` (`customer_id`, `status`, `payment_datetime`),
+INDEX `idx_status_id_update_time` (`status`, `id`, `update_time`)
+);
+
+CREATE TABLE `rent_schedule` (
+`id` BIGINT AUTO_INCREMENT,
+`lessee_name` VARCHAR(255) NOT NULL,
+`customer_id` BIGINT,
+`due_date` DATE NOT NULL,
+`total_due_amount` DECIMAL(18, 2) NOT NULL,
+`principal_due` DECIMAL(18, 2) NOT NULL,
+`interest_due` DECIMAL(18, 2) NOT NULL,
+`principal_received` DECIMAL(18, 2) NOT NULL DEFAULT 0.00,
+`interest_received` DECIMAL(18, 2) NOT NULL DEFAULT 0.00,
+`status` TINYINT NOT NULL DEFAULT 0,
+`version` INT NOT NULL DEFAULT 0,
+`create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+`update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+PRIMARY KEY (`id`),
+INDEX `idx_due_date` (`due_date`),
+INDEX `idx_lessee_name_status` (`lessee_name`, `status`, `due_date`),
+INDEX `idx_status_due_lessee` (`status`, `due_date`, `lessee_name`),
+INDEX `idx_customer_status_due` (`customer_id`, `status`, `due_date`),
+INDEX `idx_status_id_update_time` (`status`, `id`, `update_time`)
+);
+
+CREATE TABLE `verification_set_allocation` (
+`customer_name` VARCHAR(255) NOT NULL,
+`pool_amount` DECIMAL(20, 2) NOT NULL,
+`applied_interest` DECIMAL(20, 2) NOT NULL,
+`applied_principal` DECIMAL(20, 2) NOT NULL,
+`verified_count` INT NOT NULL,
+PRIMARY KEY (`customer_name`)
+);
+
+CREATE TABLE `verification_dirty_customer` (
+`customer_name` VARCHAR(255) NOT NULL,
+`mark_version` BIGINT NOT NULL DEFAULT 1,
+`create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+`update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+PRIMARY KEY (`customer_name`),
+INDEX `idx_update_time` (`update_time`)
+);
+
+CREATE TABLE `verification_run` (
+`id` BIGINT AUTO_INCREMENT,
+`mode` VARCHAR(32) NOT NULL,
+`status` VARCHAR(32) NOT NULL,
+`as_of_date` DATE,
+`resume_count` INT NOT NULL DEFAULT 0,
+`batch_count` INT NOT NULL DEFAULT 0,
+`verified_count` INT NOT NULL DEFAULT 0,
+`total_principal` DECIMAL(18, 2) NOT NULL DEFAULT 0.00,
+`total_interest` DECIMAL(18, 2) NOT NULL DEFAULT 0.00,
+`error_message` VARCHAR(512),
+`owner_token` VARCHAR(64),
+`heartbeat_time` DATETIME,
+`start_time` DATETIME NOT NULL,
+`end_time` DATETIME,
+`create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+`update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+PRIMARY KEY (`id`),
+INDEX `idx_mode_status` (`mode`, `status`)
+);
+
+CREATE TABLE `verification_batch` (
+`id` BIGINT AUTO_INCREMENT,
+`run_id` BIGINT NOT NULL,
+`first_customer` VARCHAR(255) NOT NULL,
+`last_customer` VARCHAR(255) NOT NULL,
+`customer_count` INT NOT NULL,
+`dedicated` TINYINT NOT NULL DEFAULT 0,
+`priority` TINYINT NOT NULL DEFAULT 0,
+`status` TINYINT NOT NULL DEFAULT 0,
+`verified_count` INT,
+`total_principal` DECIMAL(18, 2),
+`total_interest` DECIMAL(18, 2),
+`create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+`update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+PRIMARY KEY (`id`),
+INDEX `idx_run_status_first` (`run_id`, `status`, `first_customer`)
+);
+
+CREATE TABLE `customer` (
+`id` BIGINT AUTO_INCREMENT,
+`customer_name` VARCHAR(255) NOT NULL,
+`create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+PRIMARY KEY (`id`),
+UNIQUE KEY `uk_customer_name` (`customer_name`)
+);
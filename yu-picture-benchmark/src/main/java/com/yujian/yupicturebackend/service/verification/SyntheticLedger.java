@@ -0,0 +1,172 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试用的合成台账，不依赖数据库。
+ * <p>
+ * 固定随机种子生成一批客户的收款单与租金计划，数据顺序模拟批量查询的返回结果（按时间排序、客户交错）。
+ */
+final class SyntheticLedger {
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long BASE_TIME = 1704067200000L;
+
+    final List<String> customerNames;
+    final List<BankReceipt> receipts;
+    final List<RentSchedule> schedules;
+
+    private SyntheticLedger(List<String> customerNames, List<BankReceipt> receipts, List<RentSchedule> schedules) {
+        this.customerNames = customerNames;
+        this.receipts = receipts;
+        this.schedules = schedules;
+    }
+
+    /**
+     * @param customers       每批客户数
+     * @param rowsPerCustomer 每个客户平均的租金计划数（收款单数相同）
+     * @param dirtyRatio      金额为 null、已用超额或超出分精度的行所占比例
+     * @param skew            批次总行数中集中到第一个“大客户”身上的比例，0 表示均匀分布
+     * @param seed            随机种子
+     */
+    static SyntheticLedger generate(int customers, int rowsPerCustomer, double dirtyRatio, double skew, long seed) {
+        Random random = new Random(seed);
+        int totalRows = customers * rowsPerCustomer;
+        int whaleRows = (int) (totalRows * skew);
+        int regularRows = customers > 1 ? (totalRows - whaleRows) / (customers - 1) : totalRows;
+
+        List<String> customerNames = new ArrayList<>(customers);
+        List<BankReceipt> receipts = new ArrayList<>(totalRows);
+        List<RentSchedule> schedules = new ArrayList<>(totalRows);
+        long receiptId = 1;
+        long scheduleId = 1;
+        for (int c = 0; c < customers; c++) {
+            String customerName = String.format("BenchCustomer_%08d", c);
+            customerNames.add(customerName);
+            int rows = c == 0 && customers > 1 ? Math.max(whaleRows, 1) : Math.max(regularRows, 1);
+            for (int i = 0; i < rows; i++) {
+                schedules.add(schedule(random, scheduleId++, customerName, i, dirtyRatio));
+                receipts.add(receipt(random, receiptId++, customerName, i, dirtyRatio));
+            }
+        }
+        // 批量查询按时间排序返回，不同客户的数据交错出现
+        Collections.shuffle(receipts, random);
+        Collections.shuffle(schedules, random);
+        receipts.sort((a, b) -> a.getPaymentDatetime().compareTo(b.getPaymentDatetime()));
+        schedules.sort((a, b) -> a.getDueDate().compareTo(b.getDueDate()));
+        return new SyntheticLedger(customerNames, receipts, schedules);
+    }
+
+    private static RentSchedule schedule(Random random, long id, String customerName, int index, double dirtyRatio) {
+        RentSchedule schedule = new RentSchedule();
+        schedule.setId(id);
+        schedule.setLesseeName(customerName);
+        schedule.setDueDate(new Date(BASE_TIME + index * 30 * DAY_MILLIS));
+        BigDecimal principal = cents(random, 50000, 200000);
+        BigDecimal interest = cents(random, 1000, 10000);
+        schedule.setPrincipalDue(principal);
+        schedule.setInterestDue(interest);
+        schedule.setTotalDueAmount(principal.add(interest));
+        schedule.setPrincipalReceived(new BigDecimal("0.00"));
+        schedule.setInterestReceived(new BigDecimal("0.00"));
+        schedule.setStatus(0);
+        if (random.nextDouble() < dirtyRatio) {
+            schedule.setInterestReceived(null);
+        }
+        return schedule;
+    }
+
+    private static BankReceipt receipt(Random random, long id, String customerName, int index, double dirtyRatio) {
+        BankReceipt receipt = new BankReceipt();
+        receipt.setId(id);
+        receipt.setPayerName(customerName);
+        receipt.setPayerBank("Bench Bank");
+        receipt.setPayerAccount("6222020000123" + (10000 + random.nextInt(89999)));
+        receipt.setPaymentDatetime(new Date(BASE_TIME + index * 30 * DAY_MILLIS + random.nextInt(86400) * 1000L));
+        receipt.setPaymentAmount(cents(random, 80000, 300000));
+        receipt.setUsedAmount(new BigDecimal("0.00"));
+        receipt.setStatus(0);
+        if (random.nextDouble() < dirtyRatio) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    receipt.setUsedAmount(null);
+                    break;
+                case 1:
+                    // 已用金额大于付款金额的历史脏数据
+                    receipt.setUsedAmount(receipt.getPaymentAmount().add(BigDecimal.TEN));
+                    break;
+                default:
+                    // 超出分精度，会让定点内核回退到 BigDecimal 路径
+                    receipt.setPaymentAmount(BigDecimal.valueOf(random.nextInt(3000000), 3));
+                    break;
+            }
+        }
+        return receipt;
+    }
+
+    private static BigDecimal cents(Random random, int minCents, int maxCents) {
+        return BigDecimal.valueOf(minCents + random.nextInt(maxCents - minCents), 2);
+    }
+
+    /**
+     * 截取单个客户的数据，保持原有的时间顺序
+     */
+    SyntheticLedger slice(String customerName) {
+        List<BankReceipt> customerReceipts = new ArrayList<>();
+        for (BankReceipt receipt : receipts) {
+            if (customerName.equals(receipt.getPayerName())) {
+                customerReceipts.add(receipt);
+            }
+        }
+        List<RentSchedule> customerSchedules = new ArrayList<>();
+        for (RentSchedule schedule : schedules) {
+            if (customerName.equals(schedule.getLesseeName())) {
+                customerSchedules.add(schedule);
+            }
+        }
+        return new SyntheticLedger(Collections.singletonList(customerName), customerReceipts, customerSchedules);
+    }
+
+    /**
+     * 核销会原地修改实体，每次调用前复制一份输入
+     */
+    List<BankReceipt> copyReceipts() {
+        List<BankReceipt> copy = new ArrayList<>(receipts.size());
+        for (BankReceipt receipt : receipts) {
+            BankReceipt clone = new BankReceipt();
+            clone.setId(receipt.getId());
+            clone.setPayerName(receipt.getPayerName());
+            clone.setPaymentDatetime(receipt.getPaymentDatetime());
+            clone.setPaymentAmount(receipt.getPaymentAmount());
+            clone.setUsedAmount(receipt.getUsedAmount());
+            clone.setStatus(receipt.getStatus());
+            copy.add(clone);
+        }
+        return copy;
+    }
+
+    List<RentSchedule> copySchedules() {
+        List<RentSchedule> copy = new ArrayList<>(schedules.size());
+        for (RentSchedule schedule : schedules) {
+            RentSchedule clone = new RentSchedule();
+            clone.setId(schedule.getId());
+            clone.setLesseeName(schedule.getLesseeName());
+            clone.setDueDate(schedule.getDueDate());
+            clone.setPrincipalDue(schedule.getPrincipalDue());
+            clone.setInterestDue(schedule.getInterestDue());
+            clone.setPrincipalReceived(schedule.getPrincipalReceived());
+            clone.setInterestReceived(schedule.getInterestReceived());
+            clone.setStatus(schedule.getStatus());
+            copy.add(clone);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,111 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 核销引擎的 JMH 基准测试，只覆盖纯内存路径，不连接数据库。
+ * <ul>
+ *     <li>{@link #allocateBatch}：processCustomersBatch 中加载之后的部分，即按客户分组、排序并逐客户核销</li>
+ *     <li>{@link #allocateSingleCustomer}：单个客户的核销（skew 大于 0 时为批次中的大客户）</li>
+ *     <li>{@link #copyBaseline}：仅复制输入的开销，核销会原地修改实体，前两项的结果需扣除此基线</li>
+ * </ul>
+ * 运行方式：
+ * <pre>
+ * mvn -pl yu-picture-benchmark -am package -DskipTests
+ * java -jar yu-picture-benchmark/target/benchmarks.jar VerificationEngineBenchmark -prof gc
+ * </pre>
+ * 也可以直接运行 {@link #main}，默认附带 GC profiler，输出 ops/s 与 gc.alloc.rate.norm（每次操作分配字节数）。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class VerificationEngineBenchmark {
+
+    @Param({"200", "1000"})
+    private int customersPerBatch;
+
+    @Param({"5", "50"})
+    private int rowsPerCustomer;
+
+    @Param({"0.0", "0.05"})
+    private double dirtyRatio;
+
+    @Param({"0.0", "0.5"})
+    private double skew;
+
+    @Param({"decimal", "cents"})
+    private String kernel;
+
+    private SyntheticLedger ledger;
+    private VerificationService verificationService;
+    private SyntheticLedger singleCustomerLedger;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ledger = SyntheticLedger.generate(customersPerBatch, rowsPerCustomer, dirtyRatio, skew, 42L);
+        // 纯内存基准不需要 Mapper
+        verificationService = new VerificationService("cents".equals(kernel), 1.0);
+        singleCustomerLedger = ledger.slice(ledger.customerNames.get(0));
+    }
+
+    @Benchmark
+    public void allocateBatch(Blackhole blackhole) {
+        VerificationService.ProcessingOutcome outcome = verificationService.allocateLoadedCustomers(
+                ledger.customerNames, ledger.copyReceipts(), ledger.copySchedules());
+        blackhole.consume(outcome.getResult());
+        blackhole.consume(outcome.getUpdatedSchedules());
+        blackhole.consume(outcome.getUpdatedReceipts());
+    }
+
+    @Benchmark
+    public void allocateSingleCustomer(Blackhole blackhole) {
+        List<BankReceipt> receipts = singleCustomerLedger.copyReceipts();
+        List<RentSchedule> schedules = singleCustomerLedger.copySchedules();
+        VerificationService.ProcessingOutcome outcome = verificationService.allocateCustomer(
+                singleCustomerLedger.customerNames.get(0), receipts, schedules);
+        blackhole.consume(outcome.getResult());
+        blackhole.consume(outcome.getUpdatedSchedules());
+    }
+
+    @Benchmark
+    public void copyBaseline(Blackhole blackhole) {
+        blackhole.consume(ledger.copyReceipts());
+        blackhole.consume(ledger.copySchedules());
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(VerificationEngineBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
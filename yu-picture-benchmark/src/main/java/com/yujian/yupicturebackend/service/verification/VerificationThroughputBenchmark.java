@@ -0,0 +1,390 @@
+package com.yujian.yupicturebackend.service.verification;
+
+import com.yujian.yupicturebackend.YuPictureBackendApplication;
+import com.yujian.yupicturebackend.domain.BankReceipt;
+import com.yujian.yupicturebackend.domain.RentSchedule;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 核销的端到端吞吐基准：启动完整的应用上下文，连接内嵌 H2（MySQL 兼容模式）或本地数据库，
+ * 按固定随机种子写入 N 个客户的收款单与租金计划，执行一次全量核销
+ * （{@link VerificationOrchestrator#runVerificationProcess()}），统计：
+ * <ul>
+ *     <li>每秒核销的客户数、每秒处理的台账行数（收款单 + 租金计划）与回写行数；</li>
+ *     <li>批次延迟 p50 / p99：单个批次从开始读取到回写提交的耗时；</li>
+ *     <li>堆内存峰值：各堆内存池峰值之和，是实际峰值的上界。</li>
+ * </ul>
+ * 每轮核销前清空并重新写入同样的数据，预热轮次不计入结果。与 {@link VerificationEngineBenchmark} 不同，
+ * 这里度量的是包含 SQL、事务、线程池协作在内的整体吞吐，结果受数据库影响，H2 的数字只适合在提交之间相互比较。
+ * <p>
+ * 运行方式：
+ * <pre>
+ * mvn -pl yu-picture-benchmark -am package -DskipTests
+ * java -Dfile.encoding=UTF-8 -cp yu-picture-benchmark/target/benchmarks.jar \
+ *     com.yujian.yupicturebackend.service.verification.VerificationThroughputBenchmark \
+ *     --customers=20000 --rows-per-customer=5 --iterations=3 --result-file=throughput.csv --label=$(git rev-parse --short HEAD)
+ * </pre>
+ * 基准参数：customers（客户数，默认 10000）、rows-per-customer（每个客户的租金计划数与收款单数，默认 5）、
+ * skew（集中到第一个大客户的行数比例，默认 0）、seed（随机种子，默认 42）、warmup（预热轮次，默认 1）、
+ * iterations（计量轮次，默认 3）、result-file（结果以 CSV 追加写入该文件）、label（写入结果的标签，如提交号）。
+ * 其余 --key=value 参数作为应用配置传入，例如 --verification.engine=merge-join、--verification.cents-kernel-enabled=true；
+ * 传入 --spring.datasource.url 等参数即可改连本地 MySQL，此时不执行建表脚本，需先按 README 建表，且会清空核销相关表。
+ */
+public class VerificationThroughputBenchmark {
+
+    private static final String H2_URL = "jdbc:h2:mem:verification_benchmark;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final int INSERT_BATCH_SIZE = 5000;
+
+    private static final String[] CSV_HEADER = {"time", "label", "engine", "iteration", "customers", "ledger_rows",
+            "seconds", "customers_per_sec", "rows_per_sec", "rows_written_per_sec", "batches",
+            "batch_p50_ms", "batch_p99_ms", "peak_heap_mb"};
+
+    private final Map<String, String> options = new LinkedHashMap<>();
+    private final Map<String, Object> applicationProperties = new LinkedHashMap<>();
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbcTemplate;
+    private MeterRegistry meterRegistry;
+    private VerificationOrchestrator orchestrator;
+
+    public static void main(String[] args) throws Exception {
+        VerificationThroughputBenchmark benchmark = new VerificationThroughputBenchmark(args);
+        try {
+            benchmark.run();
+        } finally {
+            benchmark.close();
+        }
+        System.exit(0);
+    }
+
+    VerificationThroughputBenchmark(String[] args) {
+        applicationProperties.put("spring.datasource.url", H2_URL);
+        applicationProperties.put("spring.datasource.driver-class-name", "org.h2.Driver");
+        applicationProperties.put("spring.datasource.username", "sa");
+        applicationProperties.put("spring.datasource.password", "");
+        applicationProperties.put("spring.sql.init.mode", "always");
+        applicationProperties.put("spring.sql.init.schema-locations", "classpath:verification-benchmark-schema.sql");
+        // 逐条打印 SQL 会让结果失去意义
+        applicationProperties.put("mybatis-plus.configuration.log-impl", "org.apache.ibatis.logging.nologging.NoLoggingImpl");
+        applicationProperties.put("verification.resume-enabled", "false");
+        // 嵌入式环境没有 Redis，客户分段锁用进程内租约
+        applicationProperties.put("verification.lock.provider", "local");
+        applicationProperties.put("knife4j.enable", "false");
+        Map<String, String> userProperties = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("参数格式应为 --key=value: " + arg);
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (isBenchmarkOption(key)) {
+                options.put(key, value);
+            } else {
+                userProperties.put(key, value);
+            }
+        }
+        if (userProperties.containsKey("spring.datasource.url")) {
+            // 外部数据库按 README 建表，建表脚本只面向 H2
+            applicationProperties.put("spring.sql.init.mode", "never");
+        }
+        applicationProperties.putAll(userProperties);
+    }
+
+    private static boolean isBenchmarkOption(String key) {
+        switch (key) {
+            case "customers":
+            case "rows-per-customer":
+            case "skew":
+            case "seed":
+            case "warmup":
+            case "iterations":
+            case "result-file":
+            case "label":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    void run() throws Exception {
+        int customers = intOption("customers", 10000);
+        int rowsPerCustomer = intOption("rows-per-customer", 5);
+        double skew = Double.parseDouble(options.getOrDefault("skew", "0"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        int warmup = intOption("warmup", 1);
+        int iterations = intOption("iterations", 3);
+
+        start();
+        String engine = context.getEnvironment().getProperty("verification.engine", "pipeline");
+        System.out.printf("核销端到端吞吐基准：客户 %d 个，每个客户 %d 笔租金计划 / %d 笔收款单，skew %.2f，引擎 %s，数据库 %s%n",
+                customers, rowsPerCustomer, rowsPerCustomer, skew, engine,
+                context.getEnvironment().getProperty("spring.datasource.url"));
+
+        List<IterationResult> results = new ArrayList<>();
+        for (int i = 1; i <= warmup + iterations; i++) {
+            boolean measured = i > warmup;
+            seed(customers, rowsPerCustomer, skew, seed);
+            IterationResult result = runIteration(measured ? i - warmup : 0, customers, rowsPerCustomer);
+            System.out.println((measured ? "计量第 " + result.iteration + " 轮：" : "预热：") + result);
+            if (measured) {
+                results.add(result);
+            }
+        }
+        if (results.isEmpty()) {
+            return;
+        }
+        System.out.println("合计 " + results.size() + " 轮：" + IterationResult.total(results));
+        String resultFile = options.get("result-file");
+        if (resultFile != null) {
+            writeCsv(resultFile, options.getOrDefault("label", ""), engine, results);
+            System.out.println("结果已追加到 " + resultFile);
+        }
+    }
+
+    private void start() {
+        SpringApplication application = new SpringApplication(YuPictureBackendApplication.class);
+        application.setWebApplicationType(WebApplicationType.NONE);
+        // 放在最高优先级，覆盖 application.yml 中的数据源等配置
+        application.addInitializers(ctx -> ctx.getEnvironment().getPropertySources()
+                .addFirst(new MapPropertySource("verificationBenchmark", applicationProperties)));
+        context = application.run();
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        meterRegistry = context.getBean(MeterRegistry.class);
+        orchestrator = context.getBean(VerificationOrchestrator.class);
+        // 基准需要精确的分位数，且统计窗口覆盖整轮核销
+        meterRegistry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!VerificationMetrics.BATCH_TIMER.equals(id.getName())) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                        .percentiles(0.5, 0.99)
+                        .percentilePrecision(3)
+                        .expiry(Duration.ofDays(1))
+                        .bufferLength(1)
+                        .build()
+                        .merge(config);
+            }
+        });
+    }
+
+    void close() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    /**
+     * 清空核销相关表并写入固定种子生成的台账
+     */
+    private void seed(int customers, int rowsPerCustomer, double skew, long seed) {
+        for (String table : new String[]{"bank_receipt", "rent_schedule", "verification_batch", "verification_run",
+                "verification_dirty_customer", "customer"}) {
+            jdbcTemplate.execute("TRUNCATE TABLE " + table);
+        }
+        SyntheticLedger ledger = SyntheticLedger.generate(customers, rowsPerCustomer, 0, skew, seed);
+        List<Object[]> rows = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (RentSchedule schedule : ledger.schedules) {
+            rows.add(new Object[]{schedule.getId(), schedule.getLesseeName(), new java.sql.Date(schedule.getDueDate().getTime()),
+                    schedule.getTotalDueAmount(), schedule.getPrincipalDue(), schedule.getInterestDue(),
+                    schedule.getPrincipalReceived(), schedule.getInterestReceived(), schedule.getStatus()});
+            if (rows.size() >= INSERT_BATCH_SIZE) {
+                insertSchedules(rows);
+            }
+        }
+        insertSchedules(rows);
+        for (BankReceipt receipt : ledger.receipts) {
+            rows.add(new Object[]{receipt.getId(), receipt.getPayerName(), receipt.getPayerBank(), receipt.getPayerAccount(),
+                    receipt.getPaymentAmount(), new Timestamp(receipt.getPaymentDatetime().getTime()),
+                    receipt.getUsedAmount(), receipt.getStatus()});
+            if (rows.size() >= INSERT_BATCH_SIZE) {
+                insertReceipts(rows);
+            }
+        }
+        insertReceipts(rows);
+        // 登记客户并回填客户 ID，verification.customer-key-enabled=true 时按整数键核销
+        jdbcTemplate.update("INSERT INTO customer (customer_name) SELECT payer_name FROM bank_receipt"
+                + " UNION SELECT lessee_name FROM rent_schedule");
+        jdbcTemplate.update("UPDATE bank_receipt SET customer_id = (SELECT c.id FROM customer c WHERE c.customer_name = payer_name)");
+        jdbcTemplate.update("UPDATE rent_schedule SET customer_id = (SELECT c.id FROM customer c WHERE c.customer_name = lessee_name)");
+    }
+
+    private void insertSchedules(List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO rent_schedule (id, lessee_name, due_date, total_due_amount, principal_due,"
+                    + " interest_due, principal_received, interest_received, status) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)", rows);
+            rows.clear();
+        }
+    }
+
+    private void insertReceipts(List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO bank_receipt (id, payer_name, payer_bank, payer_account, payment_amount,"
+                    + " payment_datetime, used_amount, status) VALUES (?, ?, ?, ?, ?, ?, ?, ?)", rows);
+            rows.clear();
+        }
+    }
+
+    private IterationResult runIteration(int iteration, int customers, int rowsPerCustomer) throws Exception {
+        // 批次计时器每轮重新注册，分位数只统计本轮
+        Timer previousBatchTimer = meterRegistry.find(VerificationMetrics.BATCH_TIMER).timer();
+        if (previousBatchTimer != null) {
+            meterRegistry.remove(previousBatchTimer);
+        }
+        double customersBefore = counterSum(VerificationMetrics.CUSTOMER_COUNTER);
+        double rowsWrittenBefore = counterSum(VerificationMetrics.ROWS_WRITTEN_COUNTER);
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+
+        long start = System.nanoTime();
+        orchestrator.runVerificationProcess();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        IterationResult result = new IterationResult();
+        result.iteration = iteration;
+        result.customers = (long) (counterSum(VerificationMetrics.CUSTOMER_COUNTER) - customersBefore);
+        result.ledgerRows = 2L * customers * rowsPerCustomer;
+        result.rowsWritten = (long) (counterSum(VerificationMetrics.ROWS_WRITTEN_COUNTER) - rowsWrittenBefore);
+        result.seconds = seconds;
+        result.peakHeapMb = peakHeap / (1024.0 * 1024.0);
+        Timer batchTimer = meterRegistry.find(VerificationMetrics.BATCH_TIMER).timer();
+        if (batchTimer != null) {
+            HistogramSnapshot snapshot = batchTimer.takeSnapshot();
+            result.batches = snapshot.count();
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                if (percentile.percentile() == 0.5) {
+                    result.p50Millis = percentile.value(TimeUnit.MILLISECONDS);
+                } else if (percentile.percentile() == 0.99) {
+                    result.p99Millis = percentile.value(TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        return result;
+    }
+
+    private double counterSum(String name) {
+        double sum = 0;
+        for (Counter counter : meterRegistry.find(name).counters()) {
+            sum += counter.count();
+        }
+        return sum;
+    }
+
+    private int intOption(String key, int defaultValue) {
+        String value = options.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static void writeCsv(String file, String label, String engine, List<IterationResult> results) throws IOException {
+        boolean exists = new File(file).length() > 0;
+        String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file, true))) {
+            if (!exists) {
+                writer.println(String.join(",", CSV_HEADER));
+            }
+            for (IterationResult result : results) {
+                writer.println(String.join(",", time, label, engine, String.valueOf(result.iteration),
+                        String.valueOf(result.customers), String.valueOf(result.ledgerRows), format(result.seconds),
+                        format(result.customersPerSecond()), format(result.rowsPerSecond()), format(result.rowsWrittenPerSecond()),
+                        String.valueOf(result.batches), format(result.p50Millis), format(result.p99Millis), format(result.peakHeapMb)));
+            }
+        }
+    }
+
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+
+    /**
+     * 一轮核销的计量结果
+     */
+    private static class IterationResult {
+        private int iteration;
+        private long customers;
+        private long ledgerRows;
+        private long rowsWritten;
+        private long batches;
+        private double seconds;
+        private double p50Millis;
+        private double p99Millis;
+        private double peakHeapMb;
+
+        double customersPerSecond() {
+            return customers / seconds;
+        }
+
+        double rowsPerSecond() {
+            return ledgerRows / seconds;
+        }
+
+        double rowsWrittenPerSecond() {
+            return rowsWritten / seconds;
+        }
+
+        /**
+         * 多轮合计：吞吐按总量除以总耗时，分位数取各轮平均，堆内存取各轮最大
+         */
+        static IterationResult total(List<IterationResult> results) {
+            IterationResult total = new IterationResult();
+            for (IterationResult result : results) {
+                total.customers += result.customers;
+                total.ledgerRows += result.ledgerRows;
+                total.rowsWritten += result.rowsWritten;
+                total.batches += result.batches;
+                total.seconds += result.seconds;
+                total.p50Millis += result.p50Millis / results.size();
+                total.p99Millis += result.p99Millis / results.size();
+                total.peakHeapMb = Math.max(total.peakHeapMb, result.peakHeapMb);
+            }
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("客户 %d 个，耗时 %.2f s，%.1f 客户/s，%.1f 行/s，回写 %.1f 行/s，批次 %d 个，"
+                            + "批次延迟 p50 %.1f ms / p99 %.1f ms，堆内存峰值 %.1f MB",
+                    customers, seconds, customersPerSecond(), rowsPerSecond(), rowsWrittenPerSecond(),
+                    batches, p50Millis, p99Millis, peakHeapMb);
+        }
+    }
+}